@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Keeps the given processors away from the annotated class, method or field, e.g. to keep the flow obfuscation out
+ * of a latency critical method:
+ * <pre>
+ * &#64;Exclude({ObfuscationProcessors.FLOW_OBFUSCATION, ObfuscationProcessors.NUMBER_OBFUSCATION})
+ * public void onTick() { ... }
+ * </pre>
+ * <p>
+ * {@link ObfuscationProcessors#SHUFFLE_MEMBERS} and {@link ObfuscationProcessors#CRASHER} change the class as a whole,
+ * they can only be excluded from classes.
+ * <p>
+ * The annotation is only retained in the class files and removed by the obfuscator, so this module isn't needed at
+ * runtime.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target({ElementType.TYPE, ElementType.METHOD, ElementType.CONSTRUCTOR, ElementType.FIELD})
+public @interface Exclude {
+
+    /**
+     * @return the excluded processors, all processors if empty
+     */
+    ObfuscationProcessors[] value() default {};
+}
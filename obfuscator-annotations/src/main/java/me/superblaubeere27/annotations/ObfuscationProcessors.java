@@ -24,5 +24,6 @@ public enum ObfuscationProcessors {
     INNER_CLASS_REMOVER,
     NAME_OBFUSCATION,
     HIDE_MEMBERS,
-    INLINEING
+    INLINEING,
+    WATERMARK
 }
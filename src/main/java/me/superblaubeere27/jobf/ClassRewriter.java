@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Rewrites the instructions of one class. Created by an {@link IRewritingProcessor}.
+ * <p>
+ * A rewriter sees every instruction of the input and the instructions which were generated by the rewriters of
+ * earlier processors, but never its own replacements. So the result is the same as if the processors were applied
+ * one after another.
+ */
+public abstract class ClassRewriter {
+
+    /**
+     * @return false if the instructions of the method shouldn't be rewritten
+     */
+    public boolean visitMethod(MethodNode method) {
+        return true;
+    }
+
+    /**
+     * @return the instructions which replace the given instruction (an empty list removes it) or null to keep it
+     */
+    public abstract InsnList rewrite(MethodNode method, AbstractInsnNode insn);
+
+    /**
+     * Called after all instructions of the method were visited
+     */
+    public void visitMethodEnd(MethodNode method) {
+    }
+
+    /**
+     * Called after all methods were rewritten. Methods which are added to the class are rewritten by the rewriters of
+     * the following processors. Instructions which are inserted into existing methods aren't.
+     */
+    public void finish() {
+    }
+}
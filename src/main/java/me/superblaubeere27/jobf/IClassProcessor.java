@@ -14,4 +14,11 @@ import org.objectweb.asm.tree.ClassNode;
 
 public interface IClassProcessor {
     void process(ProcessorCallback callback, ClassNode node);
-}
\ No newline at end of file
+
+    /**
+     * @return false if the processor doesn't change any class with the current settings
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+}
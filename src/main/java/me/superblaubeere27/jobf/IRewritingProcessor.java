@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf;
+
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.Collections;
+
+/**
+ * A processor which only replaces single instructions. The rewriters of consecutive processors are applied in one
+ * traversal of every method by the {@link RewritingEngine}.
+ */
+public interface IRewritingProcessor extends IClassProcessor {
+    /**
+     * @return the rewriter for the class or null if the processor doesn't change it
+     */
+    ClassRewriter createRewriter(ProcessorCallback callback, ClassNode node);
+
+    @Override
+    default void process(ProcessorCallback callback, ClassNode node) {
+        ClassRewriter rewriter = createRewriter(callback, node);
+
+        if (rewriter != null) RewritingEngine.rewrite(node, Collections.singletonList(rewriter));
+    }
+}
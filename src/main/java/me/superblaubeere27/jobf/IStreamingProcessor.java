@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf;
+
+import org.objectweb.asm.ClassVisitor;
+
+/**
+ * A processor which doesn't need the class as a tree. If every enabled processor is a streaming processor, the
+ * {@link RewritingEngine} applies them while the class is written instead of changing the tree first.
+ * <p>
+ * The tree version ({@link #process(ProcessorCallback, org.objectweb.asm.tree.ClassNode)}) has to produce the same
+ * result since it is used if any other processor is enabled.
+ */
+public interface IStreamingProcessor extends IClassProcessor {
+    /**
+     * @param cv the next visitor in the chain
+     * @return a visitor which applies the processor and delegates to cv or cv itself if the processor is disabled
+     */
+    ClassVisitor createVisitor(ProcessorCallback callback, ClassVisitor cv);
+}
@@ -19,6 +19,10 @@ import me.superblaubeere27.jobf.ui.GUI;
 import me.superblaubeere27.jobf.utils.ConsoleUtils;
 import me.superblaubeere27.jobf.utils.Templates;
 import me.superblaubeere27.jobf.utils.VersionComparator;
+import me.superblaubeere27.jobf.utils.events.AsyncLogHandler;
+import me.superblaubeere27.jobf.utils.events.EventBus;
+import me.superblaubeere27.jobf.utils.events.ObfuscationEvent;
+import me.superblaubeere27.jobf.utils.events.ProgressWriter;
 import me.superblaubeere27.jobf.utils.values.ConfigManager;
 import me.superblaubeere27.jobf.utils.values.Configuration;
 
@@ -26,14 +30,15 @@ import javax.swing.*;
 import java.awt.*;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.PrintStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
@@ -59,59 +64,11 @@ public class JObf {
         JObf.log.setFilter(record -> true);
 
 
-        JObf.log.addHandler(new Handler() {
-            @Override
-            public void publish(LogRecord record) {
-                if (!VERBOSE && record.getLevel().intValue() < Level.CONFIG.intValue())
-                    return;
-
-                synchronized (log) {
-                    //                    if (record.getLevel().intValue() < Level.INFO.intValue()) return;
-                    if (record.getMessage() == null)
-                        return;
-//                System.out.println(record.getMessage() + "/" + record.getParameters());
-                    //#if buildType=="gui"
-                    if (gui != null) {
-                        try {
-                            gui.logArea.append(String.format(record.getMessage(), record.getParameters()) + "\n");
-                        } catch (Exception e) {
-                            gui.logArea.append(record.getMessage() + "\n");
-                        }
-                        gui.scrollDown();
-//                    System.out.println("lloool");
-                    }
-                    //#endif
-
-                    try {
-                        System.out.println(String.format(record.getMessage(), record.getParameters()));
-                    } catch (Exception e) {
-                        System.out.println(record.getMessage());
-                    }
-                }
-            }
-
-            @Override
-            public void flush() {
-            }
-
-            @Override
-            public void close() throws SecurityException {
-            }
-        });
-
-        String updateCheckResult = checkForUpdate();
-
-        OptionParser parser = new OptionParser();
-        parser.accepts("jarIn").withRequiredArg().required();
-        parser.accepts("jarOut").withRequiredArg();
-        parser.accepts("config").withOptionalArg().ofType(File.class);
-        parser.accepts("cp").withOptionalArg().describedAs("ClassPath").ofType(File.class);
-        parser.accepts("scriptFile").withOptionalArg().describedAs("[Not documented] JS script file").ofType(File.class);
-        parser.accepts("threads").withOptionalArg().ofType(Integer.class).defaultsTo(Runtime.getRuntime().availableProcessors()).describedAs("Thread count; Please don't use more threads than you have cores. It might hang up your system");
-        parser.accepts("verbose").withOptionalArg();
-        parser.accepts("help").forHelp();
-        parser.accepts("version").forHelp();
+        // The records are written by the event thread, so logging doesn't slow down the workers
+        EventBus.INSTANCE.addSink(JObf::printLog);
+        JObf.log.addHandler(new AsyncLogHandler(() -> VERBOSE));
 
+        OptionParser parser = createParser();
 
         try {
             OptionSet options = parser.parse(args);
@@ -125,115 +82,21 @@ public class JObf {
                 return;
             }
 
-            if (options.has("verbose")) {
-                VERBOSE = true;
+            // The job is run by the daemon, the client doesn't need to load anything
+            if (options.has("client")) {
+                System.exit(ObfuscatorDaemon.submit((Integer) options.valueOf("client"), args));
             }
 
-            String jarIn = (String) options.valueOf("jarIn");
-            String jarOut = (String) options.valueOf("jarOut");
-
-
-            log("        _      __                     _             \n" +
-                    "       | |    / _|                   | |            \n" +
-                    "   ___ | |__ | |_ _   _ ___  ___ __ _| |_ ___  _ __ \n" +
-                    "  / _ \\| '_ \\|  _| | | / __|/ __/ _` | __/ _ \\| '__|\n" +
-                    " | (_) | |_) | | | |_| \\__ \\ (_| (_| | || (_) | |   \n" +
-                    "  \\___/|_.__/|_|  \\__,_|___/\\___\\__,_|\\__\\___/|_|   \n" +
-                    "   " + SHORT_VERSION + (updateCheckResult == null ? " (LATEST)" : " (OUTDATED)"));
-            log("");
-
-
-            if (updateCheckResult != null) {
-                log(ConsoleUtils.formatBox("Update available", true, Arrays.asList(
-                        "An update is available: v" + updateCheckResult,
-                        "(Current version: " + SHORT_VERSION + ")",
-                        "The latest version can be downloaded at",
-                        "https://github.com/superblaubeere27/obfuscator/releases/latest"
-                )));
-            }
-
-            log("");
-
-            log(ConsoleUtils.formatBox("Configuration", false, Arrays.asList(
-                    "Input:      " + jarIn,
-                    "Output:     " + jarOut,
-                    "Config:     " + options.valueOf("config")
-            )));
-
-
-            List<String> libraries = new ArrayList<>();
-
-            if (options.has("cp")) {
-                for (Object cp : options.valuesOf("cp")) {
-                    libraries.add(cp.toString());
-                }
-            }
-
-            String scriptContent = "";
-
-            if (options.has("scriptFile")) {
-                scriptContent = new String(Files.readAllBytes(((File) options.valueOf("scriptFile")).toPath()), StandardCharsets.UTF_8);
-            }
-
-            JObfImpl impl = new JObfImpl();
-
-            Configuration config = new Configuration(jarIn, jarOut, scriptContent, libraries);
-
-            if (options.has("config")) {
-                File configFile = (File) options.valueOf("config");
-
-                if (!configFile.exists()) {
-                    System.err.println("Config file doesn't exist");
-                    return;
-                }
-
-                config = ConfigManager.loadConfig(new String(ByteStreams.toByteArray(new FileInputStream(configFile)), StandardCharsets.UTF_8));
-            } else {
-                log.warning("");
-                log.warning(ConsoleUtils.formatBox("WARNING", true, Arrays.asList(
-                        "You didn't specify a configuration, so the ",
-                        "obfuscator is using the default configuration.",
-                        " ",
-                        "This might cause the output jar to be invalid.",
-                        "If you want to create a config, please start the",
-                        "obfuscator in GUI Mode (run it without cli args).",
-                        "",
-                        "The program will resume in 2 sec"
-                )));
-                log.warning("");
-                Thread.sleep(2000);
+            if (options.has("daemon")) {
+                ObfuscatorDaemon.run((Integer) options.valueOf("daemon"));
+                return;
             }
 
-            config.setInput(jarIn);
-            config.setOutput(jarOut);
-
-            if (!scriptContent.isEmpty()) config.setScript(scriptContent);
-
-            int threads = Math.max(1, (Integer) options.valueOf("threads"));
-
-            if (threads > Runtime.getRuntime().availableProcessors()) {
-                log.warning("");
-                log.warning(ConsoleUtils.formatBox("WARNING", true, Arrays.asList(
-                        "You selected more threads than your cpu has cores.",
-                        "",
-                        "I would strongly advise against it because",
-                        "it WILL make the obfuscation slower and also",
-                        "might hang up your system. " + threads + " threads > " + Runtime.getRuntime().availableProcessors() + " cores",
-                        "",
-                        "The program will resume in 10s. Please think about your decision"
-                )));
-                Thread.sleep(10000);
-            }
+            int exitCode = runJob(options, null, checkForUpdate(), true, System.out);
 
-            impl.setThreadCount(threads);
+            EventBus.INSTANCE.flush();
 
-            try {
-                impl.processJar(config);
-            } catch (Exception e) {
-                System.err.println("ERROR: " + e.getMessage());
-                e.printStackTrace();
-                System.exit(1);
-            }
+            if (exitCode != 0) System.exit(exitCode);
         } catch (OptionException e) {
             System.err.println("ERROR: " + e.getMessage() + " (Tip: try --help and even if you specified a config you have to specify an input and output jar)");
             e.printStackTrace();
@@ -270,7 +133,7 @@ public class JObf {
 
             Packager.INSTANCE.isEnabled();
 
-            gui = new GUI(updateCheckResult);
+            gui = new GUI(checkForUpdate());
             //#endif
 //            e.printStackTrace();
 //            parser.printHelpOn(System.out);
@@ -279,12 +142,254 @@ public class JObf {
         }
     }
 
+    static OptionParser createParser() {
+        OptionParser parser = new OptionParser();
+        parser.accepts("daemon").withRequiredArg().ofType(Integer.class).describedAs("Port; Keeps the JVM and the libraries loaded and runs the jobs of --client");
+        parser.accepts("client").withRequiredArg().ofType(Integer.class).describedAs("Port; Runs the job in the daemon which listens on the port");
+        parser.accepts("jarIn").requiredUnless("daemon").withRequiredArg().describedAs("Can be specified several times, the jars are obfuscated together");
+        parser.accepts("jarOut").withRequiredArg().describedAs("One for every --jarIn");
+        parser.accepts("config").withOptionalArg().ofType(File.class);
+        parser.accepts("cp").withOptionalArg().describedAs("ClassPath").ofType(File.class);
+        parser.accepts("scriptFile").withOptionalArg().describedAs("[Not documented] JS script file").ofType(File.class);
+        parser.accepts("threads").withOptionalArg().ofType(Integer.class).defaultsTo(Runtime.getRuntime().availableProcessors()).describedAs("Thread count; Please don't use more threads than you have cores. It might hang up your system");
+        parser.accepts("verbose").withOptionalArg();
+        parser.accepts("progress").withRequiredArg().describedAs("File; Writes the progress as JSON lines (- for the standard output of the obfuscator)");
+        parser.accepts("help").forHelp();
+        parser.accepts("version").forHelp();
+
+        return parser;
+    }
+
+    /**
+     * Runs an obfuscation job
+     *
+     * @param directory   the directory relative paths are resolved against, null for the current directory
+     * @param interactive false if nobody reads the warnings, they don't wait then
+     * @param stdout      the stream --progress - writes to
+     * @return the exit code
+     */
+    static int runJob(OptionSet options, File directory, String updateCheckResult, boolean interactive, PrintStream stdout) throws Exception {
+        if (options.has("verbose")) {
+            VERBOSE = true;
+        }
+
+        List<String> jarIns = new ArrayList<>();
+        List<String> jarOuts = new ArrayList<>();
+
+        for (Object jar : options.valuesOf("jarIn")) jarIns.add(resolve(directory, jar.toString()));
+        for (Object jar : options.valuesOf("jarOut")) jarOuts.add(resolve(directory, jar.toString()));
+
+        if (jarIns.size() > 1 && jarIns.size() != jarOuts.size()) {
+            log.severe("Every --jarIn needs a --jarOut");
+            return 1;
+        }
+
+        String jarIn = jarIns.get(0);
+        String jarOut = jarOuts.isEmpty() ? null : jarOuts.get(0);
+
+
+
+        log("        _      __                     _             \n" +
+                "       | |    / _|                   | |            \n" +
+                "   ___ | |__ | |_ _   _ ___  ___ __ _| |_ ___  _ __ \n" +
+                "  / _ \\| '_ \\|  _| | | / __|/ __/ _` | __/ _ \\| '__|\n" +
+                " | (_) | |_) | | | |_| \\__ \\ (_| (_| | || (_) | |   \n" +
+                "  \\___/|_.__/|_|  \\__,_|___/\\___\\__,_|\\__\\___/|_|   \n" +
+                "   " + SHORT_VERSION + (updateCheckResult == null ? " (LATEST)" : " (OUTDATED)"));
+        log("");
+
+
+        if (updateCheckResult != null) {
+            log(ConsoleUtils.formatBox("Update available", true, Arrays.asList(
+                    "An update is available: v" + updateCheckResult,
+                    "(Current version: " + SHORT_VERSION + ")",
+                    "The latest version can be downloaded at",
+                    "https://github.com/superblaubeere27/obfuscator/releases/latest"
+            )));
+        }
+
+        log("");
+
+        log(ConsoleUtils.formatBox("Configuration", false, Arrays.asList(
+                "Input:      " + jarIn + (jarIns.size() > 1 ? " (+" + (jarIns.size() - 1) + ")" : ""),
+                "Output:     " + jarOut + (jarOuts.size() > 1 ? " (+" + (jarOuts.size() - 1) + ")" : ""),
+                "Config:     " + options.valueOf("config")
+        )));
+
+
+        List<String> libraries = new ArrayList<>();
+
+        if (options.has("cp")) {
+            for (Object cp : options.valuesOf("cp")) {
+                libraries.add(resolve(directory, cp.toString()));
+            }
+        }
+
+        String scriptContent = "";
+
+        if (options.has("scriptFile")) {
+            scriptContent = new String(Files.readAllBytes(new File(resolve(directory, options.valueOf("scriptFile").toString())).toPath()), StandardCharsets.UTF_8);
+        }
+
+        JObfImpl impl = JObfImpl.INSTANCE;
+
+        // Registers the values of the packager before the config is loaded
+        Packager.INSTANCE.isEnabled();
+
+        Configuration config = new Configuration(jarIn, jarOut, scriptContent, libraries);
+
+        if (options.has("config")) {
+            File configFile = new File(resolve(directory, options.valueOf("config").toString()));
+
+            if (!configFile.exists()) {
+                log.severe("Config file doesn't exist");
+                return 1;
+            }
+
+            config = ConfigManager.loadConfig(new String(ByteStreams.toByteArray(new FileInputStream(configFile)), StandardCharsets.UTF_8));
+
+            if (directory != null) {
+                if (config.getLibraries() != null) {
+                    List<String> resolved = new ArrayList<>();
+
+                    for (String library : config.getLibraries()) {
+                        resolved.add(resolve(directory, library));
+                    }
+
+                    config.setLibraries(resolved);
+                }
+
+                List<String> inputs = config.getInputs();
+                List<String> outputs = config.getOutputs();
+
+                config.clearBatchJars();
+
+                for (int i = 1; i < inputs.size(); i++) {
+                    config.addBatchJar(resolve(directory, inputs.get(i)), resolve(directory, outputs.get(i)));
+                }
+            }
+        } else {
+            log.warning("");
+            log.warning(ConsoleUtils.formatBox("WARNING", true, Arrays.asList(
+                    "You didn't specify a configuration, so the ",
+                    "obfuscator is using the default configuration.",
+                    " ",
+                    "This might cause the output jar to be invalid.",
+                    "If you want to create a config, please start the",
+                    "obfuscator in GUI Mode (run it without cli args).",
+                    "",
+                    "The program will resume in 2 sec"
+            )));
+            log.warning("");
+
+            if (interactive) Thread.sleep(2000);
+        }
+
+        config.setInput(jarIn);
+        config.setOutput(jarOut);
+
+        // Several jars on the command line replace the batch of the config
+        if (jarIns.size() > 1) {
+            config.clearBatchJars();
+
+            for (int i = 1; i < jarIns.size(); i++) {
+                config.addBatchJar(jarIns.get(i), jarOuts.get(i));
+            }
+        }
+
+        if (!scriptContent.isEmpty()) config.setScript(scriptContent);
+
+        int threads = Math.max(1, (Integer) options.valueOf("threads"));
+
+        if (threads > Runtime.getRuntime().availableProcessors()) {
+            log.warning("");
+            log.warning(ConsoleUtils.formatBox("WARNING", true, Arrays.asList(
+                    "You selected more threads than your cpu has cores.",
+                    "",
+                    "I would strongly advise against it because",
+                    "it WILL make the obfuscation slower and also",
+                    "might hang up your system. " + threads + " threads > " + Runtime.getRuntime().availableProcessors() + " cores",
+                    "",
+                    "The program will resume in 10s. Please think about your decision"
+            )));
+            if (interactive) Thread.sleep(10000);
+        }
+
+        impl.setThreadCount(threads);
+
+        ProgressWriter progressWriter = null;
+        PrintStream progressOut = null;
+
+        if (options.has("progress")) {
+            String progress = options.valueOf("progress").toString();
+
+            progressOut = progress.equals("-") ? stdout : new PrintStream(new FileOutputStream(resolve(directory, progress)), false, "UTF-8");
+            progressWriter = new ProgressWriter(progressOut);
+
+            EventBus.INSTANCE.addSink(progressWriter);
+        }
+
+        try {
+            impl.processJar(config);
+        } catch (Exception e) {
+            log.severe("ERROR: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        } finally {
+            if (progressWriter != null) {
+                EventBus.INSTANCE.flush();
+                EventBus.INSTANCE.removeSink(progressWriter);
+
+                if (progressOut != stdout) progressOut.close();
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Resolves a relative path against the given directory (null for the current directory)
+     */
+    private static String resolve(File directory, String path) {
+        if (directory == null || path == null || new File(path).isAbsolute()) return path;
+
+        return new File(directory, path).getPath();
+    }
+
+    /**
+     * Writes the log records to the console and the GUI, it's called by the event thread
+     */
+    private static void printLog(ObfuscationEvent event) {
+        if (event.getType() != ObfuscationEvent.Type.LOG) return;
+
+        String message = format(event.getRecord());
+
+        //#if buildType=="gui"
+        if (gui != null) {
+            SwingUtilities.invokeLater(() -> {
+                gui.logArea.append(message + "\n");
+                gui.scrollDown();
+            });
+        }
+        //#endif
+
+        System.out.println(message);
+    }
+
+    static String format(LogRecord record) {
+        try {
+            return String.format(record.getMessage(), record.getParameters());
+        } catch (Exception e) {
+            return record.getMessage();
+        }
+    }
+
     /**
      * Checks if a new version is available
      *
      * @return If the current version is up to date it will return null. If the version is outdated it will return the name of the latest version
      */
-    private static String checkForUpdate() {
+    static String checkForUpdate() {
         try {
             String version = JObf.class.getPackage().getImplementationVersion();
 
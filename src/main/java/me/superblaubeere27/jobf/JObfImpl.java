@@ -10,6 +10,9 @@
 
 package me.superblaubeere27.jobf;
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
 import com.google.common.io.ByteStreams;
 import me.superblaubeere27.IPreClassProcessor;
 import me.superblaubeere27.jobf.processors.*;
@@ -19,10 +22,22 @@ import me.superblaubeere27.jobf.processors.name.INameObfuscationProcessor;
 import me.superblaubeere27.jobf.processors.name.InnerClassRemover;
 import me.superblaubeere27.jobf.processors.name.NameObfuscation;
 import me.superblaubeere27.jobf.processors.optimizer.Optimizer;
+import me.superblaubeere27.jobf.processors.optimizer.PeepholeOptimizer;
+import me.superblaubeere27.jobf.processors.shrinker.Shrinker;
 import me.superblaubeere27.jobf.processors.packager.Packager;
+import me.superblaubeere27.jobf.utils.BuildRandom;
 import me.superblaubeere27.jobf.utils.ClassTree;
 import me.superblaubeere27.jobf.utils.MissingClassException;
+import me.superblaubeere27.jobf.utils.NameUtils;
+import me.superblaubeere27.jobf.utils.NodeUtils;
+import me.superblaubeere27.jobf.utils.ProcessorExclusions;
 import me.superblaubeere27.jobf.utils.Utils;
+import me.superblaubeere27.jobf.utils.events.EventBus;
+import me.superblaubeere27.jobf.utils.events.ObfuscationEvent;
+import me.superblaubeere27.jobf.utils.profile.MethodSizeGuard;
+import me.superblaubeere27.jobf.utils.profile.ProfileGuidance;
+import me.superblaubeere27.jobf.utils.profile.TransformReport;
+import me.superblaubeere27.jobf.utils.script.ClassRules;
 import me.superblaubeere27.jobf.utils.script.JObfScript;
 import me.superblaubeere27.jobf.utils.values.Configuration;
 import me.superblaubeere27.jobf.utils.values.ValueManager;
@@ -30,15 +45,18 @@ import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ModifiedClassWriter;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.MethodNode;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
@@ -48,8 +66,15 @@ public class JObfImpl {
     public static final JObfImpl INSTANCE = new JObfImpl();
     public static List<IClassProcessor> processors;
     public static HashMap<String, ClassNode> classes = new HashMap<>();
-    public static HashMap<String, byte[]> files = new HashMap<>();
+    /**
+     * The resources of every input jar
+     */
+    public static List<HashMap<String, byte[]>> files = new ArrayList<>();
     private static List<IPreClassProcessor> preProcessors;
+    /**
+     * 1980-02-01 00:00 in the local time zone, zip entries store local times, so this results in the same bytes everywhere
+     */
+    private static final long REPRODUCIBLE_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1).getTimeInMillis();
     public JObfScript script;
     private boolean mainClassChanged;
     private List<INameObfuscationProcessor> nameObfuscationProcessors = new ArrayList<>();
@@ -58,16 +83,45 @@ public class JObfImpl {
     private Map<String, ClassTree> hierarchy = new HashMap<>();
     private Set<ClassWrapper> libraryClassnodes = new HashSet<>();
     private List<File> libraryFiles;
+    /**
+     * Canonical path -> Classes of the library, only used if {@link #cacheLibraries} is enabled
+     */
+    private final Map<String, CachedLibrary> libraryCache = new HashMap<>();
+    private boolean cacheLibraries;
+    /**
+     * Internal class name -> Indices of the input jars which contain the class
+     */
+    private Map<String, Set<Integer>> classOrigins = new HashMap<>();
+    private ClassRules rules = ClassRules.EMPTY;
+    /**
+     * Internal class name -> Result of the rules and the script, evaluated once before the classes are processed
+     */
+    private Map<String, ClassRules.Decision> classDecisions = new HashMap<>();
     private int computeMode;
     private boolean invokeDynamic;
     private JObfSettings settings = new JObfSettings();
+    private ProfileGuidance profileGuidance = new ProfileGuidance();
+    private MethodSizeGuard methodSizeGuard = new MethodSizeGuard();
+    private Shrinker shrinker = new Shrinker();
     private int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private HWIDProtection hwidProtection;
+    /**
+     * Classes whose instructions were changed by a pre processor, their frames have to be recomputed
+     */
+    private Set<ClassNode> framesInvalidated = Collections.newSetFromMap(new IdentityHashMap<>());
+    /**
+     * "class.name + desc" -> Size of the method's bytecode before the processors were applied
+     */
+    private Map<String, Integer> originalCodeSizes = new HashMap<>();
 
 
     public JObfImpl() {
         processors = new ArrayList<>();
 
         ValueManager.registerClass(settings);
+        ValueManager.registerClass(profileGuidance);
+        ValueManager.registerClass(methodSizeGuard);
+        ValueManager.registerClass(shrinker);
 
         addProcessors();
     }
@@ -140,17 +194,37 @@ public class JObfImpl {
         return map;
     }
 
+    /**
+     * Loads a library, the classes of unchanged libraries are reused if the library cache is enabled
+     */
+    private Map<String, ClassWrapper> loadLibrary(File file) throws IOException {
+        if (!cacheLibraries) return loadClasspathFile(file);
+
+        String key = file.getCanonicalPath();
+        CachedLibrary cached = libraryCache.get(key);
+
+        if (cached == null || cached.lastModified != file.lastModified() || cached.length != file.length()) {
+            cached = new CachedLibrary(file.lastModified(), file.length(), loadClasspathFile(file));
+
+            libraryCache.put(key, cached);
+        } else {
+            JObf.log.log(Level.FINE, "Using cached " + key);
+        }
+
+        return cached.classes;
+    }
+
     private void loadClasspath() throws IOException {
         if (libraryFiles != null) {
             int i = 0;
             for (File file : libraryFiles) {
                 if (file.isFile()) {
                     JObf.log.info("Loading " + file.getAbsolutePath() + " (" + (i++ * 100 / libraryFiles.size()) + "%)");
-                    classPath.putAll(loadClasspathFile(file));
+                    classPath.putAll(loadLibrary(file));
                 } else {
                     Files.walk(file.toPath()).map(Path::toFile).filter(f -> f.getName().endsWith(".jar")).forEach(f -> {
                         try {
-                            classPath.putAll(loadClasspathFile(f));
+                            classPath.putAll(loadLibrary(f));
                         } catch (IOException e) {
                             e.printStackTrace();
                         }
@@ -161,6 +235,19 @@ public class JObfImpl {
         libraryClassnodes.addAll(classPath.values());
     }
 
+    /**
+     * Keeps the classes of the libraries between the runs (see {@link ObfuscatorDaemon})
+     */
+    public void setCacheLibraries(boolean cacheLibraries) {
+        this.cacheLibraries = cacheLibraries;
+
+        if (!cacheLibraries) libraryCache.clear();
+    }
+
+    public ProfileGuidance getProfileGuidance() {
+        return profileGuidance;
+    }
+
     public Map<String, ClassWrapper> getClassPath() {
         return classPath;
     }
@@ -172,10 +259,9 @@ public class JObfImpl {
     private void addProcessors() {
         processors.add(new StaticInitializionProcessor(this));
 
-        processors.add(new HWIDProtection(this));
+        processors.add(hwidProtection = new HWIDProtection(this));
         processors.add(new Optimizer());
-        processors.add(new InlineProcessor(this));
-        processors.add(new InvokeDynamic());
+        processors.add(new InvokeDynamic(this));
 
         processors.add(new StringEncryptionProcessor(this));
         processors.add(new NumberObfuscationProcessor(this));
@@ -189,8 +275,13 @@ public class JObfImpl {
         nameObfuscationProcessors.add(new InnerClassRemover());
         processors.add(new CrasherProcessor(this));
         processors.add(new ReferenceProxy(this));
+        // Cleans up after the other processors
+        processors.add(new PeepholeOptimizer());
+        // The marker should be added to the final class
+        processors.add(new WatermarkProcessor());
 
         preProcessors = new ArrayList<>();
+        preProcessors.add(new InlineProcessor(this));
 
         for (IClassProcessor processor : processors) {
             ValueManager.registerClass(processor);
@@ -207,17 +298,29 @@ public class JObfImpl {
         this.script = script;
     }
 
+    /**
+     * Creates an output entry, reproducible builds use a fixed timestamp
+     */
+    private ZipEntry createEntry(String name) {
+        ZipEntry entry = new ZipEntry(name);
+
+        if (settings.isReproducible()) entry.setTime(REPRODUCIBLE_TIME);
+
+        return entry;
+    }
+
     public void processJar(Configuration config) throws IOException {
-        ZipInputStream inJar = null;
-        ZipOutputStream outJar = null;
+        List<ZipOutputStream> outJars = new ArrayList<>();
 
         libraryFiles = new ArrayList<>();
 
         classes = new HashMap<>();
         libraryClassnodes = new HashSet<>();
         classPath = new HashMap<>();
-        files = new HashMap<>();
+        files = new ArrayList<>();
         hierarchy = new HashMap<>();
+        classOrigins = new HashMap<>();
+        framesInvalidated = Collections.newSetFromMap(new IdentityHashMap<>());
 
         try {
             script = new JObfScript(config.getScript() == null ? "" : config.getScript());
@@ -227,79 +330,134 @@ public class JObfImpl {
             return;
         }
 
+        try {
+            rules = ClassRules.parse(config.getRules() == null ? Collections.emptyList() : config.getRules());
+        } catch (IllegalArgumentException e) {
+            JObf.log.severe(e.getMessage());
+            return;
+        }
+
         for (String s : config.getLibraries()) libraryFiles.add(new File(s));
 
+        libraryCache.keySet().removeIf(path -> !new File(path).exists());
+
+        // The classes of the previous run mustn't be used
+        ObfuscatorClassLoader.INSTANCE = new ObfuscatorClassLoader();
+        NameUtils.reset();
+
+        BuildRandom.setBuildSeed(settings.getSeed());
+
         try {
+            EventBus.INSTANCE.post(ObfuscationEvent.phase("Loading classpath"));
             JObf.log.info("Loading classpath...");
             loadClasspath();
-            try {
-                inJar = new ZipInputStream(new BufferedInputStream(new FileInputStream(config.getInput())));
-            } catch (FileNotFoundException e) {
-                throw new FileNotFoundException("Could not open input file: " + e.getMessage());
-            }
+            List<String> inputs = config.getInputs();
+            List<String> outputs = config.getOutputs();
+
+            if (inputs.size() != outputs.size()) throw new IllegalArgumentException("Every input needs an output");
+            if (inputs.size() > 1 && Packager.INSTANCE.isEnabled())
+                throw new IllegalArgumentException("The packager can't be used with several inputs");
+
+            for (String output : outputs) {
+                try {
+                    OutputStream out = (output == null ? new ByteArrayOutputStream() : new FileOutputStream(output));
+                    outJars.add(new ZipOutputStream(new BufferedOutputStream(out)));
+                } catch (FileNotFoundException e) {
+                    throw new FileNotFoundException("Could not open output file: " + e.getMessage());
+                }
 
-            try {
-                OutputStream out = (config.getOutput() == null ? new ByteArrayOutputStream() : new FileOutputStream(config.getOutput()));
-                outJar = new ZipOutputStream(new BufferedOutputStream(out));
-            } catch (FileNotFoundException e) {
-                throw new FileNotFoundException("Could not open output file: " + e.getMessage());
+                files.add(new HashMap<>());
             }
             setMainClass(null);
 
             long startTime = System.currentTimeMillis();
 
+            EventBus.INSTANCE.post(ObfuscationEvent.phase("Reading input"));
             JObf.log.info("Reading input...");
 
-            while (true) {
-                ZipEntry entry = inJar.getNextEntry();
+            List<HashCode> inputHashes = new ArrayList<>();
+            Map<String, HashCode> classHashes = new HashMap<>();
 
-                if (entry == null) {
-                    break;
-                }
+            // The inputs share the classpath, hierarchy and mappings, so references between them stay valid
+            for (int i = 0; i < inputs.size(); i++) {
+                HashingInputStream inputHash;
 
-                if (entry.isDirectory()) {
-                    outJar.putNextEntry(entry);
-                    continue;
-                }
+                try (ZipInputStream inJar = new ZipInputStream(new BufferedInputStream(inputHash = new HashingInputStream(Hashing.sha256(), new FileInputStream(inputs.get(i)))))) {
+                    while (true) {
+                        ZipEntry entry = inJar.getNextEntry();
+
+                        if (entry == null) {
+                            break;
+                        }
 
-                byte[] data = new byte[4096];
-                ByteArrayOutputStream entryBuffer = new ByteArrayOutputStream();
+                        if (entry.isDirectory()) {
+                            outJars.get(i).putNextEntry(settings.isReproducible() ? createEntry(entry.getName()) : entry);
+                            continue;
+                        }
 
-                int len;
-                do {
-                    len = inJar.read(data);
-                    if (len > 0) {
-                        entryBuffer.write(data, 0, len);
-                    }
-                } while (len != -1);
+                        byte[] data = new byte[4096];
+                        ByteArrayOutputStream entryBuffer = new ByteArrayOutputStream();
+
+                        int len;
+                        do {
+                            len = inJar.read(data);
+                            if (len > 0) {
+                                entryBuffer.write(data, 0, len);
+                            }
+                        } while (len != -1);
 
-                byte[] entryData = entryBuffer.toByteArray();
+                        byte[] entryData = entryBuffer.toByteArray();
 
-                String entryName = entry.getName();
+                        String entryName = entry.getName();
 
-                if (entryName.endsWith(".class")) {
-                    try {
-                        ClassReader cr = new ClassReader(entryData);
-                        ClassNode cn = new ClassNode();
+                        if (entryName.endsWith(".class")) {
+                            try {
+                                ClassReader cr = new ClassReader(entryData);
+                                ClassNode cn = new ClassNode();
 
 
-                        //ca = new LineInjectorAdaptor(ASM4, cn);
+                                //ca = new LineInjectorAdaptor(ASM4, cn);
 
-                        cr.accept(cn, 0);
-                        classes.put(entryName, cn);
-                    } catch (Exception e) {
-                        JObf.log.warning("Failed to read class " + entryName);
-                        e.printStackTrace();
-                        files.put(entryName, entryData);
-                    }
+                                cr.accept(cn, 0);
 
-                } else {
-                    if (entryName.equals("META-INF/MANIFEST.MF")) {
-                        setMainClass(Utils.getMainClass(new String(entryData, StandardCharsets.UTF_8)));
-                    }
+                                HashCode classHash = Hashing.sha256().hashBytes(entryData);
 
-                    files.put(entryName, entryData);
+                                // Every jar which contains the class gets the transformed one, otherwise the later jars would miss it at runtime
+                                if (classes.containsKey(entryName)) {
+                                    if (!classHash.equals(classHashes.get(entryName))) {
+                                        JObf.log.warning(entryName + " differs between several inputs, the first one is written to each of them");
+                                    }
+
+                                    classOrigins.get(classes.get(entryName).name).add(i);
+                                    continue;
+                                }
+
+                                classes.put(entryName, cn);
+                                classHashes.put(entryName, classHash);
+                                classOrigins.computeIfAbsent(cn.name, name -> new TreeSet<>()).add(i);
+                            } catch (Exception e) {
+                                JObf.log.warning("Failed to read class " + entryName);
+                                e.printStackTrace();
+                                files.get(i).put(entryName, entryData);
+                            }
+
+                        } else {
+                            if (i == 0 && entryName.equals("META-INF/MANIFEST.MF")) {
+                                setMainClass(Utils.getMainClass(new String(entryData, StandardCharsets.UTF_8)));
+                            }
+
+                            files.get(i).put(entryName, entryData);
+                        }
+                    }
+                } catch (FileNotFoundException e) {
+                    throw new FileNotFoundException("Could not open input file: " + e.getMessage());
                 }
+
+                inputHashes.add(inputHash.hash());
+            }
+
+            if (settings.isReproducible() && (settings.getSeed() == null || settings.getSeed().isEmpty())) {
+                BuildRandom.setBuildSeed(Hashing.combineOrdered(inputHashes).asLong());
             }
 
             for (Map.Entry<String, ClassNode> stringClassNodeEntry : classes.entrySet()) {
@@ -309,6 +467,12 @@ public class JObfImpl {
                 libraryClassnodes.add(new ClassWrapper(value, false, null));
             }
 
+            decideClasses();
+            shrinker.process(this);
+
+            TransformReport.reset();
+            profileGuidance.init(classes.values());
+
 //            if (nameobf) {
             for (INameObfuscationProcessor nameObfuscationProcessor : nameObfuscationProcessors) {
                 nameObfuscationProcessor.transformPost(this, classes);
@@ -321,63 +485,116 @@ public class JObfImpl {
             AtomicInteger processed = new AtomicInteger();
 
             if (Packager.INSTANCE.isEnabled()) {
-                Packager.INSTANCE.init();
+                Packager.INSTANCE.init(this);
             }
 
+            hwidProtection.init(this);
+
             JObf.log.info("... Finished after " + Utils.formatTime(System.currentTimeMillis() - startTime));
 
             startTime = System.currentTimeMillis();
 
 
+            EventBus.INSTANCE.post(ObfuscationEvent.phase("Transforming"));
             JObf.log.info("Transforming with " + threadCount + " threads...");
 
             final LinkedList<Map.Entry<String, ClassNode>> classQueue = new LinkedList<>(classes.entrySet());
 
-            HashMap<String, byte[]> toWrite = new HashMap<>();
+            originalCodeSizes = new HashMap<>();
+
+            for (ClassNode node : classes.values()) {
+                for (MethodNode method : node.methods) {
+                    originalCodeSizes.put(node.name + "." + method.name + method.desc, NodeUtils.getCodeSize(method));
+                }
+            }
 
-            List<Thread> threads = new ArrayList<>();
+            Map<String, byte[]> toWrite = settings.isReproducible() ? new TreeMap<>() : new HashMap<>();
+            // The names which are generated for a class only depend on its position in the sorted class list
+            Map<String, Integer> classIndices = new HashMap<>();
+
+            if (settings.isReproducible()) {
+                List<String> classNames = new ArrayList<>(classes.keySet());
+
+                Collections.sort(classNames);
+
+                for (int i = 0; i < classNames.size(); i++) {
+                    classIndices.put(classNames.get(i), i);
+                }
+
+                NameUtils.reserveClassScopes(classNames.size());
+            }
+
+            // The classes were renamed already, the index compares the nodes by identity
+            ProcessorExclusions exclusions = ProcessorExclusions.index(classes.values());
+
+            // Large classes split their methods into subtasks on the same pool (see MethodParallelism)
+            ForkJoinPool pool = new ForkJoinPool(threadCount, forkJoinPool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+
+                thread.setName("Thread-" + thread.getPoolIndex());
+                thread.setContextClassLoader(ObfuscatorClassLoader.INSTANCE);
+
+                return thread;
+            }, null, false);
 
             for (int i = 0; i < threadCount; i++) {
 //                ZipOutputStream finalOutJar = outJar;
 
 
-                Thread t = new Thread(() -> {
-                    try {
-                        while (true) {
-                            Map.Entry<String, ClassNode> stringClassNodeEntry;
+                pool.execute(() -> {
+                    while (true) {
+                        Map.Entry<String, ClassNode> stringClassNodeEntry;
 
-                            synchronized (classQueue) {
-                                stringClassNodeEntry = classQueue.poll();
-                            }
+                        synchronized (classQueue) {
+                            stringClassNodeEntry = classQueue.poll();
+                        }
+
+                        if (stringClassNodeEntry == null) break;
+
+                        ProcessorCallback callback = new ProcessorCallback(exclusions);
+
+                        String entryName = stringClassNodeEntry.getKey();
 
-                            if (stringClassNodeEntry == null) break;
+                        BuildRandom.beginClass(entryName);
 
-                            ProcessorCallback callback = new ProcessorCallback();
+                        EventBus.INSTANCE.post(ObfuscationEvent.classStarted(entryName, processed.get(), classes.size()));
 
-                            String entryName = stringClassNodeEntry.getKey();
-                            byte[] entryData;
-                            ClassNode cn = stringClassNodeEntry.getValue();
+                        if (settings.isReproducible()) NameUtils.beginClassScope(classIndices.get(entryName));
 
+                        byte[] entryData;
+                        ClassNode cn = stringClassNodeEntry.getValue();
+
+                        try {
                             try {
-                                try {
 
-                                    computeMode = ModifiedClassWriter.COMPUTE_MAXS;
+                                computeMode = ModifiedClassWriter.COMPUTE_MAXS;
+
+                                byte[] streamed = null;
 
+                                if (isObfuscationEnabled(cn)) {
+                                    JObf.log.log(Level.FINE, "[%s] (%s/%s), Processing %s", new Object[]{Thread.currentThread().getName(), processed.get(), classes.size(), entryName});
 
-                                    if (script == null || script.isObfuscatorEnabled(cn)) {
-                                        JObf.log.log(Level.FINE, String.format("[%s] (%s/%s), Processing %s", Thread.currentThread().getName(), processed, classes.size(), entryName));
+                                    if (RewritingEngine.isStreamable(processors) && !framesInvalidated.contains(cn)) {
+                                        // The instructions aren't changed, so the frames and maxs of the input are still valid
+                                        ModifiedClassWriter writer = new ModifiedClassWriter(0);
 
-                                        for (IClassProcessor proc : processors) {
-                                            try {
-                                                proc.process(callback, cn);
-                                            } catch (Exception e) {
-                                                e.printStackTrace();
-                                            }
-                                        }
+                                        RewritingEngine.stream(processors, callback, cn, writer);
+
+                                        streamed = writer.toByteArray();
                                     } else {
-                                        JObf.log.log(Level.FINE, String.format("[%s] (%s/%s), Skipping %s", Thread.currentThread().getName(), processed, classes.size(), entryName));
+                                        MethodSizeGuard.Snapshot snapshot = methodSizeGuard.snapshot(cn);
+
+                                        RewritingEngine.process(processors, callback, cn);
+
+                                        methodSizeGuard.check(cn, snapshot);
                                     }
+                                } else {
+                                    JObf.log.log(Level.FINE, "[%s] (%s/%s), Skipping %s", new Object[]{Thread.currentThread().getName(), processed.get(), classes.size(), entryName});
+                                }
 
+                                if (streamed != null) {
+                                    entryData = streamed;
+                                } else {
                                     if (callback.isForceComputeFrames())
                                         cn.methods.forEach(method -> Arrays.stream(method.instructions.toArray()).filter(abstractInsnNode -> abstractInsnNode instanceof FrameNode).forEach(abstractInsnNode -> method.instructions.remove(abstractInsnNode)));
 
@@ -385,129 +602,130 @@ public class JObfImpl {
                                     int mode = computeMode
                                             | (callback.isForceComputeFrames() ? ModifiedClassWriter.COMPUTE_FRAMES : 0);
 
-                                    JObf.log.log(Level.FINE, String.format("[%s] (%s/%s), Writing (computeMode = %s) %s", Thread.currentThread().getName(), processed, classes.size(), mode, entryName));
+                                    JObf.log.log(Level.FINE, "[%s] (%s/%s), Writing (computeMode = %s) %s", new Object[]{Thread.currentThread().getName(), processed.get(), classes.size(), mode, entryName});
 
                                     ModifiedClassWriter writer = new ModifiedClassWriter(
-//                                            computeMode
+//                                                computeMode
                                             ModifiedClassWriter.COMPUTE_FRAMES
                                     );
                                     cn.accept(writer);
 
                                     entryData = writer.toByteArray();
-                                } catch (Throwable e) {
+                                }
+                            } catch (Throwable e) {
 //                                    if (e instanceof) {
 //
 //                                    }
-                                    ModifiedClassWriter writer = new ModifiedClassWriter(ModifiedClassWriter.COMPUTE_MAXS
-                                            //                            | ModifiedClassWriter.COMPUTE_FRAMES
-                                    );
-                                    cn.accept(writer);
+                                JObf.log.warning("Failed to transform " + entryName + ", it is written without the remaining transformations: " + e);
 
-                                    entryData = writer.toByteArray();
-                                }
-                                try {
-                                    if (Packager.INSTANCE.isEnabled()) {
-                                        entryName = Packager.INSTANCE.encryptName(entryName.replace(".class", ""));
-                                        entryData = Packager.INSTANCE.encryptClass(entryData);
-                                    }
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                }
+                                if (JObf.VERBOSE) e.printStackTrace();
 
+                                ModifiedClassWriter writer = new ModifiedClassWriter(ModifiedClassWriter.COMPUTE_MAXS
+                                        //                            | ModifiedClassWriter.COMPUTE_FRAMES
+                                );
+                                cn.accept(writer);
 
+                                entryData = writer.toByteArray();
+                            }
 //                                synchronized (finalOutJar) {
 //                                    ZipEntry newEntry = new ZipEntry(entryName);
 //                                    finalOutJar.putNextEntry(newEntry);
 //                                    finalOutJar.write(entryData);
 //                                }
 
+                            if (Packager.INSTANCE.isEnabled()) {
+                                Packager.INSTANCE.addClass(entryName, entryData);
+                            } else {
                                 synchronized (toWrite) {
                                     toWrite.put(entryName, entryData);
                                 }
-                                //                    JObfImpl.log.log(Level.FINE, String.format("Processed %s (+%.2f KB)", entryName, (entryData.length - entryBuffer.size()) / 1024.0));
-                            } catch (Exception e) {
-                                e.printStackTrace();
                             }
+                            //                    JObfImpl.log.log(Level.FINE, String.format("Processed %s (+%.2f KB)", entryName, (entryData.length - entryBuffer.size()) / 1024.0));
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        } finally {
+                            NameUtils.endClassScope();
+                        }
 
-                            //                JObfImpl.log.log(Level.FINE, "Processed " + entryBuffer.size() + " -> " + entryData.length);
+                        //                JObfImpl.log.log(Level.FINE, "Processed " + entryBuffer.size() + " -> " + entryData.length);
 
-                            processed.getAndIncrement();
-                        }
-                    } finally {
-                        synchronized (threads) {
-                            threads.remove(Thread.currentThread());
-                        }
+                        EventBus.INSTANCE.post(ObfuscationEvent.classFinished(entryName, processed.incrementAndGet(), classes.size()));
                     }
                 });
+            }
 
-                t.setName("Thread-" + i);
-                t.setContextClassLoader(ObfuscatorClassLoader.INSTANCE);
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
 
-                t.start();
+            JObf.log.info("... Finished after " + Utils.formatTime(System.currentTimeMillis() - startTime));
 
-                synchronized (threads) {
-                    threads.add(t);
-                }
-            }
+            TransformReport.finish(settings.getReportFile());
 
+            startTime = System.currentTimeMillis();
 
-            while (true) {
-                synchronized (threads) {
-                    if (threads.isEmpty()) break;
+            for (int i = 0; i < outJars.size(); i++) {
+                ZipOutputStream outJar = outJars.get(i);
 
-                    threads.stream().filter(thread -> thread == null || !thread.isAlive()).collect(Collectors.toList()).forEach(threads::remove);
-                }
+                if (outJars.size() > 1) JObf.log.info("Writing " + outputs.get(i) + "...");
 
-                Thread.sleep(100);
-            }
+                startTime = System.currentTimeMillis();
 
-            JObf.log.info("... Finished after " + Utils.formatTime(System.currentTimeMillis() - startTime));
+                EventBus.INSTANCE.post(ObfuscationEvent.phase("Writing"));
+                JObf.log.info("Writing classes...");
 
-            startTime = System.currentTimeMillis();
+                for (Map.Entry<String, byte[]> stringEntry : toWrite.entrySet()) {
+                    String className = stringEntry.getKey().substring(0, stringEntry.getKey().length() - ".class".length());
 
-            JObf.log.info("Writing classes...");
+                    if (!classOrigins.getOrDefault(className, Collections.singleton(0)).contains(i)) continue;
 
-            for (Map.Entry<String, byte[]> stringEntry : toWrite.entrySet()) {
-                ZipEntry newEntry = new ZipEntry(stringEntry.getKey());
-                outJar.putNextEntry(newEntry);
-                outJar.write(stringEntry.getValue());
-            }
+                    ZipEntry newEntry = createEntry(stringEntry.getKey());
+                    outJar.putNextEntry(newEntry);
+                    outJar.write(stringEntry.getValue());
+                }
 
-            JObf.log.info("... Finished after " + Utils.formatTime(System.currentTimeMillis() - startTime));
+                JObf.log.info("... Finished after " + Utils.formatTime(System.currentTimeMillis() - startTime));
 
-            startTime = System.currentTimeMillis();
+                startTime = System.currentTimeMillis();
+
+                JObf.log.info("Writing resources...");
 
-            JObf.log.info("Writing resources...");
+                for (Map.Entry<String, byte[]> stringEntry : (settings.isReproducible() ? new TreeMap<>(files.get(i)) : files.get(i)).entrySet()) {
+                    String entryName = stringEntry.getKey();
+                    byte[] entryData = stringEntry.getValue();
 
-            for (Map.Entry<String, byte[]> stringEntry : files.entrySet()) {
-                String entryName = stringEntry.getKey();
-                byte[] entryData = stringEntry.getValue();
+                    if (entryName.equals("META-INF/MANIFEST.MF")) {
+                        if (Packager.INSTANCE.isEnabled()) {
+                            entryData = Utils.replaceMainClass(new String(entryData, StandardCharsets.UTF_8), Packager.INSTANCE.getDecryptionClassName()).getBytes(StandardCharsets.UTF_8);
+                        } else if (mainClassChanged) {
+                            entryData = Utils.replaceMainClass(new String(entryData, StandardCharsets.UTF_8), mainClass).getBytes(StandardCharsets.UTF_8);
+                            JObf.log.log(Level.FINE, "Replaced Main-Class with " + mainClass);
+                        }
 
-                if (entryName.equals("META-INF/MANIFEST.MF")) {
-                    if (Packager.INSTANCE.isEnabled()) {
-                        entryData = Utils.replaceMainClass(new String(entryData, StandardCharsets.UTF_8), Packager.INSTANCE.getDecryptionClassName()).getBytes(StandardCharsets.UTF_8);
-                    } else if (mainClassChanged) {
-                        entryData = Utils.replaceMainClass(new String(entryData, StandardCharsets.UTF_8), mainClass).getBytes(StandardCharsets.UTF_8);
-                        JObf.log.log(Level.FINE, "Replaced Main-Class with " + mainClass);
+                        JObf.log.log(Level.FINE, "Processed MANIFEST.MF");
                     }
+                    JObf.log.log(Level.FINE, "Copying " + entryName);
 
-                    JObf.log.log(Level.FINE, "Processed MANIFEST.MF");
+                    ZipEntry newEntry = createEntry(entryName);
+                    outJar.putNextEntry(newEntry);
+                    outJar.write(entryData);
                 }
-                JObf.log.log(Level.FINE, "Copying " + entryName);
 
-                ZipEntry newEntry = new ZipEntry(entryName);
-                outJar.putNextEntry(newEntry);
-                outJar.write(entryData);
+                JObf.log.info("... Finished after " + Utils.formatTime(System.currentTimeMillis() - startTime));
             }
 
-            JObf.log.info("... Finished after " + Utils.formatTime(System.currentTimeMillis() - startTime));
-
             startTime = System.currentTimeMillis();
 
             if (Packager.INSTANCE.isEnabled()) {
+                ZipOutputStream outJar = outJars.get(0);
+
+                EventBus.INSTANCE.post(ObfuscationEvent.phase("Packaging"));
                 JObf.log.info("Packaging...");
+                byte[] archiveData = Packager.INSTANCE.generateArchive();
+                outJar.putNextEntry(createEntry(Packager.INSTANCE.getArchiveName()));
+                outJar.write(archiveData);
+                outJar.closeEntry();
                 byte[] decryptorData = Packager.INSTANCE.generateEncryptionClass();
-                outJar.putNextEntry(new ZipEntry(Packager.INSTANCE.getDecryptionClassName() + ".class"));
+                outJar.putNextEntry(createEntry(Packager.INSTANCE.getDecryptionClassName() + ".class"));
                 outJar.write(decryptorData);
                 outJar.closeEntry();
                 JObf.log.info("... Finished after " + Utils.formatTime(System.currentTimeMillis() - startTime));
@@ -521,33 +739,148 @@ public class JObfImpl {
             files.clear();
             hierarchy.clear();
 
-            if (outJar != null) {
+            if (!outJars.isEmpty()) {
                 try {
                     JObf.log.info("Finishing...");
-                    outJar.flush();
-                    outJar.close();
+
+                    for (ZipOutputStream outJar : outJars) {
+                        outJar.flush();
+                        outJar.close();
+                    }
+
+                    EventBus.INSTANCE.post(ObfuscationEvent.phase("Finished"));
                     JObf.log.info(">>> Processing completed. If you found a bug / if the output is invalid please open an issue at https://github.com/superblaubeere27/obfuscator/issues");
                 } catch (Exception e) {
                     // ignore
                 }
             }
+        }
+    }
 
-            if (inJar != null) {
-                try {
-                    inJar.close();
-                } catch (IOException e) {
-                    // ignore
-                }
+    /**
+     * Adds a class which was generated before the classes are processed. It is processed like an input class and
+     * written to the first output.
+     */
+    public void addGeneratedClass(ClassNode node) {
+        classes.put(node.name + ".class", node);
+        classPath.put(node.name, new ClassWrapper(node, false, null));
+    }
+
+    /**
+     * Has to be called by pre processors which change the instructions of a class, so its frames are recomputed when
+     * it's written
+     */
+    public void invalidateFrames(ClassNode node) {
+        framesInvalidated.add(node);
+    }
+
+    /**
+     * Has to be called by processors which rename classes, so every class is written to the jars it was read from
+     *
+     * @param renamed old internal name -> new internal name
+     */
+    public void classesRenamed(Map<String, String> renamed) {
+        Map<String, Set<Integer>> updated = new HashMap<>();
+
+        for (Map.Entry<String, Set<Integer>> entry : classOrigins.entrySet()) {
+            updated.put(renamed.getOrDefault(entry.getKey(), entry.getKey()), entry.getValue());
+        }
+
+        classOrigins = updated;
+
+        Map<String, ClassRules.Decision> updatedDecisions = new HashMap<>();
+
+        for (Map.Entry<String, ClassRules.Decision> entry : classDecisions.entrySet()) {
+            updatedDecisions.put(renamed.getOrDefault(entry.getKey(), entry.getKey()), entry.getValue());
+        }
+
+        classDecisions = updatedDecisions;
+    }
+
+    /**
+     * Evaluates the rules and the script for every input class. This happens on one thread and with the original names,
+     * the workers only look up the decisions.
+     */
+    private void decideClasses() {
+        classDecisions = new HashMap<>();
+
+        for (ClassNode node : classes.values()) {
+            ClassRules.Decision decision = rules.decide(node, name -> {
+                ClassWrapper wrapper = classPath.get(name);
+
+                return wrapper == null ? null : wrapper.classNode;
+            });
+
+            if (script != null) {
+                decision = new ClassRules.Decision(decision.isObfuscated() && script.isObfuscatorEnabled(node), decision.isRemapped() && script.remapClass(node));
             }
+
+            classDecisions.put(node.name, decision);
         }
     }
 
+    /**
+     * @return true if a keep rule matches the class
+     */
+    public boolean isKept(ClassNode node) {
+        return rules.isKept(node, name -> {
+            ClassWrapper wrapper = classPath.get(name);
+
+            return wrapper == null ? null : wrapper.classNode;
+        });
+    }
+
+    /**
+     * @return the size of the method's bytecode before the processors were applied (the current size for methods
+     * which were generated by the processors)
+     */
+    public int getOriginalCodeSize(ClassNode node, MethodNode method) {
+        Integer size = originalCodeSizes.get(node.name + "." + method.name + method.desc);
+
+        return size == null ? NodeUtils.getCodeSize(method) : size;
+    }
+
+    /**
+     * Removes an input class, it won't be processed or written to the output
+     */
+    public void removeClass(ClassNode node) {
+        classes.remove(node.name + ".class");
+        classPath.remove(node.name);
+        libraryClassnodes.removeIf(wrapper -> wrapper.classNode == node);
+        classOrigins.remove(node.name);
+        classDecisions.remove(node.name);
+    }
+
+    public boolean isObfuscationEnabled(ClassNode node) {
+        return classDecisions.getOrDefault(node.name, ClassRules.Decision.INCLUDED).isObfuscated();
+    }
+
+    public boolean isRemappingEnabled(ClassNode node) {
+        return classDecisions.getOrDefault(node.name, ClassRules.Decision.INCLUDED).isRemapped();
+    }
+
     public void setWorkDone() {
         boolean workDone = true;
     }
 
 
+    public JObfSettings getSettings() {
+        return settings;
+    }
+
     public void setThreadCount(int threadCount) {
         this.threadCount = threadCount;
     }
+
+    private static class CachedLibrary {
+        private final long lastModified;
+        private final long length;
+        private final Map<String, ClassWrapper> classes;
+
+        private CachedLibrary(long lastModified, long length, Map<String, ClassWrapper> classes) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.classes = classes;
+        }
+    }
 }
@@ -10,6 +10,31 @@
 
 package me.superblaubeere27.jobf;
 
+import me.superblaubeere27.jobf.utils.values.BooleanValue;
+import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
+import me.superblaubeere27.jobf.utils.values.NumberValue;
+import me.superblaubeere27.jobf.utils.values.StringValue;
+
 public class JObfSettings {
+    private static final String PROCESSOR_NAME = "Settings";
+    private StringValue reportFile = new StringValue(PROCESSOR_NAME, "Report File", DeprecationLevel.GOOD, "");
+    private StringValue seed = new StringValue(PROCESSOR_NAME, "Seed", "The same input and seed result in the same output (random if empty)", DeprecationLevel.GOOD, "");
+    private BooleanValue reproducible = new BooleanValue(PROCESSOR_NAME, "Reproducible Output", "Sorted entries, fixed timestamps and names which don't depend on the threads (the seed is derived from the input if it is empty)", DeprecationLevel.GOOD, false);
+    private NumberValue<Integer> parallelMethodThreshold = new NumberValue<>(PROCESSOR_NAME, "Parallel Method Threshold", "Classes with more methods are split into per-method tasks (0 to disable)", DeprecationLevel.GOOD, 64);
+
+    public String getReportFile() {
+        return reportFile.getObject();
+    }
+
+    public String getSeed() {
+        return seed.getObject();
+    }
+
+    public boolean isReproducible() {
+        return reproducible.getObject();
+    }
 
+    public int getParallelMethodThreshold() {
+        return parallelMethodThreshold.getObject();
+    }
 }
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf;
+
+import me.superblaubeere27.jobf.utils.events.EventBus;
+import me.superblaubeere27.jobf.utils.events.ObfuscationEvent;
+import me.superblaubeere27.jobf.utils.values.ValueManager;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the JVM warm and the libraries loaded between obfuscation jobs. Jobs are sent by {@link #submit(int, String[])}
+ * (--client) and run one at a time, because the obfuscator has global state.
+ * <p>
+ * The daemon only listens on the loopback interface. Jobs read and write files and may run config scripts with the
+ * permissions of the daemon, so every connection has to send the random token which the daemon writes to
+ * {@code ~/.obfuscator/daemon-<port>.token}. Only the owner can read the file.
+ */
+public class ObfuscatorDaemon {
+    private static final int LOG = 0;
+    private static final int EXIT = 1;
+    private static final int PROGRESS = 2;
+    /**
+     * The lengths are read from the socket, they are checked before anything is allocated
+     */
+    private static final int MAX_ARGS = 1024;
+    private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+    private static final int TOKEN_LENGTH = 32;
+
+    public static void run(int port) throws IOException {
+        String updateCheckResult = JObf.checkForUpdate();
+
+        JObfImpl.INSTANCE.setCacheLibraries(true);
+
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            byte[] token = createToken(server.getLocalPort());
+
+            JObf.log.info("Waiting for jobs on " + server.getLocalSocketAddress());
+
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    handle(socket, token, updateCheckResult);
+                } catch (IOException e) {
+                    JObf.log.warning("Lost connection to client: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void handle(Socket socket, byte[] token, String updateCheckResult) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        byte[] clientToken = new byte[TOKEN_LENGTH];
+
+        in.readFully(clientToken);
+
+        if (!MessageDigest.isEqual(token, clientToken)) throw new IOException("The client sent a wrong token");
+
+        File directory = new File(readString(in));
+        String[] args = new String[readLength(in, MAX_ARGS)];
+
+        for (int i = 0; i < args.length; i++) {
+            args[i] = readString(in);
+        }
+
+        boolean verbose = JObf.VERBOSE;
+
+        // The records are filtered by the handler of JObf.main already
+        Consumer<ObfuscationEvent> sink = event -> {
+            if (event.getType() != ObfuscationEvent.Type.LOG) return;
+
+            synchronized (out) {
+                try {
+                    out.writeByte(LOG);
+                    writeString(out, JObf.format(event.getRecord()));
+                    out.flush();
+                } catch (IOException ignored) {
+                    // The client is gone, the job is finished anyway
+                }
+            }
+        };
+
+        int exitCode;
+        // --progress - is printed by the client
+        PrintStream progressOut = new PrintStream(new MessageStream(out, PROGRESS), false, "UTF-8");
+
+        EventBus.INSTANCE.addSink(sink);
+
+        try {
+            // The values mustn't be left over from the previous job
+            ValueManager.resetValues();
+
+            exitCode = JObf.runJob(JObf.createParser().parse(args), directory, updateCheckResult, false, progressOut);
+        } catch (Throwable e) {
+            JObf.log.severe("ERROR: " + e);
+            e.printStackTrace();
+            exitCode = 1;
+        } finally {
+            EventBus.INSTANCE.flush();
+            EventBus.INSTANCE.removeSink(sink);
+            JObf.VERBOSE = verbose;
+        }
+
+        synchronized (out) {
+            out.writeByte(EXIT);
+            out.writeInt(exitCode);
+            out.flush();
+        }
+    }
+
+    /**
+     * Sends the job to the daemon and prints its log
+     *
+     * @return the exit code of the job
+     */
+    public static int submit(int port, String[] args) throws IOException {
+        byte[] token = Files.readAllBytes(getTokenFile(port));
+
+        if (token.length != TOKEN_LENGTH) throw new IOException("Invalid token file " + getTokenFile(port));
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            out.write(token);
+            writeString(out, new File("").getAbsolutePath());
+            out.writeInt(args.length);
+
+            for (String arg : args) {
+                writeString(out, arg);
+            }
+
+            out.flush();
+
+            while (true) {
+                int type = in.read();
+
+                if (type == LOG) {
+                    System.out.println(readString(in));
+                } else if (type == PROGRESS) {
+                    System.out.print(readString(in));
+                    System.out.flush();
+                } else if (type == EXIT) {
+                    return in.readInt();
+                } else {
+                    throw new EOFException("The daemon closed the connection");
+                }
+            }
+        }
+    }
+
+    private static Path getTokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), ".obfuscator", "daemon-" + port + ".token");
+    }
+
+    /**
+     * Writes a new random token to a file which only the owner can read
+     */
+    private static byte[] createToken(int port) throws IOException {
+        byte[] token = new byte[TOKEN_LENGTH];
+
+        new SecureRandom().nextBytes(token);
+
+        Path file = getTokenFile(port);
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+        if (posix) {
+            if (!Files.isDirectory(file.getParent())) {
+                Files.createDirectories(file.getParent(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            }
+
+            // The permissions have to be set before the token is written
+            Files.deleteIfExists(file);
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createDirectories(file.getParent());
+            Files.deleteIfExists(file);
+            Files.createFile(file);
+
+            File f = file.toFile();
+
+            if (!(f.setReadable(false, false) && f.setReadable(true, true) && f.setWritable(false, false) && f.setWritable(true, true))) {
+                throw new IOException("Can't restrict the permissions of " + file);
+            }
+        }
+
+        Files.write(file, token);
+
+        file.toFile().deleteOnExit();
+
+        return token;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readLength(in, MAX_STRING_LENGTH)];
+
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readLength(DataInputStream in, int max) throws IOException {
+        int length = in.readInt();
+
+        if (length < 0 || length > max) throw new IOException("Invalid length: " + length + " (max. " + max + ")");
+
+        return length;
+    }
+
+    /**
+     * Sends everything which was written since the last flush as one message
+     */
+    private static class MessageStream extends ByteArrayOutputStream {
+        private final DataOutputStream out;
+        private final int type;
+
+        MessageStream(DataOutputStream out, int type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (size() == 0) return;
+
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(size());
+                writeTo(out);
+                out.flush();
+            }
+
+            reset();
+        }
+    }
+}
@@ -10,8 +10,26 @@
 
 package me.superblaubeere27.jobf;
 
+import me.superblaubeere27.jobf.utils.ProcessorExclusions;
+
 public class ProcessorCallback {
-    private boolean forceComputeFrames = false;
+    private volatile boolean forceComputeFrames = false;
+    private final ProcessorExclusions exclusions;
+
+    public ProcessorCallback() {
+        this(ProcessorExclusions.EMPTY);
+    }
+
+    public ProcessorCallback(ProcessorExclusions exclusions) {
+        this.exclusions = exclusions;
+    }
+
+    /**
+     * @return the classes and methods which were excluded from certain processors by annotations
+     */
+    public ProcessorExclusions getExclusions() {
+        return exclusions;
+    }
 
     public boolean isForceComputeFrames() {
         return forceComputeFrames;
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf;
+
+import me.superblaubeere27.jobf.utils.ProcessorExclusions;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.*;
+
+/**
+ * Applies the processors to a class. The rewriters of consecutive {@link IRewritingProcessor}s are fused, so every
+ * method is traversed once instead of once per processor. If all enabled processors are {@link IStreamingProcessor}s
+ * the class can be streamed to the writer instead.
+ * <p>
+ * Processors which are excluded from a class by an annotation are skipped, the rewriters of processors which are
+ * excluded from a method don't see the method.
+ * <p>
+ * If a rewriter of a fused batch fails, the methods and fields of the class are restored to their state before the
+ * batch and the exception is rethrown. Otherwise the methods might reference members which {@link ClassRewriter#finish()}
+ * never generated.
+ */
+public class RewritingEngine {
+
+    /**
+     * Applies the processors in their order
+     */
+    public static void process(List<IClassProcessor> processors, ProcessorCallback callback, ClassNode node) {
+        List<ClassRewriter> rewriters = new ArrayList<>();
+        ProcessorExclusions exclusions = callback.getExclusions();
+
+        for (IClassProcessor processor : processors) {
+            if (exclusions.isExcluded(processor, node)) continue;
+
+            if (processor instanceof IRewritingProcessor) {
+                try {
+                    ClassRewriter rewriter = ((IRewritingProcessor) processor).createRewriter(callback, node);
+
+                    if (rewriter != null && exclusions.hasExcludedMethods(processor, node)) {
+                        rewriter = new ExcludingRewriter(rewriter, exclusions, processor, node);
+                    }
+                    if (rewriter != null) rewriters.add(rewriter);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
+
+            flush(node, rewriters);
+
+            try {
+                processor.process(callback, node);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        flush(node, rewriters);
+    }
+
+    /**
+     * @return true if every enabled processor is an {@link IStreamingProcessor}
+     */
+    public static boolean isStreamable(List<IClassProcessor> processors) {
+        for (IClassProcessor processor : processors) {
+            if (processor.isEnabled() && !(processor instanceof IStreamingProcessor)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Applies the processors while the class is passed to the visitor. The tree isn't changed.
+     *
+     * @see #isStreamable(List)
+     */
+    public static void stream(List<IClassProcessor> processors, ProcessorCallback callback, ClassNode node, ClassVisitor writer) {
+        ClassVisitor cv = writer;
+
+        // The first processor has to see the class first
+        for (int i = processors.size() - 1; i >= 0; i--) {
+            IClassProcessor processor = processors.get(i);
+
+            if (processor.isEnabled() && !callback.getExclusions().isExcluded(processor, node)) {
+                cv = ((IStreamingProcessor) processor).createVisitor(callback, cv);
+            }
+        }
+
+        node.accept(cv);
+    }
+
+    private static void flush(ClassNode node, List<ClassRewriter> rewriters) {
+        if (rewriters.isEmpty()) return;
+
+        ClassNode copy = new ClassNode();
+
+        node.accept(copy);
+
+        try {
+            rewrite(node, rewriters);
+        } catch (RuntimeException | Error e) {
+            node.methods = copy.methods;
+            node.fields = copy.fields;
+
+            throw e;
+        } finally {
+            rewriters.clear();
+        }
+    }
+
+    /**
+     * Applies the rewriters to all methods of the class in one traversal
+     */
+    public static void rewrite(ClassNode node, List<ClassRewriter> rewriters) {
+        rewriteMethods(new ArrayList<>(node.methods), rewriters);
+
+        for (int i = 0; i < rewriters.size(); i++) {
+            Set<MethodNode> methods = Collections.newSetFromMap(new IdentityHashMap<>());
+
+            methods.addAll(node.methods);
+
+            rewriters.get(i).finish();
+
+            if (i + 1 == rewriters.size()) break;
+
+            List<MethodNode> added = new ArrayList<>();
+
+            for (MethodNode method : node.methods) {
+                if (!methods.contains(method)) added.add(method);
+            }
+
+            // The following processors would have seen the generated methods
+            if (!added.isEmpty()) rewriteMethods(added, rewriters.subList(i + 1, rewriters.size()));
+        }
+    }
+
+    private static void rewriteMethods(List<MethodNode> methods, List<ClassRewriter> rewriters) {
+        ClassRewriter[] active = new ClassRewriter[rewriters.size()];
+
+        for (MethodNode method : methods) {
+            int count = 0;
+
+            for (ClassRewriter rewriter : rewriters) {
+                if (rewriter.visitMethod(method)) active[count++] = rewriter;
+            }
+
+            if (count == 0) continue;
+
+            AbstractInsnNode insn = method.instructions.getFirst();
+
+            while (insn != null) {
+                AbstractInsnNode next = insn.getNext();
+
+                rewrite(method, insn, active, 0, count);
+
+                insn = next;
+            }
+
+            for (int i = 0; i < count; i++) {
+                active[i].visitMethodEnd(method);
+            }
+        }
+    }
+
+    /**
+     * @return true if the instruction was replaced
+     */
+    private static boolean rewrite(MethodNode method, AbstractInsnNode insn, ClassRewriter[] rewriters, int from, int count) {
+        for (int i = from; i < count; i++) {
+            InsnList replacement = rewriters[i].rewrite(method, insn);
+
+            if (replacement == null) continue;
+
+            AbstractInsnNode first = replacement.getFirst();
+            AbstractInsnNode last = replacement.getLast();
+
+            method.instructions.insert(insn, replacement);
+            method.instructions.remove(insn);
+
+            // The replacement is only visible to the rewriters of the following processors
+            if (first != null && i + 1 < count) {
+                AbstractInsnNode current = first;
+
+                while (true) {
+                    AbstractInsnNode next = current.getNext();
+
+                    rewrite(method, current, rewriters, i + 1, count);
+
+                    if (current == last) break;
+
+                    current = next;
+                }
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Hides the methods which are excluded from the processor of the rewriter
+     */
+    private static class ExcludingRewriter extends ClassRewriter {
+        private final ClassRewriter rewriter;
+        private final ProcessorExclusions exclusions;
+        private final IClassProcessor processor;
+        private final ClassNode node;
+
+        ExcludingRewriter(ClassRewriter rewriter, ProcessorExclusions exclusions, IClassProcessor processor, ClassNode node) {
+            this.rewriter = rewriter;
+            this.exclusions = exclusions;
+            this.processor = processor;
+            this.node = node;
+        }
+
+        @Override
+        public boolean visitMethod(MethodNode method) {
+            return !exclusions.isExcluded(processor, node, method) && rewriter.visitMethod(method);
+        }
+
+        @Override
+        public InsnList rewrite(MethodNode method, AbstractInsnNode insn) {
+            return rewriter.rewrite(method, insn);
+        }
+
+        @Override
+        public void visitMethodEnd(MethodNode method) {
+            rewriter.visitMethodEnd(method);
+        }
+
+        @Override
+        public void finish() {
+            rewriter.finish();
+        }
+    }
+}
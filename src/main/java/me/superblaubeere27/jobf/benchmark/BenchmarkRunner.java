@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.benchmark;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Runs the main method of a workload jar in a fresh JVM and prints its timings.
+ * <p>
+ * Usage: {@code BenchmarkRunner <jar> <main class or -> <warmup> <iterations> [args...]}
+ * <p>
+ * The output line has the format {@code RESULT <startup nanos> <class load nanos> <ops/s>}
+ */
+public class BenchmarkRunner {
+    public static final String RESULT_PREFIX = "RESULT ";
+
+    public static void main(String[] args) throws Throwable {
+        File jar = new File(args[0]);
+        String mainClass = args[1];
+        int warmup = Integer.parseInt(args[2]);
+        int iterations = Integer.parseInt(args[3]);
+        String[] mainArgs = Arrays.copyOfRange(args, 4, args.length);
+
+        if (mainClass.equals("-")) {
+            try (JarFile jarFile = new JarFile(jar)) {
+                Manifest manifest = jarFile.getManifest();
+
+                mainClass = manifest == null ? null : manifest.getMainAttributes().getValue("Main-Class");
+            }
+            if (mainClass == null) throw new IllegalArgumentException(jar + " doesn't specify a Main-Class");
+        }
+
+        PrintStream out = System.out;
+
+        // The output of the workload would distort the timings
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+
+        TimingClassLoader loader = new TimingClassLoader(new URL[]{jar.toURI().toURL()});
+        Thread.currentThread().setContextClassLoader(loader);
+
+        long start = System.nanoTime();
+
+        Method main = Class.forName(mainClass, true, loader).getMethod("main", String[].class);
+
+        main.invoke(null, (Object) mainArgs.clone());
+
+        long startup = System.nanoTime() - start;
+
+        for (int i = 0; i < warmup; i++) {
+            main.invoke(null, (Object) mainArgs.clone());
+        }
+
+        start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            main.invoke(null, (Object) mainArgs.clone());
+        }
+
+        long time = System.nanoTime() - start;
+
+        System.setOut(out);
+        System.out.println(RESULT_PREFIX + startup + " " + loader.classLoadNanos + " " + (iterations * 1_000_000_000.0 / Math.max(1, time)));
+        System.exit(0);
+    }
+
+    /**
+     * Keeps track of the time which is spent on reading and defining the workload's classes
+     */
+    private static class TimingClassLoader extends URLClassLoader {
+        private long classLoadNanos;
+        /**
+         * Defining a class loads its super classes, these mustn't be counted twice
+         */
+        private int depth;
+
+        TimingClassLoader(URL[] urls) {
+            super(urls, ClassLoader.getSystemClassLoader().getParent());
+        }
+
+        @Override
+        protected synchronized Class<?> findClass(String name) throws ClassNotFoundException {
+            long start = System.nanoTime();
+
+            depth++;
+
+            try {
+                return super.findClass(name);
+            } finally {
+                if (--depth == 0) classLoadNanos += System.nanoTime() - start;
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+/**
+ * The size of the parts of a class file. The class file is parsed directly since the sizes of the constant pool and
+ * the attributes aren't visible through ASM's tree API.
+ */
+public class ClassFileStats {
+    private long classes;
+    private long totalBytes;
+    private long compressedBytes;
+    private long constantPoolBytes;
+    private long constantPoolEntries;
+    private long methods;
+    private long codeBytes;
+    private long frameBytes;
+    private long bootstrapBytes;
+    private long debugBytes;
+
+    public ClassFileStats() {
+    }
+
+    public static ClassFileStats parse(byte[] data) throws IOException {
+        ClassFileStats stats = new ClassFileStats();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+        stats.classes = 1;
+        stats.totalBytes = data.length;
+        stats.compressedBytes = getCompressedSize(data);
+
+        if (in.readInt() != 0xCAFEBABE) throw new IOException("Not a class file");
+
+        in.skipBytes(4);
+
+        int constantPoolCount = in.readUnsignedShort();
+        String[] utf8 = new String[constantPoolCount];
+
+        int constantPoolStart = data.length - in.available();
+
+        for (int i = 1; i < constantPoolCount; i++) {
+            int tag = in.readUnsignedByte();
+
+            stats.constantPoolEntries++;
+
+            switch (tag) {
+                case 1:
+                    utf8[i] = in.readUTF();
+                    break;
+                case 3:
+                case 4:
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                case 17:
+                case 18:
+                    in.skipBytes(4);
+                    break;
+                case 5:
+                case 6:
+                    in.skipBytes(8);
+                    // Longs and doubles take two slots
+                    i++;
+                    break;
+                case 7:
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    in.skipBytes(2);
+                    break;
+                case 15:
+                    in.skipBytes(3);
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        stats.constantPoolBytes = data.length - in.available() - constantPoolStart;
+
+        // Access flags, this class, super class
+        in.skipBytes(6);
+        in.skipBytes(in.readUnsignedShort() * 2);
+
+        for (int member = 0; member < 2; member++) {
+            int count = in.readUnsignedShort();
+
+            if (member == 1) stats.methods = count;
+
+            for (int i = 0; i < count; i++) {
+                // Access flags, name, descriptor
+                in.skipBytes(6);
+                stats.readAttributes(in, utf8);
+            }
+        }
+
+        stats.readAttributes(in, utf8);
+
+        return stats;
+    }
+
+    private static long getCompressedSize(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] buffer = new byte[4096];
+        long size = 0;
+
+        deflater.setInput(data);
+        deflater.finish();
+
+        while (!deflater.finished()) {
+            size += deflater.deflate(buffer);
+        }
+
+        deflater.end();
+
+        return size;
+    }
+
+    private void readAttributes(DataInputStream in, String[] utf8) throws IOException {
+        int count = in.readUnsignedShort();
+
+        for (int i = 0; i < count; i++) {
+            String name = utf8[in.readUnsignedShort()];
+            int length = in.readInt();
+
+            if (name == null) name = "";
+
+            switch (name) {
+                case "Code": {
+                    // max_stack, max_locals
+                    in.skipBytes(4);
+
+                    int codeLength = in.readInt();
+
+                    codeBytes += codeLength;
+                    in.skipBytes(codeLength);
+                    in.skipBytes(in.readUnsignedShort() * 8);
+
+                    readAttributes(in, utf8);
+                    continue;
+                }
+                case "StackMapTable":
+                    frameBytes += 6 + length;
+                    break;
+                case "BootstrapMethods":
+                    bootstrapBytes += 6 + length;
+                    break;
+                case "LineNumberTable":
+                case "LocalVariableTable":
+                case "LocalVariableTypeTable":
+                case "SourceFile":
+                case "SourceDebugExtension":
+                    debugBytes += 6 + length;
+                    break;
+            }
+
+            in.skipBytes(length);
+        }
+    }
+
+    public void add(ClassFileStats stats) {
+        classes += stats.classes;
+        totalBytes += stats.totalBytes;
+        compressedBytes += stats.compressedBytes;
+        constantPoolBytes += stats.constantPoolBytes;
+        constantPoolEntries += stats.constantPoolEntries;
+        methods += stats.methods;
+        codeBytes += stats.codeBytes;
+        frameBytes += stats.frameBytes;
+        bootstrapBytes += stats.bootstrapBytes;
+        debugBytes += stats.debugBytes;
+    }
+
+    public long getClasses() {
+        return classes;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the size of the class in a jar (deflated), which is what is downloaded
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    public long getConstantPoolBytes() {
+        return constantPoolBytes;
+    }
+
+    public long getConstantPoolEntries() {
+        return constantPoolEntries;
+    }
+
+    public long getMethods() {
+        return methods;
+    }
+
+    /**
+     * @return the size of the bytecode of the methods (without exception tables and the attributes of the code)
+     */
+    public long getCodeBytes() {
+        return codeBytes;
+    }
+
+    public long getFrameBytes() {
+        return frameBytes;
+    }
+
+    public long getBootstrapBytes() {
+        return bootstrapBytes;
+    }
+
+    public long getDebugBytes() {
+        return debugBytes;
+    }
+
+    /**
+     * @return the size of everything else (headers, fields, method declarations and other attributes)
+     */
+    public long getOtherBytes() {
+        return totalBytes - constantPoolBytes - codeBytes - frameBytes - bootstrapBytes - debugBytes;
+    }
+
+    /**
+     * The JVM parses and resolves every constant pool entry and verifies every byte of code when a class is loaded,
+     * so these dominate the class load time.
+     *
+     * @return an estimation of the work which is needed to load the class
+     */
+    public long getLoadCost() {
+        return constantPoolEntries * 8 + codeBytes + frameBytes;
+    }
+}
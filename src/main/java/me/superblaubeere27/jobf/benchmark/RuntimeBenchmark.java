@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import me.superblaubeere27.jobf.JObf;
+import me.superblaubeere27.jobf.JObfImpl;
+import me.superblaubeere27.jobf.processors.packager.Packager;
+import me.superblaubeere27.jobf.utils.values.ConfigManager;
+import me.superblaubeere27.jobf.utils.values.Configuration;
+import me.superblaubeere27.jobf.utils.values.EnabledValue;
+import me.superblaubeere27.jobf.utils.values.Value;
+import me.superblaubeere27.jobf.utils.values.ValueManager;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Measures the runtime overhead of every processor: The workload jar is obfuscated once per enabled processor
+ * and once with the whole configuration. Every variant is run in fresh JVMs next to the original jar. The transforms
+ * outside of the processor list (inlining, name obfuscation, shrinker, packager) are variants of their own and are
+ * disabled in the other variants.
+ * <p>
+ * Plain workloads are executed by invoking their main method repeatedly (see {@link BenchmarkRunner}), JMH jars
+ * (containing {@code META-INF/BenchmarkList}) are run with JMH's own runner.
+ */
+public class RuntimeBenchmark {
+    /**
+     * Owners of the enabled values which don't transform the classes themselves
+     */
+    private static final Set<String> GUARDS = new HashSet<>(Arrays.asList("HugeMethodGuard", "ProfileGuided"));
+    private final File jarIn;
+    private final String config;
+    private final List<String> libraries;
+    private final String mainClass;
+    private final List<String> args;
+    private final int warmup;
+    private final int iterations;
+    private final int forks;
+    private final String jvm;
+    private final File workDir;
+
+    private RuntimeBenchmark(File jarIn, String config, List<String> libraries, String mainClass, List<String> args, int warmup, int iterations, int forks, String jvm) throws IOException {
+        this.jarIn = jarIn;
+        this.config = config;
+        this.libraries = libraries;
+        this.mainClass = mainClass;
+        this.args = args;
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.forks = forks;
+        this.jvm = jvm;
+        this.workDir = Files.createTempDirectory("obfuscator-benchmark").toFile();
+    }
+
+    public static void main(String[] args) throws Exception {
+        OptionParser parser = new OptionParser();
+        parser.accepts("jarIn").withRequiredArg().required().ofType(File.class);
+        parser.accepts("config").withRequiredArg().required().ofType(File.class).describedAs("The configuration which is used in production");
+        parser.accepts("cp").withRequiredArg().describedAs("ClassPath").ofType(File.class);
+        parser.accepts("mainClass").withRequiredArg().describedAs("Defaults to the Main-Class of the manifest");
+        parser.accepts("arg").withRequiredArg().describedAs("Argument which is passed to the main method");
+        parser.accepts("warmup").withRequiredArg().ofType(Integer.class).defaultsTo(5);
+        parser.accepts("iterations").withRequiredArg().ofType(Integer.class).defaultsTo(20);
+        parser.accepts("forks").withRequiredArg().ofType(Integer.class).defaultsTo(3);
+        parser.accepts("jvm").withRequiredArg().defaultsTo(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        parser.accepts("report").withRequiredArg().ofType(File.class).describedAs("Writes the results to a file");
+        parser.accepts("help").forHelp();
+
+        OptionSet options;
+
+        try {
+            options = parser.parse(args);
+        } catch (OptionException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            parser.printHelpOn(System.err);
+            return;
+        }
+
+        if (options.has("help")) {
+            parser.printHelpOn(System.out);
+            return;
+        }
+
+        List<String> libraries = new ArrayList<>();
+
+        for (Object cp : options.valuesOf("cp")) {
+            libraries.add(cp.toString());
+        }
+
+        List<String> mainArgs = new ArrayList<>();
+
+        for (Object arg : options.valuesOf("arg")) {
+            mainArgs.add(arg.toString());
+        }
+
+        RuntimeBenchmark benchmark = new RuntimeBenchmark(
+                (File) options.valueOf("jarIn"),
+                new String(Files.readAllBytes(((File) options.valueOf("config")).toPath()), StandardCharsets.UTF_8),
+                libraries,
+                (String) options.valueOf("mainClass"),
+                mainArgs,
+                (Integer) options.valueOf("warmup"),
+                (Integer) options.valueOf("iterations"),
+                (Integer) options.valueOf("forks"),
+                (String) options.valueOf("jvm")
+        );
+
+        List<String> report = benchmark.run();
+
+        for (String line : report) {
+            System.out.println(line);
+        }
+
+        if (options.has("report")) {
+            Files.write(((File) options.valueOf("report")).toPath(), report, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return the enabled values of everything which transforms the classes: the processors, the inliner, the name
+     * obfuscation, the shrinker and the packager. The guards only change how the others transform, they aren't listed.
+     */
+    static List<EnabledValue> getTransforms() {
+        // Registers the values of the packager
+        Packager.INSTANCE.isEnabled();
+
+        List<EnabledValue> transforms = new ArrayList<>();
+        Set<Value<?>> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (Value<?> value : ValueManager.getValues()) {
+            if (value instanceof EnabledValue && !GUARDS.contains(value.getOwner()) && visited.add(value)) {
+                transforms.add((EnabledValue) value);
+            }
+        }
+
+        return transforms;
+    }
+
+    /**
+     * @return the owners of the transforms which are enabled by the loaded config
+     */
+    static Set<String> getEnabledTransforms() {
+        Set<String> enabled = new LinkedHashSet<>();
+
+        for (EnabledValue value : getTransforms()) {
+            if (value.getObject()) enabled.add(value.getOwner());
+        }
+
+        return enabled;
+    }
+
+    /**
+     * Disables every transform except the given one
+     */
+    static void enableOnly(String owner) {
+        for (EnabledValue value : getTransforms()) {
+            value.setObject(value.getOwner().equals(owner));
+        }
+    }
+
+    private static double median(List<Double> values) {
+        if (values.isEmpty()) return Double.NaN;
+
+        List<Double> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private static String delta(double value, double original) {
+        if (Double.isNaN(value) || Double.isNaN(original) || original == 0) return "n/a";
+
+        return String.format("%+.1f%%", (value - original) * 100.0 / original);
+    }
+
+    public List<String> run() throws Exception {
+        // Registers the values of the processors
+        Class.forName(JObfImpl.class.getCanonicalName());
+
+        JObf.log.setLevel(Level.WARNING);
+
+        boolean jmh = isJmhJar(jarIn);
+        Configuration configuration = ConfigManager.loadConfig(config);
+
+        Result original = measure("original", jarIn, jmh, null);
+
+        List<Result> results = new ArrayList<>();
+
+        for (String transform : getEnabledTransforms()) {
+            // Resets the values which were changed by the previous variant
+            ConfigManager.loadConfig(config);
+            enableOnly(transform);
+
+            results.add(measure(transform, obfuscate(transform, configuration), jmh, original));
+        }
+
+        ConfigManager.loadConfig(config);
+        results.add(measure("full config", obfuscate("full", configuration), jmh, original));
+
+        List<String> report = new ArrayList<>();
+
+        report.add(String.format("%-20s %12s %12s %12s %12s", "Variant", "Code size", "Startup", "Class load", "Throughput"));
+        report.add(String.format("%-20s %12s %12s %12s %12s", original.name, original.codeSize + "B",
+                String.format("%.1fms", original.startup / 1e6), String.format("%.1fms", original.classLoad / 1e6),
+                jmh ? "1.00x" : String.format("%.1f ops/s", original.throughput)));
+
+        for (Result result : results) {
+            report.add(String.format("%-20s %12s %12s %12s %12s", result.name, delta(result.codeSize, original.codeSize),
+                    delta(result.startup, original.startup), delta(result.classLoad, original.classLoad),
+                    jmh ? String.format("%.2fx", result.throughput) : delta(result.throughput, original.throughput)));
+        }
+
+        return report;
+    }
+
+    private File obfuscate(String name, Configuration configuration) throws IOException {
+        File output = new File(workDir, name.replaceAll("[^A-Za-z0-9]", "_") + ".jar");
+
+        List<String> libs = new ArrayList<>(configuration.getLibraries());
+        libs.addAll(libraries);
+
+        System.out.println("Obfuscating " + name + "...");
+
+        JObfImpl.INSTANCE.processJar(new Configuration(jarIn.getAbsolutePath(), output.getAbsolutePath(), configuration.getScript(), libs));
+
+        return output;
+    }
+
+    private Result measure(String name, File jar, boolean jmh, Result original) throws IOException, InterruptedException {
+        System.out.println("Running " + name + "...");
+
+        Result result = new Result(name);
+
+        result.codeSize = getCodeSize(jar);
+
+        List<Double> startup = new ArrayList<>();
+        List<Double> classLoad = new ArrayList<>();
+        List<Double> throughput = new ArrayList<>();
+
+        if (jmh) {
+            Map<String, Double> scores = runJmh(jar);
+
+            result.jmhScores = scores;
+            result.throughput = original == null ? 1.0 : compareJmhScores(scores, original.jmhScores);
+            result.startup = Double.NaN;
+            result.classLoad = Double.NaN;
+
+            return result;
+        }
+
+        for (int i = 0; i < forks; i++) {
+            List<String> command = new ArrayList<>(Arrays.asList(jvm, "-cp", getRunnerClassPath(), BenchmarkRunner.class.getName(),
+                    jar.getAbsolutePath(), mainClass == null ? "-" : mainClass, Integer.toString(warmup), Integer.toString(iterations)));
+            command.addAll(args);
+
+            for (String line : execute(command)) {
+                if (!line.startsWith(BenchmarkRunner.RESULT_PREFIX)) continue;
+
+                String[] split = line.substring(BenchmarkRunner.RESULT_PREFIX.length()).split(" ");
+
+                startup.add(Double.parseDouble(split[0]));
+                classLoad.add(Double.parseDouble(split[1]));
+                throughput.add(Double.parseDouble(split[2]));
+            }
+        }
+
+        if (throughput.isEmpty()) {
+            JObf.log.severe(name + " didn't produce any results");
+        }
+
+        result.startup = median(startup);
+        result.classLoad = median(classLoad);
+        result.throughput = median(throughput);
+
+        return result;
+    }
+
+    /**
+     * @return the geometric mean of the relative performance of every benchmark (higher is better)
+     */
+    private double compareJmhScores(Map<String, Double> scores, Map<String, Double> original) {
+        double logSum = 0;
+        int count = 0;
+
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            Double originalScore = original.get(entry.getKey());
+
+            if (originalScore == null || originalScore == 0 || entry.getValue() == 0) continue;
+
+            logSum += Math.log(entry.getValue() / originalScore);
+            count++;
+        }
+
+        return count == 0 ? Double.NaN : Math.exp(logSum / count);
+    }
+
+    /**
+     * Runs the JMH benchmarks of a jar
+     *
+     * @return benchmark name -> score, normalized so that higher scores are better
+     */
+    private Map<String, Double> runJmh(File jar) throws IOException, InterruptedException {
+        File resultFile = new File(workDir, jar.getName() + ".json");
+        List<String> command = new ArrayList<>(Arrays.asList(jvm, "-jar", jar.getAbsolutePath(),
+                "-f", Integer.toString(forks), "-wi", Integer.toString(warmup), "-i", Integer.toString(iterations),
+                "-rf", "json", "-rff", resultFile.getAbsolutePath()));
+        command.addAll(args);
+
+        execute(command);
+
+        Map<String, Double> scores = new HashMap<>();
+
+        if (!resultFile.exists()) {
+            JObf.log.severe("JMH didn't write any results for " + jar.getName());
+            return scores;
+        }
+
+        JsonArray benchmarks = new JsonParser().parse(new String(Files.readAllBytes(resultFile.toPath()), StandardCharsets.UTF_8)).getAsJsonArray();
+
+        for (JsonElement element : benchmarks) {
+            JsonObject benchmark = element.getAsJsonObject();
+            double score = benchmark.getAsJsonObject("primaryMetric").get("score").getAsDouble();
+
+            // Only throughput scores get better when they grow
+            if (!benchmark.get("mode").getAsString().equals("thrpt")) score = 1.0 / score;
+
+            scores.put(benchmark.get("benchmark").getAsString() + benchmark.get("params"), score);
+        }
+
+        return scores;
+    }
+
+    private List<String> execute(List<String> command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> lines = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+                JObf.log.log(Level.FINE, line);
+            }
+        }
+
+        int exitCode = process.waitFor();
+
+        if (exitCode != 0) {
+            JObf.log.severe(String.join(" ", command) + " exited with " + exitCode);
+            lines.forEach(JObf.log::severe);
+        }
+
+        return lines;
+    }
+
+    private static boolean isJmhJar(File jar) throws IOException {
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            return zipFile.getEntry("META-INF/BenchmarkList") != null;
+        }
+    }
+
+    /**
+     * @return the uncompressed size of all classes in the jar
+     */
+    private static long getCodeSize(File jar) throws IOException {
+        long size = 0;
+
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+
+                if (entry.getName().endsWith(".class")) size += entry.getSize();
+            }
+        }
+        return size;
+    }
+
+    private static String getRunnerClassPath() {
+        try {
+            return new File(BenchmarkRunner.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+        } catch (Exception e) {
+            return System.getProperty("java.class.path");
+        }
+    }
+
+    private static class Result {
+        private final String name;
+        private long codeSize;
+        private double startup;
+        private double classLoad;
+        private double throughput;
+        private Map<String, Double> jmhScores;
+
+        private Result(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.benchmark;
+
+import com.google.common.io.ByteStreams;
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import me.superblaubeere27.jobf.JObf;
+import me.superblaubeere27.jobf.JObfImpl;
+import me.superblaubeere27.jobf.utils.values.ConfigManager;
+import me.superblaubeere27.jobf.utils.values.Configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Shows where the output grows: The jar is obfuscated once per enabled processor and once with the whole
+ * configuration. The class files of every variant are compared to the input (constant pool, bytecode, frames,
+ * bootstrap methods, debug attributes) per processor and per class. The transforms outside of the processor list
+ * (inlining, name obfuscation, shrinker, packager) are variants of their own, see {@link RuntimeBenchmark}.
+ * <p>
+ * Classes are matched by their name, so classes which are renamed by the name obfuscation show up as added.
+ */
+public class SizeAnalyzer {
+    private static final String ROW_FORMAT = "%-28s %8s %10s %10s %10s %10s %10s %10s %10s %10s %10s";
+    private final File jarIn;
+    private final String config;
+    private final List<String> libraries;
+    private final int top;
+    private final File workDir;
+
+    private SizeAnalyzer(File jarIn, String config, List<String> libraries, int top) throws IOException {
+        this.jarIn = jarIn;
+        this.config = config;
+        this.libraries = libraries;
+        this.top = top;
+        this.workDir = Files.createTempDirectory("obfuscator-size").toFile();
+    }
+
+    public static void main(String[] args) throws Exception {
+        OptionParser parser = new OptionParser();
+        parser.accepts("jarIn").withRequiredArg().required().ofType(File.class);
+        parser.accepts("config").withRequiredArg().required().ofType(File.class);
+        parser.accepts("cp").withRequiredArg().describedAs("ClassPath").ofType(File.class);
+        parser.accepts("top").withRequiredArg().ofType(Integer.class).defaultsTo(10).describedAs("Number of classes which are listed as top contributors");
+        parser.accepts("report").withRequiredArg().ofType(File.class).describedAs("Writes the results to a file");
+        parser.accepts("help").forHelp();
+
+        OptionSet options;
+
+        try {
+            options = parser.parse(args);
+        } catch (OptionException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            parser.printHelpOn(System.err);
+            return;
+        }
+
+        if (options.has("help")) {
+            parser.printHelpOn(System.out);
+            return;
+        }
+
+        List<String> libraries = new ArrayList<>();
+
+        for (Object cp : options.valuesOf("cp")) {
+            libraries.add(cp.toString());
+        }
+
+        SizeAnalyzer analyzer = new SizeAnalyzer(
+                (File) options.valueOf("jarIn"),
+                new String(Files.readAllBytes(((File) options.valueOf("config")).toPath()), StandardCharsets.UTF_8),
+                libraries,
+                (Integer) options.valueOf("top")
+        );
+
+        List<String> report = analyzer.run();
+
+        for (String line : report) {
+            System.out.println(line);
+        }
+
+        if (options.has("report")) {
+            Files.write(((File) options.valueOf("report")).toPath(), report, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return entry name -> stats of every class in the jar
+     */
+    static Map<String, ClassFileStats> readClasses(File jar) throws IOException {
+        Map<String, ClassFileStats> stats = new TreeMap<>();
+
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+
+                if (!entry.getName().endsWith(".class")) continue;
+
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    stats.put(entry.getName(), ClassFileStats.parse(ByteStreams.toByteArray(in)));
+                } catch (IOException e) {
+                    JObf.log.warning("Failed to parse " + entry.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+
+        return stats;
+    }
+
+    private static ClassFileStats sum(Collection<ClassFileStats> stats) {
+        ClassFileStats sum = new ClassFileStats();
+
+        stats.forEach(sum::add);
+
+        return sum;
+    }
+
+    private static String delta(long value, long original) {
+        return String.format("%+d", value - original);
+    }
+
+    private static String row(String name, ClassFileStats stats, ClassFileStats original) {
+        if (original == null) original = new ClassFileStats();
+
+        return String.format(ROW_FORMAT, name,
+                delta(stats.getClasses(), original.getClasses()),
+                delta(stats.getTotalBytes(), original.getTotalBytes()),
+                delta(stats.getCompressedBytes(), original.getCompressedBytes()),
+                delta(stats.getConstantPoolEntries(), original.getConstantPoolEntries()),
+                delta(stats.getConstantPoolBytes(), original.getConstantPoolBytes()),
+                delta(stats.getCodeBytes(), original.getCodeBytes()),
+                delta(stats.getFrameBytes(), original.getFrameBytes()),
+                delta(stats.getBootstrapBytes(), original.getBootstrapBytes()),
+                delta(stats.getDebugBytes(), original.getDebugBytes()),
+                delta(stats.getOtherBytes(), original.getOtherBytes()));
+    }
+
+    private static String header(String name) {
+        return String.format(ROW_FORMAT, name, "Classes", "Size", "Jar size", "CP entries", "CP", "Code", "Frames", "Bootstrap", "Debug", "Other");
+    }
+
+    public List<String> run() throws Exception {
+        // Registers the values of the processors
+        Class.forName(JObfImpl.class.getCanonicalName());
+
+        JObf.log.setLevel(Level.WARNING);
+
+        Configuration configuration = ConfigManager.loadConfig(config);
+
+        Map<String, ClassFileStats> original = readClasses(jarIn);
+        ClassFileStats originalSum = sum(original.values());
+
+        Map<String, ClassFileStats> variants = new LinkedHashMap<>();
+        Map<String, Map<String, ClassFileStats>> variantClasses = new LinkedHashMap<>();
+
+        for (String transform : RuntimeBenchmark.getEnabledTransforms()) {
+            // Resets the values which were changed by the previous variant
+            ConfigManager.loadConfig(config);
+            RuntimeBenchmark.enableOnly(transform);
+
+            Map<String, ClassFileStats> classes = readClasses(obfuscate(transform, configuration));
+
+            variants.put(transform, sum(classes.values()));
+            variantClasses.put(transform, classes);
+        }
+
+        ConfigManager.loadConfig(config);
+
+        Map<String, ClassFileStats> full = readClasses(obfuscate("full", configuration));
+
+        List<String> report = new ArrayList<>();
+
+        report.add("Input: " + originalSum.getClasses() + " classes, " + originalSum.getTotalBytes() + "B (" + originalSum.getCompressedBytes() + "B compressed), "
+                + originalSum.getConstantPoolEntries() + " constant pool entries");
+        report.add("");
+        report.add(header("Processor"));
+
+        for (Map.Entry<String, ClassFileStats> entry : variants.entrySet()) {
+            report.add(row(entry.getKey(), entry.getValue(), originalSum));
+        }
+
+        report.add(row("full config", sum(full.values()), originalSum));
+
+        if (!variants.isEmpty()) {
+            report.add("");
+            report.add("Top contributors to the download size: " + rank(variants, originalSum, ClassFileStats::getCompressedBytes));
+            report.add("Top contributors to the class load time: " + rank(variants, originalSum, ClassFileStats::getLoadCost));
+        }
+
+        for (Map.Entry<String, Map<String, ClassFileStats>> entry : variantClasses.entrySet()) {
+            addClassRows(report, entry.getKey(), original, entry.getValue());
+        }
+
+        addClassRows(report, "full config", original, full);
+
+        return report;
+    }
+
+    /**
+     * Adds the classes of the variant which grew the most
+     */
+    private void addClassRows(List<String> report, String variant, Map<String, ClassFileStats> original, Map<String, ClassFileStats> stats) {
+        List<String> classes = new ArrayList<>(original.keySet());
+
+        for (String name : stats.keySet()) {
+            if (!original.containsKey(name)) classes.add(name);
+        }
+
+        classes.sort(Comparator.comparingLong((String name) -> getGrowth(original.get(name), stats.get(name), ClassFileStats::getCompressedBytes)).reversed());
+
+        report.add("");
+        report.add(header("Class (" + variant + ")"));
+
+        for (String name : classes.subList(0, Math.min(top, classes.size()))) {
+            ClassFileStats classStats = stats.get(name);
+            String label = name.substring(0, name.length() - ".class".length());
+
+            if (classStats == null) {
+                report.add(String.format("%-28s removed or renamed", label));
+            } else {
+                report.add(row(label + (original.containsKey(name) ? "" : " (added)"), classStats, original.get(name)));
+            }
+        }
+    }
+
+    private static long getGrowth(ClassFileStats original, ClassFileStats stats, ToLongFunction<ClassFileStats> metric) {
+        return (stats == null ? 0 : metric.applyAsLong(stats)) - (original == null ? 0 : metric.applyAsLong(original));
+    }
+
+    /**
+     * @return the processors which grew the metric, largest growth first
+     */
+    private static String rank(Map<String, ClassFileStats> variants, ClassFileStats original, ToLongFunction<ClassFileStats> metric) {
+        List<Map.Entry<String, ClassFileStats>> entries = new ArrayList<>(variants.entrySet());
+
+        entries.sort(Comparator.comparingLong((Map.Entry<String, ClassFileStats> entry) -> getGrowth(original, entry.getValue(), metric)).reversed());
+
+        StringJoiner joiner = new StringJoiner(", ");
+
+        for (Map.Entry<String, ClassFileStats> entry : entries) {
+            long growth = getGrowth(original, entry.getValue(), metric);
+
+            if (growth <= 0) break;
+
+            joiner.add(String.format("%s (%+.1f%%)", entry.getKey(), growth * 100.0 / Math.max(1, metric.applyAsLong(original))));
+        }
+
+        return joiner.length() == 0 ? "none" : joiner.toString();
+    }
+
+    private File obfuscate(String name, Configuration configuration) throws IOException {
+        File output = new File(workDir, name.replaceAll("[^A-Za-z0-9]", "_") + ".jar");
+
+        List<String> libs = new ArrayList<>(configuration.getLibraries());
+        libs.addAll(libraries);
+
+        System.out.println("Obfuscating " + name + "...");
+
+        JObfImpl.INSTANCE.processJar(new Configuration(jarIn.getAbsolutePath(), output.getAbsolutePath(), configuration.getScript(), libs));
+
+        return output;
+    }
+}
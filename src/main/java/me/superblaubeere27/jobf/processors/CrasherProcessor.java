@@ -10,17 +10,19 @@
 
 package me.superblaubeere27.jobf.processors;
 
-import me.superblaubeere27.jobf.IClassProcessor;
+import me.superblaubeere27.jobf.IStreamingProcessor;
 import me.superblaubeere27.jobf.JObfImpl;
 import me.superblaubeere27.jobf.ProcessorCallback;
 import me.superblaubeere27.jobf.utils.NameUtils;
 import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
 import me.superblaubeere27.jobf.utils.values.EnabledValue;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 
 import java.lang.reflect.Modifier;
 
-public class CrasherProcessor implements IClassProcessor {
+public class CrasherProcessor implements IStreamingProcessor {
     private EnabledValue enabled = new EnabledValue("Crasher", DeprecationLevel.GOOD, false);
     private JObfImpl inst;
 
@@ -43,5 +45,30 @@ public class CrasherProcessor implements IClassProcessor {
         inst.setWorkDone();
     }
 
+    @Override
+    public ClassVisitor createVisitor(ProcessorCallback callback, ClassVisitor cv) {
+        if (!enabled.getObject()) return cv;
+
+        return new ClassVisitor(Opcodes.ASM7, cv) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                if (!Modifier.isInterface(access)) {
+                    if (signature == null) {
+                        signature = NameUtils.crazyString(10);
+                    }
+
+                    inst.setWorkDone();
+                }
+
+                super.visit(version, access, name, signature, superName, interfaces);
+            }
+        };
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled.getObject();
+    }
+
 
 }
\ No newline at end of file
@@ -14,8 +14,10 @@ import me.superblaubeere27.hwid.HWID;
 import me.superblaubeere27.jobf.IClassProcessor;
 import me.superblaubeere27.jobf.JObfImpl;
 import me.superblaubeere27.jobf.ProcessorCallback;
+import me.superblaubeere27.jobf.utils.BuildRandom;
 import me.superblaubeere27.jobf.utils.NameUtils;
 import me.superblaubeere27.jobf.utils.NodeUtils;
+import me.superblaubeere27.jobf.utils.values.BooleanValue;
 import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
 import me.superblaubeere27.jobf.utils.values.EnabledValue;
 import me.superblaubeere27.jobf.utils.values.StringValue;
@@ -25,14 +27,21 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.Random;
 
 public class HWIDProtection implements IClassProcessor {
     private static final String PROCESSOR_NAME = "HWIDPRotection";
-    private static Random random = new Random();
+    private static Random random = BuildRandom.INSTANCE;
     private JObfImpl inst;
     private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, DeprecationLevel.GOOD, false);
     private StringValue hwidValue = new StringValue(PROCESSOR_NAME, "HWID", DeprecationLevel.GOOD, HWID.bytesToHex(HWID.generateHWID()));
+    private BooleanValue sharedCheck = new BooleanValue(PROCESSOR_NAME, "Shared Check", "Computes the HWID once in a generated class, the class initializers only compare its result", DeprecationLevel.GOOD, false);
+    /**
+     * The class which checks the HWID if the check is shared, null otherwise
+     */
+    private String holderName;
+    private String tokenName;
 
     public HWIDProtection(JObfImpl inst) {
         this.inst = inst;
@@ -153,6 +162,61 @@ public class HWIDProtection implements IClassProcessor {
         return name;
     }
 
+    /**
+     * Generates the class which checks the HWID if the check is shared. Has to be called before the classes are
+     * processed.
+     * <p>
+     * The holder compares the HWID once and stores the hash code of the HWID in a field. The class initializers only
+     * compare this field (xored with a different key in every class), so removing the check of the holder still
+     * fails on a different machine.
+     */
+    public void init(JObfImpl inst) {
+        holderName = null;
+
+        if (!enabled.getObject() || !sharedCheck.getObject()) return;
+
+        byte[] hwid = HWID.hexStringToByteArray(hwidValue.getObject());
+
+        ClassNode holder = new ClassNode();
+        String name;
+
+        // Classes in the default package might have the same names if the classes weren't renamed
+        do {
+            name = NameUtils.generateClassName();
+        } while (JObfImpl.classes.containsKey(name + ".class"));
+
+        holder.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+
+        tokenName = NameUtils.generateFieldName(holder.name);
+
+        holder.fields.add(new FieldNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, tokenName, "I", null, null));
+
+        String generator = addHWIDGenerator(holder);
+
+        MethodNode clInit = new MethodNode(Opcodes.ACC_STATIC, "<clinit>", "()V", null, new String[0]);
+        LabelNode valid = new LabelNode();
+
+        clInit.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, holder.name, generator, "()[B", false));
+        clInit.instructions.add(new VarInsnNode(Opcodes.ASTORE, 0));
+        clInit.instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
+        clInit.instructions.add(createByteArray(hwid));
+        clInit.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/util/Arrays", "equals", "([B[B)Z", false));
+        clInit.instructions.add(new JumpInsnNode(Opcodes.IFNE, valid));
+        clInit.instructions.add(createFailure(holder.name));
+        clInit.instructions.add(valid);
+        clInit.instructions.add(new FrameNode(Opcodes.F_APPEND, 1, new Object[]{"[B"}, 0, null));
+        clInit.instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
+        clInit.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/util/Arrays", "hashCode", "([B)I", false));
+        clInit.instructions.add(new FieldInsnNode(Opcodes.PUTSTATIC, holder.name, tokenName, "I"));
+        clInit.instructions.add(new InsnNode(Opcodes.RETURN));
+
+        holder.methods.add(clInit);
+
+        inst.addGeneratedClass(holder);
+
+        holderName = holder.name;
+    }
+
     @Override
     public void process(ProcessorCallback callback, ClassNode node) {
         if (!enabled.getObject()) return;
@@ -162,36 +226,79 @@ public class HWIDProtection implements IClassProcessor {
         if (Modifier.isInterface(node.access)) {
             return;
         }
-
-        String methodName = addHWIDGenerator(node);
+        if (node.name.equals(holderName)) return;
 
         LabelNode l1 = new LabelNode();
-        LabelNode l2 = new LabelNode();
 
         InsnList toAdd = new InsnList();
 
-        toAdd.add(new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, methodName, "()[B", false));
+        if (holderName != null) {
+            int key = random.nextInt();
 
-        toAdd.add(NodeUtils.generateIntPush(hwid.length));
-        toAdd.add(new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_BYTE));
-        toAdd.add(new InsnNode(Opcodes.DUP));
+            // Loading the field initializes the holder which checks the HWID only once
+            toAdd.add(new FieldInsnNode(Opcodes.GETSTATIC, holderName, tokenName, "I"));
+            toAdd.add(NodeUtils.generateIntPush(key));
+            toAdd.add(new InsnNode(Opcodes.IXOR));
+            toAdd.add(NodeUtils.generateIntPush(Arrays.hashCode(hwid) ^ key));
+            toAdd.add(new JumpInsnNode(Opcodes.IF_ICMPEQ, l1));
+        } else {
+            String methodName = addHWIDGenerator(node);
+
+            toAdd.add(new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, methodName, "()[B", false));
+            toAdd.add(createByteArray(hwid));
+            toAdd.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/util/Arrays", "equals", "([B[B)Z", false));
+            toAdd.add(new JumpInsnNode(Opcodes.IFNE, l1));
+        }
+
+        toAdd.add(createFailure(node.name));
+
+        toAdd.add(l1);
+        toAdd.add(new FrameNode(Opcodes.F_SAME, 0, null, 0, null));
 
-        for (int i = 0; i < hwid.length; i++) {
-            toAdd.add(NodeUtils.generateIntPush(i));
-            toAdd.add(NodeUtils.generateIntPush(hwid[i]));
-            toAdd.add(new InsnNode(Opcodes.BASTORE));
+        MethodNode clInit = NodeUtils.getMethod(node, "<clinit>");
+        if (clInit == null) {
+            clInit = new MethodNode(Opcodes.ACC_STATIC, "<clinit>", "()V", null, new String[0]);
+            node.methods.add(clInit);
+        }
 
-            if (i != hwid.length - 1) {
-                toAdd.add(new InsnNode(Opcodes.DUP));
+        if (clInit.instructions == null || clInit.instructions.getFirst() == null) {
+            clInit.instructions = toAdd;
+            clInit.instructions.add(new InsnNode(Opcodes.RETURN));
+        } else {
+            clInit.instructions.insertBefore(clInit.instructions.getFirst(), toAdd);
+        }
+        inst.setWorkDone();
+    }
+
+    private static InsnList createByteArray(byte[] bytes) {
+        InsnList list = new InsnList();
+
+        list.add(NodeUtils.generateIntPush(bytes.length));
+        list.add(new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_BYTE));
+        list.add(new InsnNode(Opcodes.DUP));
+
+        for (int i = 0; i < bytes.length; i++) {
+            list.add(NodeUtils.generateIntPush(i));
+            list.add(NodeUtils.generateIntPush(bytes[i]));
+            list.add(new InsnNode(Opcodes.BASTORE));
+
+            if (i != bytes.length - 1) {
+                list.add(new InsnNode(Opcodes.DUP));
             }
         }
 
-        toAdd.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/util/Arrays", "equals", "([B[B)Z", false));
+        return list;
+    }
+
+    /**
+     * Shows a message and exits, the stack is empty afterwards
+     */
+    private static InsnList createFailure(String className) {
+        InsnList toAdd = new InsnList();
 
-        toAdd.add(new JumpInsnNode(Opcodes.IFNE, l1));
-        toAdd.add(l2);
+        toAdd.add(new LabelNode());
         toAdd.add(new InsnNode(Opcodes.ACONST_NULL));
-        toAdd.add(new LdcInsnNode("Invalid HWID (" + node.name + ")"));
+        toAdd.add(new LdcInsnNode("Invalid HWID (" + className + ")"));
         toAdd.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "javax/swing/JOptionPane", "showMessageDialog", "(Ljava/awt/Component;Ljava/lang/Object;)V", false));
 
         toAdd.add(new IntInsnNode(Opcodes.SIPUSH, 1337));
@@ -212,21 +319,11 @@ public class HWIDProtection implements IClassProcessor {
         toAdd.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/lang/Error", "<init>", "()V", false));
         toAdd.add(new InsnNode(Opcodes.ATHROW));
 
-        toAdd.add(l1);
-        toAdd.add(new FrameNode(Opcodes.F_SAME, 0, null, 0, null));
-
-        MethodNode clInit = NodeUtils.getMethod(node, "<clinit>");
-        if (clInit == null) {
-            clInit = new MethodNode(Opcodes.ACC_STATIC, "<clinit>", "()V", null, new String[0]);
-            node.methods.add(clInit);
-        }
+        return toAdd;
+    }
 
-        if (clInit.instructions == null || clInit.instructions.getFirst() == null) {
-            clInit.instructions = toAdd;
-            clInit.instructions.add(new InsnNode(Opcodes.RETURN));
-        } else {
-            clInit.instructions.insertBefore(clInit.instructions.getFirst(), toAdd);
-        }
-        inst.setWorkDone();
+    @Override
+    public boolean isEnabled() {
+        return enabled.getObject();
     }
 }
\ No newline at end of file
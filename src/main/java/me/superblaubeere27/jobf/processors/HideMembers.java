@@ -10,11 +10,15 @@
 
 package me.superblaubeere27.jobf.processors;
 
-import me.superblaubeere27.jobf.IClassProcessor;
+import me.superblaubeere27.jobf.IStreamingProcessor;
 import me.superblaubeere27.jobf.JObfImpl;
 import me.superblaubeere27.jobf.ProcessorCallback;
+import me.superblaubeere27.jobf.utils.BuildRandom;
 import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
 import me.superblaubeere27.jobf.utils.values.EnabledValue;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldNode;
@@ -22,9 +26,9 @@ import org.objectweb.asm.tree.MethodNode;
 
 import java.util.Random;
 
-public class HideMembers implements IClassProcessor {
+public class HideMembers implements IStreamingProcessor {
     private static final String PROCESSOR_NAME = "HideMembers";
-    private static Random random = new Random();
+    private static Random random = BuildRandom.INSTANCE;
     private JObfImpl inst;
     private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, DeprecationLevel.GOOD, true);
 
@@ -42,7 +46,7 @@ public class HideMembers implements IClassProcessor {
 //                method.access |= Opcodes.ACC_BRIDGE;
 //            }
 //            if ((method.access & Opcodes.ACC_SYNTHETIC) == 0) {
-                if (method.name.startsWith("<"))
+                if (method.name.startsWith("<") || callback.getExclusions().isExcluded(this, node, method))
                     continue;
                 if ((method.access & Opcodes.ACC_NATIVE) == 0) {
                     continue;
@@ -62,4 +66,44 @@ public class HideMembers implements IClassProcessor {
         inst.setWorkDone();
     }
 
+    @Override
+    public ClassVisitor createVisitor(ProcessorCallback callback, ClassVisitor cv) {
+        if (!enabled.getObject()) return cv;
+
+        inst.setWorkDone();
+
+        return new ClassVisitor(Opcodes.ASM7, cv) {
+            private String className;
+            private boolean isInterface;
+
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                className = name;
+                isInterface = (access & Opcodes.ACC_INTERFACE) != 0;
+
+                super.visit(version, access, name, signature, superName, interfaces);
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                return super.visitField(access | Opcodes.ACC_SYNTHETIC, name, descriptor, signature, value);
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                if (!isInterface && !name.startsWith("<") && (access & Opcodes.ACC_NATIVE) != 0
+                        && !callback.getExclusions().isExcluded(HideMembers.this, className, name, descriptor)) {
+                    access |= Opcodes.ACC_BRIDGE | Opcodes.ACC_SYNTHETIC;
+                }
+
+                return super.visitMethod(access, name, descriptor, signature, exceptions);
+            }
+        };
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled.getObject();
+    }
+
 }
\ No newline at end of file
@@ -10,81 +10,386 @@
 
 package me.superblaubeere27.jobf.processors;
 
-import me.superblaubeere27.jobf.IClassProcessor;
+import me.superblaubeere27.IPreClassProcessor;
 import me.superblaubeere27.jobf.JObf;
 import me.superblaubeere27.jobf.JObfImpl;
-import me.superblaubeere27.jobf.ProcessorCallback;
 import me.superblaubeere27.jobf.utils.InliningUtils;
+import me.superblaubeere27.jobf.utils.MethodAnalysis;
+import me.superblaubeere27.jobf.utils.NodeUtils;
+import me.superblaubeere27.jobf.utils.ProcessorExclusions;
 import me.superblaubeere27.jobf.utils.Utils;
+import me.superblaubeere27.jobf.utils.values.BooleanValue;
 import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
 import me.superblaubeere27.jobf.utils.values.EnabledValue;
+import me.superblaubeere27.jobf.utils.values.NumberValue;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceValue;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.lang.reflect.Modifier;
+import java.util.*;
 
-public class InlineProcessor implements IClassProcessor {
-    private static Random random = new Random();
-    private static List<String> exceptions = new ArrayList<>();
+/**
+ * Inlines calls to methods which can't be overridden (static, private and final methods) over the whole program.
+ * <p>
+ * The methods are processed callees first, so the cost model sees the final size of a callee. A call is inlined if
+ * the callee is at most {@link #maxSize} bytes large (the call would cost about as much as the callee) or if it's
+ * the only call of a private callee which is removed afterwards, as long as the caller stays below
+ * {@link #maxCallerSize} bytes. Recursive calls are never inlined.
+ * <p>
+ * Runs before the other processors since it reads and modifies several classes at once.
+ */
+public class InlineProcessor implements IPreClassProcessor {
+    private static final String PROCESSOR_NAME = "Inlining";
 
-    private EnabledValue enabled = new EnabledValue("Inlining", "Doesn't work, please don't use this", DeprecationLevel.BAD, false);
+    private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, "Inlines small methods which can't be overridden into their callers", DeprecationLevel.OK, false);
+    private NumberValue<Integer> maxSize = new NumberValue<>(PROCESSOR_NAME, "Max Size", "Methods up to this size (in bytes) are inlined into every caller", DeprecationLevel.OK, 35);
+    private NumberValue<Integer> maxSingleCallSize = new NumberValue<>(PROCESSOR_NAME, "Max Single Call Size", "Private methods which are called once are inlined (and removed) up to this size (in bytes)", DeprecationLevel.OK, 325);
+    private NumberValue<Integer> maxCallerSize = new NumberValue<>(PROCESSOR_NAME, "Max Caller Size", "Callers don't grow beyond this size (in bytes), HotSpot doesn't compile methods which are larger than 8000 bytes", DeprecationLevel.OK, 8000);
+    private BooleanValue removeInlined = new BooleanValue(PROCESSOR_NAME, "Remove Inlined", "Removes private methods if every call was inlined", DeprecationLevel.OK, true);
 
     private JObfImpl inst;
 
+    private Map<String, ClassNode> program;
+    private Map<MethodNode, ClassNode> owners;
+    /**
+     * Caller -> Calls of the caller which can be inlined
+     */
+    private Map<MethodNode, List<MethodInsnNode>> calls;
+    private Map<MethodInsnNode, MethodNode> targets;
+    private Map<MethodNode, Integer> callCounts;
+    /**
+     * Methods which are referenced by method handles or enclosing method attributes, they can't be removed
+     */
+    private Set<String> otherReferences;
+    private Map<MethodNode, Boolean> candidates;
+    private Map<MethodNode, Integer> sizes;
+
     public InlineProcessor(JObfImpl inst) {
         this.inst = inst;
     }
 
     @Override
-    public void process(ProcessorCallback callback, ClassNode node) {
+    public void process(Collection<ClassNode> nodes) {
         if (!enabled.getObject()) return;
 
-        int maxPasses = 3;
+        program = new HashMap<>();
+        owners = new IdentityHashMap<>();
+        calls = new IdentityHashMap<>();
+        targets = new IdentityHashMap<>();
+        callCounts = new IdentityHashMap<>();
+        otherReferences = new HashSet<>();
+        candidates = new IdentityHashMap<>();
+        sizes = new IdentityHashMap<>();
+
+        for (ClassNode node : nodes) {
+            program.put(node.name, node);
+
+            for (MethodNode method : node.methods) owners.put(method, node);
+        }
+
+        buildCallGraph(nodes);
+
+        Map<MethodNode, Integer> inlined = new IdentityHashMap<>();
+        Set<MethodNode> done = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        int inlinedCalls = 0;
+
+        for (MethodNode method : getCalleesFirstOrder(nodes)) {
+            inlinedCalls += inlineCalls(owners.get(method), method, done, inlined);
+
+            done.add(method);
+        }
+
+        int removed = 0;
+
+        if (removeInlined.getObject()) {
+            for (Map.Entry<MethodNode, Integer> entry : inlined.entrySet()) {
+                MethodNode method = entry.getKey();
+                ClassNode owner = owners.get(method);
+
+                if (isRemovable(owner, method) && entry.getValue().equals(callCounts.get(method))) {
+                    owner.methods.remove(method);
+                    removed++;
 
-        boolean ok;
-        int index = 0;
+                    JObf.log.fine("Removed " + owner.name + "." + method.name + method.desc + ", every call was inlined");
+                }
+            }
+        }
+
+        JObf.log.info("Inlined " + inlinedCalls + " calls, removed " + removed + " methods");
+
+        program = null;
+        owners = null;
+        calls = null;
+        targets = null;
+        callCounts = null;
+        otherReferences = null;
+        candidates = null;
+        sizes = null;
+    }
+
+    private void buildCallGraph(Collection<ClassNode> nodes) {
+        for (ClassNode node : nodes) {
+            if (node.outerMethod != null) otherReferences.add(node.outerClass + "." + node.outerMethod + node.outerMethodDesc);
 
-        do {
-            ok = false;
             for (MethodNode method : node.methods) {
-                for (AbstractInsnNode abstractInsnNode : method.instructions.toArray()) {
-                    if (abstractInsnNode instanceof MethodInsnNode) {
-                        MethodInsnNode insnNode = (MethodInsnNode) abstractInsnNode;
+                List<MethodInsnNode> methodCalls = new ArrayList<>();
 
-                        ClassNode lookupClass = Utils.lookupClass(insnNode.owner);
+                for (AbstractInsnNode insn : method.instructions.toArray()) {
+                    if (insn instanceof MethodInsnNode) {
+                        MethodNode target = resolve(node, (MethodInsnNode) insn);
 
-                        if (lookupClass == null) continue;
+                        if (target == null) continue;
 
-                        MethodNode lookupMethod = Utils.getMethod(lookupClass, insnNode.name, insnNode.desc);
+                        methodCalls.add((MethodInsnNode) insn);
+                        targets.put((MethodInsnNode) insn, target);
+                        callCounts.merge(target, 1, Integer::sum);
+                    } else if (insn instanceof InvokeDynamicInsnNode) {
+                        InvokeDynamicInsnNode invokeDynamic = (InvokeDynamicInsnNode) insn;
 
-                        if (lookupMethod == null
-                                || (lookupMethod.instructions.size() > 100 && !lookupMethod.name.equals("approximiere_pi"))
-                                || !InliningUtils.canInlineMethod(node, lookupClass, lookupMethod))
-                            continue;
+                        addHandleReference(invokeDynamic.bsm);
+
+                        for (Object bsmArg : invokeDynamic.bsmArgs) addHandleReference(bsmArg);
+                    } else if (insn instanceof LdcInsnNode) {
+                        addHandleReference(((LdcInsnNode) insn).cst);
+                    }
+                }
+
+                if (!methodCalls.isEmpty()) calls.put(method, methodCalls);
+            }
+        }
+    }
 
-                        InsnList inline = InliningUtils.inline(lookupMethod, lookupClass, method);
-//                        inline.insertBefore(inline.getFirst(), NodeUtils.debugString("--- INLINE (" + lookupClass.name + "." + lookupMethod.name + lookupMethod.desc + ") ---"));
-//                        inline.add(NodeUtils.debugString("--- END ---"));
+    private void addHandleReference(Object cst) {
+        if (cst instanceof Handle) {
+            Handle handle = (Handle) cst;
+
+            otherReferences.add(handle.getOwner() + "." + handle.getName() + handle.getDesc());
+        }
+    }
+
+    /**
+     * @return the method which is called, null if it isn't a method of the program or could be overridden
+     */
+    private MethodNode resolve(ClassNode caller, MethodInsnNode insn) {
+        switch (insn.getOpcode()) {
+            case Opcodes.INVOKESTATIC: {
+                MethodNode method = findMethod(insn.owner, insn.name, insn.desc);
+
+                return method != null && Modifier.isStatic(method.access) ? method : null;
+            }
+            case Opcodes.INVOKEVIRTUAL: {
+                MethodNode method = findMethod(insn.owner, insn.name, insn.desc);
+
+                if (method == null || Modifier.isStatic(method.access)) return null;
+
+                boolean bound = Modifier.isPrivate(method.access) || Modifier.isFinal(method.access) || Modifier.isFinal(owners.get(method).access);
+
+                return bound ? method : null;
+            }
+            case Opcodes.INVOKESPECIAL: {
+                // Super calls and constructors aren't inlined
+                if (!insn.owner.equals(caller.name) || insn.name.startsWith("<")) return null;
+
+                MethodNode method = Utils.getMethod(caller, insn.name, insn.desc);
+
+                return method != null && Modifier.isPrivate(method.access) ? method : null;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private MethodNode findMethod(String owner, String name, String desc) {
+        ClassNode node = program.get(owner);
+
+        while (node != null) {
+            MethodNode method = Utils.getMethod(node, name, desc);
+
+            if (method != null) return method.name.startsWith("<") ? null : method;
+
+            node = node.superName == null ? null : program.get(node.superName);
+        }
+
+        return null;
+    }
+
+    /**
+     * Orders the methods so every method comes after the methods it calls (except for recursive calls)
+     */
+    private List<MethodNode> getCalleesFirstOrder(Collection<ClassNode> nodes) {
+        List<MethodNode> order = new ArrayList<>();
+        Set<MethodNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        Deque<MethodNode> stack = new ArrayDeque<>();
+        Deque<Iterator<MethodInsnNode>> iterators = new ArrayDeque<>();
+
+        for (ClassNode node : nodes) {
+            for (MethodNode method : node.methods) {
+                if (!visited.add(method)) continue;
 
-//                    System.out.println(NodeUtils.prettyprint(inline));
+                stack.push(method);
+                iterators.push(calls.getOrDefault(method, Collections.emptyList()).iterator());
 
-                        method.instructions.insert(abstractInsnNode, inline);
-                        method.instructions.remove(abstractInsnNode);
+                while (!stack.isEmpty()) {
+                    Iterator<MethodInsnNode> iterator = iterators.peek();
 
-                        JObf.log.fine("Inlined method in " + node.name + "." + method.name + method.desc + "(" + lookupClass.name + "." + lookupMethod.name + lookupMethod.desc + ")");
+                    if (iterator.hasNext()) {
+                        MethodNode callee = targets.get(iterator.next());
 
-                        ok = true;
+                        if (visited.add(callee)) {
+                            stack.push(callee);
+                            iterators.push(calls.getOrDefault(callee, Collections.emptyList()).iterator());
+                        }
+                    } else {
+                        order.add(stack.pop());
+                        iterators.pop();
                     }
                 }
             }
-            index++;
-        } while (ok && index <= maxPasses);
+        }
 
-//        System.out.println("Inlined " + inlined + " methods.");
+        return order;
+    }
+
+    /**
+     * @return the count of inlined calls
+     */
+    private int inlineCalls(ClassNode node, MethodNode method, Set<MethodNode> done, Map<MethodNode, Integer> inlined) {
+        List<MethodInsnNode> methodCalls = calls.get(method);
+
+        if (methodCalls == null || isExcluded(node, method)) return 0;
+
+        // The locals of every inlined method start behind the caller's locals, the inlined code doesn't overlap
+        int base = method.maxLocals;
+        int size = NodeUtils.getCodeSize(method);
+
+        Map<MethodInsnNode, Frame<SourceValue>> frames = null;
+
+        int count = 0;
+
+        for (MethodInsnNode call : methodCalls) {
+            MethodNode callee = targets.get(call);
+            ClassNode calleeOwner = owners.get(callee);
+
+            // Recursive calls aren't done yet
+            if (!done.contains(callee) || !isCandidate(calleeOwner, callee)) continue;
+
+            int calleeSize = sizes.computeIfAbsent(callee, NodeUtils::getCodeSize);
+            boolean singleCall = isRemovable(calleeOwner, callee) && callCounts.get(callee) == 1;
+
+            if (calleeSize > maxSize.getObject() && !(singleCall && calleeSize <= maxSingleCallSize.getObject()))
+                continue;
+            if (size + calleeSize > maxCallerSize.getObject()) continue;
+            if (!canInline(node, method, calleeOwner, callee)) continue;
+
+            if (frames == null) {
+                frames = new IdentityHashMap<>();
+
+                Frame<SourceValue>[] methodFrames;
+
+                try {
+                    methodFrames = new MethodAnalysis(node.name, method).getFrames();
+                } catch (RuntimeException e) {
+                    JObf.log.fine("Failed to analyse " + node.name + "." + method.name + method.desc + ": " + e);
+                    break;
+                }
+
+                AbstractInsnNode[] insns = method.instructions.toArray();
+
+                for (int i = 0; i < insns.length; i++) {
+                    if (insns[i] instanceof MethodInsnNode) frames.put((MethodInsnNode) insns[i], methodFrames[i]);
+                }
+            }
+
+            Frame<SourceValue> frame = frames.get(call);
+
+            // Unreachable
+            if (frame == null) continue;
+
+            int arguments = Type.getArgumentTypes(callee.desc).length + (Modifier.isStatic(callee.access) ? 0 : 1);
+            int stackBelow = 0;
+
+            for (int i = 0; i < frame.getStackSize() - arguments; i++) {
+                stackBelow += frame.getStack(i).getSize();
+            }
 
-        inst.setWorkDone();
+            // The handlers would clear the values below the arguments
+            if (stackBelow > 0 && !callee.tryCatchBlocks.isEmpty()) continue;
+
+            InliningUtils.inline(call, callee, method, base);
+
+            method.maxStack = Math.max(method.maxStack, stackBelow + Math.max(callee.maxStack, 1));
+
+            size += calleeSize;
+            count++;
+            inlined.merge(callee, 1, Integer::sum);
+
+            JObf.log.fine("Inlined " + calleeOwner.name + "." + callee.name + callee.desc + " (" + calleeSize + " bytes) into " + node.name + "." + method.name + method.desc);
+        }
+
+        if (count > 0) {
+            for (AbstractInsnNode insn : method.instructions.toArray()) {
+                if (insn instanceof FrameNode) method.instructions.remove(insn);
+            }
+
+            inst.invalidateFrames(node);
+        }
+
+        return count;
+    }
+
+    private boolean isCandidate(ClassNode owner, MethodNode method) {
+        return candidates.computeIfAbsent(method, m -> !Modifier.isSynchronized(m.access)
+                && !isExcluded(owner, m)
+                && InliningUtils.isInlinable(owner.name, m));
+    }
+
+    private boolean isExcluded(ClassNode node, MethodNode method) {
+        // The annotations are indexed after the pre processors ran
+        return !inst.isObfuscationEnabled(node)
+                || ProcessorExclusions.isExcluded(this, node.visibleAnnotations, node.invisibleAnnotations)
+                || ProcessorExclusions.isExcluded(this, method.visibleAnnotations, method.invisibleAnnotations);
     }
 
+    private boolean isRemovable(ClassNode owner, MethodNode method) {
+        return removeInlined.getObject()
+                && Modifier.isPrivate(method.access)
+                && !otherReferences.contains(owner.name + "." + method.name + method.desc);
+    }
+
+    /**
+     * Checks whether the code of the callee behaves the same in the caller
+     */
+    private boolean canInline(ClassNode node, MethodNode method, ClassNode calleeOwner, MethodNode callee) {
+        if (callee == method) return false;
+        if ((callee.access & Opcodes.ACC_STRICT) != 0 && (method.access & Opcodes.ACC_STRICT) == 0) return false;
+
+        if (node == calleeOwner) return true;
+
+        // The callee might use features of a newer class version
+        if ((node.version & 0xFFFF) < (calleeOwner.version & 0xFFFF)) return false;
+
+        // Calling a static method initializes its class, unless it's a super class of the caller (which is already
+        // initialized)
+        if (Modifier.isStatic(callee.access) && Utils.getMethod(calleeOwner, "<clinit>", "()V") != null && !isSubclass(node, calleeOwner))
+            return false;
+
+        return InliningUtils.canAccess(node, calleeOwner, callee);
+    }
+
+    private boolean isSubclass(ClassNode node, ClassNode of) {
+        while (node != null) {
+            if (node == of) return true;
+
+            node = node.superName == null ? null : program.get(node.superName);
+        }
+
+        return false;
+    }
 
-}
\ No newline at end of file
+}
@@ -10,12 +10,16 @@
 
 package me.superblaubeere27.jobf.processors;
 
-import me.superblaubeere27.jobf.IClassProcessor;
+import me.superblaubeere27.jobf.ClassRewriter;
+import me.superblaubeere27.jobf.IRewritingProcessor;
 import me.superblaubeere27.jobf.JObf;
+import me.superblaubeere27.jobf.JObfImpl;
 import me.superblaubeere27.jobf.ProcessorCallback;
+import me.superblaubeere27.jobf.utils.BuildRandom;
 import me.superblaubeere27.jobf.utils.NameUtils;
 import me.superblaubeere27.jobf.utils.NodeUtils;
 import me.superblaubeere27.jobf.utils.Utils;
+import me.superblaubeere27.jobf.utils.profile.ProfileGuidance;
 import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
 import me.superblaubeere27.jobf.utils.values.EnabledValue;
 import org.objectweb.asm.Handle;
@@ -32,11 +36,16 @@ import java.util.*;
 
 import static org.objectweb.asm.Opcodes.*;
 
-public class InvokeDynamic implements IClassProcessor {
+public class InvokeDynamic implements IRewritingProcessor {
     private static final String PROCESSOR_NAME = "InvokeDynamic";
-    private static Random random = new Random();
+    private static Random random = BuildRandom.INSTANCE;
+    private JObfImpl inst;
     private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, "Hides method calls", DeprecationLevel.OK, false);
 
+    public InvokeDynamic(JObfImpl inst) {
+        this.inst = inst;
+    }
+
 
     private static MethodNode bootstrap(FieldNode arrayField, FieldNode typeField, ClassNode node) {
         String className = node.name;
@@ -368,238 +377,273 @@ public class InvokeDynamic implements IClassProcessor {
     }
 
     @Override
-    public void process(ProcessorCallback callback, ClassNode classNode) {
-        if (!enabled.getObject()) return;
+    public ClassRewriter createRewriter(ProcessorCallback callback, ClassNode classNode) {
+        if (!enabled.getObject()) return null;
 
         if (!NodeUtils.isClassValid(classNode)) {
-            return;
+            return null;
         }
         if (classNode.version == Opcodes.V1_1 || classNode.version < Opcodes.V1_4) {
             JObf.log.warning("!!! WARNING !!! " + classNode.name + "'s lang level is too low (VERSION > V1_4)");
-            return;
+            return null;
         }
 
-        FieldNode arrayField = new FieldNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, NameUtils.generateFieldName(classNode), "[Ljava/lang/String;", null, null);
-        FieldNode typeArrayField = new FieldNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, NameUtils.generateFieldName(classNode), "[Ljava/lang/Class;", null, null);
+        return new InvokeDynamicRewriter(callback, classNode);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled.getObject();
+    }
 
+    private static InsnList toInsnList(AbstractInsnNode insn) {
+        if (insn == null) return null;
 
-        MethodNode bootstrap = bootstrap(arrayField, typeArrayField, classNode);
-        Handle bootstrapMethod = new Handle(H_INVOKESTATIC, classNode.name, bootstrap.name,
-                MethodType.methodType(CallSite.class, MethodHandles.Lookup.class, String.class,
-                        MethodType.class).toMethodDescriptorString(), false);
+        InsnList list = new InsnList();
 
-        int count = 0;
-        int indexCount = 0;
+        list.add(insn);
 
-        int typeCount = 0;
+        return list;
+    }
 
-        HashMap<String, Integer> map = new HashMap<>();
-        HashMap<Type, Integer> typeMap = new HashMap<>();
+    private class InvokeDynamicRewriter extends ClassRewriter {
+        private final ProcessorCallback callback;
+        private final ClassNode classNode;
+        private final FieldNode arrayField;
+        private final FieldNode typeArrayField;
+        private final MethodNode bootstrap;
+        private final Handle bootstrapMethod;
+        private final HashMap<String, Integer> map = new HashMap<>();
+        private final HashMap<Type, Integer> typeMap = new HashMap<>();
+        private final ProfileGuidance profileGuidance = inst.getProfileGuidance();
+        private int count = 0;
+        private int indexCount = 0;
+        private int typeCount = 0;
+
+        InvokeDynamicRewriter(ProcessorCallback callback, ClassNode classNode) {
+            this.callback = callback;
+            this.classNode = classNode;
+
+            arrayField = new FieldNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, NameUtils.generateFieldName(classNode), "[Ljava/lang/String;", null, null);
+            typeArrayField = new FieldNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, NameUtils.generateFieldName(classNode), "[Ljava/lang/Class;", null, null);
+
+            bootstrap = bootstrap(arrayField, typeArrayField, classNode);
+            bootstrapMethod = new Handle(H_INVOKESTATIC, classNode.name, bootstrap.name,
+                    MethodType.methodType(CallSite.class, MethodHandles.Lookup.class, String.class,
+                            MethodType.class).toMethodDescriptorString(), false);
+        }
 
-        for (MethodNode method : classNode.methods) {
+        @Override
+        public boolean visitMethod(MethodNode method) {
             if (!NodeUtils.isMethodValid(method)) {
-                continue;
+                return false;
             }
+            if (profileGuidance.isHot(classNode, method)) {
+                profileGuidance.relaxed(PROCESSOR_NAME, classNode, method, "skipped");
+                return false;
+            }
+            return true;
+        }
 
-            for (AbstractInsnNode abstractInsnNode : method.instructions.toArray()) {
-                if (abstractInsnNode instanceof MethodInsnNode) {
-                    MethodInsnNode methodInsnNode = (MethodInsnNode) abstractInsnNode;
+        @Override
+        public InsnList rewrite(MethodNode method, AbstractInsnNode abstractInsnNode) {
+            AbstractInsnNode replacement = null;
 
-                    if (methodInsnNode.getOpcode() == Opcodes.INVOKEVIRTUAL || methodInsnNode.getOpcode() == Opcodes.INVOKEINTERFACE) {
-                        String name = methodInsnNode.owner.replace('/', '.') + ":" + methodInsnNode.name + ":" + methodInsnNode.desc + ":" + NameUtils.generateSpaceString(2);
-                        int index;
+            if (abstractInsnNode instanceof MethodInsnNode) {
+                MethodInsnNode methodInsnNode = (MethodInsnNode) abstractInsnNode;
 
-                        if (map.containsKey(name)) {
-                            index = map.get(name);
-                        } else {
-                            index = indexCount++;
-                            map.put(name, index);
-                        }
+                if (methodInsnNode.getOpcode() == Opcodes.INVOKEVIRTUAL || methodInsnNode.getOpcode() == Opcodes.INVOKEINTERFACE) {
+                    String name = methodInsnNode.owner.replace('/', '.') + ":" + methodInsnNode.name + ":" + methodInsnNode.desc + ":" + NameUtils.generateSpaceString(2);
+                    int index;
 
-                        method.instructions.insert(methodInsnNode, new InvokeDynamicInsnNode(Integer.toString(index), (methodInsnNode.owner.startsWith("[") ? "(" : "(L") + methodInsnNode.owner + (methodInsnNode.owner.endsWith(";") ? "" : ";") + methodInsnNode.desc.substring(1), bootstrapMethod));
-                        method.instructions.remove(methodInsnNode);
-                        count++;
+                    if (map.containsKey(name)) {
+                        index = map.get(name);
+                    } else {
+                        index = indexCount++;
+                        map.put(name, index);
                     }
-                    if (methodInsnNode.getOpcode() == Opcodes.INVOKESTATIC) {
-                        String name = methodInsnNode.owner.replace('/', '.') + ":" + methodInsnNode.name + ":" + methodInsnNode.desc + ":" + NameUtils.generateSpaceString(1);
-                        int index;
 
-                        if (map.containsKey(name)) {
-                            index = map.get(name);
-                        } else {
-                            index = indexCount++;
-                            map.put(name, index);
-                        }
-                        method.instructions.insert(methodInsnNode, new InvokeDynamicInsnNode(Integer.toString(index), methodInsnNode.desc, bootstrapMethod));
-                        method.instructions.remove(methodInsnNode);
-                        count++;
-                    }
+                    replacement = new InvokeDynamicInsnNode(Integer.toString(index), (methodInsnNode.owner.startsWith("[") ? "(" : "(L") + methodInsnNode.owner + (methodInsnNode.owner.endsWith(";") ? "" : ";") + methodInsnNode.desc.substring(1), bootstrapMethod);
+                    count++;
                 }
-                if (abstractInsnNode instanceof FieldInsnNode) {
-                    FieldInsnNode fieldInsnNode = (FieldInsnNode) abstractInsnNode;
-
-                    Type fieldType = Type.getType(fieldInsnNode.desc);
-                    int typeIndex;
+                if (methodInsnNode.getOpcode() == Opcodes.INVOKESTATIC) {
+                    String name = methodInsnNode.owner.replace('/', '.') + ":" + methodInsnNode.name + ":" + methodInsnNode.desc + ":" + NameUtils.generateSpaceString(1);
+                    int index;
 
-                    if (typeMap.containsKey(fieldType)) {
-                        typeIndex = typeMap.get(fieldType);
+                    if (map.containsKey(name)) {
+                        index = map.get(name);
                     } else {
-                        typeIndex = typeCount++;
-                        typeMap.put(fieldType, typeIndex);
+                        index = indexCount++;
+                        map.put(name, index);
                     }
+                    replacement = new InvokeDynamicInsnNode(Integer.toString(index), methodInsnNode.desc, bootstrapMethod);
+                    count++;
+                }
+            }
+            if (abstractInsnNode instanceof FieldInsnNode) {
+                FieldInsnNode fieldInsnNode = (FieldInsnNode) abstractInsnNode;
 
+                Type fieldType = Type.getType(fieldInsnNode.desc);
+                int typeIndex;
 
-                    if (fieldInsnNode.getOpcode() == Opcodes.GETFIELD) {
-                        String name = fieldInsnNode.owner.replace('/', '.') + ":" + fieldInsnNode.name + ":" + typeIndex + ":" + NameUtils.generateSpaceString(3);
-                        int index;
+                if (typeMap.containsKey(fieldType)) {
+                    typeIndex = typeMap.get(fieldType);
+                } else {
+                    typeIndex = typeCount++;
+                    typeMap.put(fieldType, typeIndex);
+                }
 
-                        if (map.containsKey(name)) {
-                            index = map.get(name);
-                        } else {
-                            index = indexCount++;
-                            map.put(name, index);
-                        }
 
-                        method.instructions.insert(fieldInsnNode, new InvokeDynamicInsnNode(Integer.toString(index), "(L" + fieldInsnNode.owner + ";)" + fieldInsnNode.desc, bootstrapMethod));
-                        method.instructions.remove(fieldInsnNode);
-                        count++;
-                    } else if (fieldInsnNode.getOpcode() == Opcodes.GETSTATIC) {
-                        String name = fieldInsnNode.owner.replace('/', '.') + ":" + fieldInsnNode.name + ":" + typeIndex + ":" + NameUtils.generateSpaceString(4);
-                        int index;
+                if (fieldInsnNode.getOpcode() == Opcodes.GETFIELD) {
+                    String name = fieldInsnNode.owner.replace('/', '.') + ":" + fieldInsnNode.name + ":" + typeIndex + ":" + NameUtils.generateSpaceString(3);
+                    int index;
 
-                        if (map.containsKey(name)) {
-                            index = map.get(name);
-                        } else {
-                            index = indexCount++;
-                            map.put(name, index);
-                        }
-
-                        method.instructions.insert(fieldInsnNode, new InvokeDynamicInsnNode(Integer.toString(index), "()" + fieldInsnNode.desc, bootstrapMethod));
-                        method.instructions.remove(fieldInsnNode);
-                        count++;
+                    if (map.containsKey(name)) {
+                        index = map.get(name);
+                    } else {
+                        index = indexCount++;
+                        map.put(name, index);
                     }
-                    ClassNode owner = Utils.lookupClass(fieldInsnNode.owner);
-                    FieldNode field = null;
 
-                    if (owner != null) field = Utils.getField(owner, fieldInsnNode.name);
+                    replacement = new InvokeDynamicInsnNode(Integer.toString(index), "(L" + fieldInsnNode.owner + ";)" + fieldInsnNode.desc, bootstrapMethod);
+                    count++;
+                } else if (fieldInsnNode.getOpcode() == Opcodes.GETSTATIC) {
+                    String name = fieldInsnNode.owner.replace('/', '.') + ":" + fieldInsnNode.name + ":" + typeIndex + ":" + NameUtils.generateSpaceString(4);
+                    int index;
 
-                    if (field == null) {
-                        JObf.log.warning("Field " + fieldInsnNode.owner + "." + fieldInsnNode.name + " wasn't found. Please add it as library");
-                        continue;
-                    }
-                    if (Modifier.isFinal(field.access)) {
-                        continue;
+                    if (map.containsKey(name)) {
+                        index = map.get(name);
+                    } else {
+                        index = indexCount++;
+                        map.put(name, index);
                     }
 
-                    if (fieldInsnNode.getOpcode() == Opcodes.PUTFIELD) {
-                        String name = fieldInsnNode.owner.replace('/', '.') + ":" + fieldInsnNode.name + ":" + typeIndex + ":" + NameUtils.generateSpaceString(5);
-                        int index;
+                    replacement = new InvokeDynamicInsnNode(Integer.toString(index), "()" + fieldInsnNode.desc, bootstrapMethod);
+                    count++;
+                }
+                ClassNode owner = Utils.lookupClass(fieldInsnNode.owner);
+                FieldNode field = null;
 
-                        if (map.containsKey(name)) {
-                            index = map.get(name);
-                        } else {
-                            index = indexCount++;
-                            map.put(name, index);
-                        }
+                if (owner != null) field = Utils.getField(owner, fieldInsnNode.name);
 
-                        method.instructions.insert(fieldInsnNode, new InvokeDynamicInsnNode(Integer.toString(index), "(L" + fieldInsnNode.owner + ";" + fieldInsnNode.desc + ")V", bootstrapMethod));
-                        method.instructions.remove(fieldInsnNode);
-                        count++;
-                    } else if (fieldInsnNode.getOpcode() == Opcodes.PUTSTATIC) {
-                        String name = fieldInsnNode.owner.replace('/', '.') + ":" + fieldInsnNode.name + ":" + typeIndex + ":" + NameUtils.generateSpaceString(6);
-                        int index;
+                if (field == null) {
+                    JObf.log.warning("Field " + fieldInsnNode.owner + "." + fieldInsnNode.name + " wasn't found. Please add it as library");
+                    return toInsnList(replacement);
+                }
+                if (Modifier.isFinal(field.access)) {
+                    return toInsnList(replacement);
+                }
 
-                        if (map.containsKey(name)) {
-                            index = map.get(name);
-                        } else {
-                            index = indexCount++;
-                            map.put(name, index);
-                        }
+                if (fieldInsnNode.getOpcode() == Opcodes.PUTFIELD) {
+                    String name = fieldInsnNode.owner.replace('/', '.') + ":" + fieldInsnNode.name + ":" + typeIndex + ":" + NameUtils.generateSpaceString(5);
+                    int index;
 
-                        method.instructions.insert(fieldInsnNode, new InvokeDynamicInsnNode(Integer.toString(index), "(" + fieldInsnNode.desc + ")V", bootstrapMethod));
-                        method.instructions.remove(fieldInsnNode);
-                        count++;
+                    if (map.containsKey(name)) {
+                        index = map.get(name);
+                    } else {
+                        index = indexCount++;
+                        map.put(name, index);
                     }
+
+                    replacement = new InvokeDynamicInsnNode(Integer.toString(index), "(L" + fieldInsnNode.owner + ";" + fieldInsnNode.desc + ")V", bootstrapMethod);
+                    count++;
+                } else if (fieldInsnNode.getOpcode() == Opcodes.PUTSTATIC) {
+                    String name = fieldInsnNode.owner.replace('/', '.') + ":" + fieldInsnNode.name + ":" + typeIndex + ":" + NameUtils.generateSpaceString(6);
+                    int index;
+
+                    if (map.containsKey(name)) {
+                        index = map.get(name);
+                    } else {
+                        index = indexCount++;
+                        map.put(name, index);
+                    }
+
+                    replacement = new InvokeDynamicInsnNode(Integer.toString(index), "(" + fieldInsnNode.desc + ")V", bootstrapMethod);
+                    count++;
                 }
             }
+            return toInsnList(replacement);
         }
-//        System.out.println(count);
 
+        @Override
+        public void finish() {
+//        System.out.println(count);
 
-        if (count > 0) {
-            if (classNode.version < Opcodes.V1_7) {
-                callback.setForceComputeFrames();
-            }
-            classNode.version = Math.max(Opcodes.V1_7, classNode.version);
+            if (count > 0) {
+                if (classNode.version < Opcodes.V1_7) {
+                    callback.setForceComputeFrames();
+                }
+                classNode.version = Math.max(Opcodes.V1_7, classNode.version);
 
-            MethodNode generatorMethod = new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, NameUtils.generateMethodName(classNode, "()V"), "()V", null, new String[0]);
-            InsnList generatorMethodNodes = new InsnList();
+                MethodNode generatorMethod = new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, NameUtils.generateMethodName(classNode, "()V"), "()V", null, new String[0]);
+                InsnList generatorMethodNodes = new InsnList();
 
-            {
-                List<Map.Entry<String, Integer>> list = new ArrayList<>(map.entrySet());
+                {
+                    List<Map.Entry<String, Integer>> list = new ArrayList<>(map.entrySet());
 
-                Collections.shuffle(list);
+                    Collections.shuffle(list, random);
 
-                generatorMethodNodes.add(NodeUtils.generateIntPush(list.size()));
-                generatorMethodNodes.add(new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/String"));
-                generatorMethodNodes.add(new FieldInsnNode(Opcodes.PUTSTATIC, classNode.name, arrayField.name, arrayField.desc));
+                    generatorMethodNodes.add(NodeUtils.generateIntPush(list.size()));
+                    generatorMethodNodes.add(new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/String"));
+                    generatorMethodNodes.add(new FieldInsnNode(Opcodes.PUTSTATIC, classNode.name, arrayField.name, arrayField.desc));
 
-                for (Map.Entry<String, Integer> integerStringEntry : list) {
-                    generatorMethodNodes.add(new FieldInsnNode(Opcodes.GETSTATIC, classNode.name, arrayField.name, arrayField.desc));
-                    generatorMethodNodes.add(NodeUtils.generateIntPush(integerStringEntry.getValue()));
-                    generatorMethodNodes.add(new LdcInsnNode(integerStringEntry.getKey()));
-                    generatorMethodNodes.add(new InsnNode(Opcodes.AASTORE));
+                    for (Map.Entry<String, Integer> integerStringEntry : list) {
+                        generatorMethodNodes.add(new FieldInsnNode(Opcodes.GETSTATIC, classNode.name, arrayField.name, arrayField.desc));
+                        generatorMethodNodes.add(NodeUtils.generateIntPush(integerStringEntry.getValue()));
+                        generatorMethodNodes.add(new LdcInsnNode(integerStringEntry.getKey()));
+                        generatorMethodNodes.add(new InsnNode(Opcodes.AASTORE));
+                    }
                 }
-            }
-            {
-                List<Map.Entry<Type, Integer>> list = new ArrayList<>(typeMap.entrySet());
+                {
+                    List<Map.Entry<Type, Integer>> list = new ArrayList<>(typeMap.entrySet());
 
-                Collections.shuffle(list);
+                    Collections.shuffle(list, random);
 
-                generatorMethodNodes.add(NodeUtils.generateIntPush(list.size()));
-                generatorMethodNodes.add(new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/Class"));
-                generatorMethodNodes.add(new FieldInsnNode(Opcodes.PUTSTATIC, classNode.name, typeArrayField.name, typeArrayField.desc));
+                    generatorMethodNodes.add(NodeUtils.generateIntPush(list.size()));
+                    generatorMethodNodes.add(new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/Class"));
+                    generatorMethodNodes.add(new FieldInsnNode(Opcodes.PUTSTATIC, classNode.name, typeArrayField.name, typeArrayField.desc));
 
-                for (Map.Entry<Type, Integer> integerStringEntry : list) {
-                    generatorMethodNodes.add(new FieldInsnNode(Opcodes.GETSTATIC, classNode.name, typeArrayField.name, typeArrayField.desc));
-                    generatorMethodNodes.add(NodeUtils.generateIntPush(integerStringEntry.getValue()));
+                    for (Map.Entry<Type, Integer> integerStringEntry : list) {
+                        generatorMethodNodes.add(new FieldInsnNode(Opcodes.GETSTATIC, classNode.name, typeArrayField.name, typeArrayField.desc));
+                        generatorMethodNodes.add(NodeUtils.generateIntPush(integerStringEntry.getValue()));
 
-                    if (integerStringEntry.getKey().getSort() == Type.ARRAY || integerStringEntry.getKey().getSort() == Type.OBJECT) {
-                        generatorMethodNodes.add(new LdcInsnNode(integerStringEntry.getKey()));
-                    } else {
-                        generatorMethodNodes.add(NodeUtils.getTypeNode(integerStringEntry.getKey()));
+                        if (integerStringEntry.getKey().getSort() == Type.ARRAY || integerStringEntry.getKey().getSort() == Type.OBJECT) {
+                            generatorMethodNodes.add(new LdcInsnNode(integerStringEntry.getKey()));
+                        } else {
+                            generatorMethodNodes.add(NodeUtils.getTypeNode(integerStringEntry.getKey()));
+                        }
+                        generatorMethodNodes.add(new InsnNode(Opcodes.AASTORE));
                     }
-                    generatorMethodNodes.add(new InsnNode(Opcodes.AASTORE));
                 }
-            }
 
-            generatorMethodNodes.add(new InsnNode(Opcodes.RETURN));
+                generatorMethodNodes.add(new InsnNode(Opcodes.RETURN));
 
-            generatorMethod.instructions = generatorMethodNodes;
+                generatorMethod.instructions = generatorMethodNodes;
 
-            MethodNode clInit = NodeUtils.getMethod(classNode, "<clinit>");
+                MethodNode clInit = NodeUtils.getMethod(classNode, "<clinit>");
 
-            if (clInit == null) {
-                clInit = new MethodNode(Opcodes.ACC_STATIC, "<clinit>", "()V", null, new String[0]);
-                classNode.methods.add(clInit);
-            }
-            if (clInit.instructions == null)
-                clInit.instructions = new InsnList();
-
-            if (clInit.instructions.getFirst() == null) {
-                clInit.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, classNode.name, generatorMethod.name, generatorMethod.desc, false));
-                clInit.instructions.add(new InsnNode(Opcodes.RETURN));
-            } else {
-                clInit.instructions.insertBefore(clInit.instructions.getFirst(), new MethodInsnNode(Opcodes.INVOKESTATIC, classNode.name, generatorMethod.name, generatorMethod.desc, false));
-            }
+                if (clInit == null) {
+                    clInit = new MethodNode(Opcodes.ACC_STATIC, "<clinit>", "()V", null, new String[0]);
+                    classNode.methods.add(clInit);
+                }
+                if (clInit.instructions == null)
+                    clInit.instructions = new InsnList();
+
+                if (clInit.instructions.getFirst() == null) {
+                    clInit.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, classNode.name, generatorMethod.name, generatorMethod.desc, false));
+                    clInit.instructions.add(new InsnNode(Opcodes.RETURN));
+                } else {
+                    clInit.instructions.insertBefore(clInit.instructions.getFirst(), new MethodInsnNode(Opcodes.INVOKESTATIC, classNode.name, generatorMethod.name, generatorMethod.desc, false));
+                }
 
 
-            classNode.methods.add(bootstrap);
-            classNode.methods.add(generatorMethod);
-            classNode.fields.add(arrayField);
-            classNode.fields.add(typeArrayField);
-        }
+                classNode.methods.add(bootstrap);
+                classNode.methods.add(generatorMethod);
+                classNode.fields.add(arrayField);
+                classNode.fields.add(typeArrayField);
+            }
 
+        }
     }
 
 }
\ No newline at end of file
@@ -10,14 +10,26 @@
 
 package me.superblaubeere27.jobf.processors;
 
-import me.superblaubeere27.jobf.IClassProcessor;
+import me.superblaubeere27.jobf.IStreamingProcessor;
 import me.superblaubeere27.jobf.JObfImpl;
 import me.superblaubeere27.jobf.ProcessorCallback;
+import me.superblaubeere27.jobf.utils.BuildRandom;
+import me.superblaubeere27.jobf.utils.MethodParallelism;
 import me.superblaubeere27.jobf.utils.NameUtils;
 import me.superblaubeere27.jobf.utils.values.BooleanValue;
 import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
 import me.superblaubeere27.jobf.utils.values.EnabledValue;
 import me.superblaubeere27.jobf.utils.values.StringValue;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
 import org.objectweb.asm.tree.*;
 
 import java.util.ArrayList;
@@ -25,9 +37,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
 
-public class LineNumberRemover implements IClassProcessor {
+public class LineNumberRemover implements IStreamingProcessor {
     private static final String PROCESSOR_NAME = "LineNumberRemover";
-    private static Random random = new Random();
+    private static Random random = BuildRandom.INSTANCE;
     private static ArrayList<String> TYPES = new ArrayList<>();
 
     static {
@@ -59,7 +71,12 @@ public class LineNumberRemover implements IClassProcessor {
     public void process(ProcessorCallback callback, ClassNode node) {
         if (!enabled.getObject()) return;
 
-        for (MethodNode method : node.methods) {
+        // Only the method itself is changed
+        MethodParallelism.forEach(node.methods, i -> {
+            MethodNode method = node.methods.get(i);
+
+            if (callback.getExclusions().isExcluded(this, node, method)) return;
+
             LabelNode firstLabel = null;
             LabelNode lastLabel = null;
             HashMap<Integer, String> varMap = new HashMap<>();
@@ -106,7 +123,7 @@ public class LineNumberRemover implements IClassProcessor {
                     parameter.name = NameUtils.generateLocalVariableName();
                 }
             }
-        }
+        });
         if ((node.sourceFile == null || !node.sourceFile.contains(StringEncryptionProcessor.MAGICNUMBER_START)) && removeDebugNames.getObject()) {
             node.sourceFile = newSourceFileName.getObject().isEmpty() ? null : newSourceFileName.getObject();
         }
@@ -114,4 +131,184 @@ public class LineNumberRemover implements IClassProcessor {
         inst.setWorkDone();
     }
 
+    @Override
+    public ClassVisitor createVisitor(ProcessorCallback callback, ClassVisitor cv) {
+        if (!enabled.getObject()) return cv;
+
+        inst.setWorkDone();
+
+        return new ClassVisitor(Opcodes.ASM7, cv) {
+            private String className;
+            private boolean sourceVisited;
+
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                className = name;
+
+                super.visit(version, access, name, signature, superName, interfaces);
+            }
+
+            @Override
+            public void visitSource(String source, String debug) {
+                sourceVisited = true;
+
+                if ((source == null || !source.contains(StringEncryptionProcessor.MAGICNUMBER_START)) && removeDebugNames.getObject()) {
+                    source = newSourceFileName.getObject().isEmpty() ? null : newSourceFileName.getObject();
+                }
+
+                super.visitSource(source, debug);
+            }
+
+            /**
+             * Classes without a SourceFile attribute don't visit it, the new name has to be visited before anything
+             * which comes after visitSource
+             */
+            private void visitMissingSource() {
+                if (sourceVisited) return;
+
+                sourceVisited = true;
+
+                if (removeDebugNames.getObject() && !newSourceFileName.getObject().isEmpty()) {
+                    super.visitSource(newSourceFileName.getObject(), null);
+                }
+            }
+
+            @Override
+            public ModuleVisitor visitModule(String name, int access, String version) {
+                visitMissingSource();
+                return super.visitModule(name, access, version);
+            }
+
+            @Override
+            public void visitNestHost(String nestHost) {
+                visitMissingSource();
+                super.visitNestHost(nestHost);
+            }
+
+            @Override
+            public void visitOuterClass(String owner, String name, String descriptor) {
+                visitMissingSource();
+                super.visitOuterClass(owner, name, descriptor);
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                visitMissingSource();
+                return super.visitAnnotation(descriptor, visible);
+            }
+
+            @Override
+            public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+                visitMissingSource();
+                return super.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+            }
+
+            @Override
+            public void visitAttribute(Attribute attribute) {
+                visitMissingSource();
+                super.visitAttribute(attribute);
+            }
+
+            @Override
+            public void visitNestMember(String nestMember) {
+                visitMissingSource();
+                super.visitNestMember(nestMember);
+            }
+
+            @Override
+            public void visitInnerClass(String name, String outerName, String innerName, int access) {
+                visitMissingSource();
+                super.visitInnerClass(name, outerName, innerName, access);
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                visitMissingSource();
+                return super.visitField(access, name, descriptor, signature, value);
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                visitMissingSource();
+
+                MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+
+                if (callback.getExclusions().isExcluded(LineNumberRemover.this, className, name, descriptor)) return mv;
+
+                return new LineNumberRemovingVisitor(mv);
+            }
+
+            @Override
+            public void visitEnd() {
+                visitMissingSource();
+                super.visitEnd();
+            }
+        };
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled.getObject();
+    }
+
+    private class LineNumberRemovingVisitor extends MethodVisitor {
+        private Label firstLabel;
+        private Label lastLabel;
+        private HashMap<Integer, String> varMap = new HashMap<>();
+
+        LineNumberRemovingVisitor(MethodVisitor mv) {
+            super(Opcodes.ASM7, mv);
+        }
+
+        @Override
+        public void visitParameter(String name, int access) {
+            super.visitParameter(renameValues.getObject() ? NameUtils.generateLocalVariableName() : name, access);
+        }
+
+        @Override
+        public void visitLineNumber(int line, Label start) {
+            if (!removeLineNumbers.getObject()) super.visitLineNumber(line, start);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            if (!varMap.containsKey(var)) {
+                varMap.put(var, TYPES.get(random.nextInt(TYPES.size())));
+            }
+
+            super.visitVarInsn(opcode, var);
+        }
+
+        @Override
+        public void visitLabel(Label label) {
+            if (firstLabel == null) {
+                firstLabel = label;
+            }
+
+            lastLabel = label;
+
+            super.visitLabel(label);
+        }
+
+        @Override
+        public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+            super.visitLocalVariable(renameValues.getObject() ? NameUtils.generateLocalVariableName() : name, descriptor, signature, start, end, index);
+        }
+
+        @Override
+        public void visitMaxs(int maxStack, int maxLocals) {
+            // The local variables are visited after the instructions
+            if (firstLabel != null && addLocalVariables.getObject()) {
+                for (Map.Entry<Integer, String> integerStringEntry : varMap.entrySet()) {
+                    super.visitLocalVariable(NameUtils.generateLocalVariableName(), integerStringEntry.getValue(), null, firstLabel, lastLabel, integerStringEntry.getKey());
+
+                    // A wrong long/double type might need one more slot
+                    maxLocals = Math.max(maxLocals, integerStringEntry.getKey() + Type.getType(integerStringEntry.getValue()).getSize());
+                }
+            }
+
+            super.visitMaxs(maxStack, maxLocals);
+        }
+    }
+
 }
\ No newline at end of file
@@ -10,25 +10,29 @@
 
 package me.superblaubeere27.jobf.processors;
 
-import me.superblaubeere27.jobf.IClassProcessor;
+import me.superblaubeere27.jobf.ClassRewriter;
+import me.superblaubeere27.jobf.IRewritingProcessor;
 import me.superblaubeere27.jobf.JObfImpl;
 import me.superblaubeere27.jobf.ProcessorCallback;
+import me.superblaubeere27.jobf.utils.BuildRandom;
+import me.superblaubeere27.jobf.utils.LongIntMap;
 import me.superblaubeere27.jobf.utils.NameUtils;
 import me.superblaubeere27.jobf.utils.NodeUtils;
+import me.superblaubeere27.jobf.utils.profile.ProfileGuidance;
 import me.superblaubeere27.jobf.utils.values.BooleanValue;
 import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
 import me.superblaubeere27.jobf.utils.values.EnabledValue;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
 
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Random;
 
-public class NumberObfuscationProcessor implements IClassProcessor {
+public class NumberObfuscationProcessor implements IRewritingProcessor {
     private static final String PROCESSOR_NAME = "NumberObfuscation";
-    private static Random random = new Random();
+    private static Random random = BuildRandom.INSTANCE;
     private static NumberObfuscationProcessor INSTANCE;
     private JObfImpl inst;
     private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, DeprecationLevel.GOOD, true);
@@ -192,97 +196,280 @@ public class NumberObfuscationProcessor implements IClassProcessor {
         return new int[]{number, shift};
     }
 
+    /**
+     * @return the type of the long, float or double constant or null if the instruction doesn't push one
+     */
+    private static Type getWideConstantType(AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+
+        if (opcode == Opcodes.LCONST_0 || opcode == Opcodes.LCONST_1) return Type.LONG_TYPE;
+        if (opcode >= Opcodes.FCONST_0 && opcode <= Opcodes.FCONST_2) return Type.FLOAT_TYPE;
+        if (opcode == Opcodes.DCONST_0 || opcode == Opcodes.DCONST_1) return Type.DOUBLE_TYPE;
+
+        if (insn instanceof LdcInsnNode) {
+            Object cst = ((LdcInsnNode) insn).cst;
+
+            if (cst instanceof Long) return Type.LONG_TYPE;
+            if (cst instanceof Float) return Type.FLOAT_TYPE;
+            if (cst instanceof Double) return Type.DOUBLE_TYPE;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the raw bits of the long, float or double constant
+     */
+    private static long getWideConstantBits(AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+
+        if (opcode == Opcodes.LCONST_0 || opcode == Opcodes.LCONST_1) return opcode - Opcodes.LCONST_0;
+        if (opcode >= Opcodes.FCONST_0 && opcode <= Opcodes.FCONST_2) return Float.floatToRawIntBits(opcode - Opcodes.FCONST_0);
+        if (opcode == Opcodes.DCONST_0 || opcode == Opcodes.DCONST_1) return Double.doubleToRawLongBits(opcode - Opcodes.DCONST_0);
+
+        Object cst = ((LdcInsnNode) insn).cst;
+
+        if (cst instanceof Float) return Float.floatToRawIntBits((Float) cst);
+        if (cst instanceof Double) return Double.doubleToRawLongBits((Double) cst);
+
+        return (Long) cst;
+    }
+
+    /**
+     * Generates the instructions which push the long with the given bits, the halves are obfuscated as integers
+     */
+    private static InsnList getLongInstructions(long value) {
+        InsnList list = new InsnList();
+
+        list.add(getInstructionsMultipleTimes((int) (value >>> 32), random.nextInt(2) + 1));
+        list.add(new InsnNode(Opcodes.I2L));
+        list.add(NodeUtils.generateIntPush(32));
+        list.add(new InsnNode(Opcodes.LSHL));
+        list.add(getInstructionsMultipleTimes((int) value, random.nextInt(2) + 1));
+        list.add(new InsnNode(Opcodes.I2L));
+        list.add(new LdcInsnNode(0xFFFFFFFFL));
+        list.add(new InsnNode(Opcodes.LAND));
+        list.add(new InsnNode(Opcodes.LOR));
+
+        return list;
+    }
+
     @Override
-    public void process(ProcessorCallback callback, ClassNode node) {
-        if (!enabled.getObject()) return;
-
-        int i = 0;
-        String fieldName = NameUtils.generateFieldName(node.name);
-        List<Integer> integerList = new ArrayList<>();
-        for (MethodNode method : node.methods) {
-            for (AbstractInsnNode abstractInsnNode : method.instructions.toArray()) {
-                if (abstractInsnNode == null) {
-                    throw new RuntimeException("AbstractInsnNode is null. WTF?");
-                }
-                if (NodeUtils.isIntegerNumber(abstractInsnNode)) {
-                    int number = NodeUtils.getIntValue(abstractInsnNode);
-
-                    if (number == Integer.MIN_VALUE) {
-                        continue;
-                    }
-//                    if (abstractInsnNode instanceof LdcInsnNode && ((LdcInsnNode) abstractInsnNode).cst instanceof Number && ((int) ((LdcInsnNode) abstractInsnNode).cst) == Integer.MIN_VALUE) {
-//                        System.out.println(((LdcInsnNode) abstractInsnNode).cst + "/" + number);
-//                    }
-                    if (!Modifier.isInterface(node.access)
-//                            && mode == 1
-                            && extractToArray.getObject()
-                    ) {
-                        int containedSlot = -1;
-                        int j = 0;
-                        for (Integer integer : integerList) {
-                            if (integer == number) containedSlot = j;
-                            j++;
-                        }
-                        if (containedSlot == -1) integerList.add(number);
-                        method.instructions.insertBefore(abstractInsnNode, new FieldInsnNode(Opcodes.GETSTATIC, node.name, fieldName, "[I"));
-                        method.instructions.insertBefore(abstractInsnNode, NodeUtils.generateIntPush(containedSlot == -1 ? i : containedSlot));
-                        method.instructions.insertBefore(abstractInsnNode, new InsnNode(Opcodes.IALOAD));
-                        method.instructions.remove(abstractInsnNode);
-                        if (containedSlot == -1) i++;
-                        method.maxStack += 2;
-                    } else {
-                        method.maxStack += 4;
-
-                        method.instructions.insertBefore(abstractInsnNode, getInstructionsMultipleTimes(number, random.nextInt(2) + 1));
-                        method.instructions.remove(abstractInsnNode);
-                    }
+    public ClassRewriter createRewriter(ProcessorCallback callback, ClassNode node) {
+        if (!enabled.getObject()) return null;
+
+        return new NumberRewriter(node);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled.getObject();
+    }
+
+    private class NumberRewriter extends ClassRewriter {
+        private final ClassNode node;
+        private final ConstantTable[] tables;
+        private final ProfileGuidance profileGuidance = inst.getProfileGuidance();
+        private boolean hot;
+        private boolean extract;
+
+        NumberRewriter(ClassNode node) {
+            this.node = node;
+            this.tables = new ConstantTable[]{
+                    new ConstantTable(node, Type.INT_TYPE),
+                    new ConstantTable(node, Type.LONG_TYPE),
+                    new ConstantTable(node, Type.FLOAT_TYPE),
+                    new ConstantTable(node, Type.DOUBLE_TYPE)
+            };
+        }
+
+        @Override
+        public boolean visitMethod(MethodNode method) {
+            hot = profileGuidance.isHot(node, method);
+
+            if (hot) {
+                if (profileGuidance.isSkippingHotMethods()) {
+                    profileGuidance.relaxed(PROCESSOR_NAME, node, method, "skipped");
+                    return false;
                 }
+                profileGuidance.relaxed(PROCESSOR_NAME, node, method, "single inline obfuscation instead of array lookups");
             }
+
+            extract = !Modifier.isInterface(node.access)
+//                    && mode == 1
+                    && extractToArray.getObject()
+                    && !hot;
+
+            return true;
         }
-        if (i != 0) {
-            node.fields.add(new FieldNode(((node.access & Opcodes.ACC_INTERFACE) != 0 ? Opcodes.ACC_PUBLIC : Opcodes.ACC_PRIVATE) | (node.version > Opcodes.V1_8 ? 0 : Opcodes.ACC_FINAL) | Opcodes.ACC_STATIC, fieldName, "[I", null, null));
-            MethodNode clInit = NodeUtils.getMethod(node, "<clinit>");
-            if (clInit == null) {
-                clInit = new MethodNode(Opcodes.ACC_STATIC, "<clinit>", "()V", null, new String[0]);
-                node.methods.add(clInit);
+
+        @Override
+        public InsnList rewrite(MethodNode method, AbstractInsnNode abstractInsnNode) {
+            if (NodeUtils.isIntegerNumber(abstractInsnNode)) {
+                int number = NodeUtils.getIntValue(abstractInsnNode);
+
+                if (number == Integer.MIN_VALUE) {
+                    return null;
+                }
+//                if (abstractInsnNode instanceof LdcInsnNode && ((LdcInsnNode) abstractInsnNode).cst instanceof Number && ((int) ((LdcInsnNode) abstractInsnNode).cst) == Integer.MIN_VALUE) {
+//                    System.out.println(((LdcInsnNode) abstractInsnNode).cst + "/" + number);
+//                }
+                if (extract) {
+                    method.maxStack += 2;
+
+                    return tables[0].load(number);
+                }
+
+                method.maxStack += 4;
+
+                return getInstructionsMultipleTimes(number, hot ? 1 : random.nextInt(2) + 1);
+            }
+            if (extract) {
+                Type type = getWideConstantType(abstractInsnNode);
+
+                if (type == null) return null;
+
+                ConstantTable table = type == Type.LONG_TYPE ? tables[1] : type == Type.FLOAT_TYPE ? tables[2] : tables[3];
+
+                method.maxStack += 2;
+
+                return table.load(getWideConstantBits(abstractInsnNode));
             }
-            if (clInit.instructions == null)
-                clInit.instructions = new InsnList();
+            return null;
+        }
 
+        @Override
+        public void finish() {
             InsnList toAdd = new InsnList();
 
-//            if (clInit.instructions.getFirst() == null)
-//                clInit.instructions.insert(NodeUtils.generateIntPush(i));
-//            else
-            toAdd.add(NodeUtils.generateIntPush(i));
+            for (ConstantTable table : tables) {
+                if (table.size != 0) toAdd.add(table.generate(node));
+            }
+
+            if (toAdd.size() != 0) {
+                MethodNode clInit = NodeUtils.getMethod(node, "<clinit>");
+                if (clInit == null) {
+                    clInit = new MethodNode(Opcodes.ACC_STATIC, "<clinit>", "()V", null, new String[0]);
+                    node.methods.add(clInit);
+                }
+                if (clInit.instructions == null)
+                    clInit.instructions = new InsnList();
+
+                MethodNode generateIntegers = new MethodNode(((node.access & Opcodes.ACC_INTERFACE) != 0 ? Opcodes.ACC_PUBLIC : Opcodes.ACC_PRIVATE) | Opcodes.ACC_STATIC, NameUtils.generateMethodName(node, "()V"), "()V", null, new String[0]);
+                generateIntegers.instructions = toAdd;
+                generateIntegers.instructions.add(new InsnNode(Opcodes.RETURN));
+                generateIntegers.maxStack = 10;
+                node.methods.add(generateIntegers);
+
+                if (clInit.instructions == null || clInit.instructions.getFirst() == null) {
+                    clInit.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, generateIntegers.name, generateIntegers.desc, false));
+                    clInit.instructions.add(new InsnNode(Opcodes.RETURN));
+                } else {
+                    clInit.instructions.insertBefore(clInit.instructions.getFirst(), new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, generateIntegers.name, generateIntegers.desc, false));
+                }
+//                clInit.maxStack = Math.max(clInit.maxStack, 6);
+            }
+            inst.setWorkDone();
+        }
+    }
+
+    /**
+     * The constants of one type which are extracted into a static array. Constants are looked up by their raw bits,
+     * so -0.0 and 0.0 get different slots.
+     */
+    private static class ConstantTable {
+        private final Type type;
+        private final String owner;
+        private final String fieldName;
+        private final LongIntMap slots = new LongIntMap();
+        private long[] values = new long[16];
+        private int size;
+
+        ConstantTable(ClassNode node, Type type) {
+            this.type = type;
+            this.owner = node.name;
+            this.fieldName = NameUtils.generateFieldName(node.name);
+        }
+
+        private String getArrayDescriptor() {
+            return "[" + type.getDescriptor();
+        }
+
+        /**
+         * @return the instructions which load the constant from the array
+         */
+        InsnList load(long bits) {
+            int slot = slots.get(bits, -1);
+
+            if (slot == -1) {
+                slot = size++;
+
+                if (slot == values.length) values = Arrays.copyOf(values, slot * 2);
+
+                values[slot] = bits;
+                slots.put(bits, slot);
+            }
+
+            InsnList list = new InsnList();
+
+            list.add(new FieldInsnNode(Opcodes.GETSTATIC, owner, fieldName, getArrayDescriptor()));
+            list.add(NodeUtils.generateIntPush(slot));
+            list.add(new InsnNode(type.getOpcode(Opcodes.IALOAD)));
+
+            return list;
+        }
 
-            toAdd.add(new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_INT));
-//            toAdd.insert(new IntInsnNode(Opcodes.NEWARRAY, 0));
-            toAdd.add(new FieldInsnNode(Opcodes.PUTSTATIC, node.name, fieldName, "[I"));
+        /**
+         * Adds the array field and generates the instructions which initialize it
+         */
+        InsnList generate(ClassNode node) {
+            node.fields.add(new FieldNode(((node.access & Opcodes.ACC_INTERFACE) != 0 ? Opcodes.ACC_PUBLIC : Opcodes.ACC_PRIVATE) | (node.version > Opcodes.V1_8 ? 0 : Opcodes.ACC_FINAL) | Opcodes.ACC_STATIC, fieldName, getArrayDescriptor(), null, null));
 
-            for (int j = 0; j < i; j++) {
-                toAdd.add(new FieldInsnNode(Opcodes.GETSTATIC, node.name, fieldName, "[I"));
+            InsnList toAdd = new InsnList();
+
+            toAdd.add(NodeUtils.generateIntPush(size));
+            toAdd.add(new IntInsnNode(Opcodes.NEWARRAY, getNewArrayType()));
+            toAdd.add(new FieldInsnNode(Opcodes.PUTSTATIC, node.name, fieldName, getArrayDescriptor()));
+
+            for (int j = 0; j < size; j++) {
+                toAdd.add(new FieldInsnNode(Opcodes.GETSTATIC, node.name, fieldName, getArrayDescriptor()));
                 toAdd.add(NodeUtils.generateIntPush(j));
-                toAdd.add(getInstructionsMultipleTimes(integerList.get(j), random.nextInt(2) + 1));
-                toAdd.add(new InsnNode(Opcodes.IASTORE));
+
+                switch (type.getSort()) {
+                    case Type.INT:
+                        toAdd.add(getInstructionsMultipleTimes((int) values[j], random.nextInt(2) + 1));
+                        break;
+                    case Type.LONG:
+                        toAdd.add(getLongInstructions(values[j]));
+                        break;
+                    case Type.FLOAT:
+                        toAdd.add(getInstructionsMultipleTimes((int) values[j], random.nextInt(2) + 1));
+                        toAdd.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Float", "intBitsToFloat", "(I)F", false));
+                        break;
+                    case Type.DOUBLE:
+                        toAdd.add(getLongInstructions(values[j]));
+                        toAdd.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D", false));
+                        break;
+                }
+
+                toAdd.add(new InsnNode(type.getOpcode(Opcodes.IASTORE)));
             }
 
-            MethodNode generateIntegers = new MethodNode(((node.access & Opcodes.ACC_INTERFACE) != 0 ? Opcodes.ACC_PUBLIC : Opcodes.ACC_PRIVATE) | Opcodes.ACC_STATIC, NameUtils.generateMethodName(node, "()V"), "()V", null, new String[0]);
-            generateIntegers.instructions = toAdd;
-            generateIntegers.instructions.add(new InsnNode(Opcodes.RETURN));
-            generateIntegers.maxStack = 6;
-            node.methods.add(generateIntegers);
+            return toAdd;
+        }
 
-            if (clInit.instructions == null || clInit.instructions.getFirst() == null) {
-                clInit.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, generateIntegers.name, generateIntegers.desc, false));
-                clInit.instructions.add(new InsnNode(Opcodes.RETURN));
-            } else {
-                clInit.instructions.insertBefore(clInit.instructions.getFirst(), new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, generateIntegers.name, generateIntegers.desc, false));
+        private int getNewArrayType() {
+            switch (type.getSort()) {
+                case Type.LONG:
+                    return Opcodes.T_LONG;
+                case Type.FLOAT:
+                    return Opcodes.T_FLOAT;
+                case Type.DOUBLE:
+                    return Opcodes.T_DOUBLE;
+                default:
+                    return Opcodes.T_INT;
             }
-//            clInit.maxStack = Math.max(clInit.maxStack, 6);
         }
-        inst.setWorkDone();
     }
 
-
 }
\ No newline at end of file
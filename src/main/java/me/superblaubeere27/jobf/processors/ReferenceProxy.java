@@ -14,27 +14,29 @@ import me.superblaubeere27.jobf.IClassProcessor;
 import me.superblaubeere27.jobf.JObfImpl;
 import me.superblaubeere27.jobf.ProcessorCallback;
 import me.superblaubeere27.jobf.utils.NameUtils;
-import me.superblaubeere27.jobf.utils.NodeUtils;
+import me.superblaubeere27.jobf.utils.profile.ProfileGuidance;
+import me.superblaubeere27.jobf.utils.values.BooleanValue;
 import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
 import me.superblaubeere27.jobf.utils.values.EnabledValue;
-import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
-import org.objectweb.asm.tree.AbstractInsnNode;
-import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.MethodInsnNode;
-import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.*;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Random;
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * Replaces method calls with calls to static proxy methods in the same class. There is one proxy per target, so the
+ * proxies don't change the access checks: a proxy either calls the target directly or through a MethodHandle which
+ * is looked up on the first call.
+ */
 public class ReferenceProxy implements IClassProcessor {
     private static final String PROCESSOR_NAME = "ReferenceProxy";
-    private static Random random = new Random();
+    private static final String METHOD_HANDLE = "java/lang/invoke/MethodHandle";
     private JObfImpl inst;
     private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, DeprecationLevel.BAD, false);
+    private BooleanValue methodHandles = new BooleanValue(PROCESSOR_NAME, "MethodHandles", "Calls the targets through MethodHandles instead of directly. Hot methods keep direct calls", DeprecationLevel.OK, false);
 
     public ReferenceProxy(JObfImpl inst) {
         this.inst = inst;
@@ -43,177 +45,142 @@ public class ReferenceProxy implements IClassProcessor {
     @Override
     public void process(ProcessorCallback callback, ClassNode node) {
         if (!enabled.getObject()) return;
+        // Interfaces can't have mutable static fields and only have static methods since Java 8
+        if (Modifier.isInterface(node.access)) return;
 
-        try {
-            HashMap<String, MethodNode> nodes = new HashMap<>();
-            List<MethodNode> add = new ArrayList<>();
-
-            for (MethodNode method : node.methods) {
-                for (AbstractInsnNode abstractInsnNode : method.instructions.toArray()) {
-                    if (abstractInsnNode instanceof MethodInsnNode) {
-                        MethodInsnNode insnNode = (MethodInsnNode) abstractInsnNode;
+        ProfileGuidance profileGuidance = inst.getProfileGuidance();
+        // Class constants need Java 5, MethodHandles Java 7
+        boolean canUseMethodHandles = methodHandles.getObject() && (node.version & 0xFFFF) >= Opcodes.V1_7;
 
-//                        System.out.println(insnNode.getOpcode() + "/" + insnNode.name + insnNode.desc);
+        // Target -> Proxy, the proxies are added in the order they were created
+        Map<String, MethodNode> proxies = new LinkedHashMap<>();
 
-                        if (
-//                                insnNode.desc.endsWith(")V") &&
-                                (insnNode.getOpcode() == Opcodes.INVOKESTATIC || insnNode.getOpcode() == Opcodes.INVOKEVIRTUAL) && !(insnNode.desc.contains("J") || insnNode.desc.contains("D") || insnNode.desc.contains("[") || insnNode.desc.contains("Object"))) {
-                            MethodNode referenceProxy = getProxyNode(node, insnNode, insnNode.getOpcode() == Opcodes.INVOKEVIRTUAL);
+        for (MethodNode method : node.methods) {
+            if (callback.getExclusions().isExcluded(this, node, method)) continue;
 
-                            method.instructions.insert(insnNode, new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, referenceProxy.name, referenceProxy.desc, false));
-                            method.instructions.remove(insnNode);
+            boolean useMethodHandles = canUseMethodHandles;
 
-                            add.add(referenceProxy);
-                            System.out.println("PROXY");
-                        }
-                    }
-                }
+            if (useMethodHandles && profileGuidance.isHot(node, method)) {
+                profileGuidance.relaxed(PROCESSOR_NAME, node, method, "direct proxies instead of MethodHandles");
+                useMethodHandles = false;
             }
 
-            for (MethodNode method : add) {
-                System.out.println(method);
-                node.methods.add(method);
-            }
+            for (AbstractInsnNode abstractInsnNode : method.instructions.toArray()) {
+                if (!(abstractInsnNode instanceof MethodInsnNode)) continue;
 
-//        for (Map.Entry<String, MethodNode> stringMethodNodeEntry : nodes.entrySet()) {
-//            node.methods.add(stringMethodNodeEntry.getValue());
-//        }
-            inst.setWorkDone();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
+                MethodInsnNode insnNode = (MethodInsnNode) abstractInsnNode;
 
-    private MethodNode getProxyNode(ClassNode node, MethodInsnNode insnNode, boolean isVirtual) {
-        String name = NameUtils.generateMethodName(node, insnNode.desc);
-        MethodNode mv;
+                if (!canProxy(insnNode)) continue;
 
-        Type[] argumentTypes = Type.getArgumentTypes(insnNode.desc);
-        Type returnType = Type.getReturnType(insnNode.desc);
+                String key = (useMethodHandles ? "H" : "D") + insnNode.getOpcode() + insnNode.owner + '.' + insnNode.name + insnNode.desc;
+                MethodNode proxy = proxies.get(key);
 
-        int offset = (isVirtual ? 1 : 0);
+                if (proxy == null) {
+                    proxy = useMethodHandles ? createMethodHandleProxy(node, insnNode) : createDirectProxy(node, insnNode);
 
-        int slot1 = argumentTypes.length + offset;
-        int slot2 = argumentTypes.length + offset + 1;
-        int slot3 = argumentTypes.length + offset + 2;
-        int slot4 = argumentTypes.length + offset + 3;
+                    proxies.put(key, proxy);
+                }
 
+                method.instructions.set(insnNode, new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, proxy.name, proxy.desc, false));
+            }
+        }
 
-        //MethodNode method = new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, name, insnNode.desc, null, new String[0]);
-        {
-            mv = new MethodNode(Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC, name, isVirtual ? "(Ljava/lang/Object;" + insnNode.desc.substring(1) : insnNode.desc, null, null);
+        if (proxies.isEmpty()) return;
 
+        node.methods.addAll(proxies.values());
 
-            mv.visitCode();
-            Label l0 = new Label();
-            Label l1 = new Label();
-            Label l2 = new Label();
-            mv.visitTryCatchBlock(l0, l1, l2, "java/lang/Exception");
-            mv.visitLabel(l0);
-            mv.visitInsn(Opcodes.ACONST_NULL);
-            mv.visitVarInsn(Opcodes.ASTORE, slot3);
-//            mv.visitLineNumber(14, l0);
-            mv.visitLdcInsn(Type.getType("L" + insnNode.owner + ";"));
-            mv.visitLdcInsn(insnNode.name);
-            //  --package --packagerMainClass tk.ccbluex.CMDControl.CMDControl
+        inst.setWorkDone();
+    }
 
-            mv.instructions.add(NodeUtils.generateIntPush(argumentTypes.length));
-            mv.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Class");
-            mv.visitVarInsn(Opcodes.ASTORE, slot1);
+    /**
+     * Constructors and super calls (INVOKESPECIAL) can't be moved to another method, methods of arrays and signature
+     * polymorphic methods would change their meaning.
+     */
+    private static boolean canProxy(MethodInsnNode insnNode) {
+        int opcode = insnNode.getOpcode();
 
-            for (int i = 0; i < argumentTypes.length; i++) {
-                mv.visitVarInsn(Opcodes.ALOAD, slot1);
-                mv.instructions.add(NodeUtils.generateIntPush(i));
-                mv.instructions.add(NodeUtils.getTypeNode(argumentTypes[i]));
-                mv.visitInsn(Opcodes.AASTORE);
-            }
+        if (opcode != Opcodes.INVOKESTATIC && opcode != Opcodes.INVOKEVIRTUAL && opcode != Opcodes.INVOKEINTERFACE) return false;
+        if (insnNode.owner.startsWith("[")) return false;
 
-            mv.visitVarInsn(Opcodes.ALOAD, slot1);
-
-            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Class", "getMethod", "(Ljava/lang/String;[Ljava/lang/Class;)Ljava/lang/reflect/Method;", false);
-            mv.visitVarInsn(Opcodes.ASTORE, slot1);
-            Label l3 = new Label();
-            mv.visitLabel(l3);
-//            mv.visitLineNumber(15, l3);
-            mv.visitVarInsn(Opcodes.ALOAD, slot1);
-            mv.visitInsn(Opcodes.ICONST_1);
-            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/reflect/Method", "setAccessible", "(Z)V", false);
-            Label l4 = new Label();
-            mv.visitLabel(l4);
-//            mv.visitLineNumber(16, l4);
-            mv.instructions.add(NodeUtils.generateIntPush(argumentTypes.length));
-            mv.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
-            mv.visitVarInsn(Opcodes.ASTORE, slot2);
-            Label l5 = new Label();
-            mv.visitLabel(l5);
-//            mv.visitLineNumber(17, l5);
-
-            for (int i = 0; i < argumentTypes.length; i++) {
-                mv.visitVarInsn(Opcodes.ALOAD, slot2);
-                mv.instructions.add(NodeUtils.generateIntPush(i));
-                mv.visitVarInsn(argumentTypes[i].getOpcode(Opcodes.ILOAD), i + 1);
-                mv.instructions.add(NodeUtils.getWrapperMethod(argumentTypes[i]));
-                mv.visitInsn(Opcodes.AASTORE);
-            }
+        return !insnNode.owner.equals(METHOD_HANDLE) && !insnNode.owner.equals("java/lang/invoke/VarHandle");
+    }
 
-            Label l6 = new Label();
-            mv.visitLabel(l6);
-//            mv.visitLineNumber(18, l6);
-            mv.visitVarInsn(Opcodes.ALOAD, slot1);
+    /**
+     * @return the descriptor of the proxy, the receiver is passed as the first argument
+     */
+    private static String getProxyDescriptor(MethodInsnNode insnNode) {
+        if (insnNode.getOpcode() == Opcodes.INVOKESTATIC) return insnNode.desc;
 
-            if (!isVirtual) mv.visitInsn(Opcodes.ACONST_NULL);
-            else mv.visitVarInsn(Opcodes.ALOAD, 0);
+        return "(L" + insnNode.owner + ";" + insnNode.desc.substring(1);
+    }
 
-            mv.visitVarInsn(Opcodes.ALOAD, slot2);
-            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/reflect/Method", "invoke", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", false);
+    private static MethodNode createProxy(ClassNode node, String desc) {
+        return new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, NameUtils.generateMethodName(node, desc), desc, null, null);
+    }
 
-            if (returnType.toString().equals("V")) {
-                mv.visitInsn(Opcodes.POP);
-            } else {
-                mv.visitVarInsn(Opcodes.ASTORE, slot3);
-            }
+    private static void loadArguments(InsnList insns, String desc) {
+        int slot = 0;
 
-            mv.visitLabel(l1);
-//            mv.visitLineNumber(21, l1);
-            Label l7 = new Label();
-            mv.visitJumpInsn(Opcodes.GOTO, l7);
-            mv.visitLabel(l2);
-//            mv.visitLineNumber(19, l2);
-            mv.visitFrame(Opcodes.F_SAME1, 0, null, 1, new Object[]{"java/lang/Exception"});
-            mv.visitVarInsn(Opcodes.ASTORE, slot1);
-            Label l8 = new Label();
-            mv.visitLabel(l8);
-//            mv.visitLineNumber(20, l8);
-            mv.visitVarInsn(Opcodes.ALOAD, slot1);
-            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Exception", "printStackTrace", "()V", false);
-            mv.visitLabel(l7);
-//            mv.visitLineNumber(22, l7);
-            mv.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
-
-            if (returnType.toString().equals("V")) {
-                mv.visitInsn(Opcodes.RETURN);
-            } else {
-                mv.visitVarInsn(Opcodes.ALOAD, slot3);
-
-                if (!returnType.toString().startsWith("L")) {
-                    mv.instructions.add(NodeUtils.getUnWrapMethod(returnType));
-                } else {
-                    mv.visitTypeInsn(Opcodes.CHECKCAST, returnType.toString().substring(1, returnType.toString().length() - 1));
-                }
+        for (Type type : Type.getArgumentTypes(desc)) {
+            insns.add(new VarInsnNode(type.getOpcode(Opcodes.ILOAD), slot));
+            slot += type.getSize();
+        }
+    }
 
+    private static MethodNode createDirectProxy(ClassNode node, MethodInsnNode insnNode) {
+        MethodNode proxy = createProxy(node, getProxyDescriptor(insnNode));
 
-                mv.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
-            }
+        loadArguments(proxy.instructions, proxy.desc);
 
-            mv.visitMaxs(6, 3);
-            mv.visitEnd();
+        proxy.instructions.add(new MethodInsnNode(insnNode.getOpcode(), insnNode.owner, insnNode.name, insnNode.desc, insnNode.itf));
+        proxy.instructions.add(new InsnNode(Type.getReturnType(insnNode.desc).getOpcode(Opcodes.IRETURN)));
 
-            for (int i = 0; i < argumentTypes.length; i++) {
-                mv.visitLocalVariable(NameUtils.generateLocalVariableName(), argumentTypes[i].toString(), null, l0, l7, i);
-            }
-//            mv.visitLocalVariable(NameUtils.generateLocalVariableName(), argumentTypes[i].toString(), null, l0, l7, i);
-        }
-        return mv;
+        return proxy;
+    }
+
+    /**
+     * The handle is looked up on the first call (with the access of the class), so missing classes only fail at the
+     * call like the original instruction. {@code MethodHandle.invoke} is called with the exact types, nothing is boxed.
+     */
+    private static MethodNode createMethodHandleProxy(ClassNode node, MethodInsnNode insnNode) {
+        MethodNode proxy = createProxy(node, getProxyDescriptor(insnNode));
+        FieldNode field = new FieldNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, NameUtils.generateFieldName(node), "L" + METHOD_HANDLE + ";", null, null);
+        InsnList insns = proxy.instructions;
+        LabelNode found = new LabelNode();
+        String lookup = "java/lang/invoke/MethodHandles$Lookup";
+
+        node.fields.add(field);
+
+        insns.add(new FieldInsnNode(Opcodes.GETSTATIC, node.name, field.name, field.desc));
+        insns.add(new InsnNode(Opcodes.DUP));
+        insns.add(new JumpInsnNode(Opcodes.IFNONNULL, found));
+        insns.add(new InsnNode(Opcodes.POP));
+
+        insns.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/invoke/MethodHandles", "lookup", "()L" + lookup + ";", false));
+        insns.add(new LdcInsnNode(Type.getObjectType(insnNode.owner)));
+        insns.add(new LdcInsnNode(insnNode.name));
+        insns.add(new LdcInsnNode(insnNode.desc));
+        insns.add(new LdcInsnNode(Type.getObjectType(node.name)));
+        insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/Class", "getClassLoader", "()Ljava/lang/ClassLoader;", false));
+        insns.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/invoke/MethodType", "fromMethodDescriptorString", "(Ljava/lang/String;Ljava/lang/ClassLoader;)Ljava/lang/invoke/MethodType;", false));
+        insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, lookup, insnNode.getOpcode() == Opcodes.INVOKESTATIC ? "findStatic" : "findVirtual", "(Ljava/lang/Class;Ljava/lang/String;Ljava/lang/invoke/MethodType;)L" + METHOD_HANDLE + ";", false));
+        insns.add(new InsnNode(Opcodes.DUP));
+        insns.add(new FieldInsnNode(Opcodes.PUTSTATIC, node.name, field.name, field.desc));
+
+        insns.add(found);
+        insns.add(new FrameNode(Opcodes.F_SAME1, 0, null, 1, new Object[]{METHOD_HANDLE}));
+
+        loadArguments(insns, proxy.desc);
+
+        // A protected target might expect the class as receiver, invoke (unlike invokeExact) adapts the type
+        insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, METHOD_HANDLE, "invoke", proxy.desc, false));
+        insns.add(new InsnNode(Type.getReturnType(insnNode.desc).getOpcode(Opcodes.IRETURN)));
+
+        return proxy;
     }
 
-}
\ No newline at end of file
+    @Override
+    public boolean isEnabled() {
+        return enabled.getObject();
+    }
+}
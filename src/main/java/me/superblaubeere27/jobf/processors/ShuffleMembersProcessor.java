@@ -10,11 +10,14 @@
 
 package me.superblaubeere27.jobf.processors;
 
-import me.superblaubeere27.jobf.IClassProcessor;
+import me.superblaubeere27.jobf.IStreamingProcessor;
 import me.superblaubeere27.jobf.JObfImpl;
 import me.superblaubeere27.jobf.ProcessorCallback;
+import me.superblaubeere27.jobf.utils.BuildRandom;
 import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
 import me.superblaubeere27.jobf.utils.values.EnabledValue;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.MethodNode;
@@ -22,9 +25,9 @@ import org.objectweb.asm.tree.MethodNode;
 import java.util.Collections;
 import java.util.Random;
 
-public class ShuffleMembersProcessor implements IClassProcessor {
+public class ShuffleMembersProcessor implements IStreamingProcessor {
     private static final String PROCESSOR_NAME = "ShuffleMembers";
-    private static Random random = new Random();
+    private static Random random = BuildRandom.INSTANCE;
     private JObfImpl inst;
     private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, DeprecationLevel.GOOD, true);
 
@@ -36,6 +39,41 @@ public class ShuffleMembersProcessor implements IClassProcessor {
     public void process(ProcessorCallback callback, ClassNode node) {
         if (!enabled.getObject()) return;
 
+        shuffle(node);
+
+        inst.setWorkDone();
+    }
+
+    /**
+     * The members can't be reordered without knowing all of them, so the class is buffered
+     */
+    @Override
+    public ClassVisitor createVisitor(ProcessorCallback callback, ClassVisitor cv) {
+        if (!enabled.getObject()) return cv;
+
+        inst.setWorkDone();
+
+        ClassVisitor next = cv;
+
+        // ClassNode has a cv field too
+        return new ClassNode(Opcodes.ASM7) {
+            @Override
+            public void visitEnd() {
+                super.visitEnd();
+
+                shuffle(this);
+
+                accept(next);
+            }
+        };
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled.getObject();
+    }
+
+    private static void shuffle(ClassNode node) {
         Collections.shuffle(node.methods, random);
         Collections.shuffle(node.fields, random);
         Collections.shuffle(node.innerClasses, random);
@@ -74,7 +112,6 @@ public class ShuffleMembersProcessor implements IClassProcessor {
                 if (method.visibleTypeAnnotations != null) Collections.shuffle(method.visibleTypeAnnotations, random);
             }
         }
-        inst.setWorkDone();
     }
 
 }
\ No newline at end of file
@@ -10,19 +10,23 @@
 
 package me.superblaubeere27.jobf.processors;
 
-import me.superblaubeere27.jobf.IClassProcessor;
+import me.superblaubeere27.jobf.IStreamingProcessor;
 import me.superblaubeere27.jobf.JObfImpl;
 import me.superblaubeere27.jobf.ProcessorCallback;
+import me.superblaubeere27.jobf.utils.BuildRandom;
 import me.superblaubeere27.jobf.utils.NodeUtils;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Random;
 
-public class StaticInitializionProcessor implements IClassProcessor {
-    private static Random random = new Random();
+public class StaticInitializionProcessor implements IStreamingProcessor {
+    private static Random random = BuildRandom.INSTANCE;
     private JObfImpl inst;
 
     public StaticInitializionProcessor(JObfImpl inst) {
@@ -31,7 +35,7 @@ public class StaticInitializionProcessor implements IClassProcessor {
 
     @Override
     public void process(ProcessorCallback callback, ClassNode node) {
-        HashMap<FieldNode, Object> objs = new HashMap<>();
+        Map<FieldNode, Object> objs = new LinkedHashMap<>();
         for (FieldNode field : node.fields) {
             if (field.value != null) {
                 if ((field.access & Opcodes.ACC_STATIC) != 0 && (field.value instanceof String || field.value instanceof Integer)) {
@@ -42,13 +46,7 @@ public class StaticInitializionProcessor implements IClassProcessor {
         }
         InsnList toAdd = new InsnList();
         for (Map.Entry<FieldNode, Object> fieldNodeObjectEntry : objs.entrySet()) {
-            if (fieldNodeObjectEntry.getValue() instanceof String) {
-                toAdd.add(new LdcInsnNode(fieldNodeObjectEntry.getValue()));
-            }
-            if (fieldNodeObjectEntry.getValue() instanceof Integer) {
-                toAdd.add(NodeUtils.generateIntPush((Integer) fieldNodeObjectEntry.getValue()));
-            }
-            toAdd.add(new FieldInsnNode(Opcodes.PUTSTATIC, node.name, fieldNodeObjectEntry.getKey().name, fieldNodeObjectEntry.getKey().desc));
+            addInitializer(toAdd, node.name, fieldNodeObjectEntry.getKey().name, fieldNodeObjectEntry.getKey().desc, fieldNodeObjectEntry.getValue());
         }
         MethodNode clInit = NodeUtils.getMethod(node, "<clinit>");
         if (clInit == null) {
@@ -65,4 +63,81 @@ public class StaticInitializionProcessor implements IClassProcessor {
         inst.setWorkDone();
     }
 
+    @Override
+    public ClassVisitor createVisitor(ProcessorCallback callback, ClassVisitor cv) {
+        inst.setWorkDone();
+
+        return new ClassVisitor(Opcodes.ASM7, cv) {
+            private String owner;
+            private InsnList toAdd = new InsnList();
+            private boolean hasClInit;
+
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                owner = name;
+
+                super.visit(version, access, name, signature, superName, interfaces);
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                if (value != null && (access & Opcodes.ACC_STATIC) != 0 && (value instanceof String || value instanceof Integer)) {
+                    addInitializer(toAdd, owner, name, descriptor, value);
+                    value = null;
+                }
+
+                return super.visitField(access, name, descriptor, signature, value);
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                MethodVisitor methodVisitor = super.visitMethod(access, name, descriptor, signature, exceptions);
+
+                if (!name.equals("<clinit>")) return methodVisitor;
+
+                hasClInit = true;
+
+                // The fields are visited before the methods
+                return new MethodVisitor(Opcodes.ASM7, methodVisitor) {
+                    @Override
+                    public void visitCode() {
+                        super.visitCode();
+
+                        toAdd.accept(methodVisitor);
+                    }
+
+                    @Override
+                    public void visitMaxs(int maxStack, int maxLocals) {
+                        super.visitMaxs(toAdd.size() == 0 ? maxStack : Math.max(maxStack, 1), maxLocals);
+                    }
+                };
+            }
+
+            @Override
+            public void visitEnd() {
+                if (!hasClInit) {
+                    MethodVisitor mv = super.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, new String[0]);
+
+                    mv.visitCode();
+                    toAdd.accept(mv);
+                    mv.visitInsn(Opcodes.RETURN);
+                    mv.visitMaxs(toAdd.size() == 0 ? 0 : 1, 0);
+                    mv.visitEnd();
+                }
+
+                super.visitEnd();
+            }
+        };
+    }
+
+    private static void addInitializer(InsnList toAdd, String owner, String name, String desc, Object value) {
+        if (value instanceof String) {
+            toAdd.add(new LdcInsnNode(value));
+        }
+        if (value instanceof Integer) {
+            toAdd.add(NodeUtils.generateIntPush((Integer) value));
+        }
+        toAdd.add(new FieldInsnNode(Opcodes.PUTSTATIC, owner, name, desc));
+    }
+
 }
\ No newline at end of file
@@ -10,10 +10,12 @@
 
 package me.superblaubeere27.jobf.processors;
 
-import me.superblaubeere27.jobf.IClassProcessor;
+import me.superblaubeere27.jobf.ClassRewriter;
+import me.superblaubeere27.jobf.IRewritingProcessor;
 import me.superblaubeere27.jobf.JObfImpl;
 import me.superblaubeere27.jobf.ProcessorCallback;
 import me.superblaubeere27.jobf.processors.encryption.string.*;
+import me.superblaubeere27.jobf.utils.BuildRandom;
 import me.superblaubeere27.jobf.utils.NameUtils;
 import me.superblaubeere27.jobf.utils.NodeUtils;
 import me.superblaubeere27.jobf.utils.StringUtils;
@@ -28,12 +30,12 @@ import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.util.*;
 
-public class StringEncryptionProcessor implements IClassProcessor {
+public class StringEncryptionProcessor implements IRewritingProcessor {
     public static final String MAGICNUMBER_START = "\u00e4";
     private static final String MAGICNUMBER_SPLIT = "\u00f6";
     private static final String MAGICNUMBER_END = "\u00fc";
     private static final String PROCESSOR_NAME = "StringEncryption";
-    private static Random random = new Random();
+    private static Random random = BuildRandom.INSTANCE;
     private JObfImpl inst;
     private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, DeprecationLevel.GOOD, true);
     private BooleanValue hideStrings = new BooleanValue(PROCESSOR_NAME, "HideStrings", "Hide strings in SourceFile. Might break after editing the SourceFile", DeprecationLevel.OK, false);
@@ -159,134 +161,149 @@ public class StringEncryptionProcessor implements IClassProcessor {
     }
 
     @Override
-    public void process(ProcessorCallback callback, ClassNode node) {
-        if (!enabled.getObject()) return;
+    public ClassRewriter createRewriter(ProcessorCallback callback, ClassNode node) {
+        if (!enabled.getObject()) return null;
 
         List<IStringEncryptionAlgorithm> algorithmList = new ArrayList<>();
 
         initAlgorithms(algorithmList);
 
-        boolean hideStrings = this.hideStrings.getObject();
+        if (Modifier.isInterface(node.access)) return null;
 
-        if (Modifier.isInterface(node.access)) return;
-
-        String stringArrayName = NameUtils.generateFieldName(node);
-
-        HashMap<Integer, String> arrayMap = new HashMap<>();
+        return new StringRewriter(node, algorithmList);
+    }
 
-        int slot = 0;
+    @Override
+    public boolean isEnabled() {
+        return enabled.getObject();
+    }
 
+    private class StringRewriter extends ClassRewriter {
+        private final ClassNode node;
+        private final List<IStringEncryptionAlgorithm> algorithmList;
+        private final boolean hideStrings = StringEncryptionProcessor.this.hideStrings.getObject();
+        private final String stringArrayName;
+        private final HashMap<Integer, String> arrayMap = new HashMap<>();
+        private int slot = 0;
+
+        StringRewriter(ClassNode node, List<IStringEncryptionAlgorithm> algorithmList) {
+            this.node = node;
+            this.algorithmList = algorithmList;
+            this.stringArrayName = NameUtils.generateFieldName(node);
+        }
 
-        for (MethodNode method : node.methods) {
-            for (AbstractInsnNode abstractInsnNode : method.instructions.toArray()) {
-                if (abstractInsnNode instanceof LdcInsnNode) {
-                    LdcInsnNode insnNode = (LdcInsnNode) abstractInsnNode;
-                    if (insnNode.cst instanceof String && ((String) insnNode.cst).length() < 500) {
-                        InsnList insnList = new InsnList();
-                        insnList.add(new FieldInsnNode(Opcodes.GETSTATIC, node.name, stringArrayName, "[Ljava/lang/String;"));
-                        insnList.add(NodeUtils.generateIntPush(slot));
-                        insnList.add(new InsnNode(Opcodes.AALOAD));
-//                        String key = StringUtils.generateString(5);
-//                        method.instructions.insertBefore(abstractInsnNode, new LdcInsnNode(decrypt(insnNode.cst.toString(), key)));
-//                        method.instructions.insertBefore(abstractInsnNode, new LdcInsnNode(key));
-//                        method.instructions.insertBefore(abstractInsnNode, new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, decryptMethodName, "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;", false));
-                        method.instructions.insert(abstractInsnNode, insnList);
-                        method.instructions.remove(abstractInsnNode);
-                        arrayMap.put(slot, (String) insnNode.cst);
-                        slot++;
-                    }
+        @Override
+        public InsnList rewrite(MethodNode method, AbstractInsnNode abstractInsnNode) {
+            if (abstractInsnNode instanceof LdcInsnNode) {
+                LdcInsnNode insnNode = (LdcInsnNode) abstractInsnNode;
+                if (insnNode.cst instanceof String && ((String) insnNode.cst).length() < 500) {
+                    InsnList insnList = new InsnList();
+                    insnList.add(new FieldInsnNode(Opcodes.GETSTATIC, node.name, stringArrayName, "[Ljava/lang/String;"));
+                    insnList.add(NodeUtils.generateIntPush(slot));
+                    insnList.add(new InsnNode(Opcodes.AALOAD));
+//                    String key = StringUtils.generateString(5);
+//                    method.instructions.insertBefore(abstractInsnNode, new LdcInsnNode(decrypt(insnNode.cst.toString(), key)));
+//                    method.instructions.insertBefore(abstractInsnNode, new LdcInsnNode(key));
+//                    method.instructions.insertBefore(abstractInsnNode, new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, decryptMethodName, "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;", false));
+                    arrayMap.put(slot, (String) insnNode.cst);
+                    slot++;
+
+                    return insnList;
                 }
             }
+            return null;
         }
 
-
-        HashMap<IStringEncryptionAlgorithm, String> encryptionMethodMap = new HashMap<>();
-
-        if (slot > 0) {
-            if (arrayMap.size() > 0) {
-                node.fields.add(new FieldNode(((node.access & Opcodes.ACC_INTERFACE) != 0 ? Opcodes.ACC_PUBLIC : Opcodes.ACC_PRIVATE) | (node.version > Opcodes.V1_8 ? 0 : Opcodes.ACC_FINAL) | Opcodes.ACC_STATIC, stringArrayName, "[Ljava/lang/String;", null, null));
-                MethodNode clInit = NodeUtils.getMethod(node, "<clinit>");
-                if (clInit == null) {
-                    clInit = new MethodNode(Opcodes.ACC_STATIC, "<clinit>", "()V", null, new String[0]);
-                    node.methods.add(clInit);
-                }
-                if (clInit.instructions == null)
-                    clInit.instructions = new InsnList();
+        @Override
+        public void finish() {
+            LinkedHashMap<IStringEncryptionAlgorithm, String> encryptionMethodMap = new LinkedHashMap<>();
+
+            if (slot > 0) {
+                if (arrayMap.size() > 0) {
+                    node.fields.add(new FieldNode(((node.access & Opcodes.ACC_INTERFACE) != 0 ? Opcodes.ACC_PUBLIC : Opcodes.ACC_PRIVATE) | (node.version > Opcodes.V1_8 ? 0 : Opcodes.ACC_FINAL) | Opcodes.ACC_STATIC, stringArrayName, "[Ljava/lang/String;", null, null));
+                    MethodNode clInit = NodeUtils.getMethod(node, "<clinit>");
+                    if (clInit == null) {
+                        clInit = new MethodNode(Opcodes.ACC_STATIC, "<clinit>", "()V", null, new String[0]);
+                        node.methods.add(clInit);
+                    }
+                    if (clInit.instructions == null)
+                        clInit.instructions = new InsnList();
 
 
-                InsnList toAdd = new InsnList();
+                    InsnList toAdd = new InsnList();
 
 //            if (clInit.instructions.getFirst() == null)
 //                clInit.instructions.insert(NodeUtils.generateIntPush(i));
 //            else
-                toAdd.add(NodeUtils.generateIntPush(slot));
+                    toAdd.add(NodeUtils.generateIntPush(slot));
 
-                toAdd.add(new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/String"));
+                    toAdd.add(new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/String"));
 //            toAdd.insert(new IntInsnNode(Opcodes.NEWARRAY, 0));
-                toAdd.add(new FieldInsnNode(Opcodes.PUTSTATIC, node.name, stringArrayName, "[Ljava/lang/String;"));
+                    toAdd.add(new FieldInsnNode(Opcodes.PUTSTATIC, node.name, stringArrayName, "[Ljava/lang/String;"));
 
-                for (int j = 0; j < slot; j++) {
-                    IStringEncryptionAlgorithm processor = algorithmList.get(random.nextInt(algorithmList.size()));
+                    for (int j = 0; j < slot; j++) {
+                        IStringEncryptionAlgorithm processor = algorithmList.get(random.nextInt(algorithmList.size()));
 
-                    String name;
+                        String name;
 
-                    if (!encryptionMethodMap.containsKey(processor)) {
-                        encryptionMethodMap.put(processor, name = NameUtils.generateMethodName(node, "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;"));
-                    } else {
-                        name = encryptionMethodMap.get(processor);
-                    }
+                        if (!encryptionMethodMap.containsKey(processor)) {
+                            encryptionMethodMap.put(processor, name = NameUtils.generateMethodName(node, "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;"));
+                        } else {
+                            name = encryptionMethodMap.get(processor);
+                        }
 
-                    LabelNode label = new LabelNode(new Label());
-                    toAdd.add(label);
-                    toAdd.add(new LineNumberNode(j, label));
-                    toAdd.add(new FieldInsnNode(Opcodes.GETSTATIC, node.name, stringArrayName, "[Ljava/lang/String;"));
-                    toAdd.add(NodeUtils.generateIntPush(j));
+                        LabelNode label = new LabelNode(new Label());
+                        toAdd.add(label);
+                        toAdd.add(new LineNumberNode(j, label));
+                        toAdd.add(new FieldInsnNode(Opcodes.GETSTATIC, node.name, stringArrayName, "[Ljava/lang/String;"));
+                        toAdd.add(NodeUtils.generateIntPush(j));
 //                toAdd.add(getInstructions(integerList.get(j)));
-                    String key = StringUtils.generateString(5);
-                    toAdd.add(new LdcInsnNode(processor.encrypt(arrayMap.get(j), key)));
-                    toAdd.add(new LdcInsnNode(key));
+                        String key = StringUtils.generateString(5);
+                        toAdd.add(new LdcInsnNode(processor.encrypt(arrayMap.get(j), key)));
+                        toAdd.add(new LdcInsnNode(key));
 //                    System.out.println(name);
-                    toAdd.add(new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, name, "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;", false));
+                        toAdd.add(new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, name, "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;", false));
 
-                    toAdd.add(new InsnNode(Opcodes.AASTORE));
-                }
+                        toAdd.add(new InsnNode(Opcodes.AASTORE));
+                    }
 
-                MethodNode generateStrings = new MethodNode(((node.access & Opcodes.ACC_INTERFACE) != 0 ? Opcodes.ACC_PUBLIC : Opcodes.ACC_PRIVATE) | Opcodes.ACC_STATIC, NameUtils.generateMethodName(node, "()V"), "()V", null, new String[0]);
-                generateStrings.instructions = toAdd;
-                generateStrings.instructions.add(new InsnNode(Opcodes.RETURN));
-                generateStrings.maxStack = 6;
-                node.methods.add(generateStrings);
-
-                if (clInit.instructions == null || clInit.instructions.getFirst() == null) {
-                    clInit.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, generateStrings.name, generateStrings.desc, false));
-                    clInit.instructions.add(new InsnNode(Opcodes.RETURN));
-                } else {
-                    clInit.instructions.insertBefore(clInit.instructions.getFirst(), new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, generateStrings.name, generateStrings.desc, false));
-                }
+                    MethodNode generateStrings = new MethodNode(((node.access & Opcodes.ACC_INTERFACE) != 0 ? Opcodes.ACC_PUBLIC : Opcodes.ACC_PRIVATE) | Opcodes.ACC_STATIC, NameUtils.generateMethodName(node, "()V"), "()V", null, new String[0]);
+                    generateStrings.instructions = toAdd;
+                    generateStrings.instructions.add(new InsnNode(Opcodes.RETURN));
+                    generateStrings.maxStack = 6;
+                    node.methods.add(generateStrings);
 
-                if (hideStrings)
-                    hideStrings(node, generateStrings);
+                    if (clInit.instructions == null || clInit.instructions.getFirst() == null) {
+                        clInit.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, generateStrings.name, generateStrings.desc, false));
+                        clInit.instructions.add(new InsnNode(Opcodes.RETURN));
+                    } else {
+                        clInit.instructions.insertBefore(clInit.instructions.getFirst(), new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, generateStrings.name, generateStrings.desc, false));
+                    }
+
+                    if (hideStrings)
+                        hideStrings(node, generateStrings);
 
+                }
             }
-        }
 
-        for (Map.Entry<IStringEncryptionAlgorithm, String> iStringEncryptionAlgorithmStringEntry : encryptionMethodMap.entrySet()) {
-            try {
-                MethodNode method = NodeUtils.getMethod(NodeUtils.toNode(iStringEncryptionAlgorithmStringEntry.getKey().getClass().getName()), "decrypt");
+            for (Map.Entry<IStringEncryptionAlgorithm, String> iStringEncryptionAlgorithmStringEntry : encryptionMethodMap.entrySet()) {
+                try {
+                    MethodNode method = NodeUtils.getMethod(NodeUtils.toNode(iStringEncryptionAlgorithmStringEntry.getKey().getClass().getName()), "decrypt");
 
-                if (method != null) {
-                    method.access = Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC;
-                    method.name = iStringEncryptionAlgorithmStringEntry.getValue();
-                    node.methods.add(method);
-                } else {
-                    throw new Error("Decryption method of " + iStringEncryptionAlgorithmStringEntry.getKey().getClass().getSimpleName() + " wasn't found");
+                    if (method != null) {
+                        method.access = Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC;
+                        method.name = iStringEncryptionAlgorithmStringEntry.getValue();
+                        node.methods.add(method);
+                    } else {
+                        throw new Error("Decryption method of " + iStringEncryptionAlgorithmStringEntry.getKey().getClass().getSimpleName() + " wasn't found");
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
-        }
 
-        inst.setWorkDone();
+            inst.setWorkDone();
+        }
     }
 
 
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.processors;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import me.superblaubeere27.jobf.IStreamingProcessor;
+import me.superblaubeere27.jobf.JObf;
+import me.superblaubeere27.jobf.ProcessorCallback;
+import me.superblaubeere27.jobf.processors.encryption.string.AESEncryptionAlgorithm;
+import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
+import me.superblaubeere27.jobf.utils.values.EnabledValue;
+import me.superblaubeere27.jobf.utils.values.StringValue;
+import org.objectweb.asm.*;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+/**
+ * Embeds a watermark which can be extracted by the watermark module ({@code --extract}). It uses the same format:
+ * The magic bytes followed by the AES encrypted watermark are added to the constant pool of every class.
+ * <p>
+ * The marker is the name of an empty attribute, so it is written with the class instead of rewriting the output
+ * in a second pass. The JVM ignores unknown attributes.
+ */
+public class WatermarkProcessor implements IStreamingProcessor {
+    private static final String PROCESSOR_NAME = "Watermark";
+
+    private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, DeprecationLevel.OK, false);
+    private StringValue watermark = new StringValue(PROCESSOR_NAME, "Watermark", "The text which is embedded, e.g. the name of the customer", DeprecationLevel.OK, "");
+    private StringValue config = new StringValue(PROCESSOR_NAME, "Config", "A config which was generated by the watermark module (--generateConfig). Overrides the key and the magic bytes", DeprecationLevel.OK, "");
+    private StringValue key = new StringValue(PROCESSOR_NAME, "Key", DeprecationLevel.OK, "");
+    private StringValue magicBytes = new StringValue(PROCESSOR_NAME, "Magic Bytes", DeprecationLevel.OK, "");
+
+    /**
+     * The settings the marker was created with, the values change between the jobs of a daemon
+     */
+    private String markerSettings;
+    private String marker;
+
+    @Override
+    public void process(ProcessorCallback callback, ClassNode node) {
+        if (!enabled.getObject()) return;
+
+        String marker = getMarker();
+
+        if (marker == null) return;
+
+        if (node.attrs == null) node.attrs = new ArrayList<>();
+
+        node.attrs.add(new MarkerAttribute(marker));
+    }
+
+    @Override
+    public ClassVisitor createVisitor(ProcessorCallback callback, ClassVisitor cv) {
+        if (!enabled.getObject()) return cv;
+
+        String marker = getMarker();
+
+        if (marker == null) return cv;
+
+        return new ClassVisitor(Opcodes.ASM7, cv) {
+            @Override
+            public void visitEnd() {
+                super.visitAttribute(new MarkerAttribute(marker));
+                super.visitEnd();
+            }
+        };
+    }
+
+    /**
+     * @return the magic bytes followed by the encrypted watermark or null if the processor isn't configured correctly
+     */
+    private synchronized String getMarker() {
+        String settings = watermark.getObject() + '\n' + config.getObject() + '\n' + key.getObject() + '\n' + magicBytes.getObject();
+
+        if (settings.equals(markerSettings)) return marker;
+
+        markerSettings = settings;
+        marker = null;
+
+        String key = this.key.getObject();
+        String magicBytes = this.magicBytes.getObject();
+
+        if (!config.getObject().isEmpty()) {
+            try {
+                JsonObject object = new JsonParser().parse(new String(Files.readAllBytes(new File(config.getObject()).toPath()), StandardCharsets.UTF_8)).getAsJsonObject();
+
+                if (!object.has("key") || !object.has("magicBytes")) throw new IOException("'key' or 'magicBytes' is missing");
+
+                key = object.get("key").getAsString();
+                magicBytes = object.get("magicBytes").getAsString();
+            } catch (IOException | RuntimeException e) {
+                JObf.log.severe("[" + PROCESSOR_NAME + "] Failed to read the config " + config.getObject() + ": " + e);
+                return null;
+            }
+        }
+
+        if (key.isEmpty() || magicBytes.isEmpty()) {
+            JObf.log.severe("[" + PROCESSOR_NAME + "] The key and the magic bytes have to be set, no watermark is added");
+            return null;
+        }
+
+        marker = magicBytes + new AESEncryptionAlgorithm().encrypt(watermark.getObject(), key);
+
+        return marker;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled.getObject();
+    }
+
+    /**
+     * An attribute without content, only its name is added to the constant pool
+     */
+    private static class MarkerAttribute extends Attribute {
+        MarkerAttribute(String marker) {
+            super(marker);
+        }
+
+        @Override
+        protected ByteVector write(ClassWriter classWriter, byte[] code, int codeLength, int maxStack, int maxLocals) {
+            return new ByteVector();
+        }
+    }
+}
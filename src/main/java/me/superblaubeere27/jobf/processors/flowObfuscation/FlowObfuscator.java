@@ -14,18 +14,25 @@ import me.superblaubeere27.jobf.IClassProcessor;
 import me.superblaubeere27.jobf.JObfImpl;
 import me.superblaubeere27.jobf.ProcessorCallback;
 import me.superblaubeere27.jobf.processors.NumberObfuscationProcessor;
+import me.superblaubeere27.jobf.utils.BuildRandom;
 import me.superblaubeere27.jobf.utils.NameUtils;
+import me.superblaubeere27.jobf.utils.MethodParallelism;
 import me.superblaubeere27.jobf.utils.NodeUtils;
+import me.superblaubeere27.jobf.utils.profile.ProfileGuidance;
+import me.superblaubeere27.jobf.utils.profile.TransformReport;
 import me.superblaubeere27.jobf.utils.values.BooleanValue;
 import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
 import me.superblaubeere27.jobf.utils.values.EnabledValue;
+import me.superblaubeere27.jobf.utils.values.NumberValue;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import static me.superblaubeere27.jobf.processors.flowObfuscation.LocalVariableMangler.mangleLocalVariables;
@@ -34,7 +41,19 @@ import static me.superblaubeere27.jobf.processors.flowObfuscation.SwitchMangler.
 
 public class FlowObfuscator implements IClassProcessor {
     private static final String PROCESSOR_NAME = "FlowObfuscator";
-    private static Random random = new Random();
+    /**
+     * Every enabled transformation
+     */
+    private static final int LEVEL_FULL = 0;
+    /**
+     * Only transformations which add a few bytes (comparison wrappers, bad concat)
+     */
+    private static final int LEVEL_REDUCED = 1;
+    /**
+     * Only transformations which don't change the size of the method (bad concat)
+     */
+    private static final int LEVEL_MINIMAL = 2;
+    private static Random random = BuildRandom.INSTANCE;
     private JObfImpl inst;
     private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, DeprecationLevel.GOOD, true);
     private BooleanValue mangleComparisions = new BooleanValue(PROCESSOR_NAME, "Mangle Comparisons", "Replaces long, float and double comparisons with method calls", DeprecationLevel.GOOD, true);
@@ -45,6 +64,9 @@ public class FlowObfuscator implements IClassProcessor {
     private BooleanValue mangleSwitchesEnabled = new BooleanValue(PROCESSOR_NAME, "Mangle Switches", "Replaces switch statements with if-else statements", DeprecationLevel.OK, false);
     private BooleanValue mangleReturn = new BooleanValue(PROCESSOR_NAME, "Mangle Return", "!! Needs COMPUTE_FRAMES (See documentation) !!", DeprecationLevel.BAD, false);
     private BooleanValue mangleLocals = new BooleanValue(PROCESSOR_NAME, "Mangle Local Variables", "!! Needs COMPUTE_FRAMES (See documentation) !!", DeprecationLevel.BAD, false);
+    private BooleanValue keepInlinable = new BooleanValue(PROCESSOR_NAME, "Keep Inlinable", "Uses cheaper transformations if a method would grow past the JIT's inlining thresholds", DeprecationLevel.GOOD, false);
+    private NumberValue<Integer> maxInlineSize = new NumberValue<>(PROCESSOR_NAME, "Max Inline Size", "HotSpot's -XX:MaxInlineSize", DeprecationLevel.GOOD, 35);
+    private NumberValue<Integer> freqInlineSize = new NumberValue<>(PROCESSOR_NAME, "Freq Inline Size", "HotSpot's -XX:FreqInlineSize", DeprecationLevel.GOOD, 325);
 
     public FlowObfuscator(JObfImpl inst) {
         this.inst = inst;
@@ -303,79 +325,202 @@ public class FlowObfuscator implements IClassProcessor {
 
         HashMap<Integer, MethodNode> jumpMethodMap = new HashMap<>();
 
-        List<MethodNode> toAdd = new ArrayList<>();
+        List<MethodNode> toAdd = Collections.synchronizedList(new ArrayList<>());
 
-        for (MethodNode method : node.methods) {
-            if (mangleLocals.getObject()) mangleLocalVariables(callback, node, method);
-            if (mangleReturn.getObject()) mangleReturn(callback, method);
-            if (mangleSwitchesEnabled.getObject()) mangleSwitches(method);
-            if (mangleComparisions.getObject())
-                toAdd.addAll(FloatingPointComparisionMangler.mangleComparisions(node, method));
-            //JumpReplacer.process(node, method);
+        ProfileGuidance profileGuidance = inst.getProfileGuidance();
 
+        // The methods are independent, only the generated methods are shared
+        MethodParallelism.forEach(node.methods, i -> {
+            MethodNode method = node.methods.get(i);
+            int level = LEVEL_FULL;
 
-            for (AbstractInsnNode abstractInsnNode : method.instructions.toArray()) {
-                if (badPop.getObject() && abstractInsnNode instanceof JumpInsnNode && abstractInsnNode.getOpcode() == Opcodes.GOTO) {
-                    method.instructions.insertBefore(abstractInsnNode, new LdcInsnNode(""));
-                    method.instructions.insertBefore(abstractInsnNode, new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/String", "length", "()I", false));
-                    method.instructions.insertBefore(abstractInsnNode, new InsnNode(Opcodes.POP));
+            if (callback.getExclusions().isExcluded(this, node, method)) return;
+
+            // Hot methods only get transformations which don't slow them down
+            if (profileGuidance.isHot(node, method)) {
+                if (profileGuidance.isSkippingHotMethods()) {
+                    profileGuidance.relaxed(PROCESSOR_NAME, node, method, "skipped");
+                    return;
+                }
+                profileGuidance.relaxed(PROCESSOR_NAME, node, method, "only Bad Concat applied");
+                level = LEVEL_MINIMAL;
+            }
+
+            int budget = keepInlinable.getObject() ? getInliningBudget(node, method) : -1;
+
+            if (budget == -1) {
+                Attempt attempt = new Attempt(jumpMethodMap);
+
+                obfuscateMethod(callback, node, method, level, attempt);
+                attempt.merge(toAdd);
+                return;
+            }
+
+            int originalSize = NodeUtils.getCodeSize(method);
+            MethodNode original = NodeUtils.copyMethod(method);
+            Attempt attempt = new Attempt(jumpMethodMap);
+
+            obfuscateMethod(callback, node, method, level, attempt);
+
+            // Retry with cheaper transformations until the method is small enough to be inlined again
+            while (NodeUtils.getCodeSize(method) > budget) {
+                method = NodeUtils.copyMethod(original);
+                node.methods.set(i, method);
+
+                // The methods which were generated for the discarded attempt aren't used
+                attempt = null;
+
+                if (level == LEVEL_MINIMAL) {
+                    TransformReport.add(PROCESSOR_NAME, node.name + "." + method.name + method.desc, String.format("left untouched to stay inlinable (%d bytes, limit %d)", originalSize, budget));
+                    break;
+                }
+
+                level++;
+
+                attempt = new Attempt(jumpMethodMap);
+
+                obfuscateMethod(callback, node, method, level, attempt);
+
+                if (NodeUtils.getCodeSize(method) <= budget) {
+                    TransformReport.add(PROCESSOR_NAME, node.name + "." + method.name + method.desc, String.format("%s transformations to stay inlinable (%d -> %d bytes, limit %d)", level == LEVEL_REDUCED ? "reduced" : "minimal", originalSize, NodeUtils.getCodeSize(method), budget));
                 }
-                if (badPop.getObject() && abstractInsnNode.getOpcode() == Opcodes.POP) {
-                    method.instructions.insertBefore(abstractInsnNode, new LdcInsnNode(""));
-                    method.instructions.insertBefore(abstractInsnNode, new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/String", "length", "()I", false));
-                    method.instructions.insert(abstractInsnNode, new InsnNode(Opcodes.POP2));
-                    method.instructions.remove(abstractInsnNode);
+            }
+
+            if (attempt != null) attempt.merge(toAdd);
+        });
+
+        node.methods.addAll(jumpMethodMap.values());
+        node.methods.addAll(toAdd);
+
+        inst.setWorkDone();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled.getObject();
+    }
+
+    /**
+     * @return the inlining threshold which the method was below before the processors were applied or -1 if it was too
+     * large to be inlined anyway
+     */
+    private int getInliningBudget(ClassNode node, MethodNode method) {
+        if (!NodeUtils.isMethodValid(method) || method.name.equals("<clinit>")) return -1;
+
+        int size = inst.getOriginalCodeSize(node, method);
+
+        if (size <= maxInlineSize.getObject()) return maxInlineSize.getObject();
+        if (size <= freqInlineSize.getObject()) return freqInlineSize.getObject();
+
+        return -1;
+    }
+
+    private void obfuscateMethod(ProcessorCallback callback, ClassNode node, MethodNode method, int level, Attempt attempt) {
+        if (level == LEVEL_FULL && mangleLocals.getObject()) mangleLocalVariables(callback, node, method);
+        if (level == LEVEL_FULL && mangleReturn.getObject()) mangleReturn(callback, node, method);
+        if (level == LEVEL_FULL && mangleSwitchesEnabled.getObject()) mangleSwitches(node, method);
+        if (level <= LEVEL_REDUCED && mangleComparisions.getObject())
+            attempt.generated.addAll(FloatingPointComparisionMangler.mangleComparisions(node, method));
+        //JumpReplacer.process(node, method);
+
+
+        for (AbstractInsnNode abstractInsnNode : method.instructions.toArray()) {
+            if (level == LEVEL_FULL && badPop.getObject() && abstractInsnNode instanceof JumpInsnNode && abstractInsnNode.getOpcode() == Opcodes.GOTO) {
+                method.instructions.insertBefore(abstractInsnNode, new LdcInsnNode(""));
+                method.instructions.insertBefore(abstractInsnNode, new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/String", "length", "()I", false));
+                method.instructions.insertBefore(abstractInsnNode, new InsnNode(Opcodes.POP));
+            }
+            if (level == LEVEL_FULL && badPop.getObject() && abstractInsnNode.getOpcode() == Opcodes.POP) {
+                method.instructions.insertBefore(abstractInsnNode, new LdcInsnNode(""));
+                method.instructions.insertBefore(abstractInsnNode, new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/String", "length", "()I", false));
+                method.instructions.insert(abstractInsnNode, new InsnNode(Opcodes.POP2));
+                method.instructions.remove(abstractInsnNode);
+            }
+            if (level == LEVEL_FULL && replaceGoto.getObject() && abstractInsnNode instanceof JumpInsnNode && abstractInsnNode.getOpcode() == Opcodes.GOTO) {
+                JumpInsnNode insnNode = (JumpInsnNode) abstractInsnNode;
+                final InsnList insnList = new InsnList();
+                insnList.add(ifGoto(insnNode.label, method, Type.getReturnType(method.desc)));
+                method.instructions.insert(insnNode, insnList);
+                method.instructions.remove(insnNode);
+            }
+            if (abstractInsnNode instanceof MethodInsnNode && badConcat.getObject()) {
+                MethodInsnNode insnNode = (MethodInsnNode) abstractInsnNode;
+
+                if (insnNode.owner.equals("java/lang/StringBuilder") && insnNode.name.equals("toString")) {
+                    method.instructions.insert(insnNode, new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/String", "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;", false));
+                    method.instructions.remove(insnNode);
                 }
-                if (replaceGoto.getObject() && abstractInsnNode instanceof JumpInsnNode && abstractInsnNode.getOpcode() == Opcodes.GOTO) {
-                    JumpInsnNode insnNode = (JumpInsnNode) abstractInsnNode;
+            }
+            if (level <= LEVEL_REDUCED && replaceIf.getObject() && abstractInsnNode instanceof JumpInsnNode && (abstractInsnNode.getOpcode() >= Opcodes.IFEQ && abstractInsnNode.getOpcode() <= Opcodes.IF_ACMPNE || abstractInsnNode.getOpcode() >= Opcodes.IFNULL && abstractInsnNode.getOpcode() <= Opcodes.IFNONNULL)) {
+                JumpInsnNode insnNode = (JumpInsnNode) abstractInsnNode;
+
+                MethodNode wrapper = attempt.getIfWrapper(node, insnNode.getOpcode());
+
+                if (wrapper != null) {
                     final InsnList insnList = new InsnList();
-                    insnList.add(ifGoto(insnNode.label, method, Type.getReturnType(method.desc)));
+                    insnList.add(NodeUtils.methodCall(node, wrapper));
+                    insnList.add(new JumpInsnNode(Opcodes.IFEQ, insnNode.label));
                     method.instructions.insert(insnNode, insnList);
                     method.instructions.remove(insnNode);
                 }
-                if (abstractInsnNode instanceof MethodInsnNode && badConcat.getObject()) {
-                    MethodInsnNode insnNode = (MethodInsnNode) abstractInsnNode;
+            }
+//            if (abstractInsnNode instanceof MethodInsnNode || abstractInsnNode instanceof FieldInsnNode) {
+//                method.instructions.insertBefore(abstractInsnNode, new LdcInsnNode(""));
+//                method.instructions.insertBefore(abstractInsnNode, new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/String", "length", "()I", false));
+//                method.instructions.insertBefore(abstractInsnNode, new InsnNode(Opcodes.POP));
+//            }
+        }
 
-                    if (insnNode.owner.equals("java/lang/StringBuilder") && insnNode.name.equals("toString")) {
-                        method.instructions.insert(insnNode, new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/String", "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;", false));
-                        method.instructions.remove(insnNode);
-                    }
-                }
-                if (replaceIf.getObject() && abstractInsnNode instanceof JumpInsnNode && (abstractInsnNode.getOpcode() >= Opcodes.IFEQ && abstractInsnNode.getOpcode() <= Opcodes.IF_ACMPNE || abstractInsnNode.getOpcode() >= Opcodes.IFNULL && abstractInsnNode.getOpcode() <= Opcodes.IFNONNULL)) {
-                    JumpInsnNode insnNode = (JumpInsnNode) abstractInsnNode;
-
-                    MethodNode wrapper = jumpMethodMap.get(insnNode.getOpcode());
-
-                    if (wrapper == null) {
-                        wrapper = ifWrapper(insnNode.getOpcode());
-
-                        if (wrapper != null) {
-                            wrapper.name = NameUtils.generateMethodName(node, wrapper.desc);
-                            jumpMethodMap.put(insnNode.getOpcode(), wrapper);
-                        }
-                    }
-
-                    if (wrapper != null) {
-                        final InsnList insnList = new InsnList();
-                        insnList.add(NodeUtils.methodCall(node, wrapper));
-                        insnList.add(new JumpInsnNode(Opcodes.IFEQ, insnNode.label));
-                        method.instructions.insert(insnNode, insnList);
-                        method.instructions.remove(insnNode);
-                    }
+//        method.desc = method.desc.replace('Z', 'I');
+    }
+
+    /**
+     * Collects the methods which are generated while a method is obfuscated, they are only added to the class if
+     * the result is kept
+     */
+    private class Attempt {
+        private final HashMap<Integer, MethodNode> jumpMethodMap;
+        private final HashMap<Integer, MethodNode> jumpMethods = new HashMap<>();
+        private final List<MethodNode> generated = new ArrayList<>();
+
+        private Attempt(HashMap<Integer, MethodNode> jumpMethodMap) {
+            this.jumpMethodMap = jumpMethodMap;
+        }
+
+        /**
+         * @return the wrapper of the class or a new wrapper, null if there is none for the opcode
+         */
+        private MethodNode getIfWrapper(ClassNode node, int opcode) {
+            MethodNode wrapper;
+
+            synchronized (jumpMethodMap) {
+                wrapper = jumpMethodMap.get(opcode);
+            }
+
+            if (wrapper == null) wrapper = jumpMethods.get(opcode);
+
+            if (wrapper == null) {
+                wrapper = ifWrapper(opcode);
+
+                if (wrapper != null) {
+                    wrapper.name = NameUtils.generateMethodName(node, wrapper.desc);
+                    jumpMethods.put(opcode, wrapper);
                 }
-//                if (abstractInsnNode instanceof MethodInsnNode || abstractInsnNode instanceof FieldInsnNode) {
-//                    method.instructions.insertBefore(abstractInsnNode, new LdcInsnNode(""));
-//                    method.instructions.insertBefore(abstractInsnNode, new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/String", "length", "()I", false));
-//                    method.instructions.insertBefore(abstractInsnNode, new InsnNode(Opcodes.POP));
-//                }
             }
-//            method.desc = method.desc.replace('Z', 'I');
+
+            return wrapper;
         }
 
-        node.methods.addAll(jumpMethodMap.values());
-        node.methods.addAll(toAdd);
+        private void merge(List<MethodNode> toAdd) {
+            synchronized (jumpMethodMap) {
+                for (Map.Entry<Integer, MethodNode> entry : jumpMethods.entrySet()) {
+                    // Another method might have created a wrapper for the opcode in the meantime, both are used then
+                    if (jumpMethodMap.putIfAbsent(entry.getKey(), entry.getValue()) != null) toAdd.add(entry.getValue());
+                }
+            }
 
-        inst.setWorkDone();
+            toAdd.addAll(generated);
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -11,12 +11,14 @@
 package me.superblaubeere27.jobf.processors.flowObfuscation;
 
 import me.superblaubeere27.jobf.ProcessorCallback;
+import me.superblaubeere27.jobf.utils.MethodAnalysis;
 import me.superblaubeere27.jobf.utils.NodeUtils;
 import me.superblaubeere27.jobf.utils.VariableProvider;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
-import org.objectweb.asm.tree.analysis.*;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceValue;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -25,22 +27,11 @@ import java.util.Map;
 
 class LocalVariableMangler {
     static void mangleLocalVariables(ProcessorCallback callback, ClassNode node, MethodNode method) {
-        int maxStackSize = method.maxStack;
-        int maxLocals = method.maxLocals;
-        method.maxStack = 1337;
-        method.maxLocals = 1337;
-
-        Frame<SourceValue>[] frames;
-        try {
-            frames = new Analyzer<>(new SourceInterpreter()).analyze(node.name, method);
-        } catch (AnalyzerException e) {
-            throw new RuntimeException(e);
-        }
+        MethodAnalysis analysis = new MethodAnalysis(node.name, method);
 
-        method.maxStack = maxStackSize;
-        method.maxLocals = maxLocals;
+        Frame<SourceValue>[] frames = analysis.getFrames();
 
-        VariableProvider provider = new VariableProvider(method);
+        VariableProvider provider = analysis.createVariableProvider();
 
         // Map of local variables and their types. They are added if the type of the variable is double, float, int or long
         HashMap<Integer, Type> localVarMap = new HashMap<>();
@@ -238,8 +229,9 @@ class LocalVariableMangler {
         }
 
 
-        if (localVarMap.size() > 0)
+        if (localVarMap.size() > 0) {
             method.instructions.insertBefore(method.instructions.getFirst(), initialize);
+        }
 
         callback.setForceComputeFrames();
     }
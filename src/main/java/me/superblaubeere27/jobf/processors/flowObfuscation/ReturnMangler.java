@@ -11,6 +11,7 @@
 package me.superblaubeere27.jobf.processors.flowObfuscation;
 
 import me.superblaubeere27.jobf.ProcessorCallback;
+import me.superblaubeere27.jobf.utils.MethodAnalysis;
 import me.superblaubeere27.jobf.utils.VariableProvider;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
@@ -19,10 +20,10 @@ import org.objectweb.asm.tree.*;
 import java.lang.reflect.Modifier;
 
 class ReturnMangler {
-    static void mangleReturn(ProcessorCallback callback, MethodNode node) {
+    static void mangleReturn(ProcessorCallback callback, ClassNode owner, MethodNode node) {
         if (Modifier.isAbstract(node.access) || Modifier.isNative(node.access)) return;
 
-        VariableProvider variableProvider = new VariableProvider(node);
+        VariableProvider variableProvider = new MethodAnalysis(owner.name, node).createVariableProvider();
 
         LabelNode returnLabel = new LabelNode();
         Type returnType = Type.getReturnType(node.desc);
@@ -11,6 +11,7 @@
 package me.superblaubeere27.jobf.processors.flowObfuscation;
 
 import me.superblaubeere27.jobf.processors.NumberObfuscationProcessor;
+import me.superblaubeere27.jobf.utils.MethodAnalysis;
 import me.superblaubeere27.jobf.utils.VariableProvider;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
@@ -20,11 +21,11 @@ import java.util.List;
 
 class SwitchMangler {
 
-    static void mangleSwitches(MethodNode node) {
+    static void mangleSwitches(ClassNode owner, MethodNode node) {
         if (Modifier.isAbstract(node.access) || Modifier.isNative(node.access))
             return;
 
-        VariableProvider provider = new VariableProvider(node);
+        VariableProvider provider = new MethodAnalysis(owner.name, node).createVariableProvider();
         int resultSlot = provider.allocateVar();
 
         for (AbstractInsnNode abstractInsnNode : node.instructions.toArray()) {
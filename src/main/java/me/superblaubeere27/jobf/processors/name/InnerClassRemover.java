@@ -10,13 +10,15 @@
 
 package me.superblaubeere27.jobf.processors.name;
 
-import me.superblaubeere27.jobf.IClassProcessor;
+import me.superblaubeere27.jobf.IStreamingProcessor;
 import me.superblaubeere27.jobf.JObfImpl;
 import me.superblaubeere27.jobf.ProcessorCallback;
 import me.superblaubeere27.jobf.utils.NameUtils;
 import me.superblaubeere27.jobf.utils.values.BooleanValue;
 import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
 import me.superblaubeere27.jobf.utils.values.EnabledValue;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.commons.ClassRemapper;
 import org.objectweb.asm.tree.ClassNode;
 
@@ -26,7 +28,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
-public class InnerClassRemover implements INameObfuscationProcessor, IClassProcessor {
+public class InnerClassRemover implements INameObfuscationProcessor, IStreamingProcessor {
     private static final String PROCESSOR_NAME = "InnerClassRemover";
     private static Pattern innerClasses = Pattern.compile(".*[A-Za-z0-9]+\\$[0-9]+");
     private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, DeprecationLevel.GOOD, true);
@@ -40,6 +42,7 @@ public class InnerClassRemover implements INameObfuscationProcessor, IClassProce
         final List<ClassNode> classNodes = new ArrayList<>(JObfImpl.classes.values());
 
         final Map<String, ClassNode> updatedClasses = new HashMap<>();
+        final Map<String, String> renamed = new HashMap<>();
         final CustomRemapper remapper = new CustomRemapper();
 
         for (ClassNode classNode : classNodes) {
@@ -71,9 +74,11 @@ public class InnerClassRemover implements INameObfuscationProcessor, IClassProce
 //                Fume.fume.obfuscator.classTransforms.put(classNode.name, newNode.name);
 
             updatedClasses.put(newNode.name + ".class", newNode);
+            renamed.put(classNode.name, newNode.name);
         }
 
         updatedClasses.forEach((s, classNode) -> JObfImpl.classes.put(s, classNode));
+        inst.classesRenamed(renamed);
     }
 
     @Override
@@ -86,4 +91,24 @@ public class InnerClassRemover implements INameObfuscationProcessor, IClassProce
         node.outerMethod = null;
         node.outerMethodDesc = null;
     }
+
+    @Override
+    public ClassVisitor createVisitor(ProcessorCallback callback, ClassVisitor cv) {
+        if (!isEnabled()) return cv;
+
+        return new ClassVisitor(Opcodes.ASM7, cv) {
+            @Override
+            public void visitOuterClass(String owner, String name, String descriptor) {
+            }
+
+            @Override
+            public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            }
+        };
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled.getObject() && removeMetadata.getObject();
+    }
 }
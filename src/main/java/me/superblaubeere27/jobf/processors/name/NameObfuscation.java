@@ -14,6 +14,7 @@ import me.superblaubeere27.jobf.JObf;
 import me.superblaubeere27.jobf.JObfImpl;
 import me.superblaubeere27.jobf.utils.ClassTree;
 import me.superblaubeere27.jobf.utils.NameUtils;
+import me.superblaubeere27.jobf.utils.ProcessorExclusions;
 import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
 import me.superblaubeere27.jobf.utils.values.EnabledValue;
 import org.objectweb.asm.Opcodes;
@@ -28,6 +29,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class NameObfuscation implements INameObfuscationProcessor {
@@ -37,6 +39,10 @@ public class NameObfuscation implements INameObfuscationProcessor {
 
     private String repackageName = "obfuscator";
     private boolean repackage = false;
+    /**
+     * The members which are annotated with {@code @Exclude} (owner.name + desc for methods, owner.name.desc for fields)
+     */
+    private HashSet<String> excludedMembers = new HashSet<>();
 
     private void putMapping(HashMap<String, String> mappings, String str, String str1) {
         mappings.put(str, str1);
@@ -54,9 +60,22 @@ public class NameObfuscation implements INameObfuscationProcessor {
 
         JObf.log.info("Building Hierarchy...");
 
+        excludedMembers = new HashSet<>();
+
         for (ClassNode value : nodes.values()) {
             ClassWrapper cw = new ClassWrapper(value, false, new byte[0]);
 
+            for (MethodNode method : value.methods) {
+                if (ProcessorExclusions.isExcluded(this, method.visibleAnnotations, method.invisibleAnnotations)) {
+                    excludedMembers.add(value.name + '.' + method.name + method.desc);
+                }
+            }
+            for (FieldNode field : value.fields) {
+                if (ProcessorExclusions.isExcluded(this, field.visibleAnnotations, field.invisibleAnnotations)) {
+                    excludedMembers.add(value.name + '.' + field.name + '.' + field.desc);
+                }
+            }
+
             classWrappers.add(cw);
 
             JObfImpl.INSTANCE.buildHierarchy(cw, null);
@@ -133,6 +152,10 @@ public class NameObfuscation implements INameObfuscationProcessor {
 
         Remapper simpleRemapper = new MemberRemapper(mappings);
 
+        inst.getProfileGuidance().remap(simpleRemapper);
+
+        Map<String, String> renamed = new HashMap<>();
+
         for (ClassWrapper classWrapper : classWrappers) {
             ClassNode classNode = classWrapper.classNode;
 
@@ -168,17 +191,22 @@ public class NameObfuscation implements INameObfuscationProcessor {
 //            JObfImpl.INSTANCE.getClassPath().put();
 //            this.getClasses().put(classWrapper.classNode.name, classWrapper);
             JObfImpl.INSTANCE.getClassPath().put(classWrapper.classNode.name, classWrapper);
+
+            renamed.put(classWrapper.originalName, classWrapper.classNode.name);
         }
+
+        inst.classesRenamed(renamed);
         JObf.log.info(String.format("Finished applying mappings (%dms)", (System.currentTimeMillis() - current)));
     }
 
     private boolean excluded(ClassWrapper classWrapper) {
-        return !JObfImpl.INSTANCE.script.remapClass(classWrapper.classNode);
+        ClassNode node = classWrapper.classNode;
+
+        return !JObfImpl.INSTANCE.isRemappingEnabled(node) || ProcessorExclusions.isExcluded(this, node.visibleAnnotations, node.invisibleAnnotations);
     }
 
     private boolean excluded(String s) {
-        // TODO Check excluded
-        return false;
+        return excludedMembers.contains(s);
     }
 
 
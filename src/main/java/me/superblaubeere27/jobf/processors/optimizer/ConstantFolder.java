@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.processors.optimizer;
+
+import me.superblaubeere27.jobf.utils.NodeUtils;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+class ConstantFolder {
+
+    /**
+     * Folds integer and long arithmetic and conditional jumps on constants
+     */
+    static boolean fold(MethodNode method) {
+        boolean changed = false;
+
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            AbstractInsnNode b = PeepholeOptimizer.getPreviousInBlock(insn);
+
+            if (b == null) continue;
+
+            AbstractInsnNode a = PeepholeOptimizer.getPreviousInBlock(b);
+            int opcode = insn.getOpcode();
+
+            switch (opcode) {
+                case Opcodes.INEG:
+                case Opcodes.I2B:
+                case Opcodes.I2C:
+                case Opcodes.I2S:
+                    if (!NodeUtils.isIntegerNumber(b)) break;
+
+                    replace(method, insn, NodeUtils.generateIntPush(foldInt(opcode, 0, NodeUtils.getIntValue(b))), b);
+                    changed = true;
+                    break;
+                case Opcodes.I2L:
+                    if (!NodeUtils.isIntegerNumber(b)) break;
+
+                    replace(method, insn, generateLongPush(NodeUtils.getIntValue(b)), b);
+                    changed = true;
+                    break;
+                case Opcodes.L2I:
+                    if (!isLongNumber(b)) break;
+
+                    replace(method, insn, NodeUtils.generateIntPush((int) getLongValue(b)), b);
+                    changed = true;
+                    break;
+                case Opcodes.LNEG:
+                    if (!isLongNumber(b)) break;
+
+                    replace(method, insn, generateLongPush(-getLongValue(b)), b);
+                    changed = true;
+                    break;
+                case Opcodes.IADD:
+                case Opcodes.ISUB:
+                case Opcodes.IMUL:
+                case Opcodes.IDIV:
+                case Opcodes.IREM:
+                case Opcodes.ISHL:
+                case Opcodes.ISHR:
+                case Opcodes.IUSHR:
+                case Opcodes.IAND:
+                case Opcodes.IOR:
+                case Opcodes.IXOR:
+                    if (a == null || !NodeUtils.isIntegerNumber(a) || !NodeUtils.isIntegerNumber(b)) break;
+                    // Has to throw an ArithmeticException
+                    if ((opcode == Opcodes.IDIV || opcode == Opcodes.IREM) && NodeUtils.getIntValue(b) == 0) break;
+
+                    replace(method, insn, NodeUtils.generateIntPush(foldInt(opcode, NodeUtils.getIntValue(a), NodeUtils.getIntValue(b))), a, b);
+                    changed = true;
+                    break;
+                case Opcodes.LADD:
+                case Opcodes.LSUB:
+                case Opcodes.LMUL:
+                case Opcodes.LDIV:
+                case Opcodes.LREM:
+                case Opcodes.LAND:
+                case Opcodes.LOR:
+                case Opcodes.LXOR:
+                case Opcodes.LCMP:
+                    if (a == null || !isLongNumber(a) || !isLongNumber(b)) break;
+                    if ((opcode == Opcodes.LDIV || opcode == Opcodes.LREM) && getLongValue(b) == 0) break;
+
+                    long x = getLongValue(a);
+                    long y = getLongValue(b);
+
+                    replace(method, insn, opcode == Opcodes.LCMP ? NodeUtils.generateIntPush(Long.compare(x, y)) : generateLongPush(foldLong(opcode, x, y)), a, b);
+                    changed = true;
+                    break;
+                case Opcodes.LSHL:
+                case Opcodes.LSHR:
+                case Opcodes.LUSHR:
+                    if (a == null || !isLongNumber(a) || !NodeUtils.isIntegerNumber(b)) break;
+
+                    replace(method, insn, generateLongPush(foldLong(opcode, getLongValue(a), NodeUtils.getIntValue(b))), a, b);
+                    changed = true;
+                    break;
+                case Opcodes.IFEQ:
+                case Opcodes.IFNE:
+                case Opcodes.IFLT:
+                case Opcodes.IFGE:
+                case Opcodes.IFGT:
+                case Opcodes.IFLE:
+                    if (!NodeUtils.isIntegerNumber(b)) break;
+
+                    replaceJump(method, (JumpInsnNode) insn, compare(opcode - Opcodes.IFEQ, NodeUtils.getIntValue(b), 0), b);
+                    changed = true;
+                    break;
+                case Opcodes.IF_ICMPEQ:
+                case Opcodes.IF_ICMPNE:
+                case Opcodes.IF_ICMPLT:
+                case Opcodes.IF_ICMPGE:
+                case Opcodes.IF_ICMPGT:
+                case Opcodes.IF_ICMPLE:
+                    if (a == null || !NodeUtils.isIntegerNumber(a) || !NodeUtils.isIntegerNumber(b)) break;
+
+                    replaceJump(method, (JumpInsnNode) insn, compare(opcode - Opcodes.IF_ICMPEQ, NodeUtils.getIntValue(a), NodeUtils.getIntValue(b)), a, b);
+                    changed = true;
+                    break;
+                case Opcodes.IFNULL:
+                case Opcodes.IFNONNULL: {
+                    boolean isNull = b.getOpcode() == Opcodes.ACONST_NULL;
+
+                    if (!isNull && !(b instanceof LdcInsnNode && ((LdcInsnNode) b).cst instanceof String)) break;
+
+                    replaceJump(method, (JumpInsnNode) insn, isNull == (opcode == Opcodes.IFNULL), b);
+                    changed = true;
+                    break;
+                }
+            }
+        }
+
+        return changed;
+    }
+
+    private static int foldInt(int opcode, int x, int y) {
+        switch (opcode) {
+            case Opcodes.INEG:
+                return -y;
+            case Opcodes.I2B:
+                return (byte) y;
+            case Opcodes.I2C:
+                return (char) y;
+            case Opcodes.I2S:
+                return (short) y;
+            case Opcodes.IADD:
+                return x + y;
+            case Opcodes.ISUB:
+                return x - y;
+            case Opcodes.IMUL:
+                return x * y;
+            case Opcodes.IDIV:
+                return x / y;
+            case Opcodes.IREM:
+                return x % y;
+            case Opcodes.ISHL:
+                return x << y;
+            case Opcodes.ISHR:
+                return x >> y;
+            case Opcodes.IUSHR:
+                return x >>> y;
+            case Opcodes.IAND:
+                return x & y;
+            case Opcodes.IOR:
+                return x | y;
+            case Opcodes.IXOR:
+                return x ^ y;
+            default:
+                throw new IllegalArgumentException("Unsupported opcode " + opcode);
+        }
+    }
+
+    private static long foldLong(int opcode, long x, long y) {
+        switch (opcode) {
+            case Opcodes.LADD:
+                return x + y;
+            case Opcodes.LSUB:
+                return x - y;
+            case Opcodes.LMUL:
+                return x * y;
+            case Opcodes.LDIV:
+                return x / y;
+            case Opcodes.LREM:
+                return x % y;
+            case Opcodes.LSHL:
+                return x << y;
+            case Opcodes.LSHR:
+                return x >> y;
+            case Opcodes.LUSHR:
+                return x >>> y;
+            case Opcodes.LAND:
+                return x & y;
+            case Opcodes.LOR:
+                return x | y;
+            case Opcodes.LXOR:
+                return x ^ y;
+            default:
+                throw new IllegalArgumentException("Unsupported opcode " + opcode);
+        }
+    }
+
+    /**
+     * @param condition the offset of the opcode in the order EQ, NE, LT, GE, GT, LE
+     */
+    private static boolean compare(int condition, int x, int y) {
+        switch (condition) {
+            case 0:
+                return x == y;
+            case 1:
+                return x != y;
+            case 2:
+                return x < y;
+            case 3:
+                return x >= y;
+            case 4:
+                return x > y;
+            default:
+                return x <= y;
+        }
+    }
+
+    private static void replace(MethodNode method, AbstractInsnNode insn, AbstractInsnNode replacement, AbstractInsnNode... operands) {
+        for (AbstractInsnNode operand : operands) method.instructions.remove(operand);
+
+        method.instructions.set(insn, replacement);
+    }
+
+    private static void replaceJump(MethodNode method, JumpInsnNode jump, boolean taken, AbstractInsnNode... operands) {
+        for (AbstractInsnNode operand : operands) method.instructions.remove(operand);
+
+        if (taken) {
+            method.instructions.set(jump, new JumpInsnNode(Opcodes.GOTO, jump.label));
+        } else {
+            method.instructions.remove(jump);
+        }
+    }
+
+    private static boolean isLongNumber(AbstractInsnNode insn) {
+        return insn.getOpcode() == Opcodes.LCONST_0 || insn.getOpcode() == Opcodes.LCONST_1
+                || insn instanceof LdcInsnNode && ((LdcInsnNode) insn).cst instanceof Long;
+    }
+
+    private static long getLongValue(AbstractInsnNode insn) {
+        if (insn instanceof LdcInsnNode) return (Long) ((LdcInsnNode) insn).cst;
+
+        return insn.getOpcode() - Opcodes.LCONST_0;
+    }
+
+    private static AbstractInsnNode generateLongPush(long value) {
+        if (value == 0 || value == 1) return new InsnNode((int) (Opcodes.LCONST_0 + value));
+
+        return new LdcInsnNode(value);
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.processors.optimizer;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+class JumpOptimizer {
+    /**
+     * Limits the length of the followed jump chains, loops of GOTOs would never end
+     */
+    private static final int MAX_CHAIN_LENGTH = 16;
+
+    /**
+     * Retargets jumps to GOTOs to the final target, replaces GOTOs to returns with the return and removes jumps to
+     * the next instruction
+     */
+    static boolean optimizeJumps(MethodNode method) {
+        boolean changed = false;
+
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            if (insn instanceof JumpInsnNode) {
+                JumpInsnNode jump = (JumpInsnNode) insn;
+                LabelNode target = followChain(jump.label);
+
+                if (target != jump.label) {
+                    jump.label = target;
+                    changed = true;
+                }
+
+                AbstractInsnNode destination = getFirstInstruction(target);
+
+                if (destination != null && destination == getFirstInstruction(jump.getNext())) {
+                    int opcode = jump.getOpcode();
+
+                    if (opcode == Opcodes.GOTO) {
+                        method.instructions.remove(jump);
+                    } else if (opcode >= Opcodes.IF_ICMPEQ && opcode <= Opcodes.IF_ACMPNE) {
+                        method.instructions.set(jump, new InsnNode(Opcodes.POP2));
+                    } else {
+                        method.instructions.set(jump, new InsnNode(Opcodes.POP));
+                    }
+
+                    changed = true;
+                } else if (jump.getOpcode() == Opcodes.GOTO && destination != null
+                        && (destination.getOpcode() >= Opcodes.IRETURN && destination.getOpcode() <= Opcodes.RETURN || destination.getOpcode() == Opcodes.ATHROW)
+                        && isProtectedBySameHandlers(method, jump, destination)) {
+                    method.instructions.set(jump, new InsnNode(destination.getOpcode()));
+                    changed = true;
+                }
+            } else if (insn instanceof TableSwitchInsnNode) {
+                TableSwitchInsnNode tableSwitch = (TableSwitchInsnNode) insn;
+
+                changed |= followChains(tableSwitch.labels);
+
+                LabelNode dflt = followChain(tableSwitch.dflt);
+
+                changed |= dflt != tableSwitch.dflt;
+                tableSwitch.dflt = dflt;
+            } else if (insn instanceof LookupSwitchInsnNode) {
+                LookupSwitchInsnNode lookupSwitch = (LookupSwitchInsnNode) insn;
+
+                changed |= followChains(lookupSwitch.labels);
+
+                LabelNode dflt = followChain(lookupSwitch.dflt);
+
+                changed |= dflt != lookupSwitch.dflt;
+                lookupSwitch.dflt = dflt;
+            }
+        }
+
+        return changed;
+    }
+
+    private static boolean followChains(List<LabelNode> labels) {
+        boolean changed = false;
+
+        for (int i = 0; i < labels.size(); i++) {
+            LabelNode target = followChain(labels.get(i));
+
+            if (target != labels.get(i)) {
+                labels.set(i, target);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return the label a jump to the given label ends up at if it's followed by GOTOs
+     */
+    private static LabelNode followChain(LabelNode label) {
+        LabelNode target = label;
+
+        for (int i = 0; i < MAX_CHAIN_LENGTH; i++) {
+            AbstractInsnNode insn = getFirstInstruction(target);
+
+            if (insn == null || insn.getOpcode() != Opcodes.GOTO || ((JumpInsnNode) insn).label == target) break;
+
+            target = ((JumpInsnNode) insn).label;
+        }
+
+        return target;
+    }
+
+    /**
+     * A copied ATHROW (or a return, which can throw IllegalMonitorStateException) must be caught by the same handlers
+     * as the original one
+     */
+    private static boolean isProtectedBySameHandlers(MethodNode method, AbstractInsnNode a, AbstractInsnNode b) {
+        int indexA = method.instructions.indexOf(a);
+        int indexB = method.instructions.indexOf(b);
+
+        for (TryCatchBlockNode tryCatchBlock : method.tryCatchBlocks) {
+            int start = method.instructions.indexOf(tryCatchBlock.start);
+            int end = method.instructions.indexOf(tryCatchBlock.end);
+
+            if ((indexA >= start && indexA < end) != (indexB >= start && indexB < end)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the first instruction which is executed at the given node
+     */
+    private static AbstractInsnNode getFirstInstruction(AbstractInsnNode node) {
+        while (node != null && node.getOpcode() == -1) node = node.getNext();
+
+        return node;
+    }
+
+    /**
+     * Removes the instructions which can't be reached from the start of the method or a reachable handler
+     */
+    static boolean removeUnreachableCode(MethodNode method) {
+        InsnList instructions = method.instructions;
+        AbstractInsnNode[] insns = instructions.toArray();
+        boolean[] reachable = new boolean[insns.length];
+
+        Deque<Integer> queue = new ArrayDeque<>();
+
+        queue.add(0);
+
+        while (!queue.isEmpty()) {
+            while (!queue.isEmpty()) {
+                int index = queue.poll();
+
+                if (index >= insns.length || reachable[index]) continue;
+
+                reachable[index] = true;
+
+                AbstractInsnNode insn = insns[index];
+                int opcode = insn.getOpcode();
+
+                if (insn instanceof JumpInsnNode) {
+                    queue.add(instructions.indexOf(((JumpInsnNode) insn).label));
+
+                    if (opcode != Opcodes.GOTO) queue.add(index + 1);
+                } else if (insn instanceof TableSwitchInsnNode) {
+                    queue.add(instructions.indexOf(((TableSwitchInsnNode) insn).dflt));
+
+                    for (LabelNode label : ((TableSwitchInsnNode) insn).labels) queue.add(instructions.indexOf(label));
+                } else if (insn instanceof LookupSwitchInsnNode) {
+                    queue.add(instructions.indexOf(((LookupSwitchInsnNode) insn).dflt));
+
+                    for (LabelNode label : ((LookupSwitchInsnNode) insn).labels) queue.add(instructions.indexOf(label));
+                } else if (!(opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN || opcode == Opcodes.ATHROW)) {
+                    queue.add(index + 1);
+                }
+            }
+
+            // Handlers are reachable if they protect a reachable instruction
+            for (TryCatchBlockNode tryCatchBlock : method.tryCatchBlocks) {
+                int handler = instructions.indexOf(tryCatchBlock.handler);
+
+                if (reachable[handler]) continue;
+
+                for (int i = instructions.indexOf(tryCatchBlock.start); i < instructions.indexOf(tryCatchBlock.end); i++) {
+                    if (reachable[i] && insns[i].getOpcode() != -1) {
+                        queue.add(handler);
+                        break;
+                    }
+                }
+            }
+        }
+
+        boolean changed = false;
+
+        for (int i = 0; i < insns.length; i++) {
+            if (!reachable[i] && insns[i].getOpcode() != -1) {
+                instructions.remove(insns[i]);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+}
@@ -30,10 +30,17 @@ public class Optimizer implements IClassProcessor {
         if (!enabledValue.getObject()) return;
 
         for (MethodNode method : node.methods) {
+            if (callback.getExclusions().isExcluded(this, node, method)) continue;
+
             if (replaceEquals.getObject() || replaceEqualsIgnoreCase.getObject())
                 ComparisionReplacer.replaceComparisons(method, replaceEquals.getObject(), replaceEqualsIgnoreCase.getObject());
             if (optimizeStringCalls.getObject()) StaticStringCallOptimizer.optimize(method);
         }
     }
 
+    @Override
+    public boolean isEnabled() {
+        return enabledValue.getObject();
+    }
+
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.processors.optimizer;
+
+import me.superblaubeere27.jobf.IClassProcessor;
+import me.superblaubeere27.jobf.ProcessorCallback;
+import me.superblaubeere27.jobf.utils.values.BooleanValue;
+import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
+import me.superblaubeere27.jobf.utils.values.EnabledValue;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+/**
+ * Cleans up the code after the other processors ran. Apart from {@link #foldConstants} it only removes code which
+ * has no effect, so opaque predicates, encrypted strings and obfuscated numbers stay intact.
+ */
+public class PeepholeOptimizer implements IClassProcessor {
+    private static final String PROCESSOR_NAME = "PeepholeOptimizer";
+    /**
+     * The optimizations enable each other, every pass has to change something
+     */
+    private static final int MAX_PASSES = 8;
+
+    private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, "Removes redundant code which was left behind by the other processors", DeprecationLevel.OK, false);
+    private BooleanValue removeStackOperations = new BooleanValue(PROCESSOR_NAME, "Remove Redundant Stack Operations", "Removes values which are popped right after they were pushed (e.g. the padding of Bad POP)", DeprecationLevel.GOOD, true);
+    private BooleanValue removeDeadStores = new BooleanValue(PROCESSOR_NAME, "Remove Dead Stores", "Replaces stores to locals which are never read with pops", DeprecationLevel.GOOD, true);
+    private BooleanValue optimizeJumps = new BooleanValue(PROCESSOR_NAME, "Optimize Jumps", "Collapses jump chains and removes jumps to the next instruction", DeprecationLevel.GOOD, true);
+    private BooleanValue removeUnreachableCode = new BooleanValue(PROCESSOR_NAME, "Remove Unreachable Code", DeprecationLevel.GOOD, true);
+    private BooleanValue foldConstants = new BooleanValue(PROCESSOR_NAME, "Fold Constants", "Folds integer arithmetic and conditions on constants, this reverts parts of the Number Obfuscation", DeprecationLevel.OK, false);
+
+    /**
+     * @return the next instruction if no jump can land between them, null otherwise
+     */
+    static AbstractInsnNode getNextInBlock(AbstractInsnNode insn) {
+        AbstractInsnNode next = insn.getNext();
+
+        while (next instanceof LineNumberNode) next = next.getNext();
+
+        return next instanceof LabelNode ? null : next;
+    }
+
+    /**
+     * @return the previous instruction if no jump can land between them, null otherwise
+     */
+    static AbstractInsnNode getPreviousInBlock(AbstractInsnNode insn) {
+        if (insn == null) return null;
+
+        AbstractInsnNode previous = insn.getPrevious();
+
+        while (previous instanceof LineNumberNode) previous = previous.getPrevious();
+
+        return previous instanceof LabelNode ? null : previous;
+    }
+
+    private static boolean hasSubroutines(MethodNode method) {
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            if (insn.getOpcode() == Opcodes.JSR || insn.getOpcode() == Opcodes.RET) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Exception tables mustn't contain empty ranges
+     */
+    private static void removeEmptyTryCatchBlocks(MethodNode method) {
+        method.tryCatchBlocks.removeIf(tryCatchBlock -> {
+            for (AbstractInsnNode insn = tryCatchBlock.start; insn != null && insn != tryCatchBlock.end; insn = insn.getNext()) {
+                if (insn.getOpcode() != -1) return false;
+            }
+
+            return true;
+        });
+    }
+
+    @Override
+    public void process(ProcessorCallback callback, ClassNode node) {
+        if (!enabled.getObject()) return;
+
+        for (MethodNode method : node.methods) {
+            if (method.instructions.size() == 0 || callback.getExclusions().isExcluded(this, node, method) || hasSubroutines(method))
+                continue;
+
+            boolean modified = false;
+            boolean changed;
+            int pass = 0;
+
+            do {
+                changed = false;
+
+                if (foldConstants.getObject()) changed |= ConstantFolder.fold(method);
+                if (removeDeadStores.getObject()) changed |= StackOptimizer.removeDeadStores(method);
+                if (removeStackOperations.getObject()) changed |= StackOptimizer.removeRedundantOperations(method);
+                if (optimizeJumps.getObject()) changed |= JumpOptimizer.optimizeJumps(method);
+                if (removeUnreachableCode.getObject()) changed |= JumpOptimizer.removeUnreachableCode(method);
+
+                modified |= changed;
+            } while (changed && ++pass < MAX_PASSES);
+
+            if (modified) {
+                removeEmptyTryCatchBlocks(method);
+
+                callback.setForceComputeFrames();
+            }
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled.getObject();
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.processors.optimizer;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.util.BitSet;
+
+class StackOptimizer {
+
+    /**
+     * Replaces stores to locals which are never read with pops
+     */
+    static boolean removeDeadStores(MethodNode method) {
+        BitSet read = new BitSet();
+
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            if (insn.getOpcode() >= Opcodes.ILOAD && insn.getOpcode() <= Opcodes.ALOAD)
+                read.set(((VarInsnNode) insn).var);
+        }
+
+        boolean changed = false;
+
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            int opcode = insn.getOpcode();
+
+            if (opcode >= Opcodes.ISTORE && opcode <= Opcodes.ASTORE && !read.get(((VarInsnNode) insn).var)) {
+                boolean wide = opcode == Opcodes.LSTORE || opcode == Opcodes.DSTORE;
+
+                method.instructions.set(insn, new InsnNode(wide ? Opcodes.POP2 : Opcodes.POP));
+                changed = true;
+            } else if (insn instanceof IincInsnNode && !read.get(((IincInsnNode) insn).var)) {
+                method.instructions.remove(insn);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Removes values which are popped right after they were pushed, loads which are stored to the same local and
+     * other operations without an effect
+     */
+    static boolean removeRedundantOperations(MethodNode method) {
+        boolean changed = false;
+
+        AbstractInsnNode insn = method.instructions.getFirst();
+
+        while (insn != null) {
+            AbstractInsnNode following = insn.getNext();
+            int opcode = insn.getOpcode();
+
+            if (opcode == Opcodes.NOP) {
+                method.instructions.remove(insn);
+                changed = true;
+                insn = following;
+                continue;
+            }
+
+            AbstractInsnNode next = PeepholeOptimizer.getNextInBlock(insn);
+
+            if (next == null) {
+                insn = following;
+                continue;
+            }
+
+            if (opcode == Opcodes.SWAP && next.getOpcode() == Opcodes.SWAP
+                    || opcode >= Opcodes.ILOAD && opcode <= Opcodes.ALOAD && next.getOpcode() == opcode + (Opcodes.ISTORE - Opcodes.ILOAD)
+                    && ((VarInsnNode) insn).var == ((VarInsnNode) next).var) {
+                following = next.getNext();
+
+                method.instructions.remove(insn);
+                method.instructions.remove(next);
+                changed = true;
+                insn = following;
+                continue;
+            }
+
+            int size = getPushSize(insn);
+            AbstractInsnNode last = insn;
+
+            // The pattern which is used for padding: "".length()
+            if (size != 0 && insn instanceof LdcInsnNode && ((LdcInsnNode) insn).cst instanceof String && isStringLength(next)) {
+                last = next;
+                next = PeepholeOptimizer.getNextInBlock(next);
+            }
+
+            int pop = next == null ? 0 : next.getOpcode() == Opcodes.POP ? 1 : next.getOpcode() == Opcodes.POP2 ? 2 : 0;
+
+            if (size == 0 || pop < size) {
+                insn = following;
+                continue;
+            }
+
+            following = next.getNext();
+
+            if (pop == size) {
+                method.instructions.remove(next);
+            } else {
+                // Only the upper value was pushed here
+                method.instructions.set(next, new InsnNode(Opcodes.POP));
+            }
+
+            if (last != insn) method.instructions.remove(last);
+
+            method.instructions.remove(insn);
+            changed = true;
+            insn = following;
+        }
+
+        return changed;
+    }
+
+    private static boolean isStringLength(AbstractInsnNode insn) {
+        if (insn.getOpcode() != Opcodes.INVOKEVIRTUAL) return false;
+
+        MethodInsnNode methodInsn = (MethodInsnNode) insn;
+
+        return methodInsn.owner.equals("java/lang/String") && methodInsn.name.equals("length") && methodInsn.desc.equals("()I");
+    }
+
+    /**
+     * @return the size of the value pushed by the instruction if it doesn't have side effects, 0 otherwise
+     */
+    private static int getPushSize(AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+
+        if (opcode >= Opcodes.ACONST_NULL && opcode <= Opcodes.ICONST_5) return 1;
+        if (opcode == Opcodes.LCONST_0 || opcode == Opcodes.LCONST_1 || opcode == Opcodes.DCONST_0 || opcode == Opcodes.DCONST_1)
+            return 2;
+        if (opcode >= Opcodes.FCONST_0 && opcode <= Opcodes.FCONST_2) return 1;
+        if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH) return 1;
+
+        switch (opcode) {
+            case Opcodes.ILOAD:
+            case Opcodes.FLOAD:
+            case Opcodes.ALOAD:
+            case Opcodes.DUP:
+                return 1;
+            case Opcodes.LLOAD:
+            case Opcodes.DLOAD:
+            case Opcodes.DUP2:
+                return 2;
+            case Opcodes.LDC: {
+                Object cst = ((LdcInsnNode) insn).cst;
+
+                // Loading classes, method handles and dynamic constants might fail
+                if (cst instanceof Long || cst instanceof Double) return 2;
+                if (cst instanceof Integer || cst instanceof Float || cst instanceof String) return 1;
+            }
+        }
+
+        return 0;
+    }
+
+}
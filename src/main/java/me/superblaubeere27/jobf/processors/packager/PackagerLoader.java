@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.processors.packager;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Template of the loader which is generated by the {@link Packager}. It is copied into the output jar under a random name,
+ * the static fields are initialized by the Packager. This class mustn't reference any other class of the obfuscator.
+ * <p>
+ * The Packager also registers the loader as parallel capable. {@link ClassLoader#registerAsParallelCapable()} is
+ * caller sensitive, so the call is added after the processors were applied.
+ * <p>
+ * The archive has the format {@code <int length> <encrypted body>}, the decrypted body contains the index
+ * ({@code <int count> (<UTF name> <int length>)*}) followed by the class files.
+ */
+public class PackagerLoader extends ClassLoader implements Runnable {
+    private static long key;
+    private static String archive;
+    private static String mainClass;
+    private static boolean eager;
+
+    /**
+     * Class name -> {offset, length} in {@link #data}, isn't modified after the constructor
+     */
+    private final Map<String, int[]> index = new HashMap<>();
+    private final byte[] data;
+
+    private PackagerLoader() throws IOException {
+        try (DataInputStream in = new DataInputStream(PackagerLoader.class.getResourceAsStream("/" + archive))) {
+            data = new byte[in.readInt()];
+            in.readFully(data);
+        }
+
+        cipher(data, key);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int count = in.readInt();
+        String[] names = new String[count];
+        int[] lengths = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            names[i] = in.readUTF();
+            lengths[i] = in.readInt();
+        }
+
+        int offset = data.length - in.available();
+
+        for (int i = 0; i < count; i++) {
+            index.put(names[i], new int[]{offset, lengths[i]});
+            offset += lengths[i];
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            PackagerLoader loader = new PackagerLoader();
+
+            if (eager) {
+                Thread thread = new Thread(loader);
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            loader.loadClass(mainClass).getMethod("main", String[].class).invoke(null, (Object) args);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * XORs the data with a xorshift64 key stream, 8 bytes at a time. The length has to be a multiple of 8.
+     */
+    static void cipher(byte[] data, long key) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long state = key;
+
+        for (int i = 0; i < data.length; i += 8) {
+            state ^= state << 13;
+            state ^= state >>> 7;
+            state ^= state << 17;
+
+            buffer.putLong(i, buffer.getLong(i) ^ state);
+        }
+    }
+
+    /**
+     * Defines every class of the archive in the background, the class loading locks prevent duplicate definitions
+     */
+    @Override
+    public void run() {
+        for (String name : index.keySet()) {
+            try {
+                loadClass(name);
+            } catch (Throwable ignored) {
+            }
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        int[] entry = index.get(name);
+
+        if (entry == null) return super.findClass(name);
+
+        return defineClass(name, data, entry[0], entry[1]);
+    }
+}
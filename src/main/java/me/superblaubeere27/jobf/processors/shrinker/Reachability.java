@@ -0,0 +1,458 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.processors.shrinker;
+
+import me.superblaubeere27.jobf.utils.Utils;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Computes the classes, methods and fields of the program which can be reached from the entry points.
+ * <p>
+ * Virtual calls are resolved by their name and descriptor: If a method with the signature is called anywhere, it's
+ * kept in every reachable class. Methods which override methods of library classes are always kept since the
+ * library might call them.
+ */
+class Reachability {
+    private static final List<String> SERIALIZATION_METHODS = Arrays.asList(
+            "writeObject(Ljava/io/ObjectOutputStream;)V",
+            "readObject(Ljava/io/ObjectInputStream;)V",
+            "readObjectNoData()V",
+            "writeReplace()Ljava/lang/Object;",
+            "readResolve()Ljava/lang/Object;"
+    );
+
+    private final Map<String, ClassNode> program;
+    private final Set<ClassNode> classes = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<MethodNode> methods = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<FieldNode> fields = Collections.newSetFromMap(new IdentityHashMap<>());
+    /**
+     * Name + descriptor of every method which is called virtually
+     */
+    private final Set<String> invokedSignatures = new HashSet<>();
+    /**
+     * Name + descriptor -> Instance methods of reachable classes which aren't reachable yet
+     */
+    private final Map<String, List<MethodNode>> pendingMethods = new HashMap<>();
+    /**
+     * Library class -> Signatures of its methods which can be overridden (including the ones of its super classes),
+     * null if the class or one of its super classes is missing
+     */
+    private final Map<String, Set<String>> librarySignatures = new HashMap<>();
+    private final Map<MethodNode, ClassNode> owners = new IdentityHashMap<>();
+
+    private final Deque<ClassNode> classQueue = new ArrayDeque<>();
+    private final Deque<MethodNode> methodQueue = new ArrayDeque<>();
+
+    Reachability(Collection<ClassNode> nodes) {
+        program = new HashMap<>();
+
+        for (ClassNode node : nodes) {
+            program.put(node.name, node);
+
+            for (MethodNode method : node.methods) owners.put(method, node);
+        }
+    }
+
+    boolean isReachable(ClassNode node) {
+        return classes.contains(node);
+    }
+
+    boolean isReachable(MethodNode method) {
+        return methods.contains(method);
+    }
+
+    boolean isReachable(FieldNode field) {
+        return fields.contains(field);
+    }
+
+    /**
+     * Keeps the class with all of its members
+     */
+    void keepAll(ClassNode node) {
+        keepClass(node);
+
+        for (MethodNode method : node.methods) keepMethod(method);
+        for (FieldNode field : node.fields) keepField(field);
+    }
+
+    /**
+     * Keeps the class if it's part of the program
+     *
+     * @return the class or null if it isn't part of the program
+     */
+    ClassNode keepClass(String name) {
+        ClassNode node = program.get(name);
+
+        if (node != null) keepClass(node);
+
+        return node;
+    }
+
+    void keepClass(ClassNode node) {
+        if (classes.add(node)) classQueue.add(node);
+    }
+
+    void keepMethod(MethodNode method) {
+        if (methods.add(method)) {
+            keepClass(owners.get(method));
+            methodQueue.add(method);
+        }
+    }
+
+    private void keepField(FieldNode field) {
+        if (fields.add(field)) {
+            keepType(Type.getType(field.desc));
+            keepAnnotations(field.visibleAnnotations);
+            keepAnnotations(field.invisibleAnnotations);
+        }
+    }
+
+    /**
+     * Processes the queued classes and methods until everything which is reachable is kept
+     */
+    void run() {
+        while (!classQueue.isEmpty() || !methodQueue.isEmpty()) {
+            while (!classQueue.isEmpty()) processClass(classQueue.poll());
+            while (!methodQueue.isEmpty()) processMethod(owners.get(methodQueue.peek()), methodQueue.poll());
+        }
+    }
+
+    private void processClass(ClassNode node) {
+        if (node.superName != null) keepClass(node.superName);
+        if (node.interfaces != null) node.interfaces.forEach(this::keepClass);
+        if (node.outerClass != null) keepClass(node.outerClass);
+        if (node.nestHostClass != null) keepClass(node.nestHostClass);
+
+        keepAnnotations(node.visibleAnnotations);
+        keepAnnotations(node.invisibleAnnotations);
+
+        if (node.outerMethod != null) {
+            ClassNode outer = program.get(node.outerClass);
+            MethodNode method = outer == null ? null : Utils.getMethod(outer, node.outerMethod, node.outerMethodDesc);
+
+            if (method != null) keepMethod(method);
+        }
+
+        boolean serializable = isSubtypeOf(node, "java/io/Serializable");
+        Set<String> overridable = getLibrarySignatures(node);
+
+        for (MethodNode method : node.methods) {
+            String signature = method.name + method.desc;
+
+            if (method.name.equals("<clinit>")
+                    || Modifier.isNative(method.access)
+                    || (node.access & Opcodes.ACC_ANNOTATION) != 0
+                    || (node.access & Opcodes.ACC_ENUM) != 0 && (signature.equals("values()[L" + node.name + ";") || signature.equals("valueOf(Ljava/lang/String;)L" + node.name + ";"))
+                    || serializable && SERIALIZATION_METHODS.contains(signature)) {
+                keepMethod(method);
+            } else if (!Modifier.isStatic(method.access) && !Modifier.isPrivate(method.access) && !method.name.equals("<init>")) {
+                if (overridable == null || overridable.contains(signature) || invokedSignatures.contains(signature)) {
+                    keepMethod(method);
+                } else {
+                    pendingMethods.computeIfAbsent(signature, s -> new ArrayList<>()).add(method);
+                }
+            }
+        }
+
+        if ((node.access & Opcodes.ACC_ENUM) != 0 || serializable) {
+            for (FieldNode field : node.fields) keepField(field);
+        }
+    }
+
+    private void processMethod(ClassNode node, MethodNode method) {
+        keepMethodType(Type.getMethodType(method.desc));
+
+        if (method.exceptions != null) method.exceptions.forEach(this::keepClass);
+
+        keepAnnotations(method.visibleAnnotations);
+        keepAnnotations(method.invisibleAnnotations);
+
+        for (TryCatchBlockNode tryCatchBlock : method.tryCatchBlocks) {
+            if (tryCatchBlock.type != null) keepClass(tryCatchBlock.type);
+        }
+
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            switch (insn.getType()) {
+                case AbstractInsnNode.TYPE_INSN:
+                    keepType(Type.getObjectType(((TypeInsnNode) insn).desc));
+                    break;
+                case AbstractInsnNode.MULTIANEWARRAY_INSN:
+                    keepType(Type.getType(((MultiANewArrayInsnNode) insn).desc));
+                    break;
+                case AbstractInsnNode.FIELD_INSN: {
+                    FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+
+                    keepField(fieldInsn.owner, fieldInsn.name, fieldInsn.desc);
+                    break;
+                }
+                case AbstractInsnNode.METHOD_INSN: {
+                    MethodInsnNode methodInsn = (MethodInsnNode) insn;
+
+                    keepInvokedMethod(methodInsn.getOpcode(), methodInsn.owner, methodInsn.name, methodInsn.desc);
+                    break;
+                }
+                case AbstractInsnNode.INVOKE_DYNAMIC_INSN: {
+                    InvokeDynamicInsnNode invokeDynamic = (InvokeDynamicInsnNode) insn;
+
+                    keepMethodType(Type.getMethodType(invokeDynamic.desc));
+                    keepConstant(invokeDynamic.bsm);
+
+                    for (Object bsmArg : invokeDynamic.bsmArgs) keepConstant(bsmArg);
+                    break;
+                }
+                case AbstractInsnNode.LDC_INSN:
+                    keepConstant(((LdcInsnNode) insn).cst);
+                    break;
+                case AbstractInsnNode.FRAME: {
+                    FrameNode frame = (FrameNode) insn;
+
+                    // The verifier might load the types of the frames
+                    if (frame.local != null) frame.local.forEach(this::keepFrameType);
+                    if (frame.stack != null) frame.stack.forEach(this::keepFrameType);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void keepInvokedMethod(int opcode, String owner, String name, String desc) {
+        keepMethodType(Type.getMethodType(desc));
+
+        if (owner.startsWith("[")) return;
+
+        keepClass(owner);
+
+        MethodNode method = name.equals("<init>") ? findDeclaredMethod(owner, name, desc) : findMethod(owner, name, desc);
+
+        if (method != null) keepMethod(method);
+
+        if (opcode == Opcodes.INVOKEVIRTUAL || opcode == Opcodes.INVOKEINTERFACE) {
+            String signature = name + desc;
+
+            if (invokedSignatures.add(signature)) {
+                List<MethodNode> pending = pendingMethods.remove(signature);
+
+                if (pending != null) pending.forEach(this::keepMethod);
+            }
+        }
+    }
+
+    private void keepField(String owner, String name, String desc) {
+        keepType(Type.getType(desc));
+
+        if (owner.startsWith("[")) return;
+
+        keepClass(owner);
+
+        Deque<String> queue = new ArrayDeque<>();
+
+        queue.add(owner);
+
+        while (!queue.isEmpty()) {
+            ClassNode node = program.get(queue.poll());
+
+            if (node == null) continue;
+
+            for (FieldNode field : node.fields) {
+                if (field.name.equals(name) && field.desc.equals(desc)) {
+                    keepField(field);
+                    return;
+                }
+            }
+
+            if (node.interfaces != null) queue.addAll(node.interfaces);
+            if (node.superName != null) queue.add(node.superName);
+        }
+    }
+
+    private void keepConstant(Object cst) {
+        if (cst instanceof Type) {
+            Type type = (Type) cst;
+
+            if (type.getSort() == Type.METHOD) keepMethodType(type);
+            else keepType(type);
+        } else if (cst instanceof Handle) {
+            Handle handle = (Handle) cst;
+
+            int opcode;
+
+            switch (handle.getTag()) {
+                case Opcodes.H_GETFIELD:
+                case Opcodes.H_GETSTATIC:
+                case Opcodes.H_PUTFIELD:
+                case Opcodes.H_PUTSTATIC:
+                    keepField(handle.getOwner(), handle.getName(), handle.getDesc());
+                    return;
+                case Opcodes.H_INVOKEVIRTUAL:
+                    opcode = Opcodes.INVOKEVIRTUAL;
+                    break;
+                case Opcodes.H_INVOKEINTERFACE:
+                    opcode = Opcodes.INVOKEINTERFACE;
+                    break;
+                default:
+                    opcode = Opcodes.INVOKESTATIC;
+            }
+
+            keepInvokedMethod(opcode, handle.getOwner(), handle.getName(), handle.getDesc());
+        } else if (cst instanceof String) {
+            // Reflection hint (e.g. Class.forName("com.example.Plugin"))
+            ClassNode node = program.get(((String) cst).replace('.', '/'));
+
+            if (node != null) keepAll(node);
+        }
+    }
+
+    private void keepFrameType(Object type) {
+        if (type instanceof String) keepType(Type.getObjectType((String) type));
+    }
+
+    private void keepType(Type type) {
+        if (type.getSort() == Type.ARRAY) type = type.getElementType();
+
+        if (type.getSort() == Type.OBJECT) keepClass(type.getInternalName());
+    }
+
+    private void keepMethodType(Type type) {
+        keepType(type.getReturnType());
+
+        for (Type argumentType : type.getArgumentTypes()) keepType(argumentType);
+    }
+
+    private void keepAnnotations(List<AnnotationNode> annotations) {
+        if (annotations == null) return;
+
+        for (AnnotationNode annotation : annotations) keepType(Type.getType(annotation.desc));
+    }
+
+    private MethodNode findDeclaredMethod(String owner, String name, String desc) {
+        ClassNode node = program.get(owner);
+
+        return node == null ? null : Utils.getMethod(node, name, desc);
+    }
+
+    /**
+     * Resolves the method in the class, its super classes and its interfaces
+     */
+    private MethodNode findMethod(String owner, String name, String desc) {
+        for (ClassNode node = program.get(owner); node != null; node = node.superName == null ? null : program.get(node.superName)) {
+            MethodNode method = Utils.getMethod(node, name, desc);
+
+            if (method != null) return method;
+        }
+
+        Deque<String> queue = new ArrayDeque<>();
+
+        queue.add(owner);
+
+        while (!queue.isEmpty()) {
+            ClassNode node = program.get(queue.poll());
+
+            if (node == null) continue;
+
+            MethodNode method = Utils.getMethod(node, name, desc);
+
+            if (method != null) return method;
+
+            if (node.interfaces != null) queue.addAll(node.interfaces);
+            if (node.superName != null) queue.add(node.superName);
+        }
+
+        return null;
+    }
+
+    private boolean isSubtypeOf(ClassNode node, String type) {
+        Set<String> visited = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+
+        queue.add(node.name);
+
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+
+            if (current.equals(type)) return true;
+            if (!visited.add(current)) continue;
+
+            ClassNode currentNode = program.containsKey(current) ? program.get(current) : Utils.lookupClass(current);
+
+            if (currentNode == null) continue;
+
+            if (currentNode.superName != null) queue.add(currentNode.superName);
+            if (currentNode.interfaces != null) queue.addAll(currentNode.interfaces);
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the signatures of the methods of library super classes the class can override, null if a super class
+     * is missing (every method has to be kept then)
+     */
+    private Set<String> getLibrarySignatures(ClassNode node) {
+        Set<String> signatures = new HashSet<>();
+        List<String> supers = new ArrayList<>();
+
+        if (node.superName != null) supers.add(node.superName);
+        if (node.interfaces != null) supers.addAll(node.interfaces);
+
+        for (String superName : supers) {
+            ClassNode superNode = program.get(superName);
+            Set<String> superSignatures = superNode != null ? getLibrarySignatures(superNode) : getSignaturesOfLibrary(superName);
+
+            if (superSignatures == null) return null;
+
+            signatures.addAll(superSignatures);
+        }
+
+        return signatures;
+    }
+
+    private Set<String> getSignaturesOfLibrary(String name) {
+        if (librarySignatures.containsKey(name)) return librarySignatures.get(name);
+
+        ClassNode node = Utils.lookupClass(name);
+        Set<String> signatures = null;
+
+        if (node != null) {
+            signatures = new HashSet<>();
+
+            for (MethodNode method : node.methods) {
+                if (!Modifier.isStatic(method.access) && !Modifier.isPrivate(method.access)) signatures.add(method.name + method.desc);
+            }
+
+            List<String> supers = new ArrayList<>();
+
+            if (node.superName != null) supers.add(node.superName);
+            if (node.interfaces != null) supers.addAll(node.interfaces);
+
+            for (String superName : supers) {
+                Set<String> superSignatures = getSignaturesOfLibrary(superName);
+
+                if (superSignatures == null) {
+                    signatures = null;
+                    break;
+                }
+
+                signatures.addAll(superSignatures);
+            }
+        }
+
+        librarySignatures.put(name, signatures);
+
+        return signatures;
+    }
+
+}
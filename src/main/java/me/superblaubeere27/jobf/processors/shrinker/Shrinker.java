@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.processors.shrinker;
+
+import me.superblaubeere27.jobf.JObf;
+import me.superblaubeere27.jobf.JObfImpl;
+import me.superblaubeere27.jobf.utils.Utils;
+import me.superblaubeere27.jobf.utils.values.BooleanValue;
+import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
+import me.superblaubeere27.jobf.utils.values.EnabledValue;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Removes the classes, methods and fields which can't be reached from the entry points. The entry points are
+ * <ul>
+ * <li>the main method of the {@code Main-Class}</li>
+ * <li>classes matched by {@code keep} rules and classes which aren't renamed</li>
+ * <li>classes which are named by resources (e.g. {@code META-INF/services}) or by string constants of reachable code (reflection)</li>
+ * </ul>
+ * The shrinker runs before the classes are renamed.
+ */
+public class Shrinker {
+    private static final String PROCESSOR_NAME = "Shrinker";
+    private static final int MAX_RESOURCE_SIZE = 1024 * 1024;
+    private static final Pattern CLASS_NAME_PATTERN = Pattern.compile("[\\w$]+(?:[./][\\w$]+)+");
+    private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, "Removes unused classes and members", DeprecationLevel.OK, false);
+    private BooleanValue removeMembers = new BooleanValue(PROCESSOR_NAME, "Remove Members", "Removes unused methods and fields of used classes", DeprecationLevel.OK, true);
+
+    public void process(JObfImpl impl) {
+        if (!enabled.getObject()) return;
+
+        Map<String, ClassNode> program = new HashMap<>();
+
+        for (ClassNode node : JObfImpl.getClasses().values()) program.put(node.name, node);
+
+        Reachability reachability = new Reachability(program.values());
+
+        int entryPoints = 0;
+
+        String mainClass = impl.getMainClass();
+
+        if (mainClass != null) {
+            ClassNode node = program.get(mainClass.replace('.', '/'));
+            MethodNode main = node == null ? null : Utils.getMethod(node, "main", "([Ljava/lang/String;)V");
+
+            if (main != null) {
+                reachability.keepMethod(main);
+                entryPoints++;
+            }
+        }
+
+        for (ClassNode node : program.values()) {
+            if (impl.isKept(node) || !impl.isRemappingEnabled(node)) {
+                reachability.keepAll(node);
+                entryPoints++;
+            }
+        }
+
+        for (HashMap<String, byte[]> files : JObfImpl.files) entryPoints += keepNamedClasses(files, program, reachability);
+
+        if (entryPoints == 0) {
+            JObf.log.warning("The shrinker didn't find any entry points (Main-Class or keep rules), skipping it");
+            return;
+        }
+
+        reachability.run();
+
+        int removedClasses = 0;
+        int removedMethods = 0;
+        int removedFields = 0;
+
+        Set<String> removed = new HashSet<>();
+
+        for (ClassNode node : program.values()) {
+            if (reachability.isReachable(node)) continue;
+
+            impl.removeClass(node);
+            removed.add(node.name);
+            removedClasses++;
+
+            JObf.log.fine("Removed class " + node.name);
+        }
+
+        for (ClassNode node : program.values()) {
+            if (removed.contains(node.name)) continue;
+
+            if (removeMembers.getObject()) {
+                for (Iterator<MethodNode> iterator = node.methods.iterator(); iterator.hasNext(); ) {
+                    MethodNode method = iterator.next();
+
+                    if (!reachability.isReachable(method)) {
+                        iterator.remove();
+                        removedMethods++;
+
+                        JObf.log.fine("Removed method " + node.name + "." + method.name + method.desc);
+                    }
+                }
+                for (Iterator<FieldNode> iterator = node.fields.iterator(); iterator.hasNext(); ) {
+                    FieldNode field = iterator.next();
+
+                    if (!reachability.isReachable(field)) {
+                        iterator.remove();
+                        removedFields++;
+
+                        JObf.log.fine("Removed field " + node.name + "." + field.name);
+                    }
+                }
+            }
+
+            if (node.innerClasses != null) node.innerClasses.removeIf(innerClass -> removed.contains(innerClass.name));
+            if (node.nestMembers != null) node.nestMembers.removeIf(removed::contains);
+        }
+
+        JObf.log.info("Shrinker removed " + removedClasses + " classes, " + removedMethods + " methods and " + removedFields + " fields");
+    }
+
+    /**
+     * Keeps the classes which are named by the resources (e.g. {@code META-INF/services})
+     *
+     * @return the number of names which were found
+     */
+    static int keepNamedClasses(Map<String, byte[]> resources, Map<String, ClassNode> program, Reachability reachability) {
+        int found = 0;
+
+        for (Map.Entry<String, byte[]> entry : resources.entrySet()) {
+            byte[] data = entry.getValue();
+
+            // The Main-Class is an entry point already, only its main method has to be kept
+            if (entry.getKey().equals("META-INF/MANIFEST.MF") || data.length > MAX_RESOURCE_SIZE) continue;
+
+            Matcher matcher = CLASS_NAME_PATTERN.matcher(new String(data, StandardCharsets.ISO_8859_1));
+
+            while (matcher.find()) {
+                String name = matcher.group().replace('.', '/');
+
+                if (name.endsWith("/class")) name = name.substring(0, name.length() - "/class".length());
+
+                ClassNode node = program.get(name);
+
+                if (node != null) {
+                    reachability.keepAll(node);
+                    found++;
+                }
+            }
+        }
+
+        return found;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * The random source of the processors. Every thread has its own generator (the SplitMix64 algorithm of
+ * {@link java.util.SplittableRandom}), so there is no contention on a shared seed.
+ * <p>
+ * The generator of a thread is reseeded from the build seed and the name of the class it is processing, so the output
+ * only depends on the input and the seed, not on the scheduling of the threads.
+ */
+public class BuildRandom extends Random {
+    public static final BuildRandom INSTANCE = new BuildRandom();
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static volatile long buildSeed = mix(System.nanoTime() ^ System.currentTimeMillis());
+    private static final ThreadLocal<long[]> state = ThreadLocal.withInitial(() -> new long[]{buildSeed ^ mix(Thread.currentThread().getId())});
+
+    private BuildRandom() {
+    }
+
+    /**
+     * Sets the seed of the build and reseeds the current thread
+     *
+     * @param seed a number or any other string, a random seed is used if it is empty
+     */
+    public static void setBuildSeed(String seed) {
+        if (seed == null || seed.isEmpty()) {
+            buildSeed = mix(System.nanoTime() ^ System.currentTimeMillis());
+        } else {
+            try {
+                buildSeed = Long.parseLong(seed);
+            } catch (NumberFormatException e) {
+                buildSeed = hash(seed);
+            }
+        }
+
+        state.get()[0] = buildSeed;
+    }
+
+    public static void setBuildSeed(long seed) {
+        buildSeed = seed;
+
+        state.get()[0] = buildSeed;
+    }
+
+    /**
+     * Reseeds the generator of the current thread for the given class
+     */
+    public static void beginClass(String name) {
+        state.get()[0] = buildSeed ^ hash(name);
+    }
+
+    /**
+     * @return the state of the current thread
+     */
+    public static long getState() {
+        return state.get()[0];
+    }
+
+    /**
+     * Sets the state of the current thread, e.g. to derive the generator of a subtask
+     */
+    public static void setState(long seed) {
+        state.get()[0] = seed;
+    }
+
+    /**
+     * Derives an independent seed, e.g. for a subtask
+     */
+    public static long split(long seed, long index) {
+        return mix(seed + (index + 1) * GOLDEN_GAMMA);
+    }
+
+    private static long hash(String s) {
+        long hash = 0xCBF29CE484222325L;
+
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+
+        return mix(hash);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    protected int next(int bits) {
+        long[] s = state.get();
+
+        return (int) (mix(s[0] += GOLDEN_GAMMA) >>> (64 - bits));
+    }
+
+    /**
+     * The seed is managed per thread
+     */
+    @Override
+    public void setSeed(long seed) {
+    }
+}
@@ -10,216 +10,297 @@
 
 package me.superblaubeere27.jobf.utils;
 
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceValue;
 
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 public class InliningUtils {
-    private static Pattern ANONYM_CLASSES = Pattern.compile(".+[$][0-9]+");
-
-    public static InsnList inline(MethodNode node, ClassNode classNode, MethodNode target) {
+    /**
+     * Methods which behave differently depending on the class which calls them, they can't be moved to another class
+     */
+    private static final List<String> CALLER_SENSITIVE = Arrays.asList(
+            "java/lang/Class.",
+            "java/lang/ClassLoader.",
+            "java/lang/reflect/",
+            "java/lang/invoke/",
+            "java/lang/System.load",
+            "java/lang/System.getLogger",
+            "java/lang/Runtime.load",
+            "java/util/ResourceBundle.",
+            "java/util/ServiceLoader.",
+            "java/util/logging/Logger.",
+            "java/security/AccessController.",
+            "sun/reflect/",
+            "jdk/internal/reflect/"
+    );
+
+    /**
+     * Replaces the call with the code of the callee.
+     * <p>
+     * The locals of the callee are moved to {@code base} (which has to be behind the caller's locals), the arguments
+     * are stored to them and the returns jump behind the inlined code. The handlers of the callee are nested in the
+     * ones of the caller, so they are inserted in front of them. The frames of the caller become invalid.
+     * <p>
+     * Only valid if {@link #isInlinable(String, MethodNode)} is true and the caller's stack doesn't contain anything
+     * but the arguments if the callee catches exceptions (handlers clear the stack).
+     */
+    public static void inline(MethodInsnNode call, MethodNode callee, MethodNode caller, int base) {
         InsnList insns = new InsnList();
 
-        VariableProvider provider = new VariableProvider(target);
+        boolean isStatic = Modifier.isStatic(callee.access);
+        Type[] argumentTypes = Type.getArgumentTypes(callee.desc);
+        int[] argumentSlots = new int[argumentTypes.length];
 
-        HashMap<LabelNode, LabelNode> labelMap = new HashMap<>();
-        HashMap<Integer, Integer> slotMap = new HashMap<>();
+        int slot = isStatic ? 0 : 1;
 
-        List<Type> argumentTypes = new ArrayList<>();
+        for (int i = 0; i < argumentTypes.length; i++) {
+            argumentSlots[i] = slot;
+            slot += argumentTypes[i].getSize();
+        }
 
-        if (!Modifier.isStatic(node.access)) {
-            argumentTypes.add(Type.getType("L" + classNode.name + ";"));
+        for (int i = argumentTypes.length - 1; i >= 0; i--) {
+            insns.add(new VarInsnNode(argumentTypes[i].getOpcode(Opcodes.ISTORE), base + argumentSlots[i]));
         }
-        argumentTypes.addAll(Arrays.asList(Type.getArgumentTypes(node.desc)));
 
-        for (int i = 0; i < argumentTypes.size(); i++) {
-            slotMap.put(i, provider.allocateVar());
+        if (!isStatic) {
+            insns.add(new VarInsnNode(Opcodes.ASTORE, base));
+
+            // The call would have thrown a NullPointerException, even if the callee doesn't use the instance
+            insns.add(new VarInsnNode(Opcodes.ALOAD, base));
+            insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/Object", "getClass", "()Ljava/lang/Class;", false));
+            insns.add(new InsnNode(Opcodes.POP));
         }
 
-        // Search for labels and replace them
-        // + replace local vars / parameters with new ones
-        for (AbstractInsnNode abstractInsnNode : node.instructions.toArray()) {
-            if (abstractInsnNode instanceof LabelNode) {
-                LabelNode insnNode = (LabelNode) abstractInsnNode;
-                labelMap.put(insnNode, new LabelNode());
-            }
-            if (abstractInsnNode instanceof VarInsnNode) {
-                if (!slotMap.containsKey(((VarInsnNode) abstractInsnNode).var)) {
-                    slotMap.put(((VarInsnNode) abstractInsnNode).var, provider.allocateVar());
-                }
-            }
+        Map<LabelNode, LabelNode> labelMap = new HashMap<>();
+
+        for (AbstractInsnNode insn : callee.instructions.toArray()) {
+            if (insn instanceof LabelNode) labelMap.put((LabelNode) insn, new LabelNode());
         }
 
-        Type returnType = Type.getReturnType(node.desc);
+        AbstractInsnNode last = callee.instructions.getLast();
 
-        {
-            int args = argumentTypes.size();
+        while (last != null && last.getOpcode() == -1) last = last.getPrevious();
 
-            int i;
+        LabelNode end = new LabelNode();
 
-            for (i = args; i > 0; i--) {
-                insns.add(new VarInsnNode(argumentTypes.get(i - 1).getOpcode(Opcodes.ISTORE), slotMap.get(i - 1)));
+        for (AbstractInsnNode insn : callee.instructions.toArray()) {
+            switch (insn.getType()) {
+                case AbstractInsnNode.LABEL:
+                    insns.add(labelMap.get(insn));
+                    break;
+                case AbstractInsnNode.LINE:
+                case AbstractInsnNode.FRAME:
+                    break;
+                case AbstractInsnNode.VAR_INSN:
+                    insns.add(new VarInsnNode(insn.getOpcode(), base + ((VarInsnNode) insn).var));
+                    break;
+                case AbstractInsnNode.IINC_INSN:
+                    insns.add(new IincInsnNode(base + ((IincInsnNode) insn).var, ((IincInsnNode) insn).incr));
+                    break;
+                default:
+                    if (insn.getOpcode() >= Opcodes.IRETURN && insn.getOpcode() <= Opcodes.RETURN) {
+                        // The return value stays on the stack
+                        if (insn != last) insns.add(new JumpInsnNode(Opcodes.GOTO, end));
+                    } else {
+                        insns.add(insn.clone(labelMap));
+                    }
             }
         }
 
-        int returnSlot = provider.allocateVar();
+        insns.add(end);
 
-        LabelNode endLabel = new LabelNode();
+        List<TryCatchBlockNode> handlers = new ArrayList<>();
 
-        for (AbstractInsnNode abstractInsnNode : node.instructions.toArray()) {
-            if (abstractInsnNode.getOpcode() >= Opcodes.IRETURN && abstractInsnNode.getOpcode() <= Opcodes.RETURN) {
-                if (abstractInsnNode.getOpcode() != Opcodes.RETURN) {
-                    insns.add(new VarInsnNode(returnType.getOpcode(Opcodes.ISTORE), returnSlot));
-                }
-
-                insns.add(new JumpInsnNode(Opcodes.GOTO, endLabel));
+        for (TryCatchBlockNode tryCatchBlock : callee.tryCatchBlocks) {
+            handlers.add(new TryCatchBlockNode(labelMap.get(tryCatchBlock.start), labelMap.get(tryCatchBlock.end), labelMap.get(tryCatchBlock.handler), tryCatchBlock.type));
+        }
 
-                continue;
-            }
+        caller.tryCatchBlocks.addAll(0, handlers);
 
-            if (abstractInsnNode instanceof LabelNode) {
-                insns.add(labelMap.get(abstractInsnNode));
-                continue;
-            }
+        caller.instructions.insert(call, insns);
+        caller.instructions.remove(call);
 
-            if (abstractInsnNode instanceof VarInsnNode) {
-                insns.add(new VarInsnNode(abstractInsnNode.getOpcode(), slotMap.get(((VarInsnNode) abstractInsnNode).var)));
-                continue;
-            }
+        caller.maxLocals = Math.max(caller.maxLocals, base + callee.maxLocals);
+    }
 
-            insns.add(abstractInsnNode.clone(labelMap));
+    /**
+     * Checks whether the code of the method can be copied into other methods: It mustn't use subroutines and every
+     * return has to leave nothing but the return value on the stack.
+     */
+    public static boolean isInlinable(String owner, MethodNode method) {
+        if (Modifier.isAbstract(method.access) || Modifier.isNative(method.access) || method.instructions.size() == 0)
+            return false;
 
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            if (insn.getOpcode() == Opcodes.JSR || insn.getOpcode() == Opcodes.RET) return false;
         }
 
-        insns.add(endLabel);
+        Frame<SourceValue>[] frames;
 
-        if (returnType.getSort() != Type.VOID) {
-            insns.add(new VarInsnNode(returnType.getOpcode(Opcodes.ILOAD), returnSlot));
+        try {
+            frames = new MethodAnalysis(owner, method).getFrames();
+        } catch (RuntimeException e) {
+            return false;
         }
 
-        for (TryCatchBlockNode tryCatchBlock : node.tryCatchBlocks) {
-            target.tryCatchBlocks.add(new TryCatchBlockNode(labelMap.get(tryCatchBlock.start), labelMap.get(tryCatchBlock.end), labelMap.get(tryCatchBlock.handler), tryCatchBlock.type));
+        AbstractInsnNode[] insns = method.instructions.toArray();
+
+        for (int i = 0; i < insns.length; i++) {
+            int opcode = insns[i].getOpcode();
+
+            if (frames[i] != null && opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN
+                    && frames[i].getStackSize() != (opcode == Opcodes.RETURN ? 0 : 1)) {
+                return false;
+            }
         }
 
-        return insns;
+        return true;
     }
 
-    public static boolean canInlineMethod(ClassNode from, ClassNode clazz, MethodNode node) {
-        if (node.name.startsWith("<")) return false;
-        if (Modifier.isAbstract(node.access) || Modifier.isNative(node.access)) return false;
-        if (Modifier.isInterface(clazz.access)) return false;
+    /**
+     * Checks whether the code of the method still works if it's moved to the class {@code from}: Every class and
+     * member it references has to be accessible from there and it mustn't depend on the class it's executed in.
+     */
+    public static boolean canAccess(ClassNode from, ClassNode owner, MethodNode method) {
+        if (from.name.equals(owner.name)) return true;
 
-        if (node.instructions.size() < 2) return false;
+        String pkg = NameUtils.getPackage(from.name);
 
-        boolean ok = true;
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            switch (insn.getType()) {
+                case AbstractInsnNode.FIELD_INSN: {
+                    FieldInsnNode fieldInsn = (FieldInsnNode) insn;
 
-        for (AbstractInsnNode abstractInsnNode : node.instructions.toArray()) {
-//            if (abstractInsnNode instanceof LabelNode) {
-//                ok = false;
-//                break;
-//            }
-            if (abstractInsnNode instanceof MethodInsnNode) {
-                if (abstractInsnNode.getOpcode() == Opcodes.INVOKESPECIAL && !((MethodInsnNode) abstractInsnNode).name.startsWith("<")) {
-                    ok = false;
+                    if (!canAccessClass(pkg, fieldInsn.owner) || !canAccessMember(pkg, fieldInsn.owner, fieldInsn.name, fieldInsn.desc, true))
+                        return false;
                     break;
                 }
-                ClassNode lookup = Utils.lookupClass(((MethodInsnNode) abstractInsnNode).owner);
-
-                if (lookup == null) {
-                    ok = false;
+                case AbstractInsnNode.METHOD_INSN: {
+                    MethodInsnNode methodInsn = (MethodInsnNode) insn;
+
+                    // Super calls and private calls are bound to the class
+                    if (methodInsn.getOpcode() == Opcodes.INVOKESPECIAL && !methodInsn.name.equals("<init>"))
+                        return false;
+                    if (isCallerSensitive(methodInsn.owner, methodInsn.name)) return false;
+                    // The methods of arrays are public
+                    if (methodInsn.owner.startsWith("[")) break;
+
+                    if (!canAccessClass(pkg, methodInsn.owner) || !canAccessMember(pkg, methodInsn.owner, methodInsn.name, methodInsn.desc, false))
+                        return false;
                     break;
                 }
+                case AbstractInsnNode.TYPE_INSN:
+                    if (!canAccessType(pkg, Type.getObjectType(((TypeInsnNode) insn).desc))) return false;
+                    break;
+                case AbstractInsnNode.MULTIANEWARRAY_INSN:
+                    if (!canAccessType(pkg, Type.getType(((MultiANewArrayInsnNode) insn).desc))) return false;
+                    break;
+                case AbstractInsnNode.LDC_INSN: {
+                    Object cst = ((LdcInsnNode) insn).cst;
 
-                MethodNode lookupMethod = Utils.getMethod(lookup, ((MethodInsnNode) abstractInsnNode).name, ((MethodInsnNode) abstractInsnNode).desc);
-
-                if (lookupMethod == null || !canAccessMethod(clazz, lookupMethod, lookup, lookupMethod)) {
-                    ok = false;
+                    if (cst instanceof Handle || cst instanceof ConstantDynamic) return false;
+                    if (cst instanceof Type && (((Type) cst).getSort() == Type.METHOD || !canAccessType(pkg, (Type) cst)))
+                        return false;
                     break;
                 }
+                case AbstractInsnNode.INVOKE_DYNAMIC_INSN:
+                    // Lambdas refer to private methods of their class
+                    return false;
             }
-            if (abstractInsnNode instanceof FieldInsnNode) {
-                ClassNode lookup = Utils.lookupClass(((FieldInsnNode) abstractInsnNode).owner);
+        }
 
-                if (lookup == null) {
-                    ok = false;
-                    break;
-                }
+        for (TryCatchBlockNode tryCatchBlock : method.tryCatchBlocks) {
+            if (tryCatchBlock.type != null && !canAccessClass(pkg, tryCatchBlock.type)) return false;
+        }
 
-                FieldNode lookupMethod = Utils.getField(lookup, ((FieldInsnNode) abstractInsnNode).name);
+        return true;
+    }
 
-                if (lookupMethod == null || !canAccessField(from, lookupMethod, lookup, lookupMethod)) {
-                    ok = false;
-                    break;
-                }
-            }
+    private static boolean isCallerSensitive(String owner, String name) {
+        String reference = owner + "." + name;
+
+        for (String prefix : CALLER_SENSITIVE) {
+            if (reference.startsWith(prefix)) return true;
         }
 
-        return ok;
+        return false;
     }
 
+    private static boolean canAccessType(String pkg, Type type) {
+        if (type.getSort() == Type.ARRAY) type = type.getElementType();
 
-    private static boolean canAccessField(ClassNode from, FieldNode method, ClassNode node, FieldNode thing) {
-        if (cantAccess(from, node)) return false;
+        return type.getSort() != Type.OBJECT || canAccessClass(pkg, type.getInternalName());
+    }
 
-        if (Modifier.isPublic(thing.access)) {
-            return true;
-        }
-        if (Modifier.isPrivate(thing.access)) {
-            return isInnerClass(node, from);
-        }
-        if (Modifier.isProtected(thing.access)) {
-            return false;
-        }
+    private static boolean canAccessClass(String pkg, String name) {
+        ClassNode node = Utils.lookupClass(name);
+
+        if (node == null) return false;
 
-        return NameUtils.getPackage(from.name).equals(NameUtils.getPackage(node.name));
+        return Modifier.isPublic(node.access) || pkg.equals(NameUtils.getPackage(node.name));
     }
 
-    private static boolean canAccessMethod(ClassNode from, MethodNode method, ClassNode node, MethodNode thing) {
-        if (cantAccess(from, node)) return false;
+    private static boolean canAccessMember(String pkg, String owner, String name, String desc, boolean field) {
+        ClassNode declaringClass = findDeclaringClass(owner, name, desc, field);
 
+        if (declaringClass == null) return false;
 
-        if (Modifier.isPublic(thing.access)) {
-            return true;
-        }
-        if (Modifier.isPrivate(thing.access)) {
-            return isInnerClass(node, from);
-        }
-        if (Modifier.isProtected(thing.access)) {
-            return isSuperClass(from, node);
-        }
+        int access = getAccess(declaringClass, name, desc, field);
 
-        return NameUtils.getPackage(from.name).equals(NameUtils.getPackage(node.name));
+        if (Modifier.isPublic(access)) return true;
+        if (Modifier.isPrivate(access)) return false;
+
+        // Protected members are only accessible from other packages if the instance is a subclass of the caller, so
+        // they are handled like package private members
+        return pkg.equals(NameUtils.getPackage(declaringClass.name));
     }
 
-    private static boolean cantAccess(ClassNode from, ClassNode node) {
-        if (ANONYM_CLASSES.matcher(from.name).matches() || ANONYM_CLASSES.matcher(node.name).matches()) { // Is
-            return true;
-        }
-        if (Modifier.isPublic(node.access)) {
-            return false;
-        }
-        if (Modifier.isPrivate(node.access)) {
-            return !isInnerClass(node, from);
-        }
-        if (Modifier.isProtected(node.access)) {
-            return true;
+    private static ClassNode findDeclaringClass(String owner, String name, String desc, boolean field) {
+        ClassNode node = Utils.lookupClass(owner);
+
+        if (node == null) return null;
+        if (getAccess(node, name, desc, field) != -1) return node;
+
+        List<String> supers = new ArrayList<>();
+
+        if (node.superName != null) supers.add(node.superName);
+        if (node.interfaces != null) supers.addAll(node.interfaces);
+
+        for (String superName : supers) {
+            ClassNode declaringClass = findDeclaringClass(superName, name, desc, field);
+
+            if (declaringClass != null) return declaringClass;
         }
-        return !NameUtils.getPackage(from.name).equals(NameUtils.getPackage(node.name));
-    }
 
-    private static boolean isInnerClass(ClassNode node, ClassNode of) {
-        return node.name.equals(of.name) || node.outerClass != null && node.outerClass.equals(of.name);
+        return null;
     }
 
-    private static boolean isSuperClass(ClassNode node, ClassNode of) {
-        return node.superName != null && node.superName.equals(of.name);
+    /**
+     * @return the access flags of the member or -1 if the class doesn't declare it
+     */
+    private static int getAccess(ClassNode node, String name, String desc, boolean field) {
+        if (field) {
+            for (FieldNode fieldNode : node.fields) {
+                if (fieldNode.name.equals(name) && fieldNode.desc.equals(desc)) return fieldNode.access;
+            }
+        } else {
+            for (MethodNode methodNode : node.methods) {
+                if (methodNode.name.equals(name) && methodNode.desc.equals(desc)) return methodNode.access;
+            }
+        }
+
+        return -1;
     }
 
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long keys to non-negative int values which avoids boxing.
+ * Used to look up the slots of extracted constants (which are keyed by their raw bits).
+ */
+public class LongIntMap {
+    private static final int EMPTY = -1;
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    public LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return the value of the key or {@code defaultValue} if there is none
+     */
+    public int get(long key, int defaultValue) {
+        int mask = keys.length - 1;
+
+        for (int i = hash(key) & mask; values[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) return values[i];
+        }
+
+        return defaultValue;
+    }
+
+    public void put(long key, int value) {
+        if (value < 0) throw new IllegalArgumentException("Negative values aren't supported");
+
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+
+        for (; values[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+        }
+
+        keys[i] = key;
+        values[i] = value;
+
+        // Keep the load factor below 0.5
+        if (++size * 2 > keys.length) rehash();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(values, EMPTY);
+
+        int mask = keys.length - 1;
+
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] == EMPTY) continue;
+
+            int i = hash(oldKeys[j]) & mask;
+
+            while (values[i] != EMPTY) i = (i + 1) & mask;
+
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+}
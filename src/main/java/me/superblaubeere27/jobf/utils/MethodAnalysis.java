@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import java.lang.reflect.Modifier;
+
+/**
+ * The frames and local variable slots of a method, computed on demand. The results are only valid until the method is
+ * modified.
+ */
+public class MethodAnalysis {
+    private final String owner;
+    private final MethodNode method;
+
+    private Frame<SourceValue>[] frames;
+    private int argumentSize = -1;
+    private int freeSlot;
+
+    public MethodAnalysis(String owner, MethodNode method) {
+        this.owner = owner;
+        this.method = method;
+    }
+
+    /**
+     * @return the frames before every instruction (null for unreachable instructions)
+     */
+    public Frame<SourceValue>[] getFrames() {
+        if (frames == null) {
+            int maxStack = method.maxStack;
+            int maxLocals = method.maxLocals;
+
+            // The maxs might already be outdated
+            method.maxStack = 1337;
+            method.maxLocals = 1337;
+
+            try {
+                frames = new Analyzer<>(new SourceInterpreter()).analyze(owner, method);
+            } catch (AnalyzerException e) {
+                throw new RuntimeException(e);
+            } finally {
+                method.maxStack = maxStack;
+                method.maxLocals = maxLocals;
+            }
+        }
+
+        return frames;
+    }
+
+    public Frame<SourceValue> getFrame(AbstractInsnNode insn) {
+        return getFrames()[method.instructions.indexOf(insn)];
+    }
+
+    public boolean isArgument(int var) {
+        if (argumentSize == -1) computeSlots();
+
+        return var < argumentSize;
+    }
+
+    /**
+     * @return the first slot which isn't used by the arguments or any instruction
+     */
+    public int getFreeSlot() {
+        if (argumentSize == -1) computeSlots();
+
+        return freeSlot;
+    }
+
+    /**
+     * @return a provider which allocates slots after {@link #getFreeSlot()}
+     */
+    public VariableProvider createVariableProvider() {
+        if (argumentSize == -1) computeSlots();
+
+        return new VariableProvider(argumentSize, freeSlot);
+    }
+
+    private void computeSlots() {
+        argumentSize = Modifier.isStatic(method.access) ? 0 : 1;
+
+        for (Type argumentType : Type.getArgumentTypes(method.desc)) {
+            argumentSize += argumentType.getSize();
+        }
+
+        freeSlot = argumentSize;
+
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            if (insn instanceof VarInsnNode) {
+                freeSlot = Math.max(freeSlot, ((VarInsnNode) insn).var + getSize(insn.getOpcode()));
+            } else if (insn instanceof IincInsnNode) {
+                freeSlot = Math.max(freeSlot, ((IincInsnNode) insn).var + 1);
+            }
+        }
+    }
+
+    private static int getSize(int opcode) {
+        return opcode == Opcodes.LLOAD || opcode == Opcodes.DLOAD || opcode == Opcodes.LSTORE || opcode == Opcodes.DSTORE ? 2 : 1;
+    }
+}
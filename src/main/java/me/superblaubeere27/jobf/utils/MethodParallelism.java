@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils;
+
+import me.superblaubeere27.jobf.JObfImpl;
+import me.superblaubeere27.jobf.JObfSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits the methods of large classes into subtasks. The subtasks are forked into the pool which transforms the classes,
+ * so idle threads help with the last large classes instead of waiting for them.
+ */
+public class MethodParallelism {
+    /**
+     * Methods per subtask
+     */
+    private static final int CHUNK_SIZE = 16;
+
+    /**
+     * Runs the action for every index of the list. The action may be called concurrently for different indices
+     * if the class is large enough, so it mustn't change anything but the method at the index without synchronization.
+     * <p>
+     * Every index gets its own {@link BuildRandom} seed, so the result doesn't depend on the threads.
+     * The generated names do depend on the order of the calls, so reproducible builds run sequentially.
+     */
+    public static void forEach(List<?> methods, IntConsumer action) {
+        int size = methods.size();
+        JObfSettings settings = JObfImpl.INSTANCE.getSettings();
+        int threshold = settings.getParallelMethodThreshold();
+        long seed = BuildRandom.INSTANCE.nextLong();
+
+        if (threshold <= 0 || settings.isReproducible() || size < threshold || !ForkJoinTask.inForkJoinPool()) {
+            run(seed, 0, size, action);
+            return;
+        }
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+        for (int start = 0; start < size; start += CHUNK_SIZE) {
+            int from = start;
+            int to = Math.min(size, start + CHUNK_SIZE);
+
+            tasks.add(ForkJoinTask.adapt(() -> run(seed, from, to, action)));
+        }
+
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    private static void run(long seed, int from, int to, IntConsumer action) {
+        // The thread might be in the middle of another class
+        long state = BuildRandom.getState();
+
+        try {
+            for (int i = from; i < to; i++) {
+                BuildRandom.setState(BuildRandom.split(seed, i));
+
+                action.accept(i);
+            }
+        } finally {
+            BuildRandom.setState(state);
+        }
+    }
+}
@@ -15,6 +15,7 @@ import org.objectweb.asm.tree.ClassNode;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class NameUtils {
     /**
@@ -27,22 +28,58 @@ public class NameUtils {
     private static Map<String, HashMap<String, Integer>> USED_METHODNAMES = new HashMap<>();
     private static Map<String, Integer> USED_FIELDNAMES = new HashMap<>();
     //    private static boolean iL = true;
-    private static int localVars = Short.MAX_VALUE;
-    private static Random random = new Random();
-    private static int METHODS = 0;
-    private static int FIELDS = 0;
+    private static AtomicInteger localVars = new AtomicInteger(Short.MAX_VALUE);
+    private static Random random = BuildRandom.INSTANCE;
+    private static AtomicInteger METHODS = new AtomicInteger();
+    private static AtomicInteger FIELDS = new AtomicInteger();
+    /**
+     * Index of the class, generated methods, generated fields, next local variable name
+     */
+    private static final ThreadLocal<int[]> CLASS_SCOPE = new ThreadLocal<>();
+    private static int classCount;
+    private static int methodBase;
+    private static int fieldBase;
 
     @SuppressWarnings("SameParameterValue")
     private static int randInt(int min, int max) {
         return random.nextInt(max - min) + min;
     }
 
+    /**
+     * Resets the counters, the names only have to be unique within one run
+     */
+    public static void reset() {
+        packageMap.clear();
+        localVars.set(Short.MAX_VALUE);
+        METHODS.set(0);
+        FIELDS.set(0);
+    }
+
     public static void setup(final String classCharacters, final String methodCharacters, final String fieldCharacters, boolean iL) {
         USED_METHODNAMES.clear();
         USED_FIELDNAMES.clear();
 
     }
 
+    /**
+     * Reserves a range of names for each class. The names which are generated while a thread is in the scope of
+     * a class only depend on the index of the class and the order in which the class requested them,
+     * not on the other threads.
+     */
+    public static void reserveClassScopes(int count) {
+        classCount = Math.max(1, count);
+        methodBase = METHODS.get();
+        fieldBase = FIELDS.get();
+    }
+
+    public static void beginClassScope(int index) {
+        CLASS_SCOPE.set(new int[]{index, 0, 0, Short.MAX_VALUE});
+    }
+
+    public static void endClassScope() {
+        CLASS_SCOPE.remove();
+    }
+
     public static String generateSpaceString(int length) {
         StringBuilder stringBuilder = new StringBuilder();
         for (int i = 0; i < length; i++) {
@@ -103,7 +140,11 @@ public class NameUtils {
 //        System.out.println(className + "/" + desc + ":" + descMap);
 
 //        return Utils.toIl(i);
-        return Utils.toIl(METHODS++);
+        int[] scope = CLASS_SCOPE.get();
+
+        if (scope != null) return Utils.toIl(methodBase + scope[1]++ * classCount + scope[0]);
+
+        return Utils.toIl(METHODS.getAndIncrement());
     }
 
     public static String generateMethodName(final ClassNode classNode, String desc) {
@@ -119,7 +160,11 @@ public class NameUtils {
 //        USED_FIELDNAMES.put(className, i + 1);
 //
 //        return Utils.toIl(i);
-        return Utils.toIl(FIELDS++);
+        int[] scope = CLASS_SCOPE.get();
+
+        if (scope != null) return Utils.toIl(fieldBase + scope[2]++ * classCount + scope[0]);
+
+        return Utils.toIl(FIELDS.getAndIncrement());
     }
 
     public static String generateFieldName(final ClassNode classNode) {
@@ -131,11 +176,15 @@ public class NameUtils {
     }
 
     public static String generateLocalVariableName() {
-        return Utils.toIl(localVars--);
+        int[] scope = CLASS_SCOPE.get();
+
+        if (scope != null) return Utils.toIl(scope[3]--);
+
+        return Utils.toIl(localVars.getAndDecrement());
     }
 
     private static int getLenght() {
-        return new Random().nextInt(20) + 6;
+        return random.nextInt(20) + 6;
     }
 
     public static String unicodeString(int length) {
@@ -287,6 +287,81 @@ public class NodeUtils {
         }
     }
 
+    /**
+     * Creates a deep copy of the method which can be used as a snapshot
+     */
+    public static MethodNode copyMethod(MethodNode method) {
+        MethodNode copy = new MethodNode(Opcodes.ASM7, method.access, method.name, method.desc, method.signature, method.exceptions == null ? null : method.exceptions.toArray(new String[0]));
+
+        method.accept(copy);
+
+        return copy;
+    }
+
+    /**
+     * Estimates the length of the method's bytecode in bytes (the value HotSpot compares against
+     * MaxInlineSize, FreqInlineSize and HugeMethodLimit). Constants are assumed to be loaded with
+     * LDC instead of LDC_W since the constant pool indices aren't known yet.
+     */
+    public static int getCodeSize(MethodNode method) {
+        int size = 0;
+
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            switch (insn.getType()) {
+                case AbstractInsnNode.LABEL:
+                case AbstractInsnNode.LINE:
+                case AbstractInsnNode.FRAME:
+                    break;
+                case AbstractInsnNode.INT_INSN:
+                    size += insn.getOpcode() == SIPUSH ? 3 : 2;
+                    break;
+                case AbstractInsnNode.VAR_INSN: {
+                    int var = ((VarInsnNode) insn).var;
+
+                    size += var < 4 && insn.getOpcode() != RET ? 1 : var < 256 ? 2 : 4;
+                    break;
+                }
+                case AbstractInsnNode.IINC_INSN: {
+                    IincInsnNode iinc = (IincInsnNode) insn;
+
+                    size += iinc.var > 255 || iinc.incr > Byte.MAX_VALUE || iinc.incr < Byte.MIN_VALUE ? 6 : 3;
+                    break;
+                }
+                case AbstractInsnNode.TYPE_INSN:
+                case AbstractInsnNode.FIELD_INSN:
+                case AbstractInsnNode.JUMP_INSN:
+                    size += 3;
+                    break;
+                case AbstractInsnNode.METHOD_INSN:
+                    size += insn.getOpcode() == INVOKEINTERFACE ? 5 : 3;
+                    break;
+                case AbstractInsnNode.INVOKE_DYNAMIC_INSN:
+                    size += 5;
+                    break;
+                case AbstractInsnNode.LDC_INSN: {
+                    Object cst = ((LdcInsnNode) insn).cst;
+
+                    size += cst instanceof Long || cst instanceof Double ? 3 : 2;
+                    break;
+                }
+                case AbstractInsnNode.MULTIANEWARRAY_INSN:
+                    size += 4;
+                    break;
+                case AbstractInsnNode.TABLESWITCH_INSN:
+                    size += 1 + (3 - size % 4) + 12 + 4 * ((TableSwitchInsnNode) insn).labels.size();
+                    break;
+                case AbstractInsnNode.LOOKUPSWITCH_INSN:
+                    size += 1 + (3 - size % 4) + 8 + 8 * ((LookupSwitchInsnNode) insn).labels.size();
+                    break;
+                default:
+                    size += 1;
+                    break;
+            }
+        }
+
+        return size;
+    }
+
 //    public static int getTypeLoad(Type argumentType) {
 //        if (argumentType.getOpcode()) {
 //
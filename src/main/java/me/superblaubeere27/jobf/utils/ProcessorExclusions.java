@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils;
+
+import me.superblaubeere27.jobf.processors.*;
+import me.superblaubeere27.jobf.processors.flowObfuscation.FlowObfuscator;
+import me.superblaubeere27.jobf.processors.name.InnerClassRemover;
+import me.superblaubeere27.jobf.processors.name.NameObfuscation;
+import me.superblaubeere27.jobf.processors.optimizer.Optimizer;
+import me.superblaubeere27.jobf.processors.optimizer.PeepholeOptimizer;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.*;
+
+/**
+ * Index of the {@code @Exclude} annotations of the obfuscator-annotations module. The obfuscator doesn't depend on
+ * the module, the annotations are recognized by their descriptor.
+ * <p>
+ * The index is built on one thread before the classes are transformed and only read afterwards. Classes and methods
+ * are looked up by their names, since processors may replace the method nodes (e.g. FlowObfuscator's retries) and
+ * streaming processors don't see the nodes at all. So it has to be built after the classes were renamed. The
+ * annotations are removed while indexing.
+ */
+public class ProcessorExclusions {
+    public static final ProcessorExclusions EMPTY = new ProcessorExclusions();
+
+    public static final String ANNOTATION_DESCRIPTOR = "Lme/superblaubeere27/annotations/Exclude;";
+    private static final String ENUM_DESCRIPTOR = "Lme/superblaubeere27/annotations/ObfuscationProcessors;";
+    /**
+     * Processor class -> name of the constant in {@code ObfuscationProcessors}
+     */
+    private static final Map<Class<?>, String> PROCESSOR_NAMES = new HashMap<>();
+
+    static {
+        PROCESSOR_NAMES.put(FlowObfuscator.class, "FLOW_OBFUSCATION");
+        PROCESSOR_NAMES.put(LineNumberRemover.class, "LINE_NUMBER_REMOVER");
+        PROCESSOR_NAMES.put(NumberObfuscationProcessor.class, "NUMBER_OBFUSCATION");
+        PROCESSOR_NAMES.put(StringEncryptionProcessor.class, "STRING_ENCRYPTION");
+        PROCESSOR_NAMES.put(HWIDProtection.class, "HWID_PROTECTION");
+        PROCESSOR_NAMES.put(Optimizer.class, "PEEPHOLE_OPTIMIZER");
+        PROCESSOR_NAMES.put(PeepholeOptimizer.class, "PEEPHOLE_OPTIMIZER");
+        PROCESSOR_NAMES.put(CrasherProcessor.class, "CRASHER");
+        PROCESSOR_NAMES.put(InvokeDynamic.class, "INVOKE_DYNAMIC");
+        PROCESSOR_NAMES.put(ReferenceProxy.class, "REFERENCE_PROXY");
+        PROCESSOR_NAMES.put(ShuffleMembersProcessor.class, "SHUFFLE_MEMBERS");
+        PROCESSOR_NAMES.put(InnerClassRemover.class, "INNER_CLASS_REMOVER");
+        PROCESSOR_NAMES.put(NameObfuscation.class, "NAME_OBFUSCATION");
+        PROCESSOR_NAMES.put(HideMembers.class, "HIDE_MEMBERS");
+        PROCESSOR_NAMES.put(InlineProcessor.class, "INLINEING");
+        PROCESSOR_NAMES.put(WatermarkProcessor.class, "WATERMARK");
+    }
+
+    /**
+     * Class name -> Excluded processors
+     */
+    private final Map<String, Set<String>> classes = new HashMap<>();
+    /**
+     * Class name -> Method name + descriptor -> Excluded processors
+     */
+    private final Map<String, Map<String, Set<String>>> methods = new HashMap<>();
+
+    private ProcessorExclusions() {
+    }
+
+    /**
+     * Collects and removes the annotations of the classes and their members. Only the annotation lists are visited,
+     * the instructions aren't touched.
+     */
+    public static ProcessorExclusions index(Collection<ClassNode> nodes) {
+        ProcessorExclusions exclusions = new ProcessorExclusions();
+
+        for (ClassNode node : nodes) {
+            Set<String> excluded = read(node.visibleAnnotations, node.invisibleAnnotations);
+
+            if (excluded != null) exclusions.classes.put(node.name, excluded);
+
+            strip(node.visibleAnnotations);
+            strip(node.invisibleAnnotations);
+
+            for (MethodNode method : node.methods) {
+                excluded = read(method.visibleAnnotations, method.invisibleAnnotations);
+
+                if (excluded != null) exclusions.methods.computeIfAbsent(node.name, name -> new HashMap<>()).put(method.name + method.desc, excluded);
+
+                strip(method.visibleAnnotations);
+                strip(method.invisibleAnnotations);
+            }
+            for (FieldNode field : node.fields) {
+                strip(field.visibleAnnotations);
+                strip(field.invisibleAnnotations);
+            }
+        }
+
+        return exclusions;
+    }
+
+    /**
+     * @return the names of the excluded processors (empty if all processors are excluded) or null if there's no
+     * annotation
+     */
+    public static Set<String> read(List<AnnotationNode> visible, List<AnnotationNode> invisible) {
+        AnnotationNode annotation = find(invisible);
+
+        if (annotation == null) annotation = find(visible);
+        if (annotation == null) return null;
+
+        Set<String> excluded = new HashSet<>();
+
+        if (annotation.values == null) return excluded;
+
+        for (int i = 0; i + 1 < annotation.values.size(); i += 2) {
+            if (!"value".equals(annotation.values.get(i))) continue;
+
+            for (Object value : (List<?>) annotation.values.get(i + 1)) {
+                String[] enumValue = (String[]) value;
+
+                if (ENUM_DESCRIPTOR.equals(enumValue[0])) excluded.add(enumValue[1]);
+            }
+        }
+
+        return excluded;
+    }
+
+    /**
+     * @return true if the annotations exclude the processor
+     */
+    public static boolean isExcluded(Object processor, List<AnnotationNode> visible, List<AnnotationNode> invisible) {
+        return excludes(read(visible, invisible), processor);
+    }
+
+    private static boolean excludes(Set<String> excluded, Object processor) {
+        if (excluded == null) return false;
+
+        return excluded.isEmpty() || excluded.contains(PROCESSOR_NAMES.get(processor.getClass()));
+    }
+
+    private static AnnotationNode find(List<AnnotationNode> annotations) {
+        if (annotations == null) return null;
+
+        for (AnnotationNode annotation : annotations) {
+            if (ANNOTATION_DESCRIPTOR.equals(annotation.desc)) return annotation;
+        }
+
+        return null;
+    }
+
+    private static void strip(List<AnnotationNode> annotations) {
+        if (annotations != null) annotations.removeIf(annotation -> ANNOTATION_DESCRIPTOR.equals(annotation.desc));
+    }
+
+    /**
+     * @return true if the processor mustn't change the class at all
+     */
+    public boolean isExcluded(Object processor, ClassNode node) {
+        return isExcluded(processor, node.name);
+    }
+
+    public boolean isExcluded(Object processor, String className) {
+        return excludes(classes.get(className), processor);
+    }
+
+    /**
+     * @return true if the processor mustn't change the method (or its whole class)
+     */
+    public boolean isExcluded(Object processor, ClassNode node, MethodNode method) {
+        return isExcluded(processor, node.name, method.name, method.desc);
+    }
+
+    public boolean isExcluded(Object processor, String className, String name, String desc) {
+        if (isExcluded(processor, className)) return true;
+
+        Map<String, Set<String>> classMethods = methods.get(className);
+
+        return classMethods != null && excludes(classMethods.get(name + desc), processor);
+    }
+
+    /**
+     * @return true if some methods of the class exclude the processor
+     */
+    public boolean hasExcludedMethods(Object processor, ClassNode node) {
+        Map<String, Set<String>> classMethods = methods.get(node.name);
+
+        if (classMethods == null) return false;
+
+        for (Set<String> excluded : classMethods.values()) {
+            if (excludes(excluded, processor)) return true;
+        }
+
+        return false;
+    }
+}
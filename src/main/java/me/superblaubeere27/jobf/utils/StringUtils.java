@@ -9,7 +9,7 @@ import java.util.Random;
  */
 public class StringUtils {
 
-    private static final Random random = new Random();
+    private static final Random random = BuildRandom.INSTANCE;
 
     public static String makeUnreadable(final String input) {
         final StringBuilder builder = new StringBuilder();
@@ -37,7 +37,7 @@ import java.util.zip.ZipFile;
 import static org.objectweb.asm.Opcodes.*;
 
 public class Utils {
-    private static final Random random = new Random();
+    private static final Random random = BuildRandom.INSTANCE;
     private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
     public static ClassNode lookupClass(String name) {
@@ -253,7 +253,7 @@ public class Utils {
 
         for (String s1 : s.split("\n")) {
             if (s1.startsWith("Main-Class")) {
-                sb.append("Main-Class: ").append(main);
+                sb.append("Main-Class: ").append(main).append("\n");
             } else {
                 sb.append(s1).append("\n");
             }
@@ -25,6 +25,11 @@ public class VariableProvider {
 
     }
 
+    VariableProvider(int argumentSize, int max) {
+        this.argumentSize = argumentSize;
+        this.max = max;
+    }
+
     public VariableProvider(MethodNode method) {
         this();
 
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils.events;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Passes the log records to the {@link EventBus} instead of writing them on the thread which logs them
+ */
+public class AsyncLogHandler extends Handler {
+    private final BooleanSupplier verbose;
+
+    /**
+     * @param verbose if it returns false, records below {@link Level#CONFIG} are discarded
+     */
+    public AsyncLogHandler(BooleanSupplier verbose) {
+        this.verbose = verbose;
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (record.getMessage() == null || !verbose.getAsBoolean() && record.getLevel().intValue() < Level.CONFIG.intValue())
+            return;
+
+        EventBus.INSTANCE.post(ObfuscationEvent.log(record));
+    }
+
+    /**
+     * The LogManager closes the handler when the JVM shuts down, so it mustn't wait for a blocked sink
+     */
+    @Override
+    public void flush() {
+        EventBus.INSTANCE.flush(EventBus.SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() throws SecurityException {
+        flush();
+    }
+}
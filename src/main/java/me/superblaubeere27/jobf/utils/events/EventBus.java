@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils.events;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Hands the events of the worker threads over to the sinks (console, GUI, progress file), which run on a single
+ * background thread. The events are kept in a bounded ring buffer: If it is full, progress events and log records
+ * below {@link Level#INFO} are dropped instead of blocking the workers.
+ */
+public class EventBus {
+    public static final EventBus INSTANCE = new EventBus(8192);
+    /**
+     * How long the shutdown waits for the sinks, a blocked sink (e.g. a full pipe) mustn't keep the JVM alive
+     */
+    public static final long SHUTDOWN_TIMEOUT_SECONDS = 2;
+
+    private final BlockingQueue<Object> queue;
+    private final List<Consumer<ObfuscationEvent>> sinks = new CopyOnWriteArrayList<>();
+    private final AtomicInteger dropped = new AtomicInteger();
+
+    EventBus(int capacity) {
+        queue = new ArrayBlockingQueue<>(capacity);
+
+        Thread thread = new Thread(this::dispatch, "Obfuscator-Events");
+
+        thread.setDaemon(true);
+        thread.start();
+
+        // The events which are still queued would get lost if the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+    }
+
+    public void addSink(Consumer<ObfuscationEvent> sink) {
+        sinks.add(sink);
+    }
+
+    public void removeSink(Consumer<ObfuscationEvent> sink) {
+        sinks.remove(sink);
+    }
+
+    public void post(ObfuscationEvent event) {
+        if (sinks.isEmpty()) return;
+
+        if (isDroppable(event)) {
+            if (!queue.offer(event)) dropped.incrementAndGet();
+            return;
+        }
+
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until every event which was posted before is consumed
+     */
+    public void flush() {
+        flush(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits until every event which was posted before is consumed or the timeout elapsed
+     */
+    public void flush(long timeout, TimeUnit unit) {
+        CountDownLatch latch = new CountDownLatch(1);
+
+        try {
+            if (queue.offer(latch, timeout, unit)) latch.await(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean isDroppable(ObfuscationEvent event) {
+        LogRecord record = event.getRecord();
+
+        return record == null ? event.getType() != ObfuscationEvent.Type.PHASE : record.getLevel().intValue() < Level.INFO.intValue();
+    }
+
+    private void dispatch() {
+        while (true) {
+            Object element;
+
+            try {
+                element = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (element instanceof CountDownLatch) {
+                ((CountDownLatch) element).countDown();
+                continue;
+            }
+
+            int droppedEvents = dropped.getAndSet(0);
+
+            if (droppedEvents > 0) {
+                LogRecord record = new LogRecord(Level.WARNING, "Dropped " + droppedEvents + " events, the output couldn't keep up");
+
+                deliver(ObfuscationEvent.log(record));
+            }
+
+            deliver((ObfuscationEvent) element);
+        }
+    }
+
+    private void deliver(ObfuscationEvent event) {
+        for (Consumer<ObfuscationEvent> sink : sinks) {
+            try {
+                sink.accept(event);
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils.events;
+
+import java.util.logging.LogRecord;
+
+/**
+ * A log record or a progress update. Events are created on the worker threads and consumed by the sinks of the
+ * {@link EventBus}, so the message of a log record is only formatted by the sinks.
+ */
+public class ObfuscationEvent {
+    private final Type type;
+    private final long time;
+    private final String thread;
+    private final LogRecord record;
+    private final String name;
+    private final int processed;
+    private final int total;
+
+    private ObfuscationEvent(Type type, LogRecord record, String name, int processed, int total) {
+        this.type = type;
+        this.time = System.currentTimeMillis();
+        this.thread = Thread.currentThread().getName();
+        this.record = record;
+        this.name = name;
+        this.processed = processed;
+        this.total = total;
+    }
+
+    public static ObfuscationEvent log(LogRecord record) {
+        return new ObfuscationEvent(Type.LOG, record, null, 0, 0);
+    }
+
+    /**
+     * @param phase e.g. "Reading input", "Transforming", "Writing"
+     */
+    public static ObfuscationEvent phase(String phase) {
+        return new ObfuscationEvent(Type.PHASE, null, phase, 0, 0);
+    }
+
+    public static ObfuscationEvent classStarted(String className, int processed, int total) {
+        return new ObfuscationEvent(Type.CLASS_STARTED, null, className, processed, total);
+    }
+
+    public static ObfuscationEvent classFinished(String className, int processed, int total) {
+        return new ObfuscationEvent(Type.CLASS_FINISHED, null, className, processed, total);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the name of the thread which created the event
+     */
+    public String getThread() {
+        return thread;
+    }
+
+    /**
+     * @return the log record or null if it isn't a {@link Type#LOG} event
+     */
+    public LogRecord getRecord() {
+        return record;
+    }
+
+    /**
+     * @return the phase or the class name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of classes which were finished
+     */
+    public int getProcessed() {
+        return processed;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public enum Type {
+        LOG,
+        PHASE,
+        CLASS_STARTED,
+        CLASS_FINISHED
+    }
+}
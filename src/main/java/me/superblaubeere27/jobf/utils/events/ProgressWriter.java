@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils.events;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.PrintStream;
+import java.util.function.Consumer;
+
+/**
+ * Writes the progress events as JSON lines, e.g.
+ * <pre>
+ * {"type":"phase","phase":"Transforming","time":1546300800000}
+ * {"type":"class","class":"com/example/Main.class","processed":12,"total":40,"time":1546300800120,"eta":280}
+ * </pre>
+ * The ETA (in milliseconds) is estimated from the classes which were transformed so far.
+ */
+public class ProgressWriter implements Consumer<ObfuscationEvent> {
+    private static final Gson gson = new Gson();
+    private final PrintStream out;
+    private long phaseStart;
+
+    public ProgressWriter(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void accept(ObfuscationEvent event) {
+        JsonObject json = new JsonObject();
+
+        switch (event.getType()) {
+            case PHASE:
+                phaseStart = event.getTime();
+
+                json.addProperty("type", "phase");
+                json.addProperty("phase", event.getName());
+                json.addProperty("time", event.getTime());
+                break;
+            case CLASS_FINISHED:
+                json.addProperty("type", "class");
+                json.addProperty("class", event.getName());
+                json.addProperty("processed", event.getProcessed());
+                json.addProperty("total", event.getTotal());
+                json.addProperty("time", event.getTime());
+
+                if (event.getProcessed() > 0) {
+                    long elapsed = event.getTime() - phaseStart;
+
+                    json.addProperty("eta", elapsed * (event.getTotal() - event.getProcessed()) / event.getProcessed());
+                }
+                break;
+            default:
+                return;
+        }
+
+        out.println(gson.toJson(json));
+        out.flush();
+    }
+}
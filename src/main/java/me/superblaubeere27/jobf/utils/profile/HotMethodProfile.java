@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils.profile;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A method profile containing invocation or sample counts per method.
+ * <p>
+ * Two formats are accepted:
+ * <ul>
+ * <li>A simple list with one method per line: {@code com/example/Main.loop(I)V 123456}.
+ * The descriptor and the count are optional, dotted class names are accepted as well.
+ * Lines starting with {@code #} are ignored.</li>
+ * <li>The textual output of {@code jfr print --events jdk.ExecutionSample recording.jfr}.
+ * Every sample counts for the top frame of its stack trace.</li>
+ * </ul>
+ */
+public class HotMethodProfile {
+    private final Map<String, Long> counts = new HashMap<>();
+
+    public static HotMethodProfile load(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            return parse(reader);
+        }
+    }
+
+    public static HotMethodProfile parse(BufferedReader reader) throws IOException {
+        HotMethodProfile profile = new HotMethodProfile();
+
+        boolean inStackTrace = false;
+        boolean topFrame = false;
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            if (line.startsWith("stackTrace = [")) {
+                inStackTrace = true;
+                topFrame = true;
+                continue;
+            }
+            if (inStackTrace) {
+                if (line.equals("]")) {
+                    inStackTrace = false;
+                } else if (topFrame) {
+                    topFrame = false;
+
+                    // JFR frames look like "com.example.Main.loop(int) line: 12"
+                    int paren = line.indexOf('(');
+
+                    if (paren != -1) profile.add(line.substring(0, paren), null, 1);
+                }
+                continue;
+            }
+            if (line.endsWith("{") || line.equals("}") || line.contains(" = ")) {
+                // Other JFR event fields
+                continue;
+            }
+
+            String[] split = line.split("\\s+");
+            long count = Long.MAX_VALUE;
+
+            if (split.length > 1) {
+                try {
+                    count = Long.parseLong(split[split.length - 1]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid count in profile line: " + line);
+                }
+            }
+
+            String method = split[0];
+            int paren = method.indexOf('(');
+
+            if (paren == -1) {
+                profile.add(method, null, count);
+            } else {
+                profile.add(method.substring(0, paren), method.substring(paren), count);
+            }
+        }
+
+        return profile;
+    }
+
+    private void add(String qualifiedName, String desc, long count) {
+        int dot = qualifiedName.lastIndexOf('.');
+
+        if (dot <= 0) return;
+
+        String owner = qualifiedName.substring(0, dot).replace('.', '/');
+        String name = qualifiedName.substring(dot + 1);
+
+        counts.merge(owner + '.' + name + (desc == null ? "" : desc), count, HotMethodProfile::saturatedAdd);
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long result = a + b;
+
+        return result < 0 ? Long.MAX_VALUE : result;
+    }
+
+    /**
+     * @return the sum of the counts which were recorded for the exact method and for all methods with its name
+     */
+    public long getCount(String owner, String name, String desc) {
+        return saturatedAdd(counts.getOrDefault(owner + '.' + name + desc, 0L), counts.getOrDefault(owner + '.' + name, 0L));
+    }
+
+    public int size() {
+        return counts.size();
+    }
+}
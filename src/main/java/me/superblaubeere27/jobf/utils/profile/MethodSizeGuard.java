@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils.profile;
+
+import me.superblaubeere27.jobf.JObf;
+import me.superblaubeere27.jobf.utils.NodeUtils;
+import me.superblaubeere27.jobf.utils.values.DeprecationLevel;
+import me.superblaubeere27.jobf.utils.values.EnabledValue;
+import me.superblaubeere27.jobf.utils.values.NumberValue;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rolls back methods which were grown past HotSpot's HugeMethodLimit (they would never be JIT-compiled)
+ * or the 64KB limit of the class file format by the processors.
+ */
+public class MethodSizeGuard {
+    private static final String PROCESSOR_NAME = "HugeMethodGuard";
+    private static final int HARD_LIMIT = 65535;
+    private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, "Rolls back methods which became too large", DeprecationLevel.GOOD, true);
+    private NumberValue<Integer> maxMethodSize = new NumberValue<>(PROCESSOR_NAME, "Max Method Size", "HotSpot doesn't JIT-compile larger methods (HugeMethodLimit)", DeprecationLevel.GOOD, 8000);
+
+    /**
+     * Copies the methods of the class before the processors are applied
+     *
+     * @return the snapshot or null if the guard is disabled
+     */
+    public Snapshot snapshot(ClassNode node) {
+        if (!enabled.getObject()) return null;
+
+        return new Snapshot(node);
+    }
+
+    /**
+     * Restores every method which crossed the size limit. If the static initializer or a generated method
+     * is too large the whole class is restored since the other methods might depend on it.
+     */
+    public void check(ClassNode node, Snapshot snapshot) {
+        if (snapshot == null) return;
+
+        int limit = Math.min(maxMethodSize.getObject(), HARD_LIMIT);
+
+        for (int i = 0; i < node.methods.size(); i++) {
+            MethodNode method = node.methods.get(i);
+            int size = NodeUtils.getCodeSize(method);
+
+            if (size <= limit) continue;
+
+            MethodNode original = snapshot.methods.get(method.name + method.desc);
+            int originalSize = original == null ? 0 : NodeUtils.getCodeSize(original);
+
+            // The method was already too large for the JIT before it was obfuscated, but it still has to fit into the class file
+            if (originalSize > limit && size <= HARD_LIMIT) continue;
+
+            int exceededLimit = size > HARD_LIMIT ? HARD_LIMIT : limit;
+
+            if (original == null || method.name.equals("<clinit>")) {
+                String reason = String.format("%d bytes (limit %d), rolled back the whole class", size, exceededLimit);
+
+                TransformReport.add(PROCESSOR_NAME, node.name + "." + method.name + method.desc, reason);
+                JObf.log.warning(node.name + "." + method.name + method.desc + ": " + reason);
+                snapshot.restore(node);
+                return;
+            }
+
+            node.methods.set(i, NodeUtils.copyMethod(original));
+
+            TransformReport.add(PROCESSOR_NAME, node.name + "." + method.name + method.desc, String.format("%d -> %d bytes (limit %d), rolled back", originalSize, size, exceededLimit));
+        }
+    }
+
+    public static class Snapshot {
+        private final int version;
+        private final List<FieldNode> fields;
+        private final List<MethodNode> methodList = new ArrayList<>();
+        private final Map<String, MethodNode> methods = new HashMap<>();
+
+        private Snapshot(ClassNode node) {
+            version = node.version;
+            fields = new ArrayList<>();
+
+            // The processors change the fields themselves (e.g. StaticInitializionProcessor moves their values into <clinit>)
+            for (FieldNode field : node.fields) {
+                fields.add(copyField(field));
+            }
+
+            for (MethodNode method : node.methods) {
+                MethodNode copy = NodeUtils.copyMethod(method);
+
+                methodList.add(copy);
+                methods.put(copy.name + copy.desc, copy);
+            }
+        }
+
+        private static FieldNode copyField(FieldNode field) {
+            ClassNode holder = new ClassNode();
+
+            field.accept(holder);
+
+            return holder.fields.get(0);
+        }
+
+        private void restore(ClassNode node) {
+            node.version = version;
+            node.fields = new ArrayList<>(fields);
+            node.methods = new ArrayList<>(methodList);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils.profile;
+
+import me.superblaubeere27.jobf.JObf;
+import me.superblaubeere27.jobf.utils.values.*;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Uses a {@link HotMethodProfile} to decide on which methods expensive transformations
+ * (e.g. FlowObfuscator, NumberObfuscation, InvokeDynamic) should be reduced or skipped.
+ */
+public class ProfileGuidance {
+    private static final String PROCESSOR_NAME = "ProfileGuided";
+    private EnabledValue enabled = new EnabledValue(PROCESSOR_NAME, "Relaxes expensive transformations on hot methods", DeprecationLevel.GOOD, false);
+    private StringValue profileFile = new StringValue(PROCESSOR_NAME, "Profile File", DeprecationLevel.GOOD, "");
+    private NumberValue<Integer> hotThreshold = new NumberValue<>(PROCESSOR_NAME, "Hot Threshold", "Minimal invocation/sample count of a hot method", DeprecationLevel.GOOD, 1);
+    private BooleanValue skipHotMethods = new BooleanValue(PROCESSOR_NAME, "Skip Hot Methods", "Leaves hot methods untouched instead of using cheaper transformations", DeprecationLevel.GOOD, false);
+    /**
+     * Current method name (owner.name + desc) -> Original name and count, used for the report
+     */
+    private Map<String, String> hotMethods = new HashMap<>();
+
+    /**
+     * Resolves the profile against the input classes. Has to be called before the classes are renamed.
+     */
+    public void init(Collection<ClassNode> classes) {
+        hotMethods = new HashMap<>();
+
+        if (!enabled.getObject()) return;
+
+        if (profileFile.getObject() == null || profileFile.getObject().isEmpty()) {
+            JObf.log.warning("[" + PROCESSOR_NAME + "] No profile file specified");
+            return;
+        }
+
+        HotMethodProfile profile;
+
+        try {
+            profile = HotMethodProfile.load(new File(profileFile.getObject()));
+        } catch (IOException e) {
+            JObf.log.severe("[" + PROCESSOR_NAME + "] Failed to load profile: " + e.getMessage());
+            return;
+        }
+
+        for (ClassNode classNode : classes) {
+            for (MethodNode method : classNode.methods) {
+                long count = profile.getCount(classNode.name, method.name, method.desc);
+
+                if (count > 0 && count >= hotThreshold.getObject()) {
+                    String key = classNode.name + '.' + method.name + method.desc;
+
+                    hotMethods.put(key, count == Long.MAX_VALUE ? key : key + " (" + count + ")");
+                }
+            }
+        }
+
+        JObf.log.info("[" + PROCESSOR_NAME + "] Found " + hotMethods.size() + " hot methods (" + profile.size() + " profile entries)");
+    }
+
+    /**
+     * Keeps track of the hot methods if they are renamed
+     */
+    public void remap(Remapper remapper) {
+        if (hotMethods.isEmpty()) return;
+
+        Map<String, String> remapped = new HashMap<>();
+
+        for (Map.Entry<String, String> entry : hotMethods.entrySet()) {
+            String key = entry.getKey();
+            int paren = key.indexOf('(');
+            int dot = key.lastIndexOf('.', paren);
+
+            String owner = key.substring(0, dot);
+            String name = key.substring(dot + 1, paren);
+            String desc = key.substring(paren);
+
+            remapped.put(remapper.mapType(owner) + '.' + remapper.mapMethodName(owner, name, desc) + remapper.mapMethodDesc(desc), entry.getValue());
+        }
+
+        hotMethods = remapped;
+    }
+
+    public boolean isHot(ClassNode node, MethodNode method) {
+        return !hotMethods.isEmpty() && hotMethods.containsKey(node.name + '.' + method.name + method.desc);
+    }
+
+    public boolean isSkippingHotMethods() {
+        return skipHotMethods.getObject();
+    }
+
+    /**
+     * Adds a relaxed transformation of a hot method to the {@link TransformReport}
+     */
+    public void relaxed(String processor, ClassNode node, MethodNode method, String action) {
+        TransformReport.add(processor, hotMethods.get(node.name + '.' + method.name + method.desc), "hot method, " + action);
+    }
+}
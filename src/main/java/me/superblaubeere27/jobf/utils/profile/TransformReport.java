@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils.profile;
+
+import me.superblaubeere27.jobf.JObf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.logging.Level;
+
+/**
+ * Collects the methods on which transformations were relaxed, skipped or rolled back.
+ */
+public class TransformReport {
+    private static final List<String> entries = new ArrayList<>();
+    private static final Map<String, Integer> processorCounts = new TreeMap<>();
+
+    public static void reset() {
+        synchronized (entries) {
+            entries.clear();
+            processorCounts.clear();
+        }
+    }
+
+    public static void add(String processor, String method, String reason) {
+        String entry = String.format("[%s] %s: %s", processor, method, reason);
+
+        synchronized (entries) {
+            entries.add(entry);
+            processorCounts.merge(processor, 1, Integer::sum);
+        }
+
+        JObf.log.log(Level.FINE, entry);
+    }
+
+    public static List<String> getEntries() {
+        synchronized (entries) {
+            return new ArrayList<>(entries);
+        }
+    }
+
+    /**
+     * Logs a summary and writes the full report to the given file (if it isn't empty)
+     */
+    public static void finish(String reportFile) {
+        List<String> report = getEntries();
+
+        if (report.isEmpty()) return;
+
+        Collections.sort(report);
+
+        synchronized (entries) {
+            for (Map.Entry<String, Integer> entry : processorCounts.entrySet()) {
+                JObf.log.info(String.format("[%s] Relaxed or rolled back transformations on %d methods", entry.getKey(), entry.getValue()));
+            }
+        }
+
+        if (reportFile == null || reportFile.isEmpty()) return;
+
+        try {
+            Files.write(new File(reportFile).toPath(), report, StandardCharsets.UTF_8);
+            JObf.log.info("Wrote transform report to " + reportFile);
+        } catch (IOException e) {
+            JObf.log.warning("Failed to write transform report: " + e.getMessage());
+        }
+    }
+}
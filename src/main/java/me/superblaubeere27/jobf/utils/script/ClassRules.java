@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils.script;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Declarative include/exclude rules which decide if a class is obfuscated and/or renamed.
+ * <p>
+ * Every line has the format {@code include|exclude[:obfuscation|:remap] <condition>...}, the last matching rule wins
+ * and classes which aren't matched by any rule are included. Lines of the format {@code keep <condition>...} mark
+ * classes as entry points for the shrinker, the classes and all of their members are kept. All conditions of a line
+ * have to match:
+ * <ul>
+ * <li>{@code com.example.*} / {@code com.example.**} - The name of the class ({@code *} doesn't match packages, {@code **} does)</li>
+ * <li>{@code @com.example.Keep} - The class is annotated with the annotation</li>
+ * <li>{@code extends com.example.Base} - A (indirect) super class or interface of the class</li>
+ * <li>{@code access public,!final} - The access flags of the class</li>
+ * </ul>
+ * Names may contain globs and be separated by dots or slashes. Lines which start with {@code #} are ignored.
+ */
+public class ClassRules {
+    public static final ClassRules EMPTY = new ClassRules(Collections.emptyList());
+    private static final Map<String, Integer> ACCESS_FLAGS = new HashMap<>();
+
+    static {
+        ACCESS_FLAGS.put("public", Opcodes.ACC_PUBLIC);
+        ACCESS_FLAGS.put("final", Opcodes.ACC_FINAL);
+        ACCESS_FLAGS.put("interface", Opcodes.ACC_INTERFACE);
+        ACCESS_FLAGS.put("abstract", Opcodes.ACC_ABSTRACT);
+        ACCESS_FLAGS.put("synthetic", Opcodes.ACC_SYNTHETIC);
+        ACCESS_FLAGS.put("annotation", Opcodes.ACC_ANNOTATION);
+        ACCESS_FLAGS.put("enum", Opcodes.ACC_ENUM);
+    }
+
+    private final List<Rule> rules;
+
+    private ClassRules(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a line is invalid
+     */
+    public static ClassRules parse(List<String> lines) {
+        List<Rule> rules = new ArrayList<>();
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            try {
+                rules.add(parseRule(line.split("\\s+")));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid rule in line " + (i + 1) + " (" + line + "): " + e.getMessage());
+            }
+        }
+
+        return new ClassRules(rules);
+    }
+
+    private static Rule parseRule(String[] tokens) {
+        String[] action = tokens[0].split(":", 2);
+        boolean include = false;
+        boolean keep = false;
+
+        if (action[0].equals("include")) {
+            include = true;
+        } else if (action[0].equals("keep")) {
+            keep = true;
+        } else if (!action[0].equals("exclude")) {
+            throw new IllegalArgumentException("Expected include, exclude or keep");
+        }
+
+        boolean obfuscation = !keep;
+        boolean remap = !keep;
+
+        if (action.length == 2) {
+            if (keep) {
+                throw new IllegalArgumentException("keep doesn't have a target");
+            } else if (action[1].equals("obfuscation")) {
+                remap = false;
+            } else if (action[1].equals("remap")) {
+                obfuscation = false;
+            } else {
+                throw new IllegalArgumentException("Unknown target " + action[1]);
+            }
+        }
+
+        if (tokens.length < 2) throw new IllegalArgumentException("Missing condition");
+
+        List<Condition> conditions = new ArrayList<>();
+
+        for (int i = 1; i < tokens.length; i++) {
+            String token = tokens[i];
+
+            if (token.equals("extends") || token.equals("access")) {
+                if (++i == tokens.length) throw new IllegalArgumentException("Missing argument of " + token);
+
+                conditions.add(token.equals("extends") ? superClass(glob(tokens[i])) : access(tokens[i]));
+            } else if (token.startsWith("@")) {
+                Predicate<String> annotation = glob(token.substring(1));
+
+                conditions.add((node, classPath) -> hasAnnotation(node.visibleAnnotations, annotation) || hasAnnotation(node.invisibleAnnotations, annotation));
+            } else {
+                Predicate<String> name = glob(token);
+
+                conditions.add((node, classPath) -> name.test(node.name));
+            }
+        }
+
+        return new Rule(include, obfuscation, remap, keep, conditions);
+    }
+
+    /**
+     * Compiles a glob into a matcher for internal names
+     */
+    private static Predicate<String> glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        String name = glob.replace('.', '/');
+
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+
+            if (c == '*') {
+                if (i + 1 < name.length() && name.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+
+        Pattern pattern = Pattern.compile(regex.toString());
+
+        return s -> pattern.matcher(s).matches();
+    }
+
+    private static Condition superClass(Predicate<String> name) {
+        return (node, classPath) -> {
+            Set<String> visited = new HashSet<>();
+            Deque<String> queue = new ArrayDeque<>();
+
+            if (node.superName != null) queue.add(node.superName);
+            if (node.interfaces != null) queue.addAll(node.interfaces);
+
+            while (!queue.isEmpty()) {
+                String current = queue.poll();
+
+                if (!visited.add(current)) continue;
+                if (name.test(current)) return true;
+
+                ClassNode parent = classPath.apply(current);
+
+                if (parent == null) continue;
+
+                if (parent.superName != null) queue.add(parent.superName);
+                if (parent.interfaces != null) queue.addAll(parent.interfaces);
+            }
+
+            return false;
+        };
+    }
+
+    private static Condition access(String flags) {
+        int required = 0;
+        int forbidden = 0;
+
+        for (String flag : flags.split(",")) {
+            boolean negated = flag.startsWith("!");
+            Integer value = ACCESS_FLAGS.get(negated ? flag.substring(1) : flag);
+
+            if (value == null) throw new IllegalArgumentException("Unknown access flag " + flag);
+
+            if (negated) forbidden |= value;
+            else required |= value;
+        }
+
+        int finalRequired = required;
+        int finalForbidden = forbidden;
+
+        return (node, classPath) -> (node.access & finalRequired) == finalRequired && (node.access & finalForbidden) == 0;
+    }
+
+    private static boolean hasAnnotation(List<AnnotationNode> annotations, Predicate<String> name) {
+        if (annotations == null) return false;
+
+        for (AnnotationNode annotation : annotations) {
+            if (annotation.desc.startsWith("L") && name.test(annotation.desc.substring(1, annotation.desc.length() - 1)))
+                return true;
+        }
+
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * @param classPath internal name -> class, used to look up the super classes (may return null)
+     */
+    public Decision decide(ClassNode node, Function<String, ClassNode> classPath) {
+        boolean obfuscate = true;
+        boolean remap = true;
+
+        for (Rule rule : rules) {
+            if (!rule.matches(node, classPath)) continue;
+
+            if (rule.obfuscation) obfuscate = rule.include;
+            if (rule.remap) remap = rule.include;
+        }
+
+        return new Decision(obfuscate, remap);
+    }
+
+    /**
+     * @param classPath internal name -> class, used to look up the super classes (may return null)
+     * @return true if a keep rule matches the class
+     */
+    public boolean isKept(ClassNode node, Function<String, ClassNode> classPath) {
+        for (Rule rule : rules) {
+            if (rule.keep && rule.matches(node, classPath)) return true;
+        }
+
+        return false;
+    }
+
+    private interface Condition {
+        boolean matches(ClassNode node, Function<String, ClassNode> classPath);
+    }
+
+    private static class Rule {
+        private final boolean include;
+        private final boolean obfuscation;
+        private final boolean remap;
+        private final boolean keep;
+        private final List<Condition> conditions;
+
+        private Rule(boolean include, boolean obfuscation, boolean remap, boolean keep, List<Condition> conditions) {
+            this.include = include;
+            this.obfuscation = obfuscation;
+            this.remap = remap;
+            this.keep = keep;
+            this.conditions = conditions;
+        }
+
+        private boolean matches(ClassNode node, Function<String, ClassNode> classPath) {
+            for (Condition condition : conditions) {
+                if (!condition.matches(node, classPath)) return false;
+            }
+
+            return true;
+        }
+    }
+
+    public static class Decision {
+        public static final Decision INCLUDED = new Decision(true, true);
+        private final boolean obfuscate;
+        private final boolean remap;
+
+        public Decision(boolean obfuscate, boolean remap) {
+            this.obfuscate = obfuscate;
+            this.remap = remap;
+        }
+
+        public boolean isObfuscated() {
+            return obfuscate;
+        }
+
+        public boolean isRemapped() {
+            return remap;
+        }
+    }
+}
@@ -21,7 +21,13 @@ public class JObfScript {
 
     private ScriptEngine jsEngine;
 
+    /**
+     * The engine isn't thread-safe, so the script is only called while the classes are evaluated (see {@link ClassRules})
+     */
     public JObfScript(String script) {
+        // The engine is only needed for the hooks (and isn't available on every JVM)
+        if (script == null || script.trim().isEmpty()) return;
+
         try {
             jsEngine = new ScriptEngineManager().getEngineByName("nashorn");
             jsEngine.eval(script);
@@ -31,6 +37,8 @@ public class JObfScript {
     }
 
     public boolean remapClass(ClassNode node) {
+        if (jsEngine == null) return true;
+
         try {
             Invocable invocable = (Invocable) jsEngine;
 
@@ -44,6 +52,8 @@ public class JObfScript {
     }
 
     public boolean isObfuscatorEnabled(ClassNode node) {
+        if (jsEngine == null) return true;
+
         try {
             Invocable invocable = (Invocable) jsEngine;
 
@@ -23,6 +23,15 @@ public class Configuration {
     private String output;
     private String script;
     private List<String> libraries;
+    /**
+     * Further jars which are obfuscated together with the input, they share the classpath and the mappings
+     */
+    private List<String> batchInputs = new ArrayList<>();
+    private List<String> batchOutputs = new ArrayList<>();
+    /**
+     * See {@link me.superblaubeere27.jobf.utils.script.ClassRules}
+     */
+    private List<String> rules = new ArrayList<>();
 
     public Configuration(String input, String output, String script, List<String> libraries) {
         this.input = input;
@@ -54,7 +63,22 @@ public class Configuration {
             }
         }
 
-        return new Configuration(input, output, script, libraries);
+        Configuration configuration = new Configuration(input, output, script, libraries);
+
+        if (obj.has("rules")) {
+            for (JsonElement jsonElement : obj.getAsJsonArray("rules")) {
+                configuration.rules.add(jsonElement.getAsString());
+            }
+        }
+        if (obj.has("batch")) {
+            for (JsonElement jsonElement : obj.getAsJsonArray("batch")) {
+                JsonObject jar = jsonElement.getAsJsonObject();
+
+                configuration.addBatchJar(jar.get("input").getAsString(), jar.get("output").getAsString());
+            }
+        }
+
+        return configuration;
     }
 
     void addToJsonObject(JsonObject jsonObject) {
@@ -69,6 +93,31 @@ public class Configuration {
         }
 
         jsonObject.add("libraries", array);
+
+        if (!rules.isEmpty()) {
+            JsonArray ruleArray = new JsonArray();
+
+            for (String rule : rules) {
+                ruleArray.add(new JsonPrimitive(rule));
+            }
+
+            jsonObject.add("rules", ruleArray);
+        }
+
+        if (!batchInputs.isEmpty()) {
+            JsonArray batch = new JsonArray();
+
+            for (int i = 0; i < batchInputs.size(); i++) {
+                JsonObject jar = new JsonObject();
+
+                jar.addProperty("input", batchInputs.get(i));
+                jar.addProperty("output", batchOutputs.get(i));
+
+                batch.add(jar);
+            }
+
+            jsonObject.add("batch", batch);
+        }
     }
 
     public String getInput() {
@@ -87,6 +136,48 @@ public class Configuration {
         this.output = output;
     }
 
+    public void addBatchJar(String input, String output) {
+        batchInputs.add(input);
+        batchOutputs.add(output);
+    }
+
+    public void clearBatchJars() {
+        batchInputs.clear();
+        batchOutputs.clear();
+    }
+
+    /**
+     * @return the input and the inputs of the batch
+     */
+    public List<String> getInputs() {
+        List<String> inputs = new ArrayList<>();
+
+        inputs.add(input);
+        inputs.addAll(batchInputs);
+
+        return inputs;
+    }
+
+    /**
+     * @return the output and the outputs of the batch, in the same order as {@link #getInputs()}
+     */
+    public List<String> getOutputs() {
+        List<String> outputs = new ArrayList<>();
+
+        outputs.add(output);
+        outputs.addAll(batchOutputs);
+
+        return outputs;
+    }
+
+    public List<String> getRules() {
+        return rules;
+    }
+
+    public void setRules(List<String> rules) {
+        this.rules = rules;
+    }
+
     public String getScript() {
         return script;
     }
@@ -98,4 +189,8 @@ public class Configuration {
     public List<String> getLibraries() {
         return libraries;
     }
+
+    public void setLibraries(List<String> libraries) {
+        this.libraries = libraries;
+    }
 }
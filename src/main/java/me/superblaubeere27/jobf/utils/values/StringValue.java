@@ -12,6 +12,10 @@ package me.superblaubeere27.jobf.utils.values;
 
 public class StringValue extends Value<String> {
 
+    public StringValue(String owner, String name, String description, DeprecationLevel deprecated, String object) {
+        super(owner, name, description, deprecated, object);
+    }
+
     public StringValue(String owner, String name, DeprecationLevel deprecated, String object) {
         super(owner, name, deprecated, object);
     }
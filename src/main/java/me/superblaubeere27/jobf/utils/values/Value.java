@@ -15,6 +15,7 @@ public abstract class Value<T> {
     private String name;
     private String description;
     private T object;
+    private final T defaultObject;
     private DeprecationLevel deprecation;
 
     public Value(String owner, String name, DeprecationLevel deprecation, T object) {
@@ -27,6 +28,7 @@ public abstract class Value<T> {
         this.description = description;
         this.deprecation = deprecation;
         this.object = object;
+        this.defaultObject = object;
     }
 
     public String getOwner() {
@@ -45,6 +47,10 @@ public abstract class Value<T> {
         this.object = object;
     }
 
+    public void reset() {
+        this.object = defaultObject;
+    }
+
     public DeprecationLevel getDeprecation() {
         return deprecation;
     }
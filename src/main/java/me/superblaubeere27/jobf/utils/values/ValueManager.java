@@ -44,6 +44,13 @@ public class ValueManager {
 
     }
 
+    /**
+     * Sets every value back to its default, e.g. before the next config is loaded
+     */
+    public static void resetValues() {
+        values.forEach(Value::reset);
+    }
+
     public static List<Value<?>> getValues() {
         return values;
     }
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27;
+
+import me.superblaubeere27.jobf.benchmark.ClassFileStats;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClassFileStatsTest {
+    @Test
+    public void test_parse() throws Exception {
+        ClassNode node = new ClassNode();
+
+        node.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "Test", null, "java/lang/Object", null);
+        node.visitSource("Test.java", null);
+        node.fields.add(new FieldNode(Opcodes.ACC_STATIC, "value", "J", null, 5L));
+
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "test", "()Ljava/lang/String;", null, null);
+        LabelNode label = new LabelNode();
+
+        method.instructions.add(label);
+        method.instructions.add(new LineNumberNode(1, label));
+        method.instructions.add(new LdcInsnNode("Hello"));
+        method.instructions.add(new InsnNode(Opcodes.ARETURN));
+        node.methods.add(method);
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+        node.accept(writer);
+
+        byte[] data = writer.toByteArray();
+        ClassFileStats stats = ClassFileStats.parse(data);
+
+        assertEquals(data.length, stats.getTotalBytes());
+        assertEquals(1, stats.getMethods());
+        // ldc, areturn
+        assertEquals(3, stats.getCodeBytes());
+        // SourceFile (8 bytes) and LineNumberTable (12 bytes)
+        assertEquals(20, stats.getDebugBytes());
+        assertEquals(0, stats.getFrameBytes());
+        assertTrue(stats.getConstantPoolEntries() > 5);
+        assertTrue(stats.getOtherBytes() > 0);
+
+        ClassFileStats sum = new ClassFileStats();
+
+        sum.add(stats);
+        sum.add(stats);
+
+        assertEquals(2, sum.getClasses());
+        assertEquals(2 * data.length, sum.getTotalBytes());
+    }
+}
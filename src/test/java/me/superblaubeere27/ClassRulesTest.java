@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27;
+
+import me.superblaubeere27.jobf.utils.script.ClassRules;
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ClassRulesTest {
+    private final Map<String, ClassNode> classPath = new HashMap<>();
+
+    private ClassNode node(String name, String superName, int access) {
+        ClassNode node = new ClassNode();
+
+        node.name = name;
+        node.superName = superName;
+        node.access = access;
+        node.interfaces = new ArrayList<>();
+
+        classPath.put(name, node);
+
+        return node;
+    }
+
+    private ClassRules.Decision decide(ClassRules rules, ClassNode node) {
+        return rules.decide(node, classPath::get);
+    }
+
+    @Test
+    public void testGlobs() {
+        ClassRules rules = ClassRules.parse(Arrays.asList(
+                "# keep the api",
+                "exclude com.example.api.**",
+                "include com.example.api.internal.*",
+                "exclude:remap com/example/Ma?n"
+        ));
+
+        assertFalse(decide(rules, node("com/example/api/v1/Service", "java/lang/Object", 0)).isObfuscated());
+        assertTrue(decide(rules, node("com/example/api/internal/Impl", "java/lang/Object", 0)).isObfuscated());
+        assertFalse(decide(rules, node("com/example/api/internal/deep/Impl", "java/lang/Object", 0)).isObfuscated());
+
+        ClassRules.Decision main = decide(rules, node("com/example/Main", "java/lang/Object", 0));
+
+        assertTrue(main.isObfuscated());
+        assertFalse(main.isRemapped());
+    }
+
+    @Test
+    public void testConditions() {
+        ClassRules rules = ClassRules.parse(Arrays.asList(
+                "exclude @com.example.Keep",
+                "exclude:obfuscation extends com.example.Plugin",
+                "exclude:remap com.example.** access public,!interface"
+        ));
+
+        ClassNode annotated = node("a/Annotated", "java/lang/Object", 0);
+        annotated.invisibleAnnotations = Collections.singletonList(new AnnotationNode("Lcom/example/Keep;"));
+
+        assertFalse(decide(rules, annotated).isObfuscated());
+        assertFalse(decide(rules, annotated).isRemapped());
+
+        node("com/example/Plugin", "java/lang/Object", Opcodes.ACC_ABSTRACT);
+        node("a/Base", "com/example/Plugin", 0);
+
+        ClassRules.Decision plugin = decide(rules, node("a/MyPlugin", "a/Base", 0));
+
+        assertFalse(plugin.isObfuscated());
+        assertTrue(plugin.isRemapped());
+
+        assertFalse(decide(rules, node("com/example/Api", "java/lang/Object", Opcodes.ACC_PUBLIC)).isRemapped());
+        assertTrue(decide(rules, node("com/example/Hidden", "java/lang/Object", 0)).isRemapped());
+        assertTrue(decide(rules, node("com/example/Listener", null, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE)).isRemapped());
+    }
+
+    @Test
+    public void testKeep() {
+        ClassRules rules = ClassRules.parse(Arrays.asList(
+                "keep com.example.plugin.*",
+                "exclude com.example.**"
+        ));
+
+        ClassNode plugin = node("com/example/plugin/Main", "java/lang/Object", 0);
+
+        assertTrue(rules.isKept(plugin, classPath::get));
+        assertFalse(rules.isKept(node("com/example/Other", "java/lang/Object", 0), classPath::get));
+        // Keep rules don't change the decision
+        assertFalse(decide(rules, plugin).isObfuscated());
+        assertTrue(decide(ClassRules.parse(Collections.singletonList("keep com.example.**")), plugin).isObfuscated());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRule() {
+        ClassRules.parse(Collections.singletonList("exclude access volatile"));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27;
+
+import me.superblaubeere27.jobf.utils.profile.HotMethodProfile;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+
+public class HotMethodProfileTest {
+
+    private static HotMethodProfile parse(String profile) throws IOException {
+        return HotMethodProfile.parse(new BufferedReader(new StringReader(profile)));
+    }
+
+    @Test
+    public void testMethodList() throws IOException {
+        HotMethodProfile profile = parse("# hot methods\n" +
+                "com/example/Main.loop(I)V 1000\n" +
+                "com.example.Main.update 20\n" +
+                "com/example/Util.always\n");
+
+        assertEquals(1000, profile.getCount("com/example/Main", "loop", "(I)V"));
+        assertEquals(20, profile.getCount("com/example/Main", "update", "()V"));
+        assertEquals(0, profile.getCount("com/example/Main", "loop", "()V"));
+        assertEquals(Long.MAX_VALUE, profile.getCount("com/example/Util", "always", "()V"));
+    }
+
+    @Test
+    public void testJfrOutput() throws IOException {
+        String sample = "jdk.ExecutionSample {\n" +
+                "  startTime = 10:37:15.364\n" +
+                "  sampledThread = \"main\" (javaThreadId = 1)\n" +
+                "  state = \"STATE_RUNNABLE\"\n" +
+                "  stackTrace = [\n" +
+                "    com.example.Main.loop(int) line: 5\n" +
+                "    com.example.Main.main(String[]) line: 10\n" +
+                "  ]\n" +
+                "}\n";
+
+        HotMethodProfile profile = parse(sample + sample);
+
+        assertEquals(2, profile.getCount("com/example/Main", "loop", "(I)V"));
+        assertEquals(0, profile.getCount("com/example/Main", "main", "([Ljava/lang/String;)V"));
+    }
+}
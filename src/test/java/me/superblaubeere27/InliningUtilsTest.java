@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27;
+
+import me.superblaubeere27.jobf.utils.InliningUtils;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InliningUtilsTest {
+
+    /**
+     * {@code static long divide(long a, int b) { try { return a / b; } catch (ArithmeticException e) { return -1; } }}
+     */
+    private static MethodNode createCallee() {
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "divide", "(JI)J", null, null);
+
+        LabelNode start = new LabelNode();
+        LabelNode end = new LabelNode();
+        LabelNode handler = new LabelNode();
+
+        method.instructions.add(start);
+        method.instructions.add(new VarInsnNode(Opcodes.LLOAD, 0));
+        method.instructions.add(new VarInsnNode(Opcodes.ILOAD, 2));
+        method.instructions.add(new InsnNode(Opcodes.I2L));
+        method.instructions.add(new InsnNode(Opcodes.LDIV));
+        method.instructions.add(end);
+        method.instructions.add(new InsnNode(Opcodes.LRETURN));
+        method.instructions.add(handler);
+        method.instructions.add(new VarInsnNode(Opcodes.ASTORE, 3));
+        method.instructions.add(new IincInsnNode(2, 1));
+        method.instructions.add(new LdcInsnNode(-1L));
+        method.instructions.add(new InsnNode(Opcodes.LRETURN));
+
+        method.tryCatchBlocks.add(new TryCatchBlockNode(start, end, handler, "java/lang/ArithmeticException"));
+
+        method.maxStack = 4;
+        method.maxLocals = 4;
+
+        return method;
+    }
+
+    @Test
+    public void test_inline() throws Exception {
+        ClassNode node = new ClassNode();
+
+        node.version = Opcodes.V1_8;
+        node.access = Opcodes.ACC_PUBLIC;
+        node.name = "InlineTest";
+        node.superName = "java/lang/Object";
+
+        MethodNode callee = createCallee();
+
+        // static long run(int b) { return divide(6L, b); }
+        MethodNode caller = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "run", "(I)J", null, null);
+
+        MethodInsnNode call = new MethodInsnNode(Opcodes.INVOKESTATIC, node.name, callee.name, callee.desc, false);
+
+        caller.instructions.add(new LdcInsnNode(6L));
+        caller.instructions.add(new VarInsnNode(Opcodes.ILOAD, 0));
+        caller.instructions.add(call);
+        caller.instructions.add(new InsnNode(Opcodes.LRETURN));
+
+        caller.maxStack = 3;
+        caller.maxLocals = 1;
+
+        assertTrue(InliningUtils.isInlinable(node.name, callee));
+
+        InliningUtils.inline(call, callee, caller, caller.maxLocals);
+
+        assertEquals(5, caller.maxLocals);
+        assertEquals(1, caller.tryCatchBlocks.size());
+
+        node.methods.add(caller);
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+
+        node.accept(writer);
+
+        byte[] bytes = writer.toByteArray();
+
+        Class<?> clazz = new ClassLoader(InliningUtilsTest.class.getClassLoader()) {
+            Class<?> define() {
+                return defineClass(node.name, bytes, 0, bytes.length);
+            }
+        }.define();
+
+        Method run = clazz.getMethod("run", int.class);
+
+        assertEquals(3L, run.invoke(null, 2));
+        assertEquals(-1L, run.invoke(null, 0));
+    }
+
+    @Test
+    public void test_isInlinable() {
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "test", "()I", null, null);
+
+        // Leaves a value below the return value
+        method.instructions.add(new InsnNode(Opcodes.ICONST_1));
+        method.instructions.add(new InsnNode(Opcodes.ICONST_2));
+        method.instructions.add(new InsnNode(Opcodes.IRETURN));
+
+        method.maxStack = 2;
+
+        assertFalse(InliningUtils.isInlinable("Test", method));
+    }
+
+}
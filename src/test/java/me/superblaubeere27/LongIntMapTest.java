@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27;
+
+import me.superblaubeere27.jobf.utils.LongIntMap;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LongIntMapTest {
+    @Test
+    public void test_putGet() {
+        LongIntMap map = new LongIntMap(2);
+
+        for (int i = 0; i < 1000; i++) {
+            map.put(i * 0x100000000L - 500, i);
+        }
+        map.put(Double.doubleToRawLongBits(-0.0), 1000);
+
+        assertEquals(1001, map.size());
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, map.get(i * 0x100000000L - 500, -1));
+        }
+        assertEquals(1000, map.get(Double.doubleToRawLongBits(-0.0), -1));
+        assertEquals(-1, map.get(Double.doubleToRawLongBits(0.0), -1));
+
+        map.put(-500, 5);
+
+        assertEquals(1001, map.size());
+        assertEquals(5, map.get(-500, -1));
+    }
+}
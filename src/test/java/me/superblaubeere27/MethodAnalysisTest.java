@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27;
+
+import me.superblaubeere27.jobf.utils.MethodAnalysis;
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import static org.junit.Assert.*;
+
+public class MethodAnalysisTest {
+    private final ClassNode node = new ClassNode();
+
+    /**
+     * Creates {@code static int test(int i) { int j = i; while (j != 0) j--; return 0; }}
+     */
+    private static MethodNode createMethod() {
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "test", "(I)I", null, null);
+        LabelNode loop = new LabelNode();
+        LabelNode end = new LabelNode();
+
+        method.instructions.add(new VarInsnNode(Opcodes.ILOAD, 0));
+        method.instructions.add(new VarInsnNode(Opcodes.ISTORE, 1));
+        method.instructions.add(loop);
+        method.instructions.add(new VarInsnNode(Opcodes.ILOAD, 1));
+        method.instructions.add(new JumpInsnNode(Opcodes.IFEQ, end));
+        method.instructions.add(new IincInsnNode(1, -1));
+        method.instructions.add(new JumpInsnNode(Opcodes.GOTO, loop));
+        method.instructions.add(end);
+        method.instructions.add(new InsnNode(Opcodes.ICONST_0));
+        method.instructions.add(new InsnNode(Opcodes.IRETURN));
+
+        method.maxStack = 1;
+        method.maxLocals = 2;
+
+        return method;
+    }
+
+    @Test
+    public void test_slots() {
+        MethodNode method = createMethod();
+        MethodAnalysis analysis = new MethodAnalysis("Test", method);
+
+        assertTrue(analysis.isArgument(0));
+        assertFalse(analysis.isArgument(1));
+        assertEquals(2, analysis.getFreeSlot());
+        assertEquals(1, analysis.getFrame(method.instructions.getLast()).getStackSize());
+    }
+}
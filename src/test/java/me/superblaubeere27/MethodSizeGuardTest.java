@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27;
+
+import me.superblaubeere27.jobf.utils.profile.MethodSizeGuard;
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import static org.junit.Assert.*;
+
+public class MethodSizeGuardTest {
+    private static ClassNode createClass(int clinitSize) {
+        ClassNode node = new ClassNode();
+
+        node.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "Test", null, "java/lang/Object", null);
+        node.fields.add(new FieldNode(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "CONSTANT", "I", null, 5));
+        node.methods.add(createMethod("<clinit>", clinitSize));
+        node.methods.add(createMethod("test", 10));
+
+        return node;
+    }
+
+    private static MethodNode createMethod(String name, int size) {
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, name, "()V", null, null);
+
+        grow(method, size - 1);
+        method.instructions.add(new InsnNode(Opcodes.RETURN));
+
+        return method;
+    }
+
+    private static void grow(MethodNode method, int size) {
+        InsnList list = new InsnList();
+
+        for (int i = 0; i < size; i++) list.add(new InsnNode(Opcodes.NOP));
+
+        method.instructions.insert(list);
+    }
+
+    private static MethodNode getMethod(ClassNode node, String name) {
+        for (MethodNode method : node.methods) {
+            if (method.name.equals(name)) return method;
+        }
+
+        return null;
+    }
+
+    @Test
+    public void test_rollbackMethod() {
+        MethodSizeGuard guard = new MethodSizeGuard();
+        ClassNode node = createClass(10);
+        MethodSizeGuard.Snapshot snapshot = guard.snapshot(node);
+
+        grow(getMethod(node, "test"), 9000);
+        grow(getMethod(node, "<clinit>"), 10);
+
+        guard.check(node, snapshot);
+
+        assertEquals(10, getMethod(node, "test").instructions.size());
+        // The other methods keep their transformations
+        assertEquals(20, getMethod(node, "<clinit>").instructions.size());
+    }
+
+    @Test
+    public void test_rollbackClass() {
+        MethodSizeGuard guard = new MethodSizeGuard();
+        ClassNode node = createClass(10);
+        MethodSizeGuard.Snapshot snapshot = guard.snapshot(node);
+
+        // Like StaticInitializionProcessor: The constant is moved into the static initializer
+        node.fields.get(0).value = null;
+        grow(getMethod(node, "<clinit>"), 9000);
+        grow(getMethod(node, "test"), 10);
+
+        guard.check(node, snapshot);
+
+        assertEquals(10, getMethod(node, "<clinit>").instructions.size());
+        assertEquals(10, getMethod(node, "test").instructions.size());
+        assertEquals(5, node.fields.get(0).value);
+    }
+
+    @Test
+    public void test_largeStaticInitializer() {
+        MethodSizeGuard guard = new MethodSizeGuard();
+        ClassNode node = createClass(9000);
+        MethodSizeGuard.Snapshot snapshot = guard.snapshot(node);
+
+        grow(getMethod(node, "<clinit>"), 100);
+        grow(getMethod(node, "test"), 10);
+
+        guard.check(node, snapshot);
+
+        // The static initializer was too large before, so the class isn't rolled back
+        assertEquals(9100, getMethod(node, "<clinit>").instructions.size());
+        assertEquals(20, getMethod(node, "test").instructions.size());
+    }
+
+    @Test
+    public void test_largeMethodExceedsHardLimit() {
+        MethodSizeGuard guard = new MethodSizeGuard();
+        ClassNode node = createClass(10);
+
+        node.methods.add(createMethod("large", 9000));
+
+        MethodSizeGuard.Snapshot snapshot = guard.snapshot(node);
+
+        grow(getMethod(node, "large"), 60000);
+        grow(getMethod(node, "test"), 10);
+
+        guard.check(node, snapshot);
+
+        // The method was too large for the JIT before, but now it wouldn't fit into the class file anymore
+        assertEquals(9000, getMethod(node, "large").instructions.size());
+        assertEquals(20, getMethod(node, "test").instructions.size());
+    }
+}
@@ -15,8 +15,7 @@ import me.superblaubeere27.jobf.utils.NodeUtils;
 import org.junit.Test;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
-import org.objectweb.asm.tree.AbstractInsnNode;
-import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
@@ -51,4 +50,24 @@ public class NodeUtilsTest {
         assertEquals(NodeUtils.getWrapperMethod(Type.VOID_TYPE).getOpcode(), Opcodes.NOP);
         assertEquals(NodeUtils.getWrapperMethod(Type.getType("Ljava/lang/Object;")).getOpcode(), Opcodes.NOP);
     }
+
+    @Test
+    public void test_getCodeSize() {
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "test", "(I)I", null, null);
+        LabelNode label = new LabelNode();
+
+        method.instructions.add(new VarInsnNode(Opcodes.ILOAD, 0));
+        method.instructions.add(new IntInsnNode(Opcodes.BIPUSH, 100));
+        method.instructions.add(new InsnNode(Opcodes.IADD));
+        method.instructions.add(new TableSwitchInsnNode(0, 1, label, label, label));
+        method.instructions.add(label);
+        method.instructions.add(new LdcInsnNode("x"));
+        method.instructions.add(new InsnNode(Opcodes.POP));
+        method.instructions.add(new InsnNode(Opcodes.ICONST_0));
+        method.instructions.add(new InsnNode(Opcodes.IRETURN));
+
+        // 4 bytes + tableswitch (1 + 3 padding + 12 + 2 * 4) + 5 bytes
+        assertEquals(33, NodeUtils.getCodeSize(method));
+        assertEquals(33, NodeUtils.getCodeSize(NodeUtils.copyMethod(method)));
+    }
 }
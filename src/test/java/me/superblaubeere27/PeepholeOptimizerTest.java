@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27;
+
+import me.superblaubeere27.jobf.ProcessorCallback;
+import me.superblaubeere27.jobf.processors.optimizer.PeepholeOptimizer;
+import me.superblaubeere27.jobf.utils.NodeUtils;
+import me.superblaubeere27.jobf.utils.values.Value;
+import me.superblaubeere27.jobf.utils.values.ValueManager;
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PeepholeOptimizerTest {
+
+    @SuppressWarnings("unchecked")
+    private static PeepholeOptimizer createOptimizer() {
+        PeepholeOptimizer optimizer = new PeepholeOptimizer();
+
+        ValueManager.registerClass(optimizer);
+
+        for (Value<?> value : ValueManager.getValues()) {
+            if (value.getOwner().equals("PeepholeOptimizer") && value.getObject() instanceof Boolean)
+                ((Value<Boolean>) value).setObject(true);
+        }
+
+        return optimizer;
+    }
+
+    @Test
+    public void test_optimize() {
+        ClassNode node = new ClassNode();
+
+        node.name = "Test";
+
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "test", "()I", null, null);
+
+        LabelNode unreachable = new LabelNode();
+        LabelNode end = new LabelNode();
+
+        // int unused = 2 + 3;
+        method.instructions.add(new InsnNode(Opcodes.ICONST_2));
+        method.instructions.add(new InsnNode(Opcodes.ICONST_3));
+        method.instructions.add(new InsnNode(Opcodes.IADD));
+        method.instructions.add(new VarInsnNode(Opcodes.ISTORE, 0));
+        // Padding of Bad POP
+        method.instructions.add(new LdcInsnNode(""));
+        method.instructions.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/String", "length", "()I", false));
+        method.instructions.add(new InsnNode(Opcodes.POP));
+        method.instructions.add(new JumpInsnNode(Opcodes.GOTO, end));
+        method.instructions.add(unreachable);
+        method.instructions.add(new InsnNode(Opcodes.ICONST_1));
+        method.instructions.add(new InsnNode(Opcodes.IRETURN));
+        method.instructions.add(end);
+        method.instructions.add(new InsnNode(Opcodes.ICONST_5));
+        method.instructions.add(new InsnNode(Opcodes.IRETURN));
+
+        node.methods.add(method);
+
+        createOptimizer().process(new ProcessorCallback(), node);
+
+        List<AbstractInsnNode> instructions = new ArrayList<>();
+
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            if (insn.getOpcode() != -1) instructions.add(insn);
+        }
+
+        assertEquals(NodeUtils.prettyprint(method.instructions), 2, instructions.size());
+        assertEquals(5, NodeUtils.getIntValue(instructions.get(0)));
+        assertEquals(Opcodes.IRETURN, instructions.get(1).getOpcode());
+    }
+
+    @Test
+    public void test_jumpIntoTryBlock() {
+        ClassNode node = new ClassNode();
+
+        node.name = "Test";
+
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "test", "(I)V", null, null);
+
+        LabelNode start = new LabelNode();
+        LabelNode athrow = new LabelNode();
+        LabelNode end = new LabelNode();
+        LabelNode handler = new LabelNode();
+
+        // The ATHROW which is jumped to is caught, a copy in front of the try block wouldn't be
+        method.instructions.add(new VarInsnNode(Opcodes.ILOAD, 0));
+        method.instructions.add(new JumpInsnNode(Opcodes.IFEQ, start));
+        method.instructions.add(new InsnNode(Opcodes.ACONST_NULL));
+        method.instructions.add(new JumpInsnNode(Opcodes.GOTO, athrow));
+        method.instructions.add(start);
+        method.instructions.add(new InsnNode(Opcodes.ACONST_NULL));
+        method.instructions.add(athrow);
+        method.instructions.add(new InsnNode(Opcodes.ATHROW));
+        method.instructions.add(end);
+        method.instructions.add(handler);
+        method.instructions.add(new InsnNode(Opcodes.POP));
+        method.instructions.add(new InsnNode(Opcodes.RETURN));
+
+        method.tryCatchBlocks.add(new TryCatchBlockNode(start, end, handler, null));
+
+        node.methods.add(method);
+
+        createOptimizer().process(new ProcessorCallback(), node);
+
+        int athrows = 0;
+
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            if (insn.getOpcode() == Opcodes.ATHROW) athrows++;
+        }
+
+        assertEquals(NodeUtils.prettyprint(method.instructions), 1, athrows);
+    }
+
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27;
+
+import me.superblaubeere27.jobf.ClassRewriter;
+import me.superblaubeere27.jobf.IClassProcessor;
+import me.superblaubeere27.jobf.IRewritingProcessor;
+import me.superblaubeere27.jobf.JObfImpl;
+import me.superblaubeere27.jobf.ProcessorCallback;
+import me.superblaubeere27.jobf.RewritingEngine;
+import me.superblaubeere27.jobf.processors.HideMembers;
+import me.superblaubeere27.jobf.processors.LineNumberRemover;
+import me.superblaubeere27.jobf.processors.StaticInitializionProcessor;
+import me.superblaubeere27.jobf.processors.name.InnerClassRemover;
+import me.superblaubeere27.jobf.utils.NodeUtils;
+import me.superblaubeere27.jobf.utils.ProcessorExclusions;
+import me.superblaubeere27.jobf.utils.values.Value;
+import me.superblaubeere27.jobf.utils.values.ValueManager;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.util.TraceClassVisitor;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RewritingEngineTest {
+
+    private static ClassNode createClass() {
+        ClassNode node = new ClassNode();
+
+        node.name = "Test";
+
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "test", "()I", null, null);
+
+        method.instructions.add(new InsnNode(Opcodes.ICONST_1));
+        method.instructions.add(new InsnNode(Opcodes.ICONST_2));
+        method.instructions.add(new InsnNode(Opcodes.IADD));
+        method.instructions.add(new InsnNode(Opcodes.IRETURN));
+
+        node.methods.add(method);
+
+        return node;
+    }
+
+    private static String print(ClassNode node) {
+        StringBuilder sb = new StringBuilder();
+
+        for (MethodNode method : node.methods) {
+            sb.append(method.name).append('\n').append(NodeUtils.prettyprint(method.instructions)).append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Replaces {@code from} with {@code ICONST_0, to, IADD} and adds a method which contains {@code from} at the end
+     */
+    private static IRewritingProcessor replace(int from, int to) {
+        return (callback, node) -> new ClassRewriter() {
+            @Override
+            public InsnList rewrite(MethodNode method, AbstractInsnNode insn) {
+                if (insn.getOpcode() != from) return null;
+
+                InsnList list = new InsnList();
+
+                list.add(new InsnNode(Opcodes.ICONST_0));
+                list.add(new InsnNode(to));
+                list.add(new InsnNode(Opcodes.IADD));
+
+                return list;
+            }
+
+            @Override
+            public void finish() {
+                MethodNode generated = new MethodNode(Opcodes.ACC_STATIC, "generated" + from, "()I", null, null);
+
+                generated.instructions.add(new InsnNode(from));
+                generated.instructions.add(new InsnNode(Opcodes.IRETURN));
+
+                node.methods.add(generated);
+            }
+        };
+    }
+
+    @Test
+    public void test_fusedEqualsSequential() {
+        List<IClassProcessor> processors = Arrays.asList(
+                replace(Opcodes.ICONST_1, Opcodes.ICONST_2),
+                replace(Opcodes.ICONST_2, Opcodes.ICONST_3),
+                replace(Opcodes.ICONST_0, Opcodes.ICONST_4)
+        );
+
+        ClassNode sequential = createClass();
+        ClassNode fused = createClass();
+
+        for (IClassProcessor processor : processors) {
+            processor.process(new ProcessorCallback(), sequential);
+        }
+
+        RewritingEngine.process(processors, new ProcessorCallback(), fused);
+
+        assertEquals(print(sequential), print(fused));
+        assertEquals(4, fused.methods.size());
+    }
+
+    @Test
+    public void test_excludedMethod() {
+        ClassNode node = createClass();
+        MethodNode excluded = createClass().methods.get(0);
+
+        excluded.name = "excluded";
+        excluded.invisibleAnnotations = new ArrayList<>(Collections.singletonList(new AnnotationNode(ProcessorExclusions.ANNOTATION_DESCRIPTOR)));
+
+        node.methods.add(excluded);
+
+        String original = NodeUtils.prettyprint(excluded.instructions);
+        ProcessorExclusions exclusions = ProcessorExclusions.index(Collections.singletonList(node));
+
+        RewritingEngine.process(Collections.singletonList(replace(Opcodes.ICONST_1, Opcodes.ICONST_2)), new ProcessorCallback(exclusions), node);
+
+        assertEquals(original, NodeUtils.prettyprint(excluded.instructions));
+        assertFalse(NodeUtils.prettyprint(node.methods.get(0).instructions).contains("ICONST_1"));
+        assertTrue(excluded.invisibleAnnotations.isEmpty());
+    }
+
+    @Test
+    public void test_failingRewriter() {
+        ClassNode node = createClass();
+        String original = print(node);
+
+        IRewritingProcessor failing = (callback, classNode) -> new ClassRewriter() {
+            @Override
+            public InsnList rewrite(MethodNode method, AbstractInsnNode insn) {
+                if (insn.getOpcode() == Opcodes.IADD) throw new IllegalStateException("Rewriter failed");
+
+                return null;
+            }
+        };
+
+        try {
+            RewritingEngine.process(Arrays.asList(replace(Opcodes.ICONST_1, Opcodes.ICONST_2), failing), new ProcessorCallback(), node);
+            fail();
+        } catch (IllegalStateException expected) {
+            // The class is written without the batch, not with half of it
+        }
+
+        assertEquals(original, print(node));
+        assertEquals(1, node.methods.size());
+    }
+
+    @Test
+    public void test_replacedExcludedMethod() {
+        ClassNode node = createClass();
+
+        node.methods.get(0).invisibleAnnotations = new ArrayList<>(Collections.singletonList(new AnnotationNode(ProcessorExclusions.ANNOTATION_DESCRIPTOR)));
+
+        ProcessorExclusions exclusions = ProcessorExclusions.index(Collections.singletonList(node));
+
+        // Like the retries of FlowObfuscator
+        MethodNode copy = NodeUtils.copyMethod(node.methods.get(0));
+
+        node.methods.set(0, copy);
+
+        String original = NodeUtils.prettyprint(copy.instructions);
+
+        RewritingEngine.process(Collections.singletonList(replace(Opcodes.ICONST_1, Opcodes.ICONST_2)), new ProcessorCallback(exclusions), node);
+
+        assertEquals(original, NodeUtils.prettyprint(copy.instructions));
+    }
+
+    /**
+     * Creates a class like it would be read from a jar
+     */
+    private static ClassNode createMetadataClass(boolean withClInit) {
+        ClassNode node = new ClassNode();
+
+        node.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "Test", null, "java/lang/Object", null);
+        node.visitSource("Test.java", null);
+        node.visitInnerClass("Test$Inner", "Test", "Inner", Opcodes.ACC_STATIC);
+        node.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "text", "Ljava/lang/String;", null, "Hello").visitEnd();
+        node.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "number", "I", null, 1000).visitEnd();
+        node.visitField(Opcodes.ACC_PRIVATE, "instance", "J", null, null).visitEnd();
+        node.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_NATIVE, "nativeMethod", "()V", null, null).visitEnd();
+
+        if (withClInit) {
+            MethodNode clInit = (MethodNode) node.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+
+            clInit.instructions.add(new InsnNode(Opcodes.LCONST_1));
+            clInit.instructions.add(new InsnNode(Opcodes.POP2));
+            clInit.instructions.add(new InsnNode(Opcodes.RETURN));
+        }
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+        node.accept(writer);
+
+        ClassNode read = new ClassNode();
+
+        new ClassReader(writer.toByteArray()).accept(read, 0);
+
+        return read;
+    }
+
+    private static String disassemble(byte[] data) {
+        StringWriter sw = new StringWriter();
+
+        new ClassReader(data).accept(new TraceClassVisitor(new PrintWriter(sw)), 0);
+
+        return sw.toString();
+    }
+
+    @Test
+    public void test_streamedEqualsTree() {
+        List<IClassProcessor> processors = Arrays.asList(
+                new StaticInitializionProcessor(JObfImpl.INSTANCE),
+                new HideMembers(JObfImpl.INSTANCE),
+                new InnerClassRemover()
+        );
+
+        assertTrue(RewritingEngine.isStreamable(processors));
+
+        for (boolean withClInit : new boolean[]{false, true}) {
+            ClassNode tree = createMetadataClass(withClInit);
+
+            RewritingEngine.process(processors, new ProcessorCallback(), tree);
+
+            ClassWriter treeWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+            tree.accept(treeWriter);
+
+            ClassWriter streamWriter = new ClassWriter(0);
+
+            RewritingEngine.stream(processors, new ProcessorCallback(), createMetadataClass(withClInit), streamWriter);
+
+            assertEquals(disassemble(treeWriter.toByteArray()), disassemble(streamWriter.toByteArray()));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_streamedSourceFile() {
+        LineNumberRemover remover = new LineNumberRemover(JObfImpl.INSTANCE);
+
+        ValueManager.registerClass(remover);
+
+        for (Value<?> value : ValueManager.getValues()) {
+            if (value.getOwner().equals("LineNumberRemover") && value.getName().equals("New SourceFile Name"))
+                ((Value<String>) value).setObject("X.java");
+        }
+
+        try {
+            // Classes without a SourceFile attribute get one, before the members are visited
+            ClassNode node = createMetadataClass(false);
+
+            node.sourceFile = null;
+
+            ClassWriter writer = new ClassWriter(0);
+            ClassVisitor orderCheck = new ClassVisitor(Opcodes.ASM7, writer) {
+                private boolean memberVisited;
+
+                @Override
+                public void visitSource(String source, String debug) {
+                    if (memberVisited) throw new IllegalStateException("visitSource after the members");
+
+                    super.visitSource(source, debug);
+                }
+
+                @Override
+                public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                    memberVisited = true;
+                    return super.visitField(access, name, descriptor, signature, value);
+                }
+
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                    memberVisited = true;
+                    return super.visitMethod(access, name, descriptor, signature, exceptions);
+                }
+            };
+
+            node.accept(remover.createVisitor(new ProcessorCallback(), orderCheck));
+
+            ClassNode read = new ClassNode();
+
+            new ClassReader(writer.toByteArray()).accept(read, 0);
+
+            assertEquals("X.java", read.sourceFile);
+        } finally {
+            for (Value<?> value : ValueManager.getValues()) {
+                if (value.getOwner().equals("LineNumberRemover") && value.getName().equals("New SourceFile Name"))
+                    ((Value<String>) value).setObject("");
+            }
+        }
+    }
+
+    @Test
+    public void test_streamedExcludedMethod() {
+        ClassNode node = createMetadataClass(false);
+
+        node.methods.get(0).invisibleAnnotations = new ArrayList<>(Collections.singletonList(new AnnotationNode(ProcessorExclusions.ANNOTATION_DESCRIPTOR)));
+
+        ProcessorExclusions exclusions = ProcessorExclusions.index(Collections.singletonList(node));
+        ClassWriter writer = new ClassWriter(0);
+
+        RewritingEngine.stream(Collections.singletonList(new HideMembers(JObfImpl.INSTANCE)), new ProcessorCallback(exclusions), node, writer);
+
+        ClassNode read = new ClassNode();
+
+        new ClassReader(writer.toByteArray()).accept(read, 0);
+
+        assertEquals("nativeMethod", read.methods.get(0).name);
+        assertEquals(0, read.methods.get(0).access & Opcodes.ACC_SYNTHETIC);
+        // The fields aren't excluded
+        assertTrue((read.fields.get(0).access & Opcodes.ACC_SYNTHETIC) != 0);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.benchmark;
+
+import me.superblaubeere27.jobf.JObfImpl;
+import me.superblaubeere27.jobf.utils.values.EnabledValue;
+import me.superblaubeere27.jobf.utils.values.Value;
+import me.superblaubeere27.jobf.utils.values.ValueManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class RuntimeBenchmarkTest {
+
+    private static Set<String> getOwners() {
+        Set<String> owners = new HashSet<>();
+
+        for (EnabledValue value : RuntimeBenchmark.getTransforms()) owners.add(value.getOwner());
+
+        return owners;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void setEnabled(String owner, boolean enabled) {
+        for (Value<?> value : ValueManager.getValues()) {
+            if (value instanceof EnabledValue && value.getOwner().equals(owner)) ((Value<Boolean>) value).setObject(enabled);
+        }
+    }
+
+    private static boolean isEnabled(String owner) {
+        for (Value<?> value : ValueManager.getValues()) {
+            if (value instanceof EnabledValue && value.getOwner().equals(owner)) return (Boolean) value.getObject();
+        }
+
+        throw new AssertionError(owner + " has no enabled value");
+    }
+
+    @Before
+    public void setUp() {
+        // Registers the values of JObfImpl and the packager
+        JObfImpl.INSTANCE.getClassPath();
+        RuntimeBenchmark.getTransforms();
+    }
+
+    @After
+    public void tearDown() {
+        ValueManager.resetValues();
+    }
+
+    @Test
+    public void test_transforms() {
+        Set<String> owners = getOwners();
+
+        // Not only the processor list
+        assertTrue(owners.containsAll(Arrays.asList("FlowObfuscator", "Inlining", "NameObfuscation", "InnerClassRemover", "Shrinker", "Packager")));
+        assertFalse(owners.contains("HugeMethodGuard"));
+        assertFalse(owners.contains("ProfileGuided"));
+    }
+
+    @Test
+    public void test_enableOnly() {
+        setEnabled("NameObfuscation", true);
+        setEnabled("Packager", true);
+        setEnabled("Shrinker", true);
+        setEnabled("FlowObfuscator", true);
+        setEnabled("HugeMethodGuard", true);
+
+        assertTrue(RuntimeBenchmark.getEnabledTransforms().containsAll(Arrays.asList("NameObfuscation", "Packager", "Shrinker", "FlowObfuscator")));
+
+        RuntimeBenchmark.enableOnly("FlowObfuscator");
+
+        assertTrue(isEnabled("FlowObfuscator"));
+        assertFalse(isEnabled("NameObfuscation"));
+        assertFalse(isEnabled("Packager"));
+        assertFalse(isEnabled("Shrinker"));
+        // The guard keeps its configured state
+        assertTrue(isEnabled("HugeMethodGuard"));
+        assertEquals(new HashSet<>(Arrays.asList("FlowObfuscator")), RuntimeBenchmark.getEnabledTransforms());
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.processors.shrinker;
+
+import me.superblaubeere27.jobf.JObfImpl;
+import me.superblaubeere27.jobf.processors.name.ClassWrapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the shrinker's reachability analysis on the classes nested in this test
+ */
+public class ReachabilityTest {
+    private static final String[] LIBRARY_CLASSES = {"java/lang/Object", "java/lang/Enum", "java/lang/Comparable", "java/io/Serializable"};
+
+    private Map<String, ClassNode> program;
+    private Reachability reachability;
+
+    @Before
+    public void setUp() throws IOException {
+        // The real library classes are newer than ASM, only their overridable methods matter here
+        addLibraryClass("java/lang/Object", null, "equals(Ljava/lang/Object;)Z", "hashCode()I", "toString()Ljava/lang/String;", "clone()Ljava/lang/Object;", "finalize()V");
+        addLibraryClass("java/lang/Comparable", "java/lang/Object", "compareTo(Ljava/lang/Object;)I");
+        addLibraryClass("java/io/Serializable", "java/lang/Object");
+        addLibraryClass("java/lang/Enum", "java/lang/Object", "compareTo(Ljava/lang/Object;)I");
+
+        program = new HashMap<>();
+
+        for (Class<?> c : Arrays.asList(App.class, Shape.class, Circle.class, Square.class, Color.class, Data.class, Dead.class, Greeter.class, HelloGreeter.class)) {
+            ClassNode node = new ClassNode();
+
+            try (InputStream in = ReachabilityTest.class.getResourceAsStream("/" + c.getName().replace('.', '/') + ".class")) {
+                new ClassReader(in).accept(node, 0);
+            }
+
+            program.put(node.name, node);
+        }
+
+        reachability = new Reachability(program.values());
+        reachability.keepMethod(getMethod(App.class, "main", "([Ljava/lang/String;)V"));
+    }
+
+    @After
+    public void tearDown() {
+        for (String name : LIBRARY_CLASSES) JObfImpl.INSTANCE.getClassPath().remove(name);
+    }
+
+    @Test
+    public void test_mainMethod() {
+        reachability.run();
+
+        assertTrue(reachability.isReachable(getClass(App.class)));
+        assertTrue(reachability.isReachable(getMethod(App.class, "main", "([Ljava/lang/String;)V")));
+    }
+
+    @Test
+    public void test_virtualCalls() {
+        reachability.run();
+
+        // Only Shape.area() is called
+        assertTrue(reachability.isReachable(getMethod(Circle.class, "area", "()D")));
+        assertTrue(reachability.isReachable(getMethod(Square.class, "area", "()D")));
+        // The library might call it
+        assertTrue(reachability.isReachable(getMethod(Circle.class, "toString", "()Ljava/lang/String;")));
+        assertFalse(reachability.isReachable(getMethod(Circle.class, "perimeter", "()D")));
+    }
+
+    @Test
+    public void test_lambda() {
+        reachability.run();
+
+        boolean found = false;
+
+        for (MethodNode method : getClass(App.class).methods) {
+            if (method.name.startsWith("lambda$")) {
+                assertTrue(method.name, reachability.isReachable(method));
+                found = true;
+            }
+        }
+
+        assertTrue(found);
+    }
+
+    @Test
+    public void test_enum() {
+        reachability.run();
+
+        String desc = "L" + getClass(Color.class).name + ";";
+
+        assertTrue(reachability.isReachable(getMethod(Color.class, "values", "()[" + desc)));
+        assertTrue(reachability.isReachable(getMethod(Color.class, "valueOf", "(Ljava/lang/String;)" + desc)));
+    }
+
+    @Test
+    public void test_serialization() {
+        reachability.run();
+
+        assertTrue(reachability.isReachable(getMethod(Data.class, "writeObject", "(Ljava/io/ObjectOutputStream;)V")));
+        assertTrue(reachability.isReachable(getMethod(Data.class, "readObject", "(Ljava/io/ObjectInputStream;)V")));
+    }
+
+    @Test
+    public void test_services() {
+        String service = "META-INF/services/" + Greeter.class.getName();
+        Map<String, byte[]> resources = Collections.singletonMap(service, (HelloGreeter.class.getName() + "\n").getBytes(StandardCharsets.UTF_8));
+
+        assertFalse(reachability.isReachable(getClass(HelloGreeter.class)));
+        assertEquals(1, Shrinker.keepNamedClasses(resources, program, reachability));
+
+        reachability.run();
+
+        assertTrue(reachability.isReachable(getClass(HelloGreeter.class)));
+        assertTrue(reachability.isReachable(getClass(Greeter.class)));
+        assertTrue(reachability.isReachable(getMethod(HelloGreeter.class, "greet", "()Ljava/lang/String;")));
+    }
+
+    @Test
+    public void test_deadCode() {
+        reachability.run();
+
+        assertFalse(reachability.isReachable(getClass(Dead.class)));
+        assertFalse(reachability.isReachable(getClass(Greeter.class)));
+        assertFalse(reachability.isReachable(getMethod(App.class, "unused", "()V")));
+    }
+
+    private ClassNode getClass(Class<?> c) {
+        return program.get(c.getName().replace('.', '/'));
+    }
+
+    private MethodNode getMethod(Class<?> c, String name, String desc) {
+        for (MethodNode method : getClass(c).methods) {
+            if (method.name.equals(name) && method.desc.equals(desc)) return method;
+        }
+
+        throw new AssertionError(c.getName() + "." + name + desc + " doesn't exist");
+    }
+
+    private static void addLibraryClass(String name, String superName, String... methods) {
+        ClassNode node = new ClassNode();
+
+        node.name = name;
+        node.superName = superName;
+        node.access = Opcodes.ACC_PUBLIC;
+
+        for (String method : methods) {
+            int index = method.indexOf('(');
+
+            node.methods.add(new MethodNode(Opcodes.ACC_PUBLIC, method.substring(0, index), method.substring(index), null, null));
+        }
+
+        JObfImpl.INSTANCE.getClassPath().put(name, new ClassWrapper(node, true, null));
+    }
+
+    static class App {
+        public static void main(String[] args) {
+            Shape shape = args.length == 0 ? new Circle() : new Square();
+            Runnable runnable = () -> System.out.println(shape.area());
+
+            runnable.run();
+
+            System.out.println(Color.RED);
+            System.out.println(new Data());
+        }
+
+        static void unused() {
+            System.out.println(new Dead());
+        }
+    }
+
+    interface Shape {
+        double area();
+    }
+
+    static class Circle implements Shape {
+        @Override
+        public double area() {
+            return Math.PI;
+        }
+
+        double perimeter() {
+            return 2 * Math.PI;
+        }
+
+        @Override
+        public String toString() {
+            return "Circle";
+        }
+    }
+
+    static class Square implements Shape {
+        @Override
+        public double area() {
+            return 1;
+        }
+    }
+
+    enum Color {
+        RED, GREEN
+    }
+
+    static class Data implements Serializable {
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+        }
+    }
+
+    static class Dead {
+    }
+
+    interface Greeter {
+        String greet();
+    }
+
+    static class HelloGreeter implements Greeter {
+        @Override
+        public String greet() {
+            return "Hello";
+        }
+    }
+
+}
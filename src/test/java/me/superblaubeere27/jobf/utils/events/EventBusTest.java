@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.jobf.utils.events;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.Assert.*;
+
+public class EventBusTest {
+
+    private static String describe(ObfuscationEvent event) {
+        return event.getRecord() != null ? event.getRecord().getMessage() : event.getName();
+    }
+
+    @Test
+    public void test_flushOrder() {
+        EventBus bus = new EventBus(16);
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+
+        bus.addSink(event -> received.add(describe(event)));
+
+        List<String> expected = new ArrayList<>();
+
+        // More events than the capacity, the log records are never dropped
+        for (int i = 0; i < 100; i++) {
+            bus.post(ObfuscationEvent.log(new LogRecord(Level.INFO, "record " + i)));
+            expected.add("record " + i);
+        }
+
+        bus.flush();
+
+        assertEquals(expected, received);
+    }
+
+    @Test
+    public void test_dropOnFull() throws InterruptedException {
+        EventBus bus = new EventBus(2);
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        bus.addSink(event -> {
+            received.add(describe(event));
+
+            if (event.getName() != null && event.getName().equals("first")) {
+                blocked.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        bus.post(ObfuscationEvent.classFinished("first", 1, 6));
+
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        // The sink is blocked: Two events fit into the buffer, the others are dropped without blocking the poster
+        for (int i = 2; i <= 6; i++) {
+            bus.post(ObfuscationEvent.classFinished("class " + i, i, 6));
+        }
+
+        release.countDown();
+        bus.flush();
+
+        assertEquals(4, received.size());
+        assertEquals("first", received.get(0));
+        // The drop count is reported before the next delivered event
+        assertEquals("Dropped 3 events, the output couldn't keep up", received.get(1));
+        assertEquals("class 2", received.get(2));
+        assertEquals("class 3", received.get(3));
+    }
+
+    @Test
+    public void test_boundedFlush() throws InterruptedException {
+        EventBus bus = new EventBus(16);
+        CountDownLatch release = new CountDownLatch(1);
+
+        bus.addSink(event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        bus.post(ObfuscationEvent.phase("blocked"));
+
+        long start = System.nanoTime();
+
+        // A blocked sink mustn't block the shutdown
+        bus.flush(100, TimeUnit.MILLISECONDS);
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+        release.countDown();
+    }
+}
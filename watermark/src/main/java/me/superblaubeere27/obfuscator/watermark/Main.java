@@ -12,6 +12,8 @@ package me.superblaubeere27.obfuscator.watermark;
 
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonIOException;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
@@ -19,9 +21,20 @@ import joptsimple.AbstractOptionSpec;
 import joptsimple.ArgumentAcceptingOptionSpec;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassTooLargeException;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodTooLargeException;
 
+import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -36,8 +49,10 @@ public class Main {
 
         ArgumentAcceptingOptionSpec<File> generateConfig = parser.accepts("generateConfig").withOptionalArg().ofType(File.class).describedAs("Generates a new random configuration");
         ArgumentAcceptingOptionSpec<File> inputOption = parser.accepts("input").requiredUnless(generateConfig).withOptionalArg().ofType(File.class);
-        ArgumentAcceptingOptionSpec<File> outputOption = parser.accepts("output").availableUnless(extract).requiredUnless(extract).withOptionalArg().ofType(File.class);
+        ArgumentAcceptingOptionSpec<File> outputOption = parser.accepts("output").availableUnless(extract).requiredUnless(extract, generateConfig).withOptionalArg().ofType(File.class);
         ArgumentAcceptingOptionSpec<File> configOption = parser.accepts("config").requiredUnless(generateConfig).withOptionalArg().ofType(File.class);
+        ArgumentAcceptingOptionSpec<Integer> threadsOption = parser.accepts("threads").availableIf(extract).withRequiredArg().ofType(Integer.class).defaultsTo(Runtime.getRuntime().availableProcessors()).describedAs("The number of threads which scan the jars");
+        ArgumentAcceptingOptionSpec<File> reportOption = parser.accepts("report").availableIf(extract).withRequiredArg().ofType(File.class).describedAs("Writes the results as JSON");
         ArgumentAcceptingOptionSpec<String> watermarkOption = parser.accepts("watermark").availableIf(outputOption).requiredIf(outputOption).withOptionalArg().ofType(String.class);
 
         try {
@@ -119,51 +134,38 @@ public class Main {
                         }
                         outStream.close();
                     } else if (optionSet.has(extract)) {
-                        File input = inputOption.value(optionSet);
-
-                        if (!input.exists()) {
-                            System.err.println("The input file does not exist");
-                            return;
-                        }
+                        List<File> jars = new ArrayList<>();
 
-                        ZipFile zipFile = new ZipFile(input);
-                        Enumeration<? extends ZipEntry> entries = zipFile.entries();
-
-                        while (entries.hasMoreElements()) {
-                            ZipEntry zipEntry = entries.nextElement();
+                        for (File input : inputOption.values(optionSet)) {
+                            if (!input.exists()) {
+                                System.err.println("The input file does not exist: " + input);
+                                return;
+                            }
 
-                            byte[] entryData = ByteStreams.toByteArray(zipFile.getInputStream(zipEntry));
+                            // Directories are searched for jars, e.g. a folder with the jars of every customer
+                            try (Stream<Path> paths = java.nio.file.Files.walk(input.toPath())) {
+                                paths.filter(path -> path.toString().endsWith(".jar") || path.toFile().equals(input)).filter(java.nio.file.Files::isRegularFile).forEach(path -> jars.add(path.toFile()));
+                            }
+                        }
 
-                            if (zipEntry.getName().endsWith(".class")) {
-                                try {
-                                    ClassReader reader = new ClassReader(entryData);
+                        Collections.sort(jars);
 
-                                    ClassVisitor clazzNode = new ClassNode();
-                                    reader.accept(clazzNode, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+                        List<WatermarkExtractor.JarReport> reports = new WatermarkExtractor(config).extract(jars, Math.max(1, threadsOption.value(optionSet)));
 
-                                    // By ItzSomebody (partially)
+                        for (WatermarkExtractor.JarReport report : reports) {
+                            System.out.println(report);
+                        }
 
-                                    char[] chars = new char[reader.getMaxStringLength()];
+                        if (optionSet.has(reportOption)) {
+                            JsonArray array = new JsonArray();
 
-                                    for (int i = 0; i < reader.getItemCount(); i++) {
-                                        int getItem = reader.getItem(i);
-                                        String UTF = reader.readUTF8(getItem, chars);
+                            reports.forEach(report -> array.add(report.toJsonObject()));
 
-                                        if (UTF != null && UTF.startsWith(config.getMagicBytes())) {
-                                            if (UTF.length() > 6) {
-                                                String watermark = Encryption.decrypt(UTF.substring(config.getMagicBytes().length()), config.getKey());
-                                                System.out.println("Found watermark in " + zipEntry.getName() + ": \"" + watermark + "\"");
-                                            }
-                                        }
-                                    }
-                                } catch (ClassTooLargeException | MethodTooLargeException e) {
-                                    System.err.println("ERROR in " + zipEntry.getName());
-                                    e.printStackTrace();
-                                }
-                            }
+                            Files.write(new GsonBuilder().setPrettyPrinting().create().toJson(array).getBytes(StandardCharsets.UTF_8), reportOption.value(optionSet));
+                            System.out.println("Report was written to " + reportOption.value(optionSet));
                         }
                     }
-                } catch (JsonIOException | JsonSyntaxException | IOException e) {
+                } catch (JsonIOException | JsonSyntaxException | IOException | InterruptedException | ExecutionException e) {
                     System.err.println("ERROR: ");
                     e.printStackTrace();
                 }
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.obfuscator.watermark;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds the watermarks in many jars at once. Only the constant pools of the classes are read: the UTF8 entries which
+ * start with the magic bytes are decrypted, everything else is skipped by its size.
+ * <p>
+ * The jars and the classes of every jar are scanned in parallel.
+ */
+public class WatermarkExtractor {
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+    private static final Pattern BASE64 = Pattern.compile("(?:[A-Za-z0-9+/]{4})*(?:[A-Za-z0-9+/]{2}==|[A-Za-z0-9+/]{3}=)?");
+    /**
+     * The encrypted watermark is the Base64 encoding of at least one AES block
+     */
+    private static final int MIN_ENCRYPTED_LENGTH = 24;
+
+    private final Config config;
+    /**
+     * The magic bytes in the modified UTF-8 encoding of the class file
+     */
+    private final byte[] magic;
+    /**
+     * Every class of a jar contains the same marker, so it only has to be decrypted once
+     */
+    private final Map<String, Optional<String>> decrypted = new ConcurrentHashMap<>();
+
+    public WatermarkExtractor(Config config) {
+        this.config = config;
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            new DataOutputStream(out).writeUTF(config.getMagicBytes());
+
+            this.magic = Arrays.copyOfRange(out.toByteArray(), 2, out.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid magic bytes", e);
+        }
+    }
+
+    /**
+     * @param threads the number of threads which read the jars
+     * @return a report for every jar (in the same order)
+     */
+    public List<JarReport> extract(List<File> jars, int threads) throws InterruptedException, ExecutionException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        try {
+            return pool.submit(() -> jars.parallelStream().map(this::scan).collect(Collectors.toList())).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public JarReport scan(File jar) {
+        JarReport report = new JarReport(jar);
+
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            zipFile.stream().parallel().filter(entry -> entry.getName().endsWith(".class")).forEach(entry -> {
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    List<String> watermarks = new ArrayList<>();
+
+                    for (String marker : findMarkers(ByteStreams.toByteArray(in))) {
+                        decrypt(marker).ifPresent(watermarks::add);
+                    }
+
+                    report.addClass(watermarks);
+                } catch (IOException | IllegalArgumentException e) {
+                    report.addError(entry.getName() + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            report.addError(e.toString());
+        }
+
+        return report;
+    }
+
+    private Optional<String> decrypt(String marker) {
+        return decrypted.computeIfAbsent(marker, encrypted -> Optional.ofNullable(Encryption.decrypt(encrypted, config.getKey())));
+    }
+
+    /**
+     * Reads the constant pool of the class.
+     *
+     * @return the UTF8 entries which start with the magic bytes (without them) and look like an encrypted watermark
+     * @throws IllegalArgumentException if the data isn't a valid class file
+     */
+    public List<String> findMarkers(byte[] data) {
+        List<String> markers = new ArrayList<>();
+
+        try {
+            if (readInt(data, 0) != CLASS_MAGIC) throw new IllegalArgumentException("Not a class file");
+
+            int count = readUnsignedShort(data, 8);
+            int offset = 10;
+
+            for (int i = 1; i < count; i++) {
+                int tag = data[offset];
+
+                switch (tag) {
+                    case 1: // Utf8
+                        int length = readUnsignedShort(data, offset + 1);
+
+                        if (startsWithMagic(data, offset + 3, length)) {
+                            String utf = new DataInputStream(new ByteArrayInputStream(data, offset + 1, length + 2)).readUTF();
+                            String encrypted = utf.substring(config.getMagicBytes().length());
+
+                            if (encrypted.length() >= MIN_ENCRYPTED_LENGTH && BASE64.matcher(encrypted).matches()) {
+                                markers.add(encrypted);
+                            }
+                        }
+
+                        offset += 3 + length;
+                        break;
+                    case 7: // Class
+                    case 8: // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        offset += 3;
+                        break;
+                    case 15: // MethodHandle
+                        offset += 4;
+                        break;
+                    case 3: // Integer
+                    case 4: // Float
+                    case 9: // Fieldref
+                    case 10: // Methodref
+                    case 11: // InterfaceMethodref
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        offset += 5;
+                        break;
+                    case 5: // Long
+                    case 6: // Double
+                        offset += 9;
+                        // Takes two entries
+                        i++;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid constant pool tag " + tag + " at " + offset);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IOException e) {
+            throw new IllegalArgumentException("Truncated class file");
+        }
+
+        return markers;
+    }
+
+    private boolean startsWithMagic(byte[] data, int offset, int length) {
+        if (length < magic.length) return false;
+
+        for (int i = 0; i < magic.length; i++) {
+            if (data[offset + i] != magic[i]) return false;
+        }
+
+        return true;
+    }
+
+    private static int readUnsignedShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (readUnsignedShort(data, offset) << 16) | readUnsignedShort(data, offset + 2);
+    }
+
+    /**
+     * The watermarks which were found in a jar
+     */
+    public static class JarReport {
+        private final File jar;
+        private int classes;
+        private int unmarkedClasses;
+        /**
+         * Watermark -> number of classes which contain it
+         */
+        private final Map<String, Integer> watermarks = new TreeMap<>();
+        private final List<String> errors = new ArrayList<>();
+
+        JarReport(File jar) {
+            this.jar = jar;
+        }
+
+        synchronized void addClass(List<String> found) {
+            classes++;
+
+            if (found.isEmpty()) unmarkedClasses++;
+
+            for (String watermark : new HashSet<>(found)) {
+                watermarks.merge(watermark, 1, Integer::sum);
+            }
+        }
+
+        synchronized void addError(String error) {
+            errors.add(error);
+        }
+
+        public File getJar() {
+            return jar;
+        }
+
+        public synchronized Map<String, Integer> getWatermarks() {
+            return new TreeMap<>(watermarks);
+        }
+
+        public synchronized JsonObject toJsonObject() {
+            JsonObject obj = new JsonObject();
+            JsonObject watermarks = new JsonObject();
+            JsonArray errors = new JsonArray();
+
+            this.watermarks.forEach(watermarks::addProperty);
+            this.errors.forEach(errors::add);
+
+            obj.addProperty("jar", jar.getPath());
+            obj.addProperty("classes", classes);
+            obj.addProperty("unmarkedClasses", unmarkedClasses);
+            obj.add("watermarks", watermarks);
+            obj.add("errors", errors);
+
+            return obj;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return jar + ": " + (watermarks.isEmpty() ? "no watermark" : watermarks.keySet().stream().map(watermark -> "\"" + watermark + "\"").collect(Collectors.joining(", ")))
+                    + " (" + classes + " classes, " + unmarkedClasses + " without watermark" + (errors.isEmpty() ? "" : ", " + errors.size() + " errors") + ")";
+        }
+    }
+}
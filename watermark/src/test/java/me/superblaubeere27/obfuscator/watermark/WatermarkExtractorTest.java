@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.superblaubeere27.obfuscator.watermark;
+
+import me.superblaubeere27.jobf.ProcessorCallback;
+import me.superblaubeere27.jobf.processors.WatermarkProcessor;
+import me.superblaubeere27.jobf.utils.values.Value;
+import me.superblaubeere27.jobf.utils.values.ValueManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WatermarkExtractorTest {
+    private static final Config CONFIG = new Config("A key which is only used by the test", "WM");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WatermarkProcessor processor;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        processor = new WatermarkProcessor();
+
+        ValueManager.registerClass(processor);
+
+        for (Value<?> value : ValueManager.getValues()) {
+            if (!value.getOwner().equals("Watermark")) continue;
+
+            switch (value.getName()) {
+                case "Enabled":
+                    ((Value<Boolean>) value).setObject(true);
+                    break;
+                case "Watermark":
+                    ((Value<String>) value).setObject("Customer 42");
+                    break;
+                case "Key":
+                    ((Value<String>) value).setObject(CONFIG.getKey());
+                    break;
+                case "Magic Bytes":
+                    ((Value<String>) value).setObject(CONFIG.getMagicBytes());
+                    break;
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ValueManager.resetValues();
+    }
+
+    private static ClassNode createClass(String name) {
+        ClassNode node = new ClassNode();
+
+        node.version = Opcodes.V1_8;
+        node.access = Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER;
+        node.name = name;
+        node.superName = "java/lang/Object";
+
+        return node;
+    }
+
+    private static byte[] write(ClassNode node) {
+        ClassWriter writer = new ClassWriter(0);
+
+        node.accept(writer);
+
+        return writer.toByteArray();
+    }
+
+    private byte[] watermark(String name) {
+        ClassNode node = createClass(name);
+
+        processor.process(new ProcessorCallback(), node);
+
+        return write(node);
+    }
+
+    private byte[] watermarkStreamed(String name) {
+        ClassWriter writer = new ClassWriter(0);
+
+        createClass(name).accept(processor.createVisitor(new ProcessorCallback(), writer));
+
+        return writer.toByteArray();
+    }
+
+    private File createJar(String name, byte[]... classes) throws IOException {
+        File jar = folder.newFile(name);
+
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (int i = 0; i < classes.length; i++) {
+                out.putNextEntry(new ZipEntry("test/Class" + i + ".class"));
+                out.write(classes[i]);
+            }
+        }
+
+        return jar;
+    }
+
+    @Test
+    public void test_roundTrip() throws Exception {
+        File marked = createJar("marked.jar", watermark("test/Class0"), watermarkStreamed("test/Class1"), write(createClass("test/Class2")));
+        File unmarked = createJar("unmarked.jar", write(createClass("test/Class0")), write(createClass("test/Class1")));
+
+        List<WatermarkExtractor.JarReport> reports = new WatermarkExtractor(CONFIG).extract(Arrays.asList(marked, unmarked), 2);
+
+        assertEquals(marked, reports.get(0).getJar());
+        assertEquals(Collections.singletonMap("Customer 42", 2), reports.get(0).getWatermarks());
+        assertEquals(3, reports.get(0).toJsonObject().get("classes").getAsInt());
+        assertEquals(1, reports.get(0).toJsonObject().get("unmarkedClasses").getAsInt());
+
+        assertEquals(unmarked, reports.get(1).getJar());
+        assertTrue(reports.get(1).getWatermarks().isEmpty());
+        assertEquals(2, reports.get(1).toJsonObject().get("unmarkedClasses").getAsInt());
+        assertEquals(0, reports.get(1).toJsonObject().getAsJsonArray("errors").size());
+    }
+
+    @Test
+    public void test_wrongKey() throws Exception {
+        File marked = createJar("marked.jar", watermark("test/Class0"));
+
+        // The marker is found, but it can't be decrypted
+        WatermarkExtractor extractor = new WatermarkExtractor(new Config("Another key", CONFIG.getMagicBytes()));
+
+        assertEquals(1, extractor.findMarkers(watermark("test/Class0")).size());
+        assertTrue(extractor.scan(marked).getWatermarks().isEmpty());
+    }
+
+    @Test
+    public void test_invalidClass() throws Exception {
+        File jar = createJar("invalid.jar", new byte[]{1, 2, 3, 4});
+
+        WatermarkExtractor.JarReport report = new WatermarkExtractor(CONFIG).scan(jar);
+
+        assertTrue(report.getWatermarks().isEmpty());
+        assertEquals(1, report.toJsonObject().getAsJsonArray("errors").size());
+    }
+}